@@ -21,18 +21,22 @@
 package org.apache.cassandra.cache;
 
 import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.MoreExecutors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.benmanes.caffeine.cache.*;
+import org.apache.cassandra.config.CassandraRelevantProperties;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.*;
@@ -40,8 +44,23 @@ import org.apache.cassandra.metrics.ChunkCacheMetrics;
 import org.apache.cassandra.utils.memory.BufferPool;
 import org.apache.cassandra.utils.memory.BufferPools;
 
+/**
+ * Cache of file chunks, shared by all files that are read through a {@link ChunkReader}.
+ * <p>
+ * Eviction is done by Caffeine's W-TinyLFU policy, which only admits a new chunk if it is estimated to be accessed more
+ * frequently than the chunk it would evict, and is thus resistant to one-off scans.
+ * <p>
+ * Each file path is given a {@link CachedFile} with a unique id, which tracks the chunks of the file that are in the
+ * cache so that invalidating a file only needs to visit its own chunks.
+ * <p>
+ * Readers that scan files (see {@link AccessIntent}) use the chunks that are already cached but do not admit new ones,
+ * so that e.g. compactions do not evict the working set of point reads.
+ * <p>
+ * Optionally, part of the cache's memory can be given to a {@link CompressedTier} which holds the compressed bytes of
+ * chunks read through a {@link CompressedChunkReader} (see {@link CassandraRelevantProperties#CHUNK_CACHE_COMPRESSED_FRACTION}).
+ */
 public class ChunkCache
-        implements CacheLoader<ChunkCache.Key, ChunkCache.Buffer>, RemovalListener<ChunkCache.Key, ChunkCache.Buffer>, CacheSize
+        implements RemovalListener<ChunkCache.Key, ChunkCache.Buffer>, CacheSize
 {
     private final static Logger logger = LoggerFactory.getLogger(ChunkCache.class);
 
@@ -49,36 +68,79 @@ public class ChunkCache
     public static final long cacheSize = 1024L * 1024L * Math.max(0, DatabaseDescriptor.getFileCacheSizeInMB() - RESERVED_POOL_SPACE_IN_MB);
     public static final boolean roundUp = DatabaseDescriptor.getFileCacheRoundUp();
 
+    public static final double compressedFraction = CassandraRelevantProperties.CHUNK_CACHE_COMPRESSED_FRACTION.getDouble();
+
+    /** Whether chunks read by request scans are admitted, see {@link CassandraRelevantProperties#CHUNK_CACHE_ADMIT_SCANS}. */
+    @VisibleForTesting
+    public static volatile boolean admitScans = CassandraRelevantProperties.CHUNK_CACHE_ADMIT_SCANS.getBoolean();
+
     private static boolean enabled = DatabaseDescriptor.getFileCacheEnabled() && cacheSize > 0;
-    public static final ChunkCache instance = enabled ? new ChunkCache(BufferPools.forChunkCache()) : null;
+    public static final ChunkCache instance = enabled ? new ChunkCache(BufferPools.forChunkCache(), cacheSize, compressedFraction) : null;
 
     private final BufferPool bufferPool;
 
-    private final LoadingCache<Key, Buffer> cache;
+    private final long capacity;
+    private final Cache<Key, Buffer> cache;
     public final ChunkCacheMetrics metrics;
 
+    @Nullable
+    private final CompressedTier compressedTier;
+    /** Metrics of the compressed tier, null if the tier is disabled. */
+    @Nullable
+    public final ChunkCacheMetrics compressedMetrics;
+
+    private final ConcurrentHashMap<String, CachedFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong nextFileId = new AtomicLong();
+
     private Function<ChunkReader, RebuffererFactory> wrapper = this::wrap;
 
-    static class Key
+    /**
+     * A file whose chunks are cached. Invalidating the file removes it from the cache's file map; readers that
+     * still use it switch to a new instance with a new id, so that chunks they cache afterwards are tracked again.
+     */
+    static class CachedFile
     {
-        final ChunkReader file;
         final String path;
+        final long id;
+        /** The keys of the file's chunks that are in the cache. */
+        final Set<Key> chunks = ConcurrentHashMap.newKeySet();
+        /** The keys of the file's chunks that are in the compressed tier. */
+        final Set<Key> compressedChunks = ConcurrentHashMap.newKeySet();
+        volatile boolean invalidated = false;
+
+        CachedFile(String path, long id)
+        {
+            this.path = path;
+            this.id = id;
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + "#" + id;
+        }
+    }
+
+    static class Key
+    {
+        final CachedFile file;
+        final Class<? extends ChunkReader> readerType;
         final long position;
 
-        public Key(ChunkReader file, long position)
+        public Key(CachedFile file, Class<? extends ChunkReader> readerType, long position)
         {
             super();
             this.file = file;
+            this.readerType = readerType;
             this.position = position;
-            this.path = file.channel().filePath();
         }
 
         public int hashCode()
         {
             final int prime = 31;
             int result = 1;
-            result = prime * result + path.hashCode();
-            result = prime * result + file.getClass().hashCode();
+            result = prime * result + Long.hashCode(file.id);
+            result = prime * result + readerType.hashCode();
             result = prime * result + Long.hashCode(position);
             return result;
         }
@@ -92,8 +154,14 @@ public class ChunkCache
 
             Key other = (Key) obj;
             return (position == other.position)
-                    && file.getClass() == other.file.getClass()
-                    && path.equals(other.path);
+                    && file == other.file
+                    && readerType == other.readerType;
+        }
+
+        @Override
+        public String toString()
+        {
+            return file + "@" + position;
         }
     }
 
@@ -145,40 +213,71 @@ public class ChunkCache
         }
     }
 
-    private ChunkCache(BufferPool pool)
+    /**
+     * @param pool the pool to allocate chunk buffers from
+     * @param size the memory used by the cache, including its compressed tier
+     * @param compressedFraction the fraction of the memory given to the compressed tier, 0 to disable it
+     */
+    @VisibleForTesting
+    ChunkCache(BufferPool pool, long size, double compressedFraction)
     {
+        assert compressedFraction >= 0 && compressedFraction < 1 : "Invalid compressed tier fraction " + compressedFraction;
         bufferPool = pool;
+        long compressedCapacity = (long) (size * compressedFraction);
+        capacity = size - compressedCapacity;
         metrics = ChunkCacheMetrics.create(this);
+        if (compressedCapacity > 0)
+        {
+            compressedTier = new CompressedTier(compressedCapacity);
+            compressedMetrics = compressedTier.metrics;
+        }
+        else
+        {
+            compressedTier = null;
+            compressedMetrics = null;
+        }
         cache = Caffeine.newBuilder()
-                        .maximumWeight(cacheSize)
+                        .maximumWeight(capacity)
                         .executor(MoreExecutors.directExecutor())
                         .weigher((key, buffer) -> ((Buffer) buffer).buffer.capacity())
                         .removalListener(this)
                         .recordStats(() -> metrics)
-                        .build(this);
+                        .build();
     }
 
-    @Override
-    public Buffer load(Key key)
+    private Buffer load(ChunkReader source, Key key)
     {
-        ByteBuffer buffer = bufferPool.get(key.file.chunkSize(), key.file.preferredBufferType());
+        ByteBuffer buffer = bufferPool.get(source.chunkSize(), source.preferredBufferType());
         assert buffer != null;
-        key.file.readChunk(key.position, buffer);
+        if (compressedTier != null && source instanceof CompressedChunkReader)
+            compressedTier.readChunk((CompressedChunkReader) source, key, buffer);
+        else
+            source.readChunk(key.position, buffer);
+        key.file.chunks.add(key);
         return new Buffer(buffer, key.position);
     }
 
     @Override
     public void onRemoval(Key key, Buffer buffer, RemovalCause cause)
     {
+        key.file.chunks.remove(key);
         buffer.release();
     }
 
+    private CachedFile cachedFile(String path)
+    {
+        return files.computeIfAbsent(path, p -> new CachedFile(p, nextFileId.getAndIncrement()));
+    }
+
     public void close()
     {
         cache.invalidateAll();
+        if (compressedTier != null)
+            compressedTier.cache.invalidateAll();
     }
 
-    private RebuffererFactory wrap(ChunkReader file)
+    @VisibleForTesting
+    RebuffererFactory wrap(ChunkReader file)
     {
         return new CachingRebufferer(file);
     }
@@ -193,7 +292,14 @@ public class ChunkCache
 
     public void invalidateFile(String fileName)
     {
-        cache.invalidateAll(Iterables.filter(cache.asMap().keySet(), x -> x.path.equals(fileName)));
+        CachedFile file = files.remove(fileName);
+        if (file == null)
+            return;
+
+        file.invalidated = true;
+        cache.invalidateAll(file.chunks);
+        if (compressedTier != null)
+            compressedTier.cache.invalidateAll(file.compressedChunks);
     }
 
     @VisibleForTesting
@@ -203,6 +309,11 @@ public class ChunkCache
         wrapper = this::wrap;
         cache.invalidateAll();
         metrics.reset();
+        if (compressedTier != null)
+        {
+            compressedTier.cache.invalidateAll();
+            compressedMetrics.reset();
+        }
     }
 
     @VisibleForTesting
@@ -221,16 +332,29 @@ public class ChunkCache
     class CachingRebufferer implements Rebufferer, RebuffererFactory
     {
         private final ChunkReader source;
+        private final Class<? extends ChunkReader> readerType;
+        private final Function<Key, Buffer> loader;
         final long alignmentMask;
+        private volatile CachedFile file;
 
         public CachingRebufferer(ChunkReader file)
         {
             source = file;
+            readerType = file.getClass();
+            loader = key -> load(source, key);
             int chunkSize = file.chunkSize();
             assert Integer.bitCount(chunkSize) == 1 : String.format("%d must be a power of two", chunkSize);
             alignmentMask = -chunkSize;
         }
 
+        private Key key(long pageAlignedPos)
+        {
+            CachedFile file = this.file;
+            if (file == null || file.invalidated)
+                this.file = file = cachedFile(source.channel().filePath());
+            return new Key(file, readerType, pageAlignedPos);
+        }
+
         @Override
         public Buffer rebuffer(long position)
         {
@@ -239,10 +363,10 @@ public class ChunkCache
             {
                 long pageAlignedPos = position & alignmentMask;
                 Buffer buf;
-                Key key = new Key(source, pageAlignedPos);
+                Key key = key(pageAlignedPos);
                 while (true)
                 {
-                    buf = cache.get(key).reference();
+                    buf = cache.get(key, loader).reference();
                     if (buf != null)
                         return buf;
 
@@ -270,11 +394,30 @@ public class ChunkCache
             return this;
         }
 
+        @Override
+        public Rebufferer instantiateRebufferer(AccessIntent intent)
+        {
+            switch (intent)
+            {
+                case POINT_READ:
+                    return this;
+                case SCAN:
+                    return admitScans ? this : new ScanRebufferer();
+                case COMPACTION:
+                    return new ScanRebufferer();
+                default:
+                    throw new AssertionError();
+            }
+        }
+
         @Override
         public void invalidateIfCached(long position)
         {
             long pageAlignedPos = position & alignmentMask;
-            cache.invalidate(new Key(source, pageAlignedPos));
+            Key key = key(pageAlignedPos);
+            cache.invalidate(key);
+            if (compressedTier != null)
+                compressedTier.cache.invalidate(key);
         }
 
         @Override
@@ -312,12 +455,46 @@ public class ChunkCache
         {
             return "CachingRebufferer:" + source;
         }
+
+        /**
+         * Per-reader rebufferer that returns the chunks that are in the cache, and reads the ones that are not into
+         * a buffer owned by the reader without admitting them.
+         */
+        class ScanRebufferer extends BufferManagingRebufferer.Aligned
+        {
+            ScanRebufferer()
+            {
+                super(CachingRebufferer.this.source);
+            }
+
+            @Override
+            public BufferHolder rebuffer(long position)
+            {
+                Buffer cached = cache.getIfPresent(key(position & alignmentMask));
+                if (cached != null)
+                {
+                    cached = cached.reference();
+                    if (cached != null)
+                        return cached;
+                }
+                return super.rebuffer(position);
+            }
+
+            @Override
+            public String toString()
+            {
+                return "CachingRebufferer.ScanRebufferer:" + source;
+            }
+        }
     }
 
+    /**
+     * The capacity of the main (decompressed) tier of the cache.
+     */
     @Override
     public long capacity()
     {
-        return cacheSize;
+        return capacity;
     }
 
     @Override
@@ -345,6 +522,118 @@ public class ChunkCache
      */
     @VisibleForTesting
     public int sizeOfFile(String filePath) {
-        return (int) cache.asMap().keySet().stream().filter(x -> x.path.equals(filePath)).count();
+        CachedFile file = files.get(filePath);
+        return file != null ? file.chunks.size() : 0;
+    }
+
+    /**
+     * Returns the number of chunks of given file in the compressed tier.
+     */
+    @VisibleForTesting
+    public int compressedSizeOfFile(String filePath) {
+        CachedFile file = files.get(filePath);
+        return file != null ? file.compressedChunks.size() : 0;
+    }
+
+    /**
+     * Second tier of the cache, holding the compressed bytes of chunks read through a {@link CompressedChunkReader}.
+     * Compressed chunks are usually several times smaller than decompressed ones, so the same memory holds many more
+     * of them, and a miss in the main tier that hits here costs a decompression instead of a read.
+     * <p>
+     * Chunks are only decompressed into the main tier, so a chunk that is accessed repeatedly lives in both tiers.
+     */
+    class CompressedTier implements RemovalListener<Key, Buffer>, CacheSize
+    {
+        private final long capacity;
+        private final Cache<Key, Buffer> cache;
+        private final ChunkCacheMetrics metrics;
+
+        CompressedTier(long capacity)
+        {
+            this.capacity = capacity;
+            metrics = ChunkCacheMetrics.createForCompressedTier(this);
+            cache = Caffeine.newBuilder()
+                            .maximumWeight(capacity)
+                            .executor(MoreExecutors.directExecutor())
+                            .weigher((key, buffer) -> ((Buffer) buffer).buffer.capacity())
+                            .removalListener(this)
+                            .recordStats(() -> metrics)
+                            .build();
+        }
+
+        /**
+         * Decompress the chunk with the given key into the given buffer, reading its compressed bytes into this tier
+         * if they are not already present.
+         */
+        void readChunk(CompressedChunkReader source, Key key, ByteBuffer uncompressed)
+        {
+            for (int spin = 0; spin < 1000; ++spin)
+            {
+                Buffer compressed = cache.get(key, k -> load(source, k)).reference();
+                if (compressed == null)
+                    continue;   // released by a concurrent eviction
+
+                try
+                {
+                    source.uncompressChunk(key.position, compressed.buffer(), uncompressed);
+                    return;
+                }
+                finally
+                {
+                    compressed.release();
+                }
+            }
+            throw new RuntimeException(String.format("Could not acquire a reference to compressed chunk %s after 1000 attempts.", key));
+        }
+
+        private Buffer load(CompressedChunkReader source, Key key)
+        {
+            ByteBuffer buffer = bufferPool.get(source.compressedBufferSize(key.position), source.preferredBufferType());
+            assert buffer != null;
+            try
+            {
+                source.readCompressedChunk(key.position, buffer);
+            }
+            catch (Throwable t)
+            {
+                bufferPool.put(buffer);
+                throw t;
+            }
+            key.file.compressedChunks.add(key);
+            return new Buffer(buffer, key.position);
+        }
+
+        @Override
+        public void onRemoval(Key key, Buffer buffer, RemovalCause cause)
+        {
+            key.file.compressedChunks.remove(key);
+            buffer.release();
+        }
+
+        @Override
+        public long capacity()
+        {
+            return capacity;
+        }
+
+        @Override
+        public void setCapacity(long capacity)
+        {
+            throw new UnsupportedOperationException("Chunk cache size cannot be changed.");
+        }
+
+        @Override
+        public int size()
+        {
+            return cache.asMap().size();
+        }
+
+        @Override
+        public long weightedSize()
+        {
+            return cache.policy().eviction()
+                    .map(policy -> policy.weightedSize().orElseGet(cache::estimatedSize))
+                    .orElseGet(cache::estimatedSize);
+        }
     }
 }
@@ -321,6 +321,93 @@ public enum CassandraRelevantProperties
     // Allows one to turn off cursors in compaction.
     CURSORS_ENABLED("cassandra.allow_cursor_compaction", "true"),
 
+    // Whether cursor compaction copies the partitions that only one of its sources contains, and in which nothing can
+    // be purged, directly from that source (and their serialized rows when possible) instead of merging them. The
+    // header of compaction results then reuses the encoding stats of a source when possible, see SerializationHeader.make.
+    COMPACTION_COPY_UNMERGED_PARTITIONS("cassandra.compaction.copy_unmerged_partitions", "false"),
+
+    // Merge the sources of single-partition and range reads (memtables and sstables) as byte-comparable tries rather
+    // than with comparator-based merge iterators, see UnfilteredRowIterators.TRIE_MERGE_READS. Other merges, e.g. in
+    // compaction, are not affected.
+    TRIE_MERGE_READS("cassandra.read.trie_merge", "false"),
+
+    // Fraction of the file cache given to a second chunk cache tier that holds compressed chunks, which are
+    // decompressed into the main tier on access. 0 disables the compressed tier.
+    CHUNK_CACHE_COMPRESSED_FRACTION("cassandra.chunk_cache.compressed_fraction", "0"),
+
+    // Whether the chunk cache admits the chunks read by request scans (e.g. range reads). Chunks read by compaction
+    // and other background operations are never admitted. See AccessIntent.
+    CHUNK_CACHE_ADMIT_SCANS("cassandra.chunk_cache.admit_scans", "false"),
+
+    // Whether compaction (and other sstable rewriting operations) read their inputs and write their data files with
+    // O_DIRECT, bypassing the page cache, see DirectIO. Ignored where the file system or JDK does not support it.
+    DIRECT_IO_COMPACTION("cassandra.direct_io.compaction", "false"),
+
+    // Whether sstable data files received by streaming are written with O_DIRECT.
+    DIRECT_IO_STREAMING("cassandra.direct_io.streaming", "false"),
+
+    // Whether file-based (i.e. not memory-mapped) commit log segments are written with O_DIRECT.
+    DIRECT_IO_COMMITLOG("cassandra.direct_io.commitlog", "false"),
+
+    // Whether the data files written by compaction (and other sstable rewriting operations) and streaming are dropped
+    // from the page cache as they are synced, see SequentialWriter#setDropCacheBehind. Ignored for the data files
+    // written with O_DIRECT.
+    PAGE_CACHE_DROP_BEHIND("cassandra.page_cache.drop_behind", "false"),
+
+    // The number of chunks of the data file that sstable scanners ask the OS to read ahead (POSIX_FADV_WILLNEED) of
+    // their position; 0 disables the advice.
+    SCAN_READ_AHEAD_CHUNKS("cassandra.scan.read_ahead_chunks", "0"),
+
+    // The maximum number of data file chunks that trie-index sstable scanners read ahead of their position on the
+    // scan prefetch threads; 0 disables prefetching. The number actually read ahead adapts to the speed of the scan.
+    SCAN_PREFETCH_MAX_CHUNKS("cassandra.scan.prefetch_max_chunks", "0"),
+
+    // The number of threads reading data file chunks ahead of sstable scanners.
+    SCAN_PREFETCH_THREADS("cassandra.scan.prefetch_threads", "4"),
+
+    // The largest number of keys of an sstable for which an xor filter is built, for tables with the XOR filter type.
+    // The keys are recorded in 16 bytes of off-heap memory each, and building the filter takes about 24 bytes of heap
+    // per key; larger sstables, including those whose number of keys was underestimated, get a blocked Bloom filter.
+    XOR_FILTER_MAX_KEYS("cassandra.xor_filter.max_keys", "10000000"),
+
+    // The off-heap memory, in MiB, in which the top levels of the partition index tries are kept, shared between the
+    // sstables by read rate. 0 disables the pinning.
+    PARTITION_INDEX_PINNED_MEMORY_MB("cassandra.partition_index.pinned_memory_mb", "0"),
+
+    // The maximum number of levels of a partition index trie that are pinned in memory.
+    PARTITION_INDEX_PINNED_LEVELS("cassandra.partition_index.pinned_levels", "3"),
+
+    // How often the memory for pinned partition index levels is redistributed between the sstables.
+    PARTITION_INDEX_PINNING_INTERVAL_SECONDS("cassandra.partition_index.pinning_interval_seconds", "60"),
+
+    // The local read latency 99th percentile, in milliseconds, above which the adaptive controller lowers the compaction
+    // throughput, see AdaptiveCompactionThroughput. 0 disables the controller.
+    COMPACTION_ADAPTIVE_READ_LATENCY_TARGET_MS("cassandra.compaction.adaptive.read_latency_target_ms", "0"),
+
+    // The lowest compaction throughput, in MiB/s, that the adaptive controller sets.
+    COMPACTION_ADAPTIVE_MIN_THROUGHPUT_MB_PER_SEC("cassandra.compaction.adaptive.min_throughput_mb_per_sec", "8"),
+
+    // The highest compaction throughput, in MiB/s, that the adaptive controller sets.
+    COMPACTION_ADAPTIVE_MAX_THROUGHPUT_MB_PER_SEC("cassandra.compaction.adaptive.max_throughput_mb_per_sec", "256"),
+
+    // The average disk queue depth above which the adaptive controller lowers the compaction throughput. 0 ignores the
+    // queue depth, which is also ignored where /proc/diskstats is not available.
+    COMPACTION_ADAPTIVE_MAX_DISK_QUEUE_DEPTH("cassandra.compaction.adaptive.max_disk_queue_depth", "0"),
+
+    // How many times the threshold of a UCS level its overlap can reach before the adaptive controller considers
+    // compaction to be falling behind, and raises the throughput regardless of the read latency.
+    COMPACTION_ADAPTIVE_MAX_OVERLAP_FACTOR("cassandra.compaction.adaptive.max_overlap_factor", "2"),
+
+    // How often the adaptive controller adjusts the compaction throughput.
+    COMPACTION_ADAPTIVE_INTERVAL_SECONDS("cassandra.compaction.adaptive.interval_seconds", "10"),
+
+    // Whether sstables received by partial streaming copy the serialized rows of their source when it has the same
+    // version and serialization header, instead of serializing the received rows again. This is a receiver-side
+    // optimisation only: the rows are still sent and deserialized as usual, so this only applies to, and only saves
+    // the serialization of, sources in the latest trie-indexed format version. It is off by default, as it trades the
+    // serialization of the rows for a copy of the input, which is not known to pay off in general.
+    STREAMING_COPY_SERIALIZED_ROWS("cassandra.streaming.copy_serialized_rows", "false"),
+
     SYNC_LAG_FACTOR("cassandra.commitlog_sync_block_lag_factor", "1.5"),
 
     CDC_STREAMING_ENABLED("cassandra.cdc.enable_streaming", "true"),
@@ -243,6 +243,8 @@ public class Config
     public Integer unlogged_batch_across_partitions_warn_threshold = 0;
     public volatile Integer concurrent_compactors;
     public volatile int compaction_throughput_mb_per_sec = 64;
+    public volatile int data_directory_read_throughput_mb_per_sec = 0;
+    public volatile int data_directory_write_throughput_mb_per_sec = 0;
     /**
      * @deprecated Migrated to 'guardrails.compaction_large_partition_warning_threshold_mb'
      */
@@ -1895,6 +1895,26 @@ public class DatabaseDescriptor
         conf.compaction_throughput_mb_per_sec = value;
     }
 
+    public static int getDataDirectoryReadThroughputMbPerSec()
+    {
+        return conf.data_directory_read_throughput_mb_per_sec;
+    }
+
+    public static void setDataDirectoryReadThroughputMbPerSec(int value)
+    {
+        conf.data_directory_read_throughput_mb_per_sec = value;
+    }
+
+    public static int getDataDirectoryWriteThroughputMbPerSec()
+    {
+        return conf.data_directory_write_throughput_mb_per_sec;
+    }
+
+    public static void setDataDirectoryWriteThroughputMbPerSec(int value)
+    {
+        conf.data_directory_write_throughput_mb_per_sec = value;
+    }
+
     public static int getConcurrentValidations()
     {
         return conf.concurrent_validations;
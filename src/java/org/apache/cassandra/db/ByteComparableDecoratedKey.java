@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.bytecomparable.ByteSource;
+
+/**
+ * A {@link BufferDecoratedKey} that was decoded from a byte-comparable representation and retains it, so that it does
+ * not have to be re-encoded when the key is asked for its byte-comparable form in the same version.
+ * <p>
+ * Used when keys are read from tries (e.g. when flushing a trie memtable), because the consumers of these keys (e.g.
+ * the partition index builder of trie-indexed sstables) work with their byte-comparable representation too.
+ */
+public class ByteComparableDecoratedKey extends BufferDecoratedKey
+{
+    private final byte[] encoded;
+    private final Version encodingVersion;
+
+    private ByteComparableDecoratedKey(Token token, ByteBuffer key, byte[] encoded, Version encodingVersion)
+    {
+        super(token, key);
+        this.encoded = encoded;
+        this.encodingVersion = encodingVersion;
+    }
+
+    @Override
+    public ByteSource asComparableBytes(Version version)
+    {
+        return version == encodingVersion ? ByteSource.fixedLength(encoded) : super.asComparableBytes(version);
+    }
+
+    /**
+     * Decode a key from its byte-comparable representation, retaining it.
+     *
+     * @param encoded The full byte-comparable representation of a decorated key. Must not be modified afterwards.
+     * @param version The encoding version used for the given bytes.
+     * @param partitioner The partitioner of the encoded decorated key.
+     */
+    public static ByteComparableDecoratedKey fromByteComparable(byte[] encoded, Version version, IPartitioner partitioner)
+    {
+        return DecoratedKey.fromByteComparable(ByteComparable.fixedLength(encoded),
+                                               version,
+                                               partitioner,
+                                               (token, keyBytes) -> new ByteComparableDecoratedKey(token,
+                                                                                                   ByteBuffer.wrap(keyBytes),
+                                                                                                   encoded,
+                                                                                                   version));
+    }
+}
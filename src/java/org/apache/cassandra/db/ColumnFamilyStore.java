@@ -23,6 +23,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -177,8 +178,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean, Memtable.Owner
     /*
     We keep a pool of threads for each data directory, size of each pool is memtable_flush_writers.
     When flushing we start a Flush runnable in the flushExecutor. Flush calculates how to split the
-    memtable ranges over the existing data directories and creates a FlushRunnable for each of the directories.
-    The FlushRunnables are executed in the perDiskflushExecutors and the Flush will block until all FlushRunnables
+    memtable ranges over the existing data directories and creates a FlushRunnable for each of the directories (or
+    several, if the memtable asks for its flush to be split, see Memtable.getFlushSplitPoints). The FlushRunnables are executed in the perDiskflushExecutors and the Flush will block until all FlushRunnables
     are finished. By having flushExecutor size the same size as each of the perDiskflushExecutors we make sure we can
     have that many flushes going at the same time.
     */
@@ -356,7 +357,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean, Memtable.Owner
 
     @VisibleForTesting
     final DiskBoundaryManager diskBoundaryManager = new DiskBoundaryManager();
-    ShardBoundaries cachedShardBoundaries = null;
+    private final Map<Integer, ShardBoundaries> cachedShardBoundaries = new ConcurrentHashMap<>();
 
     private volatile boolean neverPurgeTombstones = false;
 
@@ -1359,8 +1360,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean, Memtable.Owner
                     flushRunnables = Flushing.flushRunnables(cfs, memtable, txn);
                     ExecutorService[] executors = perDiskflushExecutors.getExecutorsFor(keyspace.getName(), name);
 
-                    for (int i = 0; i < flushRunnables.size(); i++)
-                        futures.add(executors[i].submit(flushRunnables.get(i)));
+                    for (Flushing.FlushRunnable flushRunnable : flushRunnables)
+                        futures.add(executors[flushRunnable.diskIndex()].submit(flushRunnable));
 
                     /**
                      * we can flush 2is as soon as the barrier completes, as they will be consistent with (or ahead of) the
@@ -1506,6 +1507,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean, Memtable.Owner
     @Override
     public Memtable getCurrentMemtable()
     {
+        // data is not yet set when the initial memtable is created
+        if (data == null)
+            return null;
         return data.getView().getCurrentMemtable();
     }
 
@@ -1580,21 +1584,27 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean, Memtable.Owner
         if (shardCount == 1 || !getPartitioner().splitter().isPresent() || SchemaConstants.isLocalSystemKeyspace(keyspace.getName()))
             return ShardBoundaries.NONE;
 
-        ShardBoundaries shardBoundaries = cachedShardBoundaries;
+        // Boundaries are cached per shard count, as trie memtables (see AdaptiveShardBoundaries) and their indexes may
+        // request different splits.
+        ShardBoundaries shardBoundaries = cachedShardBoundaries.get(shardCount);
         if (shardBoundaries == null ||
-            shardBoundaries.shardCount() != shardCount ||
             shardBoundaries.ringVersion != keyspace.getReplicationStrategy().getTokenMetadata().getRingVersion())
         {
             SortedLocalRanges localRanges = getLocalRanges();
             List<Token> positions = localRanges.split(shardCount);
             shardBoundaries = new ShardBoundaries(positions.subList(0, positions.size() - 1),
                                                   localRanges.getRingVersion());
-            cachedShardBoundaries = shardBoundaries;
+            cachedShardBoundaries.put(shardCount, shardBoundaries);
             logger.info("Memtable shard boundaries for {}.{}: {}", keyspace.getName(), getTableName(), positions);
         }
         return shardBoundaries;
     }
 
+    public OpOrder getReadOrdering()
+    {
+        return readOrdering;
+    }
+
     /**
      * @param sstables
      * @return sstables whose key range overlaps with that of the given sstables, not including itself.
@@ -18,6 +18,8 @@
 package org.apache.cassandra.db;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -30,6 +32,8 @@ import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.db.lifecycle.View;
 import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.db.rows.BaseRowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterators;
 import org.apache.cassandra.db.transform.RTBoundValidator;
 import org.apache.cassandra.db.transform.Transformation;
 import org.apache.cassandra.dht.AbstractBounds;
@@ -38,12 +42,14 @@ import org.apache.cassandra.exceptions.RequestExecutionException;
 import org.apache.cassandra.index.Index;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableReadsListener;
+import org.apache.cassandra.io.sstable.metadata.ZoneMapMetadata;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.metrics.TableMetrics;
 import org.apache.cassandra.service.QueryState;
 import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.Throwables;
 
 /**
  * A read command that selects a (part of a) range of partitions.
@@ -301,20 +307,32 @@ public class PartitionRangeReadCommand extends ReadCommand implements PartitionR
             }
 
             SSTableReadsListener readCountUpdater = newReadCountUpdater();
+            List<SSTableReader> excluded = new ArrayList<>();
             for (SSTableReader sstable : view.sstables)
             {
+                if (!sstable.isRepaired())
+                    controller.updateMinOldestUnrepairedTombstone(sstable.getMinLocalDeletionTime());
+
+                if (isExcludedByZoneMap(sstable, controller))
+                {
+                    excluded.add(sstable);
+                    continue;
+                }
+
                 @SuppressWarnings("resource") // We close on exception and on closing the result returned by this method
                 UnfilteredPartitionIterator iter = sstable.getScanner(columnFilter(), dataRange(), readCountUpdater);
                 inputCollector.addSSTableIterator(sstable, RTBoundValidator.validate(iter, RTBoundValidator.Stage.SSTABLE, false));
-
-                if (!sstable.isRepaired())
-                    controller.updateMinOldestUnrepairedTombstone(sstable.getMinLocalDeletionTime());
             }
-            // iterators can be empty for offline tools
+            if (!excluded.isEmpty())
+                Tracing.trace("Skipping the scan of {} sstables whose zone maps exclude the row filter", excluded.size());
+
+            // iterators can be empty for offline tools, or when all sstables are excluded and there are no memtables
             if (inputCollector.isEmpty())
                 return EmptyIterators.unfilteredPartition(metadata());
 
-            return checkCacheFilter(UnfilteredPartitionIterators.mergeLazily(inputCollector.finalizeIterators(cfs, nowInSec(), controller.oldestUnrepairedTombstone())), cfs);
+            UnfilteredPartitionIterator merged = UnfilteredPartitionIterators.mergeLazily(inputCollector.finalizeIterators(cfs, nowInSec(), controller.oldestUnrepairedTombstone()),
+                                                                                                UnfilteredRowIterators.TRIE_MERGE_READS);
+            return checkCacheFilter(withExcludedSSTables(merged, excluded, cfs, readCountUpdater), cfs);
         }
         catch (RuntimeException | Error e)
         {
@@ -330,6 +348,73 @@ public class PartitionRangeReadCommand extends ReadCommand implements PartitionR
         }
     }
 
+    /**
+     * Checks whether the zone maps of the sstable show that none of its cells can satisfy the row filter, so that the
+     * sstable cannot hold any of the queried partitions unless another source holds them too.
+     */
+    private boolean isExcludedByZoneMap(SSTableReader sstable, ReadExecutionController controller)
+    {
+        // the digest of the repaired data needs all of it to be read
+        if (rowFilter().isEmpty() || controller.isTrackingRepairedStatus())
+            return false;
+
+        ZoneMapMetadata zones = sstable.getZoneMap();
+        return zones != null && !zones.mayMatch(rowFilter());
+    }
+
+    /**
+     * Adds the content of the sstables excluded by their zone maps to the partitions read from the other sources.
+     * <p>
+     * A row satisfies the filter only if the cells that win the reconciliation do, and such cells can only come from
+     * the memtables or the sstables that were not excluded. The excluded sstables may still hold other cells or
+     * deletions of these rows, so that they are read for each of the partitions of the other sources, which are
+     * usually found in few, if any, of them.
+     */
+    private UnfilteredPartitionIterator withExcludedSSTables(UnfilteredPartitionIterator iter,
+                                                             List<SSTableReader> excluded,
+                                                             ColumnFamilyStore cfs,
+                                                             SSTableReadsListener listener)
+    {
+        if (excluded.isEmpty())
+            return iter;
+
+        class MergeExcluded extends Transformation<UnfilteredRowIterator>
+        {
+            @Override
+            @SuppressWarnings("resource") // closed with the merged iterator, or on exception
+            protected UnfilteredRowIterator applyToPartition(UnfilteredRowIterator partition)
+            {
+                DecoratedKey key = partition.partitionKey();
+                ClusteringIndexFilter filter = dataRange().clusteringIndexFilter(key);
+                List<UnfilteredRowIterator> iterators = new ArrayList<>(excluded.size() + 1);
+                iterators.add(partition);
+                try
+                {
+                    for (SSTableReader sstable : excluded)
+                    {
+                        UnfilteredRowIterator iterator = StorageHook.instance.makeRowIterator(cfs,
+                                                                                              sstable,
+                                                                                              key,
+                                                                                              filter.getSlices(metadata()),
+                                                                                              columnFilter(),
+                                                                                              filter.isReversed(),
+                                                                                              listener);
+                        if (iterator.isEmpty())
+                            iterator.close();
+                        else
+                            iterators.add(iterator);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    throw Throwables.throwAsUncheckedException(Throwables.close(t, iterators));
+                }
+                return iterators.size() == 1 ? partition : UnfilteredRowIterators.merge(iterators, UnfilteredRowIterators.TRIE_MERGE_READS);
+            }
+        }
+        return Transformation.apply(iter, new MergeExcluded());
+    }
+
     /**
      * Creates a new {@code SSTableReadsListener} to update the SSTables read counts.
      * @return a new {@code SSTableReadsListener} to update the SSTables read counts.
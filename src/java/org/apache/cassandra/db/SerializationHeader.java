@@ -41,6 +41,8 @@ import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.serializers.AbstractTypeSerializer;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_COPY_UNMERGED_PARTITIONS;
+
 public class SerializationHeader
 {
     public static final Serializer serializer = new Serializer();
@@ -97,7 +99,34 @@ public class SerializationHeader
             stats.updateTTL(sstable.getMinTTL());
             columns.addAll(sstable.header.columns());
         }
-        return new SerializationHeader(true, metadata, columns.build(), stats.get());
+        RegularAndStaticColumns mergedColumns = columns.build();
+        EncodingStats mergedStats = stats.get();
+        if (COMPACTION_COPY_UNMERGED_PARTITIONS.getBoolean())
+            mergedStats = copyableStats(sstables, mergedColumns, mergedStats);
+        return new SerializationHeader(true, metadata, mergedColumns, mergedStats);
+    }
+
+    /**
+     * The rows of an sstable can only be copied to the result of a compaction in their serialized form if it is
+     * written with the same header (see {@link SSTableReader#header}), which the merged stats rarely give. So if the
+     * header of one of the sstables has the same columns, and stats not above the merged ones, so that the values of
+     * the other sstables are still encoded as non-negative deltas, its stats are used instead, picking the largest
+     * such sstable. The encoding is then only slightly less compact.
+     */
+    private static EncodingStats copyableStats(Collection<SSTableReader> sstables, RegularAndStaticColumns columns, EncodingStats merged)
+    {
+        SSTableReader largest = null;
+        for (SSTableReader sstable : sstables)
+        {
+            EncodingStats stats = sstable.header.stats();
+            if (sstable.header.columns().equals(columns)
+                && stats.minTimestamp <= merged.minTimestamp
+                && stats.minLocalDeletionTime <= merged.minLocalDeletionTime
+                && stats.minTTL <= merged.minTTL
+                && (largest == null || sstable.uncompressedLength() > largest.uncompressedLength()))
+                largest = sstable;
+        }
+        return largest != null ? largest.header.stats() : merged;
     }
 
     private static Collection<SSTableReader> orderByDescendingGeneration(Collection<SSTableReader> sstables)
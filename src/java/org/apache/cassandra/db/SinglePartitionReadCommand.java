@@ -785,7 +785,7 @@ public class SinglePartitionReadCommand extends ReadCommand implements SinglePar
                                                        long startTimeNanos)
     {
         @SuppressWarnings("resource") //  Closed through the closing of the result of the caller method.
-        UnfilteredRowIterator merged = UnfilteredRowIterators.merge(iterators);
+        UnfilteredRowIterator merged = UnfilteredRowIterators.merge(iterators, UnfilteredRowIterators.TRIE_MERGE_READS);
 
         if (!merged.isEmpty())
         {
@@ -937,7 +937,8 @@ public class SinglePartitionReadCommand extends ReadCommand implements SinglePar
         if (result == null)
             return ImmutableBTreePartition.create(iter, maxRows);
 
-        try (UnfilteredRowIterator merged = UnfilteredRowIterators.merge(Arrays.asList(iter, result.unfilteredIterator(columnFilter(), Slices.ALL, filter.isReversed()))))
+        try (UnfilteredRowIterator merged = UnfilteredRowIterators.merge(Arrays.asList(iter, result.unfilteredIterator(columnFilter(), Slices.ALL, filter.isReversed())),
+                                                                                 UnfilteredRowIterators.TRIE_MERGE_READS))
         {
             return ImmutableBTreePartition.create(merged, maxRows);
         }
@@ -39,6 +39,7 @@ import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.db.commitlog.CommitLog.Configuration;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DirectIO;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.schema.Schema;
 import org.apache.cassandra.schema.TableId;
@@ -48,6 +49,7 @@ import org.apache.cassandra.utils.IntegerInterval;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.apache.cassandra.utils.concurrent.WaitQueue;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_COMMITLOG;
 import static org.apache.cassandra.utils.FBUtilities.updateChecksumInt;
 
 /*
@@ -160,11 +162,15 @@ public abstract class CommitLogSegment
         {
             // We need both READ and WRITE for Memory mapped segments (there is no write only shared mapping) but
             // some storage type doesn't support mmapped segments
-            if (DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.standard)
-                channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
-            else
-                channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE);
-            fd = INativeLibrary.instance.getfd(channel);
+            boolean standardAccess = DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.standard;
+            FileChannel channel = standardAccess
+                                  ? FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+                                  : FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE);
+            // memory mapped segments do not write through the channel, see createSegment
+            if (DIRECT_IO_COMMITLOG.getBoolean() && (standardAccess || usesBufferPool(commitLog)))
+                channel = DirectIO.reopenForWrite(logFile, channel);
+            this.channel = channel;
+            fd = INativeLibrary.instance.getfd(DirectIO.unwrap(channel));
         }
         catch (IOException e)
         {
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DirectIO;
 import org.apache.cassandra.utils.SyncUtil;
 
 /**
@@ -70,6 +71,7 @@ public abstract class FileDirectSegment extends CommitLogSegment
     {
         try
         {
+            DirectIO.writePending(channel);
             SyncUtil.force(channel, true);
         }
         catch (Exception e)
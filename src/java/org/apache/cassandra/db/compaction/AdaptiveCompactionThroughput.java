@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.compaction.unified.Controller;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_INTERVAL_SECONDS;
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_MAX_DISK_QUEUE_DEPTH;
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_MAX_OVERLAP_FACTOR;
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_MAX_THROUGHPUT_MB_PER_SEC;
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_MIN_THROUGHPUT_MB_PER_SEC;
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_ADAPTIVE_READ_LATENCY_TARGET_MS;
+
+/**
+ * Adjusts the compaction throughput periodically, so that background compaction yields to the foreground reads
+ * when they suffer, and catches up when they don't.
+ * <p>
+ * The throughput is lowered by {@link #DECREASE_FACTOR} when the 99th percentile of the local read latency of the
+ * user keyspaces is above the target, or when the average queue depth of the disks of the data directories is above
+ * its limit, and raised by
+ * {@link #INCREASE_FACTOR} when the latency is below {@link #HEADROOM} times the target, always within the configured
+ * minimum and maximum. It is also raised, regardless of the read latency, when a level of a unified compaction strategy
+ * has more overlapping sstables than a multiple of its threshold: compaction then falls behind its target, and the
+ * growing read amplification would end up hurting the reads more than the compactions do.
+ * <p>
+ * The controller starts from, and continues from, the current compaction throughput, so that it is still possible to
+ * change it by hand, e.g. with nodetool setcompactionthroughput.
+ */
+public class AdaptiveCompactionThroughput
+{
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveCompactionThroughput.class);
+
+    static final double DECREASE_FACTOR = 0.75;
+    static final double INCREASE_FACTOR = 1.25;
+    static final double HEADROOM = 0.8;
+
+    private static final Path DISK_STATS = Paths.get("/proc/diskstats");
+    private static final Path SYS_DEV_BLOCK = Paths.get("/sys/dev/block");
+
+    public static final AdaptiveCompactionThroughput instance =
+        new AdaptiveCompactionThroughput(COMPACTION_ADAPTIVE_READ_LATENCY_TARGET_MS.getDouble(),
+                                         COMPACTION_ADAPTIVE_MIN_THROUGHPUT_MB_PER_SEC.getInt(),
+                                         COMPACTION_ADAPTIVE_MAX_THROUGHPUT_MB_PER_SEC.getInt(),
+                                         COMPACTION_ADAPTIVE_MAX_DISK_QUEUE_DEPTH.getDouble(),
+                                         COMPACTION_ADAPTIVE_MAX_OVERLAP_FACTOR.getDouble());
+
+    private final double targetLatencyMillis;
+    private final int minThroughput;
+    private final int maxThroughput;
+    private final double maxQueueDepth;
+    private final double maxOverlapFactor;
+
+    // The block devices backing the data directories, resolved at the first measurement of the disk queue depth
+    private Set<String> dataDevices;
+    // The weighted time spent doing I/O by each device, in milliseconds, at the last adjustment
+    private Map<String, Long> lastDiskStats;
+    private long lastDiskStatsNanos;
+
+    @VisibleForTesting
+    AdaptiveCompactionThroughput(double targetLatencyMillis, int minThroughput, int maxThroughput, double maxQueueDepth, double maxOverlapFactor)
+    {
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.minThroughput = Math.max(1, minThroughput);
+        this.maxThroughput = Math.max(this.minThroughput, maxThroughput);
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxOverlapFactor = maxOverlapFactor;
+    }
+
+    /**
+     * Schedules the periodic adjustment of the compaction throughput, if there is a read latency target.
+     */
+    public void start()
+    {
+        int interval = COMPACTION_ADAPTIVE_INTERVAL_SECONDS.getInt();
+        if (targetLatencyMillis <= 0 || interval <= 0)
+            return;
+
+        logger.info("Adjusting the compaction throughput between {} and {} MiB/s every {} seconds, for a read latency p99 of {} ms{}",
+                    minThroughput, maxThroughput, interval, targetLatencyMillis,
+                    maxQueueDepth > 0 ? " and a disk queue depth of " + maxQueueDepth : "");
+        ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(() -> {
+            try
+            {
+                adjust();
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                logger.error("Failed to adjust the compaction throughput", t);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Measures the read latency, disk queue depth and compaction backlog, and applies the resulting throughput.
+     *
+     * @return the new compaction throughput, in MiB/s
+     */
+    public synchronized int adjust()
+    {
+        int current = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+        double latency = readLatencyMillis();
+        double queueDepth = maxQueueDepth > 0 ? diskQueueDepth() : 0;
+        boolean behind = isCompactionBehind();
+
+        int next = nextThroughput(current, latency, queueDepth, behind);
+        if (next != current)
+        {
+            logger.debug("Changing the compaction throughput from {} to {} MiB/s (read latency p99 {} ms, disk queue depth {}, compaction behind: {})",
+                         current, next, String.format("%.3f", latency), String.format("%.1f", queueDepth), behind);
+            DatabaseDescriptor.setCompactionThroughputMbPerSec(next);
+            CompactionManager.instance.setRate(next);
+        }
+        return next;
+    }
+
+    /**
+     * @param current the current compaction throughput, in MiB/s, 0 meaning unthrottled
+     * @param latencyMillis the 99th percentile of the read latency, in milliseconds
+     * @param queueDepth the average disk queue depth
+     * @param behind whether compaction is falling behind its target
+     * @return the compaction throughput to use next, in MiB/s
+     */
+    @VisibleForTesting
+    int nextThroughput(int current, double latencyMillis, double queueDepth, boolean behind)
+    {
+        if (current <= 0 || current > maxThroughput)
+            current = maxThroughput;
+        else if (current < minThroughput)
+            current = minThroughput;
+
+        boolean overloaded = latencyMillis > targetLatencyMillis || (maxQueueDepth > 0 && queueDepth > maxQueueDepth);
+        if (behind || (!overloaded && latencyMillis < HEADROOM * targetLatencyMillis))
+            return Math.min(maxThroughput, Math.max(current + 1, (int) (current * INCREASE_FACTOR)));
+        if (overloaded)
+            return Math.max(minThroughput, Math.min(current - 1, (int) (current * DECREASE_FACTOR)));
+        return current;
+    }
+
+    /**
+     * @return the highest 99th percentile of the local read latency of the user keyspaces, in milliseconds
+     */
+    private static double readLatencyMillis()
+    {
+        double latency = 0;
+        for (Keyspace keyspace : Keyspace.nonSystem())
+            latency = Math.max(latency, keyspace.metric.readLatency.latency.getSnapshot().get99thPercentile());
+        return latency / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return whether the overlap of a level of a unified compaction strategy is above the allowed multiple of its
+     * threshold
+     */
+    @VisibleForTesting
+    boolean isCompactionBehind()
+    {
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+        {
+            CompactionStrategy strategy = cfs.getCompactionStrategy();
+            if (!(strategy instanceof UnifiedCompactionContainer))
+                continue;
+
+            for (CompactionStrategy contained : ((UnifiedCompactionContainer) strategy).getStrategies())
+            {
+                UnifiedCompactionStrategy ucs = (UnifiedCompactionStrategy) contained;
+                Controller controller = ucs.getController();
+                for (CompactionAggregate aggregate : ucs.getAggregates())
+                {
+                    if (!(aggregate instanceof CompactionAggregate.UnifiedAggregate))
+                        continue;
+
+                    CompactionAggregate.UnifiedAggregate unified = (CompactionAggregate.UnifiedAggregate) aggregate;
+                    if (unified.maxOverlap() > maxOverlapFactor * controller.getThreshold(unified.bucketIndex()))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the highest average queue depth of the block devices backing the data directories since the last call,
+     * or 0 if it is not known
+     */
+    private double diskQueueDepth()
+    {
+        if (dataDevices == null)
+        {
+            dataDevices = dataDevices();
+            if (dataDevices.isEmpty())
+                logger.info("Could not find the block devices of the data directories, the disk queue depth is not measured");
+            else
+                logger.debug("Measuring the disk queue depth of {}", dataDevices);
+        }
+        if (dataDevices.isEmpty())
+            return 0;
+
+        Map<String, Long> stats;
+        try
+        {
+            stats = parseDiskStats(Files.readAllLines(DISK_STATS));
+            stats.keySet().retainAll(dataDevices);
+        }
+        catch (IOException e)
+        {
+            logger.trace("Could not read {}", DISK_STATS, e);
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        double queueDepth = lastDiskStats == null ? 0 : queueDepth(lastDiskStats, stats, TimeUnit.NANOSECONDS.toMillis(now - lastDiskStatsNanos));
+        lastDiskStats = stats;
+        lastDiskStatsNanos = now;
+        return queueDepth;
+    }
+
+    /**
+     * @return the names of the block devices backing the data directories, as listed in /proc/diskstats
+     */
+    private static Set<String> dataDevices()
+    {
+        Set<String> ids = new HashSet<>();
+        for (Directories.DataDirectory directory : Directories.dataDirectories.getAllDirectories())
+        {
+            try
+            {
+                // the device number of the file system of the directory, decoded as glibc's major() and minor() do
+                long device = (Long) Files.getAttribute(directory.location.toPath(), "unix:dev");
+                long major = ((device >>> 8) & 0xfff) | ((device >>> 32) & ~0xfffL);
+                long minor = (device & 0xff) | ((device >>> 12) & ~0xffL);
+                ids.add(major + ":" + minor);
+            }
+            catch (IOException | UnsupportedOperationException | IllegalArgumentException e)
+            {
+                logger.debug("Could not find the device of data directory {}", directory.location, e);
+            }
+        }
+        return blockDevices(SYS_DEV_BLOCK, ids);
+    }
+
+    /**
+     * Finds the block devices with the given numbers in sysfs, along with the disks they are partitions of, and the
+     * devices they are built on for device-mapper or software raid devices, so that other partitions, loop devices and
+     * unrelated disks are not measured.
+     *
+     * @param sysDevBlock the /sys/dev/block directory, which links each device number to the device
+     * @param ids the device numbers, as major:minor
+     * @return the names of the devices, as listed in /proc/diskstats
+     */
+    @VisibleForTesting
+    static Set<String> blockDevices(Path sysDevBlock, Collection<String> ids)
+    {
+        Set<String> devices = new HashSet<>();
+        for (String id : ids)
+        {
+            try
+            {
+                addBlockDevice(sysDevBlock.resolve(id), devices);
+            }
+            catch (IOException e)
+            {
+                logger.debug("Could not resolve block device {}", id, e);
+            }
+        }
+        return devices;
+    }
+
+    private static void addBlockDevice(Path link, Set<String> devices) throws IOException
+    {
+        // device numbers of file systems without a block device (e.g. tmpfs or overlay) are not listed
+        if (!Files.exists(link))
+            return;
+
+        Path device = link.toRealPath();
+        if (!devices.add(device.getFileName().toString()))
+            return;
+
+        if (Files.exists(device.resolve("partition")))
+            devices.add(device.getParent().getFileName().toString());
+
+        Path slaves = device.resolve("slaves");
+        if (Files.isDirectory(slaves))
+        {
+            try (Stream<Path> backing = Files.list(slaves))
+            {
+                for (Path slave : (Iterable<Path>) backing::iterator)
+                    addBlockDevice(slave, devices);
+            }
+        }
+    }
+
+    /**
+     * Extracts the weighted time spent doing I/O, in milliseconds, of each device listed in /proc/diskstats.
+     */
+    @VisibleForTesting
+    static Map<String, Long> parseDiskStats(List<String> lines)
+    {
+        Map<String, Long> stats = new HashMap<>();
+        for (String line : lines)
+        {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 14)
+                continue;
+
+            try
+            {
+                stats.put(fields[2], Long.parseLong(fields[13]));
+            }
+            catch (NumberFormatException e)
+            {
+                // not a device line, skip it
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * The average queue depth of a device over a period is the increase of its weighted I/O time divided by the
+     * duration of the period, as computed by iostat.
+     *
+     * @return the highest average queue depth of the devices between the two samples
+     */
+    @VisibleForTesting
+    static double queueDepth(Map<String, Long> before, Map<String, Long> after, long elapsedMillis)
+    {
+        if (elapsedMillis <= 0)
+            return 0;
+
+        double queueDepth = 0;
+        for (Map.Entry<String, Long> entry : after.entrySet())
+        {
+            Long previous = before.get(entry.getKey());
+            if (previous != null && entry.getValue() >= previous)
+                queueDepth = Math.max(queueDepth, (entry.getValue() - previous) / (double) elapsedMillis);
+        }
+        return queueDepth;
+    }
+}
@@ -34,9 +34,11 @@ import org.apache.cassandra.db.memtable.Memtable;
 import org.apache.cassandra.db.partitions.Partition;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.schema.CompactionParams.TombstoneOption;
+import org.apache.cassandra.utils.concurrent.OpOrder;
 
 /**
  * Manage compaction options.
@@ -242,18 +244,29 @@ public class CompactionController extends AbstractCompactionController
             }
         }
 
-        for (Memtable memtable : memtables)
+        // Memtables may reuse space released by writes once the reads that started before its release complete.
+        OpOrder readOrdering = realm.getReadOrdering();
+        OpOrder.Group readGroup = readOrdering != null ? readOrdering.start() : null;
+        try
         {
-            if (memtable.getMinTimestamp() >= minTimestampSeen)
-                continue;
-
-            Partition partition = memtable.getPartition(key);
-            if (partition != null)
+            for (Memtable memtable : memtables)
             {
-                minTimestampSeen = Math.min(minTimestampSeen, partition.stats().minTimestamp);
-                hasTimestamp = true;
+                if (memtable.getMinTimestamp() >= minTimestampSeen)
+                    continue;
+
+                Partition partition = memtable.getPartition(key);
+                if (partition != null)
+                {
+                    minTimestampSeen = Math.min(minTimestampSeen, partition.stats().minTimestamp);
+                    hasTimestamp = true;
+                }
             }
         }
+        finally
+        {
+            if (readGroup != null)
+                readGroup.close();
+        }
 
         if (!hasTimestamp)
             return time -> true;
@@ -325,6 +338,6 @@ public class CompactionController extends AbstractCompactionController
 
     private FileDataInput openDataFile(SSTableReader reader)
     {
-        return limiter != null ? reader.openDataReader(limiter) : reader.openDataReader();
+        return reader.openDataReader(limiter, AccessIntent.COMPACTION);
     }
 }
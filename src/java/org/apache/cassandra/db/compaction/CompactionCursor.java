@@ -19,19 +19,39 @@
 package org.apache.cassandra.db.compaction;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
 
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.Columns;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionPurger;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.RegularAndStaticColumns;
 import org.apache.cassandra.db.compaction.writers.SSTableDataSink;
 import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.Cell;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.Unfiltered;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.index.SecondaryIndexManager;
+import org.apache.cassandra.index.transactions.CompactionTransaction;
+import org.apache.cassandra.index.transactions.IndexTransaction;
 import org.apache.cassandra.io.sstable.compaction.SortedStringTableCursor;
 import org.apache.cassandra.io.sstable.compaction.IteratorFromCursor;
 import org.apache.cassandra.io.sstable.compaction.PurgeCursor;
@@ -39,11 +59,21 @@ import org.apache.cassandra.io.sstable.compaction.SSTableCursor;
 import org.apache.cassandra.io.sstable.compaction.SSTableCursorMerger;
 import org.apache.cassandra.io.sstable.compaction.SkipEmptyDataCursor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.CompactionParams;
 import org.apache.cassandra.schema.TableMetadata;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_COPY_UNMERGED_PARTITIONS;
+
 /**
- * Counterpart to CompactionIterator. Maintains sstable cursors, applies limiter and produces metrics. In the future it
- * should also pass information to observers and deal with expired tombstones and garbage-collection compactions.
+ * Counterpart to CompactionIterator. Maintains sstable cursors, applies limiter and produces metrics, purges tombstones
+ * and, in garbage-collection compactions, removes the data shadowed by the tombstones of the sstables that do not take
+ * part in the compaction.
+ * <p>
+ * Indexes that build per-sstable components (e.g. SAI) see the compacted data through the observers of the sstable
+ * writer, like with CompactionIterator. Indexes that also need to remove the entries of the data the compaction
+ * drops (i.e. legacy secondary indexes, see {@link CompactionTransaction}) are given the merged rows together with
+ * their versions in the sources, which are only rebuilt for them.
  */
 public class CompactionCursor implements SSTableCursorMerger.MergeListener, AutoCloseable
 {
@@ -71,79 +101,197 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
 
     private final long totalCompressedSize;
 
-    @SuppressWarnings("resource")
+    private final int nowInSec;
+    private final boolean enforceStrictLiveness;
+    private final boolean purgeTombstones;
+    private final boolean provideTombstoneSources;
+    private final boolean cellLevelGC;
+    private final DeletionPurger rowPurger = this::shouldPurge;
+    @Nullable
+    private final IndexGarbageCollector indexGarbageCollector;
+
+    // The merger of the sources, and for each source whether the partitions only it contains can be copied from it
+    // without merging, and whether their rows can also be copied in serialized form (see copyUnmergedPartition).
+    @Nullable
+    private final SSTableCursorMerger merger;
+    private final SSTableReader[] sourceReaders;
+    private final SortedStringTableCursor[] sources;
+    private final boolean[] copyUnmerged;
+    private final boolean[] copyUnmergedSerialized;
+    private long copiedUnmergedPartitions;
+    private final DataDirectoryIOBudget.Reads reads;
+
+    // The partition the cursor is in. It is only started in the writer when there is something to write in it, as
+    // all its content may be dropped (e.g. purged rows of tables with strict liveness, or garbage collected data).
+    private DecoratedKey partitionKey;
+    private DeletionTime partitionLevelDeletion;
+    private boolean partitionPending;
+    private boolean partitionStarted;
+    private LongPredicate purgeEvaluator;
+
     public CompactionCursor(OperationType type, Collection<SSTableReader> readers, CompactionController controller, RateLimiter limiter, int nowInSec, UUID compactionId)
+    {
+        this(type, readers, controller, limiter, nowInSec, compactionId, null);
+    }
+
+    /**
+     * @param tokenRange if not null, only the partitions within this range are compacted
+     */
+    @SuppressWarnings("resource")
+    public CompactionCursor(OperationType type, Collection<SSTableReader> readers, CompactionController controller, RateLimiter limiter, int nowInSec, UUID compactionId, @Nullable Range<Token> tokenRange)
     {
         this.controller = controller;
         this.type = type;
         this.compactionId = compactionId;
-        this.totalCompressedSize = readers.stream().mapToLong(SSTableReader::onDiskLength).sum();
+        this.nowInSec = nowInSec;
+        this.enforceStrictLiveness = controller.realm.metadata().enforceStrictLiveness();
+        this.purgeTombstones = controller.compactingRepaired();
+        this.provideTombstoneSources = controller.shouldProvideTombstoneSources();
+        this.cellLevelGC = controller.tombstoneOption == CompactionParams.TombstoneOption.CELL;
+        this.indexGarbageCollector = type == OperationType.COMPACTION && controller.realm.getIndexManager().handles(IndexTransaction.Type.COMPACTION)
+                                     ? new IndexGarbageCollector(controller.realm.getIndexManager(), readers, nowInSec)
+                                     : null;
         this.mergedPartitionsHistogram = new long[readers.size()];
         this.mergedRowsHistogram = new long[readers.size()];
         this.rowBuilder = BTreeRow.sortedBuilder();
         this.sstables = ImmutableSet.copyOf(readers);
-        this.cursor = makeMergedAndPurgedCursor(readers, controller, limiter, nowInSec);
+        this.sourceReaders = readers.toArray(new SSTableReader[0]);
+        this.sources = new SortedStringTableCursor[sourceReaders.length];
+        this.copyUnmerged = new boolean[sourceReaders.length];
+        this.copyUnmergedSerialized = new boolean[sourceReaders.length];
+        boolean copyUnmergedEnabled = COMPACTION_COPY_UNMERGED_PARTITIONS.getBoolean() && !provideTombstoneSources;
+        for (int i = 0; i < sourceReaders.length; i++)
+        {
+            sources[i] = tokenRange == null ? new SortedStringTableCursor(sourceReaders[i], limiter)
+                                            : openRange(sourceReaders[i], limiter, tokenRange);
+            copyUnmerged[i] = copyUnmergedEnabled && hasNothingToPurge(sourceReaders[i]);
+            copyUnmergedSerialized[i] = copyUnmerged[i] && canCopySerialized(sourceReaders[i]);
+        }
+        this.reads = createReads(sourceReaders, sources);
+        this.totalCompressedSize = tokenRange == null ? readers.stream().mapToLong(SSTableReader::onDiskLength).sum()
+                                                      : compressedSize(sourceReaders, sources);
+        this.merger = sources.length > 0 ? new SSTableCursorMerger(Arrays.asList(sources), metadata(), this) : null;
+        this.cursor = makePurgedCursor(readers, controller, nowInSec);
         this.totalBytes = cursor.bytesTotal();
         this.currentBytes = 0;
         this.currentProgressMillisSinceStartup = System.currentTimeMillis();
     }
 
-    private SSTableCursor makeMergedAndPurgedCursor(Collection<SSTableReader> readers,
-                                                    CompactionController controller,
-                                                    RateLimiter limiter,
-                                                    int nowInSec)
+    private static SortedStringTableCursor openRange(SSTableReader reader, RateLimiter limiter, Range<Token> tokenRange)
     {
-        if (readers.isEmpty())
-            return SSTableCursor.empty();
+        List<SSTableReader.PartitionPositionBounds> positions = reader.getPositionsForRanges(Collections.singleton(tokenRange));
+        if (positions.isEmpty())
+            return new SortedStringTableCursor(reader, limiter, 0, 0);
+        return new SortedStringTableCursor(reader, limiter, positions.get(0).lowerPosition, positions.get(positions.size() - 1).upperPosition);
+    }
 
-        SSTableCursor merged = new SSTableCursorMerger(readers.stream()
-                                                              .map(r -> new SortedStringTableCursor(r, limiter))
-                                                              .collect(Collectors.toList()),
-                                                       metadata(),
-                                                       this);
+    private static DataDirectoryIOBudget.Reads createReads(SSTableReader[] readers, SortedStringTableCursor[] sources)
+    {
+        LongSupplier[] positions = new LongSupplier[sources.length];
+        for (int i = 0; i < sources.length; i++)
+            positions[i] = sources[i]::bytesProcessed;
+        return new DataDirectoryIOBudget.Reads(Arrays.asList(readers), Arrays.asList(positions));
+    }
 
+    /**
+     * The on-disk size of the parts of the sources that are compacted, assuming the data is compressed evenly.
+     */
+    private static long compressedSize(SSTableReader[] readers, SortedStringTableCursor[] sources)
+    {
+        long size = 0;
+        for (int i = 0; i < readers.length; i++)
+        {
+            long uncompressedLength = readers[i].uncompressedLength();
+            if (uncompressedLength > 0)
+                size += (long) ((double) readers[i].onDiskLength() * sources[i].bytesTotal() / uncompressedLength);
+        }
+        return size;
+    }
+
+    private SSTableCursor makePurgedCursor(Collection<SSTableReader> readers, CompactionController controller, int nowInSec)
+    {
+        if (merger == null)
+            return SSTableCursor.empty();
+
+        SSTableCursor merged = merger;
         if (Iterables.any(readers, SSTableReader::mayHaveTombstones))
         {
-            merged = new PurgeCursor(merged, controller, nowInSec);
-            merged = new SkipEmptyDataCursor(merged);
+            // with strict liveness whether a row survives the purge depends on the whole row, see purgeRow
+            merged = new PurgeCursor(merged, controller, nowInSec, !enforceStrictLiveness);
+            // partitions are started lazily, so empty ones need not be skipped, and the merger is left on the header
+            // of each partition, where copyUnmergedPartition can take over
+            merged = new SkipEmptyDataCursor(merged, false);
         }
         return merged;
     }
 
+    /**
+     * Whether nothing in the given sstable can be purged or expire in this compaction, judged from its metadata: its
+     * tombstones are not purged or all too recent to be, and either it has no cells with a time-to-live or none of
+     * them has expired yet.
+     */
+    private boolean hasNothingToPurge(SSTableReader reader)
+    {
+        int minLocalDeletionTime = reader.getMinLocalDeletionTime();
+        if (purgeTombstones && minLocalDeletionTime < controller.gcBefore)
+            return false;
+        return reader.getMaxTTL() == Cell.NO_TTL || minLocalDeletionTime > nowInSec;
+    }
+
+    /**
+     * Whether the rows of the given sstable read back exactly as they are serialized. This is not the case for the
+     * cells of dropped columns, which the cursor drops, and for counters, whose local shards may be cleared on read.
+     */
+    private boolean canCopySerialized(SSTableReader reader)
+    {
+        TableMetadata metadata = metadata();
+        if (metadata.isCounter())
+            return false;
+        for (ColumnMetadata column : reader.header.columns())
+        {
+            if (metadata.getDroppedColumn(column.name.bytes) != null)
+                return false;
+        }
+        return true;
+    }
+
     public SSTableCursor.Type copyOne(SSTableDataSink writer) throws IOException
     {
-        boolean wasInitialized = true;
         if (cursor.type() == SSTableCursor.Type.UNINITIALIZED)
-        {
             cursor.advance();
-            wasInitialized = false;
-        }
 
         switch (cursor.type())
         {
             case ROW:
-                Row row = collectRow();
-                if (!row.isEmpty())
-                    writer.addUnfiltered(row);
+                copy(writer, collectRow());
                 return SSTableCursor.Type.ROW;
             case RANGE_TOMBSTONE:
-                writer.addUnfiltered(collectRangeTombstoneMarker());
+                copy(writer, collectRangeTombstoneMarker());
                 return SSTableCursor.Type.RANGE_TOMBSTONE;
             case PARTITION:
-                if (wasInitialized)
-                    writer.endPartition();
+                endPartition(writer);
                 maybeUpdateProgress();
-                // The writer can reject a partition (e.g. due to long key). Loop until it accepts one.
-                while (!writer.startPartition(cursor.partitionKey(), cursor.partitionLevelDeletion()))
+                reads.charge();
+                partitionKey = cursor.partitionKey();
+                partitionLevelDeletion = cursor.partitionLevelDeletion();
+                partitionPending = true;
+                purgeEvaluator = null;
+                if (provideTombstoneSources)
                 {
-                    if (!skipToNextPartition())
-                        return SSTableCursor.Type.EXHAUSTED;
+                    copyPartitionSkippingGarbage(writer);
+                    return SSTableCursor.Type.PARTITION;
+                }
+                if (copyUnmergedPartition(writer))
+                {
+                    cursor.advance();
+                    return SSTableCursor.Type.PARTITION;
                 }
                 cursor.advance();
+                if (!partitionLevelDeletion.isLive())
+                    startPartition(writer);
                 return SSTableCursor.Type.PARTITION;
             case EXHAUSTED:
-                if (wasInitialized)
-                    writer.endPartition();
+                endPartition(writer);
                 updateProgress(Long.MAX_VALUE);
                 return SSTableCursor.Type.EXHAUSTED;
             default:
@@ -151,6 +299,165 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
         }
     }
 
+    /**
+     * Copies the partition the cursor is positioned on, without the data shadowed by the tombstone sources the
+     * controller provides for it (see {@link CompactionIterator#skipGarbage}).
+     */
+    @SuppressWarnings("resource") // closed by the garbage skipping iterator
+    private void copyPartitionSkippingGarbage(SSTableDataSink writer) throws IOException
+    {
+        UnfilteredRowIterator partition = new IteratorFromCursor(metadata(), cursor).next();
+        UnfilteredRowIterator skipping = CompactionIterator.skipGarbage(controller, partition, cellLevelGC);
+        try (UnfilteredRowIterator source = skipping != null ? skipping : partition)
+        {
+            partitionLevelDeletion = source.partitionLevelDeletion();
+            if (!partitionLevelDeletion.isLive() && !startPartition(writer))
+                return;
+            if (!copy(writer, source.staticRow()))
+                return;
+            while (source.hasNext())
+            {
+                if (!copy(writer, source.next()))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Copies the partition the cursor is positioned on straight from its source, if no other source contains it and
+     * nothing in that source can be purged (see {@link #hasNothingToPurge}), so that there is nothing to merge or
+     * purge. The rows are still deserialized, as the writer needs them to collect the sstable metadata and build its
+     * indexes, but they are not serialized again if the writer would serialize them as the source did.
+     * On return the source is positioned on the next partition, and the cursor must be advanced to continue the merge.
+     *
+     * @return false if the partition must be merged
+     */
+    private boolean copyUnmergedPartition(SSTableDataSink writer) throws IOException
+    {
+        if (merger == null)
+            return false;
+        int sourceIndex = merger.unmergedPartitionSource();
+        if (sourceIndex < 0 || !copyUnmerged[sourceIndex])
+            return false;
+
+        SortedStringTableCursor source = sources[sourceIndex];
+        SSTableCursor takenOver = merger.takeOverPartition();
+        assert takenOver == source;
+
+        partitionPending = false;
+        ++copiedUnmergedPartitions;
+        SSTableCursor.Type type = source.advance();
+        if (!writer.startPartition(partitionKey, partitionLevelDeletion))
+        {
+            while (type != SSTableCursor.Type.PARTITION && type != SSTableCursor.Type.EXHAUSTED)
+                type = source.advance();
+            return true;
+        }
+        partitionStarted = true;
+
+        SSTableReader reader = sourceReaders[sourceIndex];
+        boolean copySerialized = copyUnmergedSerialized[sourceIndex] && writer.canCopySerialized(reader.descriptor.version, reader.header);
+        while (type == SSTableCursor.Type.ROW || type == SSTableCursor.Type.RANGE_TOMBSTONE)
+        {
+            long position = source.unfilteredPosition();
+            Unfiltered unfiltered;
+            if (type == SSTableCursor.Type.ROW)
+            {
+                unfiltered = IteratorFromCursor.collectRow(source, rowBuilder);
+                mergedRowsHistogram[0] += 1;
+            }
+            else
+            {
+                unfiltered = IteratorFromCursor.collectRangeTombstoneMarker(source);
+            }
+
+            // the serialized form is only usable if it is still buffered; the layout of the partition is the same as
+            // in the source only as long as everything in it is copied
+            ByteBuffer serialized = copySerialized ? source.bufferedSerialized(position, source.unfilteredPosition()) : null;
+            if (serialized != null)
+                writer.addSerializedUnfiltered(unfiltered, serialized);
+            else if (!unfiltered.isEmpty())
+                writer.addUnfiltered(unfiltered);
+            else
+                copySerialized = false;
+            type = source.type();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the given unfiltered of the current partition, starting the partition if necessary.
+     *
+     * @return false if the writer rejected the partition
+     */
+    private boolean copy(SSTableDataSink writer, Unfiltered unfiltered) throws IOException
+    {
+        if (unfiltered.isRow())
+        {
+            Row row = purgeRow((Row) unfiltered);
+            if (row == null || row.isEmpty())
+                return true;
+            unfiltered = row;
+        }
+
+        if (!startPartition(writer))
+            return false;
+        writer.addUnfiltered(unfiltered);
+        return true;
+    }
+
+    private boolean startPartition(SSTableDataSink writer) throws IOException
+    {
+        if (partitionStarted)
+            return true;
+        if (!partitionPending)
+            return false;
+
+        partitionPending = false;
+        // The writer can reject a partition (e.g. due to long key), in which case we skip its content.
+        if (writer.startPartition(partitionKey, partitionLevelDeletion))
+        {
+            partitionStarted = true;
+            return true;
+        }
+        SSTableCursor.Type next = cursor.type();
+        while (next != SSTableCursor.Type.PARTITION && next != SSTableCursor.Type.EXHAUSTED)
+            next = cursor.advance();
+        return false;
+    }
+
+    private void endPartition(SSTableDataSink writer) throws IOException
+    {
+        if (partitionStarted)
+            writer.endPartition();
+        else if (partitionPending && type == OperationType.COMPACTION)
+            controller.realm.invalidateCachedPartition(partitionKey); // everything in the partition was dropped
+
+        partitionStarted = false;
+        partitionPending = false;
+    }
+
+    /**
+     * Applies strict liveness, where a row whose primary key liveness is purged is dropped as a whole if it has any
+     * deletion. As this depends on the whole row, the purge cursor leaves the rows of such tables to us.
+     */
+    private Row purgeRow(Row row)
+    {
+        if (!enforceStrictLiveness)
+            return row;
+        return row.purge(rowPurger, nowInSec, true);
+    }
+
+    private boolean shouldPurge(long timestamp, int localDeletionTime)
+    {
+        if (!purgeTombstones || localDeletionTime >= controller.gcBefore)
+            return false;
+        // the cursor may already be in the next partition
+        if (purgeEvaluator == null)
+            purgeEvaluator = controller.getPurgeEvaluator(partitionKey);
+        return purgeEvaluator.test(timestamp);
+    }
+
     private void maybeUpdateProgress()
     {
         long now = System.currentTimeMillis();
@@ -174,22 +481,6 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
         return IteratorFromCursor.collectRangeTombstoneMarker(cursor);
     }
 
-    private boolean skipToNextPartition()
-    {
-        while (true)
-        {
-            switch (cursor.advance())
-            {
-                case EXHAUSTED:
-                    return false;
-                case PARTITION:
-                    return true;
-                default:
-                    break;  // continue loop
-            }
-        }
-    }
-
     /**
      * @return A {@link TableOperation} backed by this iterator. This operation can be observed for progress
      * and for interrupting provided that it is registered with a {@link TableOperationObserver}, normally the
@@ -262,6 +553,12 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
         return mergedRowsHistogram;
     }
 
+    @VisibleForTesting
+    long copiedUnmergedPartitions()
+    {
+        return copiedUnmergedPartitions;
+    }
+
     public void onItem(SSTableCursor cursor, int numVersions)
     {
         switch (cursor.type())
@@ -275,6 +572,15 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
             default:
                 break;
         }
+
+        if (indexGarbageCollector != null)
+            indexGarbageCollector.onMergedItem(cursor);
+    }
+
+    public void onSourceItem(int sourceIndex, SSTableCursor source)
+    {
+        if (indexGarbageCollector != null)
+            indexGarbageCollector.onSourceItem(sourceIndex, source);
     }
 
     public void remove()
@@ -291,4 +597,115 @@ public class CompactionCursor implements SSTableCursorMerger.MergeListener, Auto
     {
         return String.format("%s: %s, (%d/%d)", type, metadata(), bytesRead(), totalBytes());
     }
+
+    /**
+     * Rebuilds each merged row and its versions in the sources from the items of the merge, and passes them to a
+     * {@link CompactionTransaction} so that the indexes remove the entries of the data that did not survive the merge.
+     * A row is complete when the merge moves to the next row, range tombstone or partition.
+     */
+    private static class IndexGarbageCollector
+    {
+        private final SecondaryIndexManager indexManager;
+        private final RegularAndStaticColumns columns;
+        private final int nowInSec;
+
+        private final Row.Builder mergedBuilder = BTreeRow.sortedBuilder();
+        private final Row.Builder[] sourceBuilders;
+        private final boolean[] inSource;
+        private boolean inRow;
+        private CompactionTransaction transaction;
+
+        IndexGarbageCollector(SecondaryIndexManager indexManager, Collection<SSTableReader> readers, int nowInSec)
+        {
+            this.indexManager = indexManager;
+            this.nowInSec = nowInSec;
+
+            Columns statics = Columns.NONE;
+            Columns regulars = Columns.NONE;
+            for (SSTableReader reader : readers)
+            {
+                statics = statics.mergeTo(reader.header.columns().statics);
+                regulars = regulars.mergeTo(reader.header.columns().regulars);
+            }
+            this.columns = new RegularAndStaticColumns(statics, regulars);
+
+            this.sourceBuilders = new Row.Builder[readers.size()];
+            for (int i = 0; i < sourceBuilders.length; i++)
+                sourceBuilders[i] = BTreeRow.sortedBuilder();
+            this.inSource = new boolean[readers.size()];
+        }
+
+        void onSourceItem(int sourceIndex, SSTableCursor source)
+        {
+            switch (source.type())
+            {
+                case ROW:
+                    maybeFinishRow();
+                    sourceBuilders[sourceIndex].newRow((Clustering<?>) source.clusteringKey());
+                    sourceBuilders[sourceIndex].addPrimaryKeyLivenessInfo(source.clusteringKeyLivenessInfo());
+                    inSource[sourceIndex] = true;
+                    break;
+                case SIMPLE_COLUMN:
+                case COMPLEX_COLUMN_CELL:
+                    if (inSource[sourceIndex])
+                        sourceBuilders[sourceIndex].addCell(source.cell());
+                    break;
+                case RANGE_TOMBSTONE:
+                case PARTITION:
+                case EXHAUSTED:
+                    maybeFinishRow();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void onMergedItem(SSTableCursor merged)
+        {
+            switch (merged.type())
+            {
+                case ROW:
+                    mergedBuilder.newRow((Clustering<?>) merged.clusteringKey());
+                    mergedBuilder.addPrimaryKeyLivenessInfo(merged.clusteringKeyLivenessInfo());
+                    mergedBuilder.addRowDeletion(Row.Deletion.regular(merged.rowLevelDeletion()));
+                    inRow = true;
+                    break;
+                case SIMPLE_COLUMN:
+                case COMPLEX_COLUMN_CELL:
+                    if (inRow)
+                        mergedBuilder.addCell(merged.cell());
+                    break;
+                case PARTITION:
+                    maybeFinishRow();
+                    transaction = indexManager.newCompactionTransaction(merged.partitionKey(), columns, sourceBuilders.length, nowInSec);
+                    break;
+                case RANGE_TOMBSTONE:
+                case EXHAUSTED:
+                    maybeFinishRow();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void maybeFinishRow()
+        {
+            if (!inRow)
+                return;
+
+            Row merged = mergedBuilder.build();
+            Row[] versions = new Row[sourceBuilders.length];
+            for (int i = 0; i < versions.length; i++)
+            {
+                if (inSource[i])
+                    versions[i] = sourceBuilders[i].build();
+                inSource[i] = false;
+            }
+            inRow = false;
+
+            transaction.start();
+            transaction.onRowMerge(merged, versions);
+            transaction.commit();
+        }
+    }
 }
@@ -19,8 +19,10 @@ package org.apache.cassandra.db.compaction;
 
 import java.util.*;
 import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 
 import org.apache.cassandra.index.transactions.IndexTransaction;
@@ -55,6 +57,8 @@ import org.apache.cassandra.utils.Throwables;
  *   <li>invalidate cached partitions that are empty post-compaction. This avoids keeping partitions with
  *       only purgable tombstones in the row cache.</li>
  *   <li>keep tracks of the compaction progress.</li>
+ *   <li>charge the bytes read from each sstable against the I/O budget of its data directory, see
+ *       {@link DataDirectoryIOBudget}.</li>
  * </ul>
  */
 public class CompactionIterator implements UnfilteredPartitionIterator
@@ -82,6 +86,7 @@ public class CompactionIterator implements UnfilteredPartitionIterator
 
     private final UnfilteredPartitionIterator compacted;
     private final TableOperation op;
+    private final DataDirectoryIOBudget.Reads reads;
 
     @SuppressWarnings("resource") // We make sure to close mergedIterator in close() and CompactionIterator is itself an AutoCloseable
     public CompactionIterator(OperationType type, List<ISSTableScanner> scanners, AbstractCompactionController controller, int nowInSec, UUID compactionId)
@@ -103,6 +108,7 @@ public class CompactionIterator implements UnfilteredPartitionIterator
         // calling that to avoid a NPE.
         sstables = scanners.stream().map(ISSTableScanner::getBackingSSTables).flatMap(Collection::stream).collect(ImmutableSet.toImmutableSet());
         op = createOperation();
+        reads = createReads(scanners);
 
         UnfilteredPartitionIterator merged = scanners.isEmpty()
                                            ? EmptyIterators.unfilteredPartition(controller.realm.metadata())
@@ -113,6 +119,19 @@ public class CompactionIterator implements UnfilteredPartitionIterator
         compacted = Transformation.apply(merged, new AbortableUnfilteredPartitionTransformation(op));
     }
 
+    private static DataDirectoryIOBudget.Reads createReads(List<ISSTableScanner> scanners)
+    {
+        // scanners over several sstables (e.g. of a leveled compaction level) are charged to the first one's directory
+        List<SSTableReader> sstables = new ArrayList<>(scanners.size());
+        List<LongSupplier> positions = new ArrayList<>(scanners.size());
+        for (ISSTableScanner scanner : scanners)
+        {
+            sstables.add(Iterables.getFirst(scanner.getBackingSSTables(), null));
+            positions.add(scanner::getBytesScanned);
+        }
+        return new DataDirectoryIOBudget.Reads(sstables, positions);
+    }
+
     protected TableOperation createOperation()
     {
         return new AbstractTableOperation() {
@@ -338,6 +357,7 @@ public class CompactionIterator implements UnfilteredPartitionIterator
 
     public UnfilteredRowIterator next()
     {
+        reads.charge();
         return compacted.next();
     }
 
@@ -622,22 +642,33 @@ public class CompactionIterator implements UnfilteredPartitionIterator
         @Override
         protected UnfilteredRowIterator applyToPartition(UnfilteredRowIterator partition)
         {
-            Iterable<UnfilteredRowIterator> sources = controller.shadowSources(partition.partitionKey(), !cellLevelGC);
-            if (sources == null)
-                return partition;
-            List<UnfilteredRowIterator> iters = new ArrayList<>();
-            for (UnfilteredRowIterator iter : sources)
-            {
-                if (!iter.isEmpty())
-                    iters.add(iter);
-                else
-                    iter.close();
-            }
-            if (iters.isEmpty())
-                return partition;
+            UnfilteredRowIterator skipping = skipGarbage(controller, partition, cellLevelGC);
+            return skipping != null ? skipping : partition;
+        }
+    }
 
-            return new GarbageSkippingUnfilteredRowIterator(partition, UnfilteredRowIterators.merge(iters), cellLevelGC);
+    /**
+     * Removes from the given partition the data shadowed by the tombstone sources the controller provides for it.
+     *
+     * @return the partition without the shadowed data, or null if there are no tombstone sources for the partition
+     */
+    static UnfilteredRowIterator skipGarbage(AbstractCompactionController controller, UnfilteredRowIterator partition, boolean cellLevelGC)
+    {
+        Iterable<UnfilteredRowIterator> sources = controller.shadowSources(partition.partitionKey(), !cellLevelGC);
+        if (sources == null)
+            return null;
+        List<UnfilteredRowIterator> iters = new ArrayList<>();
+        for (UnfilteredRowIterator iter : sources)
+        {
+            if (!iter.isEmpty())
+                iters.add(iter);
+            else
+                iter.close();
         }
+        if (iters.isEmpty())
+            return null;
+
+        return new GarbageSkippingUnfilteredRowIterator(partition, UnfilteredRowIterators.merge(iters), cellLevelGC);
     }
 
     private static class AbortableUnfilteredPartitionTransformation extends Transformation<UnfilteredRowIterator>
@@ -1141,6 +1141,16 @@ public class CompactionManager implements CompactionManagerMBean
         return executor.submitIfRunning(runnable, "user defined task");
     }
 
+    /**
+     * Runs a part of a compaction task that has been split to be compacted by several compaction threads, see
+     * {@link CompactionTask#getParallelRanges}. If the part cannot be submitted (e.g. the executor is shut down), the
+     * returned future is cancelled and the task must do the work itself.
+     */
+    public Future<?> submitCompactionPart(Runnable part)
+    {
+        return executor.submitIfRunning(part, "compaction part");
+    }
+
     // This acquire a reference on the sstable
     // This is not efficient, do not use in any critical path
     private SSTableReader lookupSSTable(final ColumnFamilyStore cfs, Descriptor descriptor)
@@ -43,6 +43,7 @@ import org.apache.cassandra.metrics.TableMetrics;
 import org.apache.cassandra.schema.CompactionParams;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
+import org.apache.cassandra.utils.concurrent.OpOrder;
 
 /**
  * An interface for supplying the CFS data relevant to compaction. This is implemented by {@link ColumnFamilyStore} and
@@ -187,6 +188,11 @@ public interface CompactionRealm
      */
     Iterable<Memtable> getAllMemtables();
 
+    /**
+     * @return the operation order that reads of the memtables must be executed in, or null if reads are not tracked.
+     */
+    OpOrder getReadOrdering();
+
     /**
      * @return the set of all live sstables.
      */
@@ -19,15 +19,21 @@ package org.apache.cassandra.db.compaction;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
@@ -36,6 +42,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,9 +52,14 @@ import org.apache.cassandra.db.Directories;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.writers.CompactionAwareWriter;
 import org.apache.cassandra.db.compaction.writers.DefaultCompactionWriter;
+import org.apache.cassandra.db.lifecycle.ILifecycleTransaction;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.lifecycle.WrappedLifecycleTransaction;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.ScannerList;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
@@ -210,23 +222,24 @@ public class CompactionTask extends AbstractCompactionTask
 
         Set<SSTableReader> actuallyCompact = Sets.difference(transaction.originals(), fullyExpiredSSTables);
 
-        // Cursors currently don't support:
         boolean compactByIterators = !CURSORS_ENABLED.getBoolean()
-                                     ||strategy != null && !strategy.supportsCursorCompaction()  // strategy does not support it
-                                     || controller.shouldProvideTombstoneSources()  // garbagecollect
-                                     || realm.getIndexManager().hasIndexes()
-                                     || realm.metadata().enforceStrictLiveness();   // indexes
+                                     || strategy != null && !strategy.supportsCursorCompaction();  // strategy does not support it
 
-        logger.debug("Compacting in {} by {}: {} {} {} {} {}",
+        logger.debug("Compacting in {} by {}: {} {}",
                      realm.toString(),
                      compactByIterators ? "iterators" : "cursors",
                      CURSORS_ENABLED.getBoolean() ? "" : "cursors disabled",
                      strategy == null ? "no table compaction strategy"
                                       : !strategy.supportsCursorCompaction() ? "no cursor support"
-                                                                             : "",
-                     controller.shouldProvideTombstoneSources() ? "tombstone sources" : "",
-                     realm.getIndexManager().hasIndexes() ? "has indexes" : "",
-                     realm.metadata().enforceStrictLiveness() ? "strict liveness" : "");
+                                                                             : "");
+
+        List<Range<Token>> parallelRanges = getParallelRanges(actuallyCompact);
+        int parallelism = Math.min(parallelRanges.size(), DatabaseDescriptor.getConcurrentCompactors());
+        if (parallelism > 1)
+        {
+            logger.debug("Compacting {} in {} parts with up to {} threads", transaction.opId(), parallelRanges.size(), parallelism);
+            return new ParallelCompactionOperation(controller, actuallyCompact, fullyExpiredSSTables.size(), parallelRanges, compactByIterators, parallelism);
+        }
 
         if (compactByIterators)
             return new CompactionOperationIterator(controller, actuallyCompact, fullyExpiredSSTables.size());
@@ -250,6 +263,12 @@ public class CompactionTask extends AbstractCompactionTask
         final Set<SSTableReader> actuallyCompact;
         private final int fullyExpiredSSTablesCount;
 
+        // when this operation is a part of a parallel compaction, the operation it is part of and the range it compacts
+        @Nullable
+        final ParallelCompactionOperation parent;
+        @Nullable
+        final Range<Token> tokenRange;
+
         // resources that are updated and may be read by another thread
         volatile Collection<SSTableReader> newSStables;
         volatile long totalKeysWritten;
@@ -274,9 +293,24 @@ public class CompactionTask extends AbstractCompactionTask
          * @param fullyExpiredSSTablesCount the number of fully expired sstables (used in metrics)
          */
         private CompactionOperation(CompactionController controller, Set<SSTableReader> actuallyCompact, int fullyExpiredSSTablesCount)
+        {
+            this(controller, actuallyCompact, fullyExpiredSSTablesCount, null, null);
+        }
+
+        /**
+         * Create a new compaction operation, or a part of a parallel one if parent is not null. Parts are not reported
+         * to the observers of the task, and write with the writer for their token range.
+         */
+        private CompactionOperation(CompactionController controller,
+                                    Set<SSTableReader> actuallyCompact,
+                                    int fullyExpiredSSTablesCount,
+                                    @Nullable ParallelCompactionOperation parent,
+                                    @Nullable Range<Token> tokenRange)
         {
             this.controller = controller;
             this.actuallyCompact = actuallyCompact;
+            this.parent = parent;
+            this.tokenRange = tokenRange;
             this.taskId = transaction.opId();
 
             this.limiter = CompactionManager.instance.getRateLimiter();
@@ -295,10 +329,13 @@ public class CompactionTask extends AbstractCompactionTask
                 // resources that need closing, must be created last in case of exceptions and released if there is an exception in the c.tor
                 this.sstableRefs = Refs.ref(actuallyCompact);
                 this.op = initializeSource();
-                this.writer = getCompactionAwareWriter(realm, dirs, transaction, actuallyCompact);
-                this.obsCloseable = opObserver.onOperationStart(op);
+                this.writer = createWriter(dirs);
+                if (parent == null)
+                {
+                    this.obsCloseable = opObserver.onOperationStart(op);
 
-                getCompObservers().forEach(obs -> obs.onInProgress(this));
+                    getCompObservers().forEach(obs -> obs.onInProgress(this));
+                }
             }
             catch (Throwable t)
             {
@@ -308,6 +345,27 @@ public class CompactionTask extends AbstractCompactionTask
 
         abstract TableOperation initializeSource() throws Throwable;
 
+        @Nullable
+        CompactionAwareWriter createWriter(Directories dirs)
+        {
+            return parent == null ? getCompactionAwareWriter(realm, dirs, transaction, actuallyCompact)
+                                  : getCompactionAwareWriter(realm, dirs, parent.sharedTransaction, actuallyCompact, tokenRange);
+        }
+
+        long estimateKeys()
+        {
+            return writer.estimatedKeys();
+        }
+
+        /**
+         * Finishes writing and commits the transaction.
+         * @return the sstables written
+         */
+        Collection<SSTableReader> finishWriting()
+        {
+            return writer.finish();
+        }
+
         private void execute()
         {
             try
@@ -323,12 +381,12 @@ public class CompactionTask extends AbstractCompactionTask
                 if (!controller.realm.isCompactionActive())
                     throw new CompactionInterruptedException(op.getProgress());
 
-                estimatedKeys = writer.estimatedKeys();
+                estimatedKeys = estimateKeys();
 
                 execute0();
 
                 // point of no return
-                newSStables = writer.finish();
+                newSStables = finishWriting();
 
                 completed = true;
             }
@@ -360,7 +418,7 @@ public class CompactionTask extends AbstractCompactionTask
 
         void maybeStopOrUpdateState()
         {
-            if (op.isStopRequested())
+            if (isStopRequested())
                 throw new CompactionInterruptedException(op.getProgress());
 
             long now = System.nanoTime();
@@ -373,6 +431,24 @@ public class CompactionTask extends AbstractCompactionTask
 
         abstract void execute0();
 
+        /**
+         * Closes the sources of the compaction, i.e. what is opened by {@link #initializeSource}.
+         */
+        Throwable closeSource(Throwable errorsSoFar)
+        {
+            return errorsSoFar;
+        }
+
+        /**
+         * Releases the resources of a part of a parallel compaction, except its writer which is committed or aborted by
+         * the parent operation.
+         */
+        Throwable closePart(Throwable errorsSoFar)
+        {
+            assert parent != null;
+            return Throwables.close(closeSource(errorsSoFar), sstableRefs, controller);
+        }
+
         //
         // Closeable
         //
@@ -385,7 +461,7 @@ public class CompactionTask extends AbstractCompactionTask
 
         public void close(Throwable errorsSoFar)
         {
-            Throwable err = Throwables.close(errorsSoFar, obsCloseable, writer, sstableRefs);
+            Throwable err = Throwables.close(closeSource(errorsSoFar), obsCloseable, writer, sstableRefs);
 
             if (transaction.isOffline())
                 return;
@@ -481,7 +557,7 @@ public class CompactionTask extends AbstractCompactionTask
         @Override
         public boolean isStopRequested()
         {
-            return op.isStopRequested();
+            return op.isStopRequested() || parent != null && parent.isStopRequested();
         }
 
         @Override
@@ -556,11 +632,20 @@ public class CompactionTask extends AbstractCompactionTask
             super(controller, actuallyCompact, fullyExpiredSSTablesCount);
         }
 
+        CompactionOperationIterator(CompactionController controller, Set<SSTableReader> actuallyCompact, ParallelCompactionOperation parent, Range<Token> tokenRange)
+        {
+            super(controller, actuallyCompact, 0, parent, tokenRange);
+        }
+
         @Override
         TableOperation initializeSource()
         {
-            this.scanners = strategy != null ? strategy.getScanners(actuallyCompact)
-                                             : ScannerList.of(actuallyCompact, null);
+            if (tokenRange == null)
+                this.scanners = strategy != null ? strategy.getScanners(actuallyCompact)
+                                                 : ScannerList.of(actuallyCompact, null);
+            else
+                this.scanners = strategy != null ? strategy.getScanners(actuallyCompact, Collections.singleton(tokenRange))
+                                                 : ScannerList.of(actuallyCompact, Collections.singleton(tokenRange));
             this.compactionIterator = new CompactionIterator(compactionType, scanners.scanners, controller, FBUtilities.nowInSeconds(), taskId);
             return compactionIterator.getOperation();
         }
@@ -590,9 +675,9 @@ public class CompactionTask extends AbstractCompactionTask
         }
 
         @Override
-        public void close(Throwable errorsSoFar)
+        Throwable closeSource(Throwable errorsSoFar)
         {
-            super.close(Throwables.close(errorsSoFar, compactionIterator, scanners));
+            return Throwables.close(errorsSoFar, compactionIterator, scanners);
         }
 
         /**
@@ -684,10 +769,15 @@ public class CompactionTask extends AbstractCompactionTask
             super(controller, actuallyCompact, fullyExpiredSSTablesCount);
         }
 
+        CompactionOperationCursor(CompactionController controller, Set<SSTableReader> actuallyCompact, ParallelCompactionOperation parent, Range<Token> tokenRange)
+        {
+            super(controller, actuallyCompact, 0, parent, tokenRange);
+        }
+
         @Override
         TableOperation initializeSource()
         {
-            this.compactionCursor = new CompactionCursor(compactionType, actuallyCompact, controller, limiter, FBUtilities.nowInSeconds(), taskId);
+            this.compactionCursor = new CompactionCursor(compactionType, actuallyCompact, controller, limiter, FBUtilities.nowInSeconds(), taskId, tokenRange);
             return compactionCursor.createOperation();
         }
 
@@ -698,7 +788,7 @@ public class CompactionTask extends AbstractCompactionTask
                 writeLoop:
                 while (true)
                 {
-                    if (op.isStopRequested())
+                    if (isStopRequested())
                         throw new CompactionInterruptedException(op.getProgress());
                     switch (compactionCursor.copyOne(writer))
                     {
@@ -718,9 +808,9 @@ public class CompactionTask extends AbstractCompactionTask
         }
 
         @Override
-        public void close(Throwable errorsSoFar)
+        Throwable closeSource(Throwable errorsSoFar)
         {
-            super.close(Throwables.close(errorsSoFar, compactionCursor));
+            return Throwables.close(errorsSoFar, compactionCursor);
         }
 
         /**
@@ -793,6 +883,371 @@ public class CompactionTask extends AbstractCompactionTask
         }
     }
 
+    /**
+     *  A compaction operation split into parts that compact disjoint token ranges of the input, each with its own
+     *  sources and writer. The parts are run by this thread and by helpers submitted to the compaction executor.
+     *  The writers of the parts share the transaction of the task, which is only committed once all the parts have
+     *  been written, so that the compaction is still atomic.
+     */
+    public final class ParallelCompactionOperation extends CompactionOperation
+    {
+        private final List<Range<Token>> ranges;
+        private final boolean compactByIterators;
+        private final int parallelism;
+
+        // set by initializeSource, which is called before the fields above are assigned
+        private SharedTransaction sharedTransaction;
+        private Queue<Range<Token>> pendingRanges;
+        private Queue<CompactionAwareWriter> partWriters;
+        private Set<CompactionOperation> runningParts;
+        private long[] partitionsHistogram;
+        private long[] rowsHistogram;
+
+        // the progress of the finished parts, guarded by this
+        private long finishedBytesRead;
+        private long finishedPartitionsRead;
+        private long finishedRowsRead;
+
+        private volatile Throwable failure;
+
+        ParallelCompactionOperation(CompactionController controller,
+                                    Set<SSTableReader> actuallyCompact,
+                                    int fullyExpiredSSTablesCount,
+                                    List<Range<Token>> ranges,
+                                    boolean compactByIterators,
+                                    int parallelism)
+        {
+            super(controller, actuallyCompact, fullyExpiredSSTablesCount);
+            this.ranges = ranges;
+            this.compactByIterators = compactByIterators;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        TableOperation initializeSource()
+        {
+            this.sharedTransaction = new SharedTransaction(transaction);
+            this.pendingRanges = new ConcurrentLinkedQueue<>();
+            this.partWriters = new ConcurrentLinkedQueue<>();
+            this.runningParts = new HashSet<>();
+            this.partitionsHistogram = new long[actuallyCompact.size()];
+            this.rowsHistogram = new long[actuallyCompact.size()];
+
+            return new AbstractTableOperation()
+            {
+                @Override
+                public OperationProgress getProgress()
+                {
+                    return new OperationProgress(metadata(), compactionType, completed(), total(), taskId, actuallyCompact);
+                }
+
+                @Override
+                public boolean isGlobal()
+                {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        CompactionAwareWriter createWriter(Directories dirs)
+        {
+            // each part writes with its own writer
+            return null;
+        }
+
+        @Override
+        long estimateKeys()
+        {
+            return SSTableReader.getApproximateKeyCount(actuallyCompact);
+        }
+
+        @Override
+        void execute0()
+        {
+            pendingRanges.addAll(ranges);
+            // the helpers may be limited by the thread budget of the strategy, which they are charged to
+            int helperCount = reserveHelperThreads(parallelism - 1);
+            List<PartRunner> helpers = new ArrayList<>(helperCount);
+            for (int i = 0; i < helperCount; ++i)
+            {
+                PartRunner helper = new PartRunner();
+                CompactionManager.instance.submitCompactionPart(helper);
+                helpers.add(helper);
+            }
+
+            // this thread also compacts parts, so the compaction completes even if no helper gets to run
+            compactPendingParts();
+            for (PartRunner helper : helpers)
+                helper.awaitOrCancel();
+
+            if (failure != null)
+                throw Throwables.unchecked(failure);
+            if (op.isStopRequested())
+                throw new CompactionInterruptedException(op.getProgress());
+        }
+
+        private void compactPendingParts()
+        {
+            Range<Token> range;
+            while (!isStopRequested() && (range = pendingRanges.poll()) != null)
+            {
+                try
+                {
+                    compactPart(range);
+                }
+                catch (Throwable t)
+                {
+                    onPartFailure(t);
+                }
+            }
+        }
+
+        private synchronized void onPartFailure(Throwable t)
+        {
+            if (failure == null)
+                failure = t;
+            else if (!(t instanceof CompactionInterruptedException))
+                failure.addSuppressed(t);
+        }
+
+        private void compactPart(Range<Token> range)
+        {
+            CompactionController partController = getCompactionController(transaction.originals());
+            CompactionOperation part;
+            try
+            {
+                part = compactByIterators ? new CompactionOperationIterator(partController, actuallyCompact, this, range)
+                                          : new CompactionOperationCursor(partController, actuallyCompact, this, range);
+            }
+            catch (Throwable t)
+            {
+                throw Throwables.unchecked(Throwables.close(t, partController));
+            }
+
+            partWriters.add(part.writer);
+            synchronized (this)
+            {
+                runningParts.add(part);
+            }
+
+            Throwable err = null;
+            try
+            {
+                part.execute0();
+                // finish the sstables of the part to release the resources of its writer, they are committed together
+                // with the ones of the other parts in finishWriting
+                part.writer.prepareToCommit();
+            }
+            catch (Throwable t)
+            {
+                err = part.onError(t);
+            }
+
+            synchronized (this)
+            {
+                runningParts.remove(part);
+                finishedBytesRead += part.uncompressedBytesRead();
+                finishedPartitionsRead += part.partitionsRead();
+                finishedRowsRead += part.rowsRead();
+                totalKeysWritten += part.totalKeysWritten;
+                addTo(partitionsHistogram, part.partitionsHistogram());
+                addTo(rowsHistogram, part.rowsHistogram());
+            }
+            Throwables.maybeFail(part.closePart(err));
+        }
+
+        @Override
+        Collection<SSTableReader> finishWriting()
+        {
+            // the writers of the parts have been prepared and have staged their sstables in the transaction
+            transaction.checkpoint();
+            if (!keepOriginals)
+                transaction.obsoleteOriginals();
+            transaction.prepareToCommit();
+
+            List<SSTableReader> written = new ArrayList<>();
+            Throwable err = null;
+            for (CompactionAwareWriter partWriter : partWriters)
+            {
+                err = partWriter.commit(err);
+                written.addAll(partWriter.finished());
+            }
+            Throwables.maybeFail(transaction.commit(err));
+            return written;
+        }
+
+        @Override
+        Throwable closeSource(Throwable errorsSoFar)
+        {
+            // aborts the writers of the parts unless they have been committed, the transaction itself is aborted by the
+            // task if it was not committed
+            return Throwables.close(errorsSoFar, partWriters);
+        }
+
+        @Override
+        public boolean isStopRequested()
+        {
+            return op.isStopRequested() || failure != null;
+        }
+
+        @Override
+        public synchronized long completed()
+        {
+            long completed = finishedBytesRead;
+            for (CompactionOperation part : runningParts)
+                completed += part.completed();
+            return completed;
+        }
+
+        @Override
+        public long total()
+        {
+            return inputUncompressedSize();
+        }
+
+        @Override
+        public long inputUncompressedSize()
+        {
+            long size = 0;
+            for (SSTableReader sstable : actuallyCompact)
+                size += sstable.uncompressedLength();
+            return size;
+        }
+
+        @Override
+        public long adjustedInputDiskSize()
+        {
+            return inputDiskSize();
+        }
+
+        @Override
+        public long uncompressedBytesRead()
+        {
+            return completed();
+        }
+
+        @Override
+        public long uncompressedBytesRead(int level)
+        {
+            // Parallel compactions don't implement LCS per-level progress tracking.
+            return 0L;
+        }
+
+        @Override
+        public synchronized long partitionsRead()
+        {
+            long read = finishedPartitionsRead;
+            for (CompactionOperation part : runningParts)
+                read += part.partitionsRead();
+            return read;
+        }
+
+        @Override
+        public synchronized long rowsRead()
+        {
+            long read = finishedRowsRead;
+            for (CompactionOperation part : runningParts)
+                read += part.rowsRead();
+            return read;
+        }
+
+        @Override
+        public synchronized long[] partitionsHistogram()
+        {
+            return partitionsHistogram.clone();
+        }
+
+        @Override
+        public synchronized long[] rowsHistogram()
+        {
+            return rowsHistogram.clone();
+        }
+
+        @Override
+        public long uncompressedBytesWritten()
+        {
+            long written = 0;
+            for (CompactionAwareWriter partWriter : partWriters)
+                written += partWriter.bytesWritten();
+            return written;
+        }
+
+        private void addTo(long[] histogram, long[] partHistogram)
+        {
+            for (int i = 0; i < Math.min(histogram.length, partHistogram.length); ++i)
+                histogram[i] += partHistogram[i];
+        }
+
+        /**
+         * Compacts pending parts on a compaction thread. Runners that have not started when this operation has no
+         * more parts to compact are cancelled, so that the operation does not wait for compaction threads to be free.
+         */
+        private final class PartRunner implements Runnable
+        {
+            private final AtomicBoolean started = new AtomicBoolean();
+            private final CountDownLatch done = new CountDownLatch(1);
+
+            @Override
+            public void run()
+            {
+                if (!started.compareAndSet(false, true))
+                    return;
+
+                try
+                {
+                    compactPendingParts();
+                }
+                finally
+                {
+                    releaseHelperThread();
+                    done.countDown();
+                }
+            }
+
+            void awaitOrCancel()
+            {
+                if (started.compareAndSet(false, true))
+                {
+                    releaseHelperThread();
+                    return;
+                }
+
+                Uninterruptibles.awaitUninterruptibly(done);
+            }
+        }
+    }
+
+    /**
+     * The transaction given to the writers of the parts of a {@link ParallelCompactionOperation}. As with the shared
+     * transaction of anti-compaction (see {@link CompactionManager}), the calls that finish the transaction are left
+     * for the operation to make once all the writers have been prepared, and early open is disabled for the writers.
+     * The writers of the parts add their sstables concurrently, so the calls they make are serialized.
+     */
+    private static class SharedTransaction extends WrappedLifecycleTransaction
+    {
+        SharedTransaction(ILifecycleTransaction delegate)
+        {
+            super(delegate);
+        }
+
+        public Throwable commit(Throwable accumulate) { return accumulate; }
+        public Throwable abort(Throwable accumulate) { return accumulate; }
+        public void prepareToCommit() {}
+        public void checkpoint() {}
+        public void obsoleteOriginals() {}
+        public void close() {}
+
+        public synchronized void update(SSTableReader reader, boolean original) { super.update(reader, original); }
+        public synchronized void update(Collection<SSTableReader> readers, boolean original) { super.update(readers, original); }
+        public synchronized SSTableReader current(SSTableReader reader) { return super.current(reader); }
+        public synchronized void obsolete(SSTableReader reader) { super.obsolete(reader); }
+        public synchronized boolean isObsolete(SSTableReader reader) { return super.isObsolete(reader); }
+        public synchronized void trackNew(SSTable table) { super.trackNew(table); }
+        public synchronized void trackNewAttachedIndexFiles(SSTable table) { super.trackNewAttachedIndexFiles(table); }
+        public synchronized void untrackNew(SSTable table) { super.untrackNew(table); }
+    }
+
     @Override
     public CompactionAwareWriter getCompactionAwareWriter(CompactionRealm realm,
                                                           Directories directories,
@@ -802,6 +1257,44 @@ public class CompactionTask extends AbstractCompactionTask
         return new DefaultCompactionWriter(realm, directories, transaction, nonExpiredSSTables, keepOriginals, getLevel());
     }
 
+    /**
+     * Returns the token ranges in which this compaction may be split to be compacted in parallel, or an empty list if
+     * it should be compacted by a single thread. The ranges must be disjoint and cover the whole token space, and the
+     * task must provide writers for each of them, see {@link #getCompactionAwareWriter(CompactionRealm, Directories, ILifecycleTransaction, Set, Range)}.
+     */
+    protected List<Range<Token>> getParallelRanges(Set<SSTableReader> nonExpiredSSTables)
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reserves threads to help compact the parts of a parallel compaction, see {@link #getParallelRanges}. Each
+     * reserved thread is released with {@link #releaseHelperThread} when its helper finishes or is cancelled.
+     *
+     * @return the number of threads reserved, at most {@code wanted}
+     */
+    protected int reserveHelperThreads(int wanted)
+    {
+        return wanted;
+    }
+
+    protected void releaseHelperThread()
+    {
+    }
+
+    /**
+     * Returns the writer for the part of a parallel compaction that compacts the given token range. The writer shares
+     * its transaction with the writers of the other parts, and must not open its sstables early.
+     */
+    protected CompactionAwareWriter getCompactionAwareWriter(CompactionRealm realm,
+                                                             Directories directories,
+                                                             ILifecycleTransaction transaction,
+                                                             Set<SSTableReader> nonExpiredSSTables,
+                                                             Range<Token> tokenRange)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support parallel compaction");
+    }
+
     protected Directories getDirectories()
     {
         return realm.getDirectories();
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.codahale.metrics.Counter;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.File;
+import org.apache.cassandra.metrics.DataDirectoryIOMetrics;
+import org.apache.cassandra.service.StorageService;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+/**
+ * The read and write byte budgets of a data directory, which is normally a disk of its own.
+ * <p>
+ * Compaction, validation and streaming charge the bytes they read from and write to a directory against its budgets,
+ * and are throttled when the directory's throughput limits, {@code data_directory_read_throughput_mb_per_sec} and
+ * {@code data_directory_write_throughput_mb_per_sec}, are exceeded. This complements the global compaction throughput
+ * limit, which cannot prevent one busy disk from being saturated while the others are idle and which must be low
+ * enough for the busiest disk. A limit of 0 (the default) leaves the directories unthrottled, but the bytes charged
+ * are still recorded in the {@link DataDirectoryIOMetrics} of each directory.
+ */
+public class DataDirectoryIOBudget
+{
+    /** The minimum number of bytes charged at once by the sources and writers that track their position. */
+    public static final long ACQUIRE_GRANULARITY = 128 * 1024;
+
+    private static final ConcurrentMap<File, DataDirectoryIOBudget> budgets = new NonBlockingHashMap<>();
+
+    public final File location;
+    public final DataDirectoryIOMetrics metrics;
+
+    private final RateLimiter readLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private final RateLimiter writeLimiter = RateLimiter.create(Double.MAX_VALUE);
+
+    private DataDirectoryIOBudget(File location)
+    {
+        this.location = location;
+        this.metrics = new DataDirectoryIOMetrics(location);
+    }
+
+    public static DataDirectoryIOBudget get(Directories.DataDirectory directory)
+    {
+        return get(directory.location);
+    }
+
+    private static DataDirectoryIOBudget get(File location)
+    {
+        // the metrics register themselves on creation, so the budget of a directory must be created exactly once,
+        // see StreamingMetrics.get
+        DataDirectoryIOBudget budget = budgets.get(location);
+        if (budget == null)
+        {
+            synchronized (budgets)
+            {
+                budget = budgets.get(location);
+                if (budget == null)
+                {
+                    budget = new DataDirectoryIOBudget(location);
+                    budgets.put(location, budget);
+                }
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * @return the budget of the data directory the given file or directory is in, or null if it is not in one of the
+     * configured data directories (e.g. for offline tools working on copies of sstables)
+     */
+    @Nullable
+    public static DataDirectoryIOBudget forFile(File file)
+    {
+        // Note that we must compare absolute paths (not canonical), see Directories.getLocationForDisk
+        Path path = file.toAbsolute().toPath();
+        File location = null;
+        int locationLength = -1;
+        for (Directories.DataDirectory directory : Directories.dataDirectories.getAllDirectories())
+        {
+            Path directoryPath = directory.location.toAbsolute().toPath();
+            // data directories may be nested, e.g. the system keyspaces' one within the others'
+            if (path.startsWith(directoryPath) && directoryPath.getNameCount() > locationLength)
+            {
+                location = directory.location;
+                locationLength = directoryPath.getNameCount();
+            }
+        }
+        return location != null ? get(location) : null;
+    }
+
+    @Nullable
+    public static DataDirectoryIOBudget forSSTable(SSTableReader sstable)
+    {
+        return forFile(sstable.descriptor.directory);
+    }
+
+    /**
+     * Charges the given number of bytes read from the directory, waiting for the read budget if it is exceeded.
+     */
+    public void acquireRead(long bytes)
+    {
+        metrics.readBytes.mark(bytes);
+        acquire(readLimiter, DatabaseDescriptor.getDataDirectoryReadThroughputMbPerSec(), bytes, metrics.readThrottledMicros);
+    }
+
+    /**
+     * Charges the given number of bytes written to the directory, waiting for the write budget if it is exceeded.
+     */
+    public void acquireWrite(long bytes)
+    {
+        metrics.writeBytes.mark(bytes);
+        acquire(writeLimiter, DatabaseDescriptor.getDataDirectoryWriteThroughputMbPerSec(), bytes, metrics.writeThrottledMicros);
+    }
+
+    private static void acquire(RateLimiter limiter, int throughputMbPerSec, long bytes, Counter throttledMicros)
+    {
+        // as for the global compaction rate limiter, a throughput of 0 disables throttling, and so does bootstrap
+        if (throughputMbPerSec <= 0 || StorageService.instance.isBootstrapMode())
+            return;
+
+        double throughput = throughputMbPerSec * 1024.0 * 1024.0;
+        if (limiter.getRate() != throughput)
+            limiter.setRate(throughput);
+
+        double waitedSeconds = 0;
+        for (long remaining = bytes; remaining > 0; remaining -= Integer.MAX_VALUE)
+            waitedSeconds += limiter.acquire((int) Math.min(remaining, Integer.MAX_VALUE));
+        if (waitedSeconds > 0)
+            throttledMicros.inc((long) (waitedSeconds * 1e6));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DataDirectoryIOBudget{" +
+               "location=" + location +
+               '}';
+    }
+
+    /**
+     * Charges the bytes read from a set of sstables, e.g. the sources of a compaction, against the read budgets of
+     * their directories. Each source reports its position in the uncompressed data, which is converted to on-disk
+     * bytes with the compression ratio of its sstable, and is charged in steps of at least
+     * {@link #ACQUIRE_GRANULARITY} bytes.
+     */
+    public static class Reads
+    {
+        private final DataDirectoryIOBudget[] budgets;
+        private final double[] compressionRatios;
+        private final LongSupplier[] positions;
+        private final long[] charged;
+
+        /**
+         * @param sstables the sstable of each source, or null if the source does not read from an sstable
+         * @param positions the current position of each source, in bytes of uncompressed data
+         */
+        public Reads(List<SSTableReader> sstables, List<LongSupplier> positions)
+        {
+            assert sstables.size() == positions.size();
+            int size = sstables.size();
+            this.budgets = new DataDirectoryIOBudget[size];
+            this.compressionRatios = new double[size];
+            this.positions = positions.toArray(new LongSupplier[size]);
+            this.charged = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                SSTableReader sstable = sstables.get(i);
+                if (sstable == null)
+                    continue;
+                budgets[i] = forSSTable(sstable);
+                double compressionRatio = sstable.getCompressionRatio();
+                compressionRatios[i] = compressionRatio == MetadataCollector.NO_COMPRESSION_RATIO ? 1.0 : compressionRatio;
+                charged[i] = this.positions[i].getAsLong();
+            }
+        }
+
+        /**
+         * Charges what the sources have read since the last call, for the sources that read enough.
+         */
+        public void charge()
+        {
+            for (int i = 0; i < budgets.length; i++)
+            {
+                if (budgets[i] == null)
+                    continue;
+                long position = positions[i].getAsLong();
+                if (position - charged[i] >= ACQUIRE_GRANULARITY)
+                {
+                    budgets[i].acquireRead((long) ((position - charged[i]) * compressionRatios[i]));
+                    charged[i] = position;
+                }
+            }
+        }
+    }
+}
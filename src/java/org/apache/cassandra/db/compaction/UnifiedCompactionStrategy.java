@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -86,6 +87,10 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
 
     private long lastExpiredCheck;
 
+    // The threads reserved by running compactions to compact their output shards in parallel, by operation id, see
+    // reserveHelperThreads. Only modified when holding the strategy's lock.
+    private final Map<UUID, HelperThreads> helperThreads = new ConcurrentHashMap<>();
+
     static final Level EXPIRED_TABLES_LEVEL = new Level(-1, 0, 0, 0, 0, 0, 0)
     {
         @Override
@@ -322,7 +327,7 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
      * Create the sstable writer used for flushing.
      *
      * @return an sstable writer that will split sstables into a number of shards as calculated by the controller for
-     *         the expected flush density.
+     *         the expected flush density, and compress them with the controller's parameters for level 0.
      */
     @Override
     public SSTableMultiWriter createSSTableMultiWriter(Descriptor descriptor,
@@ -349,7 +354,8 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
                                       header,
                                       indexGroups,
                                       lifecycleNewTracker,
-                                      boundaries);
+                                      boundaries,
+                                      controller.getCompressionParams(0, realm.metadata().params.compression));
     }
 
     /**
@@ -472,6 +478,13 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
             if (controller.isRecentAdaptive(compaction))
                 --remainingAdaptiveCompactions;
         }
+        // the helper threads of parallel compactions take the place of compactions in their level
+        for (HelperThreads helpers : helperThreads.values())
+        {
+            perLevel[helpers.level] += helpers.count;
+            runningCompactions += helpers.count;
+            levelCount = Math.max(levelCount, helpers.level + 1);
+        }
 
         CompactionLimits limits = new CompactionLimits(runningCompactions,
                                                        maxCompactions,
@@ -916,6 +929,71 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
         return (int) pick.parent();
     }
 
+    /**
+     * Reserves threads for a running compaction to compact its output shards in parallel (see
+     * {@link Controller#parallelizeOutputShards()}). The threads are charged to the level of the compaction, or to the
+     * top level for compactions that are not in the hierarchy (e.g. major compactions), and are only granted within
+     * the limits and thread reservations that the selection of new compactions honours. Until they are released with
+     * {@link #releaseHelperThread}, they count as running compactions of that level.
+     *
+     * @param operationId the id of the compaction operation
+     * @param wanted the number of threads the compaction could use on top of its own
+     * @return the number of threads reserved, at most {@code wanted}
+     */
+    public synchronized int reserveHelperThreads(UUID operationId, int wanted)
+    {
+        CompactionLimits limits = getCurrentLimits(controller.maxConcurrentCompactions());
+        int levelCount = limits.levelCount;
+        for (CompactionAggregate aggregate : getAggregates())
+        {
+            if (aggregate instanceof CompactionAggregate.UnifiedAggregate)
+                levelCount = Math.max(levelCount, ((CompactionAggregate.UnifiedAggregate) aggregate).bucketIndex() + 1);
+        }
+
+        int compactionLevel = -1;
+        for (CompactionPick compaction : backgroundCompactions.getCompactionsInProgress())
+        {
+            if (compaction.id().equals(operationId))
+                compactionLevel = levelOf(compaction);
+        }
+        final int level = compactionLevel >= 0 ? compactionLevel : levelCount - 1;
+
+        int[] perLevel = Arrays.copyOf(limits.perLevel, levelCount);
+        Reservations reservations = Reservations.create(limits.maxCompactions,
+                                                        perLevel,
+                                                        controller.getReservedThreads(),
+                                                        controller.getReservationsType());
+        int remaining = limits.maxCompactions;
+        for (int countInLevel : perLevel)
+            remaining -= countInLevel;
+
+        int reserved = 0;
+        while (reserved < wanted && remaining > 0 && reservations.accept(level))
+        {
+            ++reserved;
+            --remaining;
+        }
+
+        if (reserved > 0)
+        {
+            HelperThreads helpers = helperThreads.computeIfAbsent(operationId, id -> new HelperThreads(level));
+            helpers.count += reserved;
+        }
+        logger.debug("Reserved {} of {} helper threads for compaction {} in level {}", reserved, wanted, operationId, level);
+        return reserved;
+    }
+
+    /**
+     * Releases a thread reserved with {@link #reserveHelperThreads}.
+     */
+    public synchronized void releaseHelperThread(UUID operationId)
+    {
+        HelperThreads helpers = helperThreads.get(operationId);
+        assert helpers != null && helpers.count > 0 : "No helper thread reserved for " + operationId;
+        if (--helpers.count == 0)
+            helperThreads.remove(operationId);
+    }
+
     public TableMetadata getMetadata()
     {
         return realm.metadata();
@@ -1389,6 +1467,17 @@ public class UnifiedCompactionStrategy extends AbstractCompactionStrategy
         }
     }
 
+    private static class HelperThreads
+    {
+        final int level;
+        volatile int count;
+
+        HelperThreads(int level)
+        {
+            this.level = level;
+        }
+    }
+
     static class CompactionLimits
     {
         final int runningCompactions;
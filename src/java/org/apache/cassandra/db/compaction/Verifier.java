@@ -38,6 +38,7 @@ import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.sstable.metadata.ValidationMetadata;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.DataIntegrityMetadata;
 import org.apache.cassandra.io.util.DataIntegrityMetadata.FileDigestValidator;
 import org.apache.cassandra.io.util.FileInputStreamPlus;
@@ -134,9 +135,7 @@ public class Verifier implements Closeable
         this.outputHandler = outputHandler;
 
         this.fileAccessLock = new ReentrantReadWriteLock();
-        this.dataFile = isOffline
-                        ? sstable.openDataReader()
-                        : sstable.openDataReader(CompactionManager.instance.getRateLimiter());
+        this.dataFile = sstable.openDataReader(isOffline ? null : CompactionManager.instance.getRateLimiter(), AccessIntent.COMPACTION);
         this.verifyInfo = new VerifyInfo(dataFile, sstable, fileAccessLock.readLock());
         this.options = options;
         this.isOffline = isOffline;
@@ -468,7 +467,7 @@ public class Verifier implements Closeable
         if (bfPath.exists())
         {
             try (FileInputStreamPlus stream = bfPath.newInputStream();
-                 IFilter bf = BloomFilter.serializer.deserialize(stream, sstable.descriptor.version.hasOldBfFormat()))
+                 IFilter bf = BloomFilter.serializer.deserialize(stream, sstable.descriptor.version))
             {
             }
         }
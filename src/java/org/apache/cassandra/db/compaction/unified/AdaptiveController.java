@@ -32,6 +32,7 @@ import org.apache.cassandra.db.compaction.UnifiedCompactionStrategy;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileReader;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MonotonicClock;
 import org.apache.cassandra.utils.Overlaps;
@@ -114,6 +115,8 @@ public class AdaptiveController extends Controller
                               int reservedThreadsPerLevel,
                               Reservations.Type reservationsType,
                               Overlaps.InclusionMethod overlapInclusionMethod,
+                              CompressionParams[] levelCompression,
+                              boolean parallelizeOutputShards,
                               int intervalSec,
                               int minScalingParameter,
                               int maxScalingParameter,
@@ -139,7 +142,9 @@ public class AdaptiveController extends Controller
               sstableGrowthModifier,
               reservedThreadsPerLevel,
               reservationsType,
-              overlapInclusionMethod);
+              overlapInclusionMethod,
+              levelCompression,
+              parallelizeOutputShards);
 
         this.scalingParameters = scalingParameters;
         this.previousScalingParameters = previousScalingParameters;
@@ -168,6 +173,8 @@ public class AdaptiveController extends Controller
                                   int reservedThreadsPerLevel,
                                   Reservations.Type reservationsType,
                                   Overlaps.InclusionMethod overlapInclusionMethod,
+                                  CompressionParams[] levelCompression,
+                                  boolean parallelizeOutputShards,
                                   String keyspaceName,
                                   String tableName,
                                   Map<String, String> options)
@@ -265,6 +272,8 @@ public class AdaptiveController extends Controller
                                       reservedThreadsPerLevel,
                                       reservationsType,
                                       overlapInclusionMethod,
+                                      levelCompression,
+                                      parallelizeOutputShards,
                                       intervalSec,
                                       minScalingParameter,
                                       maxScalingParameter,
@@ -50,6 +50,7 @@ import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileWriter;
 import org.apache.cassandra.metrics.DefaultNameFactory;
 import org.apache.cassandra.metrics.MetricNameFactory;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.SchemaConstants;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.FBUtilities;
@@ -268,6 +269,20 @@ public abstract class Controller
     static final String SCALING_PARAMETERS_OPTION = "scaling_parameters";
     static final String STATIC_SCALING_FACTORS_OPTION = "static_scaling_factors";
 
+    /**
+     * The compression parameters of the sstables written to each level, as a JSON list of maps in the format of the
+     * table's compression option, one per level starting with the flush level. Higher levels use the last entry, and an
+     * empty map selects the table's compression parameters. Only applies to tables that have compression enabled.
+     */
+    static final String LEVEL_COMPRESSION_OPTION = "level_compression";
+
+    /**
+     * Whether a compaction whose output is split in several shards may compact the shards in parallel, using up to
+     * concurrent_compactors threads within the limits and thread reservations of the strategy.
+     */
+    static final String PARALLELIZE_OUTPUT_SHARDS_OPTION = "parallelize_output_shards";
+    static final boolean DEFAULT_PARALLELIZE_OUTPUT_SHARDS = Boolean.parseBoolean(System.getProperty(PREFIX + PARALLELIZE_OUTPUT_SHARDS_OPTION, "false"));
+
     protected final MonotonicClock clock;
     protected final Environment env;
     protected final double[] survivalFactors;
@@ -295,6 +310,11 @@ public abstract class Controller
 
     protected final Overlaps.InclusionMethod overlapInclusionMethod;
 
+    /** Per-level compression parameters, null if not specified; null entries select the table's parameters. */
+    @Nullable protected final CompressionParams[] levelCompression;
+
+    protected final boolean parallelizeOutputShards;
+
     Controller(MonotonicClock clock,
                Environment env,
                double[] survivalFactors,
@@ -311,7 +331,9 @@ public abstract class Controller
                double sstableGrowthModifier,
                int reservedThreads,
                Reservations.Type reservationsType,
-               Overlaps.InclusionMethod overlapInclusionMethod)
+               Overlaps.InclusionMethod overlapInclusionMethod,
+               CompressionParams[] levelCompression,
+               boolean parallelizeOutputShards)
     {
         this.clock = clock;
         this.env = env;
@@ -324,6 +346,8 @@ public abstract class Controller
         this.baseShardCount = baseShardCount;
         this.targetSSTableSize = targetSStableSize;
         this.overlapInclusionMethod = overlapInclusionMethod;
+        this.levelCompression = levelCompression;
+        this.parallelizeOutputShards = parallelizeOutputShards;
         this.sstableGrowthModifier = sstableGrowthModifier;
         this.reservedThreads = reservedThreads;
         this.reservationsType = reservationsType;
@@ -644,6 +668,14 @@ public abstract class Controller
         return ignoreOverlapsInExpirationCheck;
     }
 
+    /**
+     * @return whether the shards of the output of a compaction may be compacted in parallel
+     */
+    public boolean parallelizeOutputShards()
+    {
+        return parallelizeOutputShards;
+    }
+
     public long getExpiredSSTableCheckFrequency()
     {
         return expiredSSTableCheckFrequency;
@@ -892,6 +924,14 @@ public abstract class Controller
                                                           ? Overlaps.InclusionMethod.valueOf(options.get(OVERLAP_INCLUSION_METHOD_OPTION).toUpperCase())
                                                           : DEFAULT_OVERLAP_INCLUSION_METHOD;
 
+        CompressionParams[] levelCompression = options.containsKey(LEVEL_COMPRESSION_OPTION)
+                                               ? parseLevelCompression(options.get(LEVEL_COMPRESSION_OPTION))
+                                               : null;
+
+        boolean parallelizeOutputShards = options.containsKey(PARALLELIZE_OUTPUT_SHARDS_OPTION)
+                                          ? Boolean.parseBoolean(options.get(PARALLELIZE_OUTPUT_SHARDS_OPTION))
+                                          : DEFAULT_PARALLELIZE_OUTPUT_SHARDS;
+
         return adaptive
                ? AdaptiveController.fromOptions(env,
                                                 survivalFactors,
@@ -908,6 +948,8 @@ public abstract class Controller
                                                 reservedThreadsPerLevel,
                                                 reservationsType,
                                                 overlapInclusionMethod,
+                                                levelCompression,
+                                                parallelizeOutputShards,
                                                 realm.getKeyspaceName(),
                                                 realm.getTableName(),
                                                 options)
@@ -926,6 +968,8 @@ public abstract class Controller
                                               reservedThreadsPerLevel,
                                               reservationsType,
                                               overlapInclusionMethod,
+                                              levelCompression,
+                                              parallelizeOutputShards,
                                               realm.getKeyspaceName(),
                                               realm.getTableName(),
                                               options);
@@ -1148,6 +1192,17 @@ public abstract class Controller
             }
         }
 
+        s = options.remove(LEVEL_COMPRESSION_OPTION);
+        if (s != null)
+            parseLevelCompression(s);
+
+        s = options.remove(PARALLELIZE_OUTPUT_SHARDS_OPTION);
+        if (s != null && !s.equalsIgnoreCase("true") && !s.equalsIgnoreCase("false"))
+        {
+            throw new ConfigurationException(String.format(booleanParseErr,
+                                                           PARALLELIZE_OUTPUT_SHARDS_OPTION, s));
+        }
+
         if (minSSTableSize > targetSSTableSize * INVERSE_SQRT_2)
             throw new ConfigurationException(String.format("The minimum sstable size %s cannot be larger than the target size's lower bound %s.",
                                                            FBUtilities.prettyPrintMemory(minSSTableSize),
@@ -1266,6 +1321,32 @@ public abstract class Controller
         return Math.floor(minSize * getFanout(index) * getSurvivalFactor(index));
     }
 
+    /**
+     * Return the index of the level an sstable of the given density belongs to. This follows the level construction
+     * in {@link UnifiedCompactionStrategy#getLevels}.
+     */
+    public int levelOf(double density, double localSpaceCoverage)
+    {
+        double maxSize = getMaxLevelDensity(0, getBaseSstableSize(getFanout(0)) / localSpaceCoverage);
+        int index = 0;
+        while (density >= maxSize && index < UnifiedCompactionStrategy.MAX_LEVELS - 1)
+            maxSize = getMaxLevelDensity(++index, maxSize);
+        return index;
+    }
+
+    /**
+     * Return the compression parameters to use for the sstables written to the given level, or null if the table's
+     * parameters should be used.
+     */
+    @Nullable
+    public CompressionParams getCompressionParams(int index, CompressionParams tableParams)
+    {
+        if (levelCompression == null || !tableParams.isEnabled())
+            return null;
+
+        return levelCompression[Math.min(index, levelCompression.length - 1)];
+    }
+
     public double maxThroughput()
     {
         return env.maxThroughput();
@@ -1337,6 +1418,58 @@ public abstract class Controller
         return ret;
     }
 
+    /**
+     * Parse the value of the {@link #LEVEL_COMPRESSION_OPTION}, a JSON list of compression option maps.
+     *
+     * @return the per-level compression parameters, with null for the levels that use the table's parameters
+     */
+    public static CompressionParams[] parseLevelCompression(String str) throws ConfigurationException
+    {
+        List<?> entries;
+        try
+        {
+            entries = FBUtilities.fromJsonList(str);
+        }
+        catch (RuntimeException e)
+        {
+            throw new ConfigurationException(String.format("%s must be a JSON list of compression options: %s",
+                                                           LEVEL_COMPRESSION_OPTION,
+                                                           e.getMessage()),
+                                             e);
+        }
+
+        if (entries == null || entries.isEmpty())
+            throw new ConfigurationException(String.format("%s must list the compression options of at least one level",
+                                                           LEVEL_COMPRESSION_OPTION));
+
+        CompressionParams[] ret = new CompressionParams[entries.size()];
+        for (int i = 0; i < ret.length; i++)
+        {
+            Object entry = entries.get(i);
+            if (!(entry instanceof Map))
+                throw new ConfigurationException(String.format("Invalid %s entry for level %d, expected a map of compression options: %s",
+                                                               LEVEL_COMPRESSION_OPTION,
+                                                               i,
+                                                               entry));
+
+            Map<String, String> levelOptions = new HashMap<>();
+            for (Map.Entry<?, ?> option : ((Map<?, ?>) entry).entrySet())
+                levelOptions.put(String.valueOf(option.getKey()), String.valueOf(option.getValue()));
+
+            if (levelOptions.isEmpty())
+                continue;
+
+            CompressionParams params = CompressionParams.fromMap(levelOptions);
+            if (!params.isEnabled())
+                throw new ConfigurationException(String.format("Compression cannot be disabled for level %d in %s",
+                                                               i,
+                                                               LEVEL_COMPRESSION_OPTION));
+            ret[i] = params;
+        }
+
+        return ret;
+    }
+
     public static String printScalingParameters(int[] parameters)
     {
         StringBuilder builder = new StringBuilder();
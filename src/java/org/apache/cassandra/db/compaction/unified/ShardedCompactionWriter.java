@@ -18,6 +18,8 @@ package org.apache.cassandra.db.compaction.unified;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,11 +29,13 @@ import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.compaction.CompactionRealm;
 import org.apache.cassandra.db.compaction.ShardTracker;
 import org.apache.cassandra.db.compaction.writers.CompactionAwareWriter;
+import org.apache.cassandra.db.lifecycle.ILifecycleTransaction;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.utils.FBUtilities;
 
 /**
@@ -46,6 +50,9 @@ public class ShardedCompactionWriter extends CompactionAwareWriter
 
     private final ShardTracker boundaries;
 
+    @Nullable
+    private final CompressionParams compression;
+
     public ShardedCompactionWriter(CompactionRealm realm,
                                    Directories directories,
                                    LifecycleTransaction txn,
@@ -53,9 +60,33 @@ public class ShardedCompactionWriter extends CompactionAwareWriter
                                    boolean keepOriginals,
                                    ShardTracker boundaries)
     {
-        super(realm, directories, txn, nonExpiredSSTables, keepOriginals);
+        this(realm, directories, txn, nonExpiredSSTables, keepOriginals, boundaries, null);
+    }
+
+    public ShardedCompactionWriter(CompactionRealm realm,
+                                   Directories directories,
+                                   LifecycleTransaction txn,
+                                   Set<SSTableReader> nonExpiredSSTables,
+                                   boolean keepOriginals,
+                                   ShardTracker boundaries,
+                                   @Nullable CompressionParams compression)
+    {
+        this(realm, directories, txn, nonExpiredSSTables, keepOriginals, true, boundaries, compression);
+    }
+
+    public ShardedCompactionWriter(CompactionRealm realm,
+                                   Directories directories,
+                                   ILifecycleTransaction txn,
+                                   Set<SSTableReader> nonExpiredSSTables,
+                                   boolean keepOriginals,
+                                   boolean openEarly,
+                                   ShardTracker boundaries,
+                                   @Nullable CompressionParams compression)
+    {
+        super(realm, directories, txn, nonExpiredSSTables, keepOriginals, openEarly);
 
         this.boundaries = boundaries;
+        this.compression = compression;
         long totalKeyCount = nonExpiredSSTables.stream()
                                                .mapToLong(SSTableReader::estimatedKeys)
                                                .sum();
@@ -98,7 +129,8 @@ public class ShardedCompactionWriter extends CompactionAwareWriter
                                     new MetadataCollector(txn.originals(), realm.metadata().comparator, 0),
                                     SerializationHeader.make(realm.metadata(), nonExpiredSSTables),
                                     realm.getIndexManager().listIndexGroups(),
-                                    txn);
+                                    txn,
+                                    compression);
     }
 
     private static long shardAdjustedKeyCount(ShardTracker boundaries,
@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +40,7 @@ import org.apache.cassandra.io.sstable.SSTableMultiWriter;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.TableId;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -66,6 +69,8 @@ public class ShardedMultiWriter implements SSTableMultiWriter
     private final Collection<Index.Group> indexGroups;
     private final LifecycleNewTracker lifecycleNewTracker;
     private final ShardTracker boundaries;
+    @Nullable
+    private final CompressionParams compression;
     private final SSTableWriter[] writers;
     private int currentWriter;
 
@@ -79,7 +84,8 @@ public class ShardedMultiWriter implements SSTableMultiWriter
                                 SerializationHeader header,
                                 Collection<Index.Group> indexGroups,
                                 LifecycleNewTracker lifecycleNewTracker,
-                                ShardTracker boundaries)
+                                ShardTracker boundaries,
+                                @Nullable CompressionParams compression)
     {
         this.realm = realm;
         this.descriptor = descriptor;
@@ -92,6 +98,7 @@ public class ShardedMultiWriter implements SSTableMultiWriter
         this.indexGroups = indexGroups;
         this.lifecycleNewTracker = lifecycleNewTracker;
         this.boundaries = boundaries;
+        this.compression = compression;
         this.writers = new SSTableWriter[this.boundaries.count()]; // at least one
 
         this.currentWriter = 0;
@@ -115,7 +122,8 @@ public class ShardedMultiWriter implements SSTableMultiWriter
                                     new MetadataCollector(realm.metadata().comparator).commitLogIntervals(commitLogPositions),
                                     header,
                                     indexGroups,
-                                    lifecycleNewTracker);
+                                    lifecycleNewTracker,
+                                    compression);
     }
 
     private long forSplittingKeysBy(long splits) {
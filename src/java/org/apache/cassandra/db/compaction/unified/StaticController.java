@@ -27,6 +27,7 @@ import org.apache.cassandra.db.compaction.UnifiedCompactionStrategy;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileReader;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.utils.MonotonicClock;
 import org.apache.cassandra.utils.Overlaps;
 import org.json.simple.JSONObject;
@@ -64,6 +65,8 @@ public class StaticController extends Controller
                             int reservedThreadsPerLevel,
                             Reservations.Type reservationsType,
                             Overlaps.InclusionMethod overlapInclusionMethod,
+                            CompressionParams[] levelCompression,
+                            boolean parallelizeOutputShards,
                             String keyspaceName,
                             String tableName)
     {
@@ -83,7 +86,9 @@ public class StaticController extends Controller
               sstableGrowthModifier,
               reservedThreadsPerLevel,
               reservationsType,
-              overlapInclusionMethod);
+              overlapInclusionMethod,
+              levelCompression,
+              parallelizeOutputShards);
         this.scalingParameters = scalingParameters;
         this.keyspaceName = keyspaceName;
         this.tableName = tableName;
@@ -104,6 +109,8 @@ public class StaticController extends Controller
                                   int reservedThreadsPerLevel,
                                   Reservations.Type reservationsType,
                                   Overlaps.InclusionMethod overlapInclusionMethod,
+                                  CompressionParams[] levelCompression,
+                                  boolean parallelizeOutputShards,
                                   String keyspaceName,
                                   String tableName,
                                   Map<String, String> options)
@@ -151,6 +158,8 @@ public class StaticController extends Controller
                                     reservedThreadsPerLevel,
                                     reservationsType,
                                     overlapInclusionMethod,
+                                    levelCompression,
+                                    parallelizeOutputShards,
                                     keyspaceName,
                                     tableName);
     }
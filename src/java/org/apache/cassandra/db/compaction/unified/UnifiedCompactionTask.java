@@ -16,24 +16,35 @@
 
 package org.apache.cassandra.db.compaction.unified;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.PartitionPosition;
 import org.apache.cassandra.db.compaction.CompactionRealm;
 import org.apache.cassandra.db.compaction.CompactionTask;
 import org.apache.cassandra.db.compaction.ShardManager;
+import org.apache.cassandra.db.compaction.ShardTracker;
 import org.apache.cassandra.db.compaction.UnifiedCompactionStrategy;
 import org.apache.cassandra.db.compaction.writers.CompactionAwareWriter;
+import org.apache.cassandra.db.lifecycle.ILifecycleTransaction;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.CompressionParams;
 
 /**
- * The sole purpose of this class is to currently create a {@link ShardedCompactionWriter}.
+ * Creates the {@link ShardedCompactionWriter} of the compaction, and splits the compaction by output shard so that
+ * the shards can be compacted in parallel (see {@link Controller#parallelizeOutputShards}).
  */
 public class UnifiedCompactionTask extends CompactionTask
 {
     private final ShardManager shardManager;
     private final Controller controller;
+    private final UnifiedCompactionStrategy strategy;
 
     public UnifiedCompactionTask(CompactionRealm cfs,
                                  UnifiedCompactionStrategy strategy,
@@ -43,6 +54,7 @@ public class UnifiedCompactionTask extends CompactionTask
     {
         super(cfs, txn, gcBefore, strategy.getController().getIgnoreOverlapsInExpirationCheck(), strategy);
         this.controller = strategy.getController();
+        this.strategy = strategy;
         this.shardManager = shardManager;
     }
 
@@ -53,7 +65,86 @@ public class UnifiedCompactionTask extends CompactionTask
                                                           Set<SSTableReader> nonExpiredSSTables)
     {
         double density = shardManager.calculateCombinedDensity(nonExpiredSSTables);
-        int numShards = controller.getNumShards(density * shardManager.shardSetCoverage());
-        return new ShardedCompactionWriter(realm, directories, txn, nonExpiredSSTables, keepOriginals, shardManager.boundaries(numShards));
+        return new ShardedCompactionWriter(realm, directories, txn, nonExpiredSSTables, keepOriginals, shardManager.boundaries(getNumShards(density)), getCompressionParams(realm, density));
     }
-}
\ No newline at end of file
+
+    @Override
+    protected CompactionAwareWriter getCompactionAwareWriter(CompactionRealm realm,
+                                                             Directories directories,
+                                                             ILifecycleTransaction txn,
+                                                             Set<SSTableReader> nonExpiredSSTables,
+                                                             Range<Token> tokenRange)
+    {
+        double density = shardManager.calculateCombinedDensity(nonExpiredSSTables);
+        return new ShardedCompactionWriter(realm, directories, txn, nonExpiredSSTables, keepOriginals, false, shardManager.boundaries(getNumShards(density)), getCompressionParams(realm, density));
+    }
+
+    /**
+     * Splits the compaction at the boundaries of the output shards spanned by the input, so that each shard can be
+     * compacted by a separate thread. The first and last range extend to the minimum token, so that together the
+     * ranges cover all the data of the input.
+     */
+    @Override
+    protected List<Range<Token>> getParallelRanges(Set<SSTableReader> nonExpiredSSTables)
+    {
+        if (!controller.parallelizeOutputShards() || nonExpiredSSTables.isEmpty())
+            return Collections.emptyList();
+
+        int numShards = getNumShards(shardManager.calculateCombinedDensity(nonExpiredSSTables));
+        if (numShards <= 1)
+            return Collections.emptyList();
+
+        Token first = nonExpiredSSTables.stream().map(SSTableReader::getFirst).min(PartitionPosition::compareTo).get().getToken();
+        Token last = nonExpiredSSTables.stream().map(SSTableReader::getLast).max(PartitionPosition::compareTo).get().getToken();
+        ShardTracker boundaries = shardManager.boundaries(numShards);
+        boundaries.advanceTo(first);
+        List<Token> splitPoints = new ArrayList<>();
+        while (boundaries.shardEnd() != null && boundaries.shardEnd().compareTo(last) < 0)
+        {
+            splitPoints.add(boundaries.shardEnd());
+            boundaries.advanceTo(boundaries.shardEnd().nextValidToken());
+        }
+
+        if (splitPoints.isEmpty())
+            return Collections.emptyList();
+
+        Token minimum = first.minValue();
+        List<Range<Token>> ranges = new ArrayList<>(splitPoints.size() + 1);
+        Token start = minimum;
+        for (Token end : splitPoints)
+        {
+            ranges.add(new Range<>(start, end));
+            start = end;
+        }
+        ranges.add(new Range<>(start, minimum));
+        return ranges;
+    }
+
+    /**
+     * The helper threads are charged to the thread budget and reservations of the strategy, see
+     * {@link UnifiedCompactionStrategy#reserveHelperThreads}.
+     */
+    @Override
+    protected int reserveHelperThreads(int wanted)
+    {
+        return strategy.reserveHelperThreads(transaction.opId(), wanted);
+    }
+
+    @Override
+    protected void releaseHelperThread()
+    {
+        strategy.releaseHelperThread(transaction.opId());
+    }
+
+    private int getNumShards(double density)
+    {
+        return controller.getNumShards(density * shardManager.shardSetCoverage());
+    }
+
+    private CompressionParams getCompressionParams(CompactionRealm realm, double density)
+    {
+        // the output lands on the level of its combined density, which may be above the level of the inputs
+        int level = controller.levelOf(density, shardManager.localSpaceCoverage());
+        return controller.getCompressionParams(level, realm.metadata().params.compression);
+    }
+}
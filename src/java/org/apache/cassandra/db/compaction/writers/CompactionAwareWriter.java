@@ -19,6 +19,7 @@
 package org.apache.cassandra.db.compaction.writers;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -34,7 +35,8 @@ import org.apache.cassandra.db.DiskBoundaries;
 import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.compaction.CompactionRealm;
 import org.apache.cassandra.db.compaction.CompactionTask;
-import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
+import org.apache.cassandra.db.lifecycle.ILifecycleTransaction;
 import org.apache.cassandra.db.rows.Unfiltered;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.dht.Token;
@@ -42,6 +44,7 @@ import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableRewriter;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.concurrent.Transactional;
@@ -64,17 +67,34 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
     protected final boolean isTransient;
 
     protected final SSTableRewriter sstableWriter;
-    protected final LifecycleTransaction txn;
+    protected final ILifecycleTransaction txn;
     private final List<Directories.DataDirectory> locations;
     private final List<Token> diskBoundaries;
     private int locationIndex;
     protected Directories.DataDirectory currentDirectory;
+    // the write budget of the current directory, and the on-disk bytes of the current sstable charged against it
+    private DataDirectoryIOBudget currentBudget;
+    private long bytesCharged;
 
     public CompactionAwareWriter(CompactionRealm realm,
                                  Directories directories,
-                                 LifecycleTransaction txn,
+                                 ILifecycleTransaction txn,
                                  Set<SSTableReader> nonExpiredSSTables,
                                  boolean keepOriginals)
+    {
+        this(realm, directories, txn, nonExpiredSSTables, keepOriginals, true);
+    }
+
+    /**
+     * @param openEarly whether the sstables being written may be opened early (if the realm supports it). Writers that
+     *                  share their transaction with other writers must not open early, see {@link SSTableRewriter}.
+     */
+    public CompactionAwareWriter(CompactionRealm realm,
+                                 Directories directories,
+                                 ILifecycleTransaction txn,
+                                 Set<SSTableReader> nonExpiredSSTables,
+                                 boolean keepOriginals,
+                                 boolean openEarly)
     {
         this.realm = realm;
         this.directories = directories;
@@ -83,7 +103,8 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
 
         estimatedTotalKeys = SSTableReader.getApproximateKeyCount(nonExpiredSSTables);
         maxAge = CompactionTask.getMaxDataAge(nonExpiredSSTables);
-        sstableWriter = SSTableRewriter.construct(realm, txn, keepOriginals, maxAge);
+        sstableWriter = openEarly ? SSTableRewriter.construct(realm, txn, keepOriginals, maxAge)
+                                  : SSTableRewriter.constructWithoutEarlyOpening(txn, keepOriginals, maxAge);
         minRepairedAt = CompactionTask.getMinRepairedAt(nonExpiredSSTables);
         pendingRepair = CompactionTask.getPendingRepair(nonExpiredSSTables);
         isTransient = CompactionTask.getIsTransient(nonExpiredSSTables);
@@ -122,6 +143,14 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
         return sstableWriter.finished();
     }
 
+    /**
+     * @return the sstables written, once the writer has been prepared to commit
+     */
+    public Collection<SSTableReader> finished()
+    {
+        return sstableWriter.finished();
+    }
+
     /**
      * estimated number of keys we should write
      */
@@ -147,7 +176,9 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
      */
     boolean appendWithoutSwitchingWriters(UnfilteredRowIterator partition)
     {
-        return sstableWriter.append(partition);
+        boolean written = sstableWriter.append(partition);
+        maybeChargeWrites();
+        return written;
     }
 
     @Override
@@ -161,6 +192,7 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
     public void endPartition() throws IOException
     {
         sstableWriter.endPartition();
+        maybeChargeWrites();
     }
 
     @Override
@@ -169,6 +201,18 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
         sstableWriter.addUnfiltered(unfiltered);
     }
 
+    @Override
+    public boolean canCopySerialized(Version version, SerializationHeader header)
+    {
+        return sstableWriter.currentWriter().canCopySerialized(version, header);
+    }
+
+    @Override
+    public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        sstableWriter.addSerializedUnfiltered(unfiltered, serialized);
+    }
+
     @Override
     protected Throwable doPostCleanup(Throwable accumulate)
     {
@@ -237,10 +281,34 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
      */
     protected void switchCompactionWriter(Directories.DataDirectory directory, DecoratedKey nextKey)
     {
+        if (currentBudget != null && sstableWriter.currentWriter() != null)
+            chargeWrites(sstableWriter.currentWriter().getEstimatedOnDiskBytesWritten());
         currentDirectory = directory;
+        currentBudget = directory != null ? DataDirectoryIOBudget.get(directory) : null;
+        bytesCharged = 0;
         sstableWriter.switchWriter(sstableWriter(directory, nextKey != null ? nextKey.getToken() : null));
     }
 
+    /**
+     * Charges the data written to the current sstable against the write budget of its directory, once there is
+     * enough of it, see {@link DataDirectoryIOBudget}.
+     */
+    private void maybeChargeWrites()
+    {
+        if (currentBudget == null)
+            return;
+        long bytesWritten = sstableWriter.currentWriter().getEstimatedOnDiskBytesWritten();
+        if (bytesWritten - bytesCharged >= DataDirectoryIOBudget.ACQUIRE_GRANULARITY)
+            chargeWrites(bytesWritten);
+    }
+
+    private void chargeWrites(long bytesWritten)
+    {
+        if (bytesWritten > bytesCharged)
+            currentBudget.acquireWrite(bytesWritten - bytesCharged);
+        bytesCharged = bytesWritten;
+    }
+
     @SuppressWarnings("resource")
     protected SSTableWriter sstableWriter(Directories.DataDirectory directory, Token diskBoundary)
     {
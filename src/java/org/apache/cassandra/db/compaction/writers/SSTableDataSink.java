@@ -19,11 +19,14 @@
 package org.apache.cassandra.db.compaction.writers;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.rows.Unfiltered;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.format.Version;
 
 /**
  * Abstraction of compaction result writer, implemented by CompactionAwareWriter and tests.
@@ -51,4 +54,23 @@ public interface SSTableDataSink
      * Add a new row or marker in the current partition. Must be preceded by startPartition.
      */
     void addUnfiltered(Unfiltered unfiltered) throws IOException;
+
+    /**
+     * Whether the sstable the current partition is written to serializes rows exactly as an sstable of the given
+     * version and serialization header, so that the rows read from such an sstable can be added with
+     * addSerializedUnfiltered. Must be preceded by startPartition.
+     */
+    default boolean canCopySerialized(Version version, SerializationHeader header)
+    {
+        return false;
+    }
+
+    /**
+     * Same as addUnfiltered, for an unfiltered given with its serialized form in an sstable for which
+     * canCopySerialized is true.
+     */
+    default void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        addUnfiltered(unfiltered);
+    }
 }
@@ -99,6 +99,11 @@ public class WrappedLifecycleTransaction implements ILifecycleTransaction
         delegate.trackNew(table);
     }
 
+    public void trackNewAttachedIndexFiles(SSTable table)
+    {
+        delegate.trackNewAttachedIndexFiles(table);
+    }
+
     public void untrackNew(SSTable table)
     {
         delegate.untrackNew(table);
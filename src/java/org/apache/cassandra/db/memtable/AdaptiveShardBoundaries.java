@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.dht.Token;
+
+/**
+ * Shard boundaries for a {@link TrieMemtable} that adapt to the distribution of writes observed by the previous
+ * memtable of the table.
+ * <p>
+ * The local token ranges are split evenly into a fine grid of cells, and each shard is made of a contiguous run of
+ * cells. While a memtable is active, its writes are counted per cell, and the contention its writers met is counted
+ * per shard. When the memtable is switched, the next one places its shard boundaries at the grid tokens that divide
+ * the recorded write weight (increased for shards that saw contention) in equal parts. A token range that takes many
+ * writes is thus split among more shards, and a cold one is covered by fewer.
+ * <p>
+ * The shard count also adapts: it grows (up to {@link #MAX_SHARD_COUNT_MULTIPLIER} times the configured count) when
+ * the writers of the previous memtable contended for the shards, and shrinks back towards the configured count when
+ * they did not.
+ * <p>
+ * Only one in {@link #WRITE_SAMPLING} writes, chosen at random, is recorded, so that the writers rarely touch the shared
+ * counts and mostly skip looking up the cell of the token. This is enough to estimate the write distribution, as the
+ * boundaries are only adapted when the memtable saw many writes.
+ */
+class AdaptiveShardBoundaries
+{
+    /** The maximum shard count, as a multiple of the configured one. */
+    static final int MAX_SHARD_COUNT_MULTIPLIER = 4;
+
+    /** The number of grid cells per shard at the maximum shard count. */
+    static final int CELLS_PER_SHARD = 16;
+
+    /**
+     * The minimum average number of writes per cell needed to adapt the boundaries. Memtables that saw fewer writes
+     * pass their boundaries on unchanged.
+     */
+    static final int MIN_WRITES_PER_CELL = 4;
+
+    /**
+     * The fraction of the total weight that is spread evenly over all cells, so that ranges that were cold in the
+     * previous memtable still get some shards of their own.
+     */
+    static final double UNIFORM_WEIGHT = 0.1;
+
+    /** Contended writes per write above which the shard count grows. */
+    static final double GROW_CONTENTION_RATIO = 0.05;
+
+    /** Contended writes per write below which the shard count shrinks. */
+    static final double SHRINK_CONTENTION_RATIO = 0.005;
+
+    /** One in this many writes is recorded. */
+    @VisibleForTesting
+    static volatile int WRITE_SAMPLING = 16;
+
+    /** The even split of the local ranges into cells. Shard boundaries are always tokens of the grid. */
+    final ShardBoundaries grid;
+
+    final ShardBoundaries boundaries;
+
+    private final int writeSampling;
+
+    // The number of sampled writes to each cell
+    private final AtomicLongArray sampledWrites;
+
+    private AdaptiveShardBoundaries(ShardBoundaries grid, ShardBoundaries boundaries)
+    {
+        this.grid = grid;
+        this.boundaries = boundaries;
+        this.writeSampling = WRITE_SAMPLING;
+        this.sampledWrites = new AtomicLongArray(grid.shardCount());
+    }
+
+    /**
+     * The number of cells in the grid to request from the owner for the given configured shard count.
+     */
+    static int gridSize(int baseShardCount)
+    {
+        return baseShardCount * MAX_SHARD_COUNT_MULTIPLIER * CELLS_PER_SHARD;
+    }
+
+    /**
+     * Creates the boundaries for a new memtable.
+     *
+     * @param grid the even split of the local ranges into {@link #gridSize} cells
+     * @param baseShardCount the configured shard count
+     * @param previous the boundaries of the previous memtable, if any
+     * @param previousContention the number of contended writes of each shard of the previous memtable
+     *
+     * @return the new boundaries, or null if the grid cannot be used to adapt boundaries, e.g. because the partitioner
+     * does not support splitting or the local ranges are too small
+     */
+    static @Nullable AdaptiveShardBoundaries create(ShardBoundaries grid,
+                                                    int baseShardCount,
+                                                    @Nullable AdaptiveShardBoundaries previous,
+                                                    @Nullable long[] previousContention)
+    {
+        if (baseShardCount <= 1 || grid.shardCount() != gridSize(baseShardCount))
+            return null;
+
+        if (previous == null || previousContention == null || !previous.grid.equals(grid))
+            return new AdaptiveShardBoundaries(grid, evenSplit(grid, baseShardCount));
+
+        return new AdaptiveShardBoundaries(grid, previous.adapt(baseShardCount, previousContention));
+    }
+
+    private static ShardBoundaries evenSplit(ShardBoundaries grid, int shardCount)
+    {
+        int cells = grid.shardCount();
+        List<Token> tokens = new ArrayList<>(shardCount - 1);
+        for (int i = 1; i < shardCount; ++i)
+            tokens.add(grid.shardEnd(i * cells / shardCount - 1));
+        return new ShardBoundaries(tokens, grid.ringVersion);
+    }
+
+    /**
+     * Records a write to the given token, if it is sampled.
+     */
+    void recordWrite(Token token)
+    {
+        if (writeSampling == 1 || ThreadLocalRandom.current().nextInt(writeSampling) == 0)
+            sampledWrites.incrementAndGet(grid.getShardForToken(token));
+    }
+
+    /**
+     * @return the estimated number of writes to each cell
+     */
+    private long[] cellWrites()
+    {
+        long[] writes = new long[sampledWrites.length()];
+        for (int cell = 0; cell < writes.length; ++cell)
+            writes[cell] = sampledWrites.get(cell) * writeSampling;
+        return writes;
+    }
+
+    /**
+     * @return the estimated number of writes recorded
+     */
+    @VisibleForTesting
+    long writes()
+    {
+        long total = 0;
+        for (long writes : cellWrites())
+            total += writes;
+        return total;
+    }
+
+    /**
+     * Calculates the boundaries for the next memtable from the writes recorded by this one.
+     */
+    private ShardBoundaries adapt(int baseShardCount, long[] shardContention)
+    {
+        long[] cellWrites = cellWrites();
+        int cells = cellWrites.length;
+        int shards = boundaries.shardCount();
+        assert shardContention.length == shards : shardContention.length + " != " + shards;
+
+        int[] cellShard = new int[cells];
+        long[] shardWrites = new long[shards];
+        long totalWrites = 0;
+        for (int cell = 0, shard = 0; cell < cells; ++cell)
+        {
+            // the last cell extends to the maximum token and always belongs to the last shard
+            while (shard < shards - 1 && (cell == cells - 1 || grid.shardEnd(cell).compareTo(boundaries.shardEnd(shard)) > 0))
+                ++shard;
+            cellShard[cell] = shard;
+            shardWrites[shard] += cellWrites[cell];
+            totalWrites += cellWrites[cell];
+        }
+
+        if (totalWrites < (long) MIN_WRITES_PER_CELL * cells)
+            return boundaries;
+
+        long totalContention = 0;
+        for (long contention : shardContention)
+            totalContention += contention;
+        double contentionRatio = (double) totalContention / totalWrites;
+
+        int shardCount = shards;
+        if (contentionRatio > GROW_CONTENTION_RATIO)
+            shardCount = Math.min(shards * 2, baseShardCount * MAX_SHARD_COUNT_MULTIPLIER);
+        else if (contentionRatio < SHRINK_CONTENTION_RATIO)
+            shardCount = Math.max(shards / 2, baseShardCount);
+
+        // Writes to shards that saw contention weigh more, so that these shards are split further.
+        double[] weights = new double[cells];
+        double totalWeight = 0;
+        for (int cell = 0; cell < cells; ++cell)
+        {
+            int shard = cellShard[cell];
+            double contentionFactor = shardWrites[shard] > 0 ? (double) shardContention[shard] / shardWrites[shard] : 0;
+            weights[cell] = cellWrites[cell] * (1 + contentionFactor);
+            totalWeight += weights[cell];
+        }
+        double uniform = totalWeight * UNIFORM_WEIGHT / cells;
+        totalWeight += uniform * cells;
+
+        // Place a boundary at the end of each cell where the cumulative weight passes the next multiple of
+        // totalWeight / shardCount. Cells heavier than that take a single shard, so the result may have fewer shards.
+        List<Token> tokens = new ArrayList<>(shardCount - 1);
+        double perShard = totalWeight / shardCount;
+        double cumulative = 0;
+        int nextBoundary = 1;
+        for (int cell = 0; cell < cells - 1 && nextBoundary < shardCount; ++cell)
+        {
+            cumulative += weights[cell] + uniform;
+            if (cumulative >= nextBoundary * perShard)
+            {
+                tokens.add(grid.shardEnd(cell));
+                while (nextBoundary < shardCount && cumulative >= nextBoundary * perShard)
+                    ++nextBoundary;
+            }
+        }
+        return new ShardBoundaries(tokens, grid.ringVersion);
+    }
+}
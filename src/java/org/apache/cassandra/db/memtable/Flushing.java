@@ -80,22 +80,27 @@ public class Flushing
                                               List<Directories.DataDirectory> locations,
                                               LifecycleTransaction txn)
     {
-        if (boundaries == null)
+        List<Token> splitPoints = memtable.getFlushSplitPoints();
+        if (boundaries == null && splitPoints.isEmpty())
         {
-            FlushRunnable runnable = flushRunnable(cfs, memtable, null, null, txn, null);
+            FlushRunnable runnable = flushRunnable(cfs, memtable, null, null, txn, null, 0);
             return Collections.singletonList(runnable);
         }
 
-        List<FlushRunnable> runnables = new ArrayList<>(boundaries.size());
-        PartitionPosition rangeStart = boundaries.get(0).getPartitioner().getMinimumToken().minKeyBound();
+        List<FlushRunnable> runnables = new ArrayList<>((boundaries != null ? boundaries.size() : 1) + splitPoints.size());
         try
         {
+            if (boundaries == null)
+            {
+                addFlushRunnables(runnables, cfs, memtable, null, null, splitPoints, txn, null, 0);
+                return runnables;
+            }
+
+            PartitionPosition rangeStart = boundaries.get(0).getPartitioner().getMinimumToken().minKeyBound();
             for (int i = 0; i < boundaries.size(); i++)
             {
                 PartitionPosition t = boundaries.get(i).maxKeyBound();
-                FlushRunnable runnable = flushRunnable(cfs, memtable, rangeStart, t, txn, locations.get(i));
-
-                runnables.add(runnable);
+                addFlushRunnables(runnables, cfs, memtable, rangeStart, t, splitPoints, txn, locations.get(i), i);
                 rangeStart = t;
             }
             return runnables;
@@ -106,13 +111,43 @@ public class Flushing
         }
     }
 
+    /**
+     * Adds the runnables flushing the given range to the given data directory, one for each part of the range between
+     * the memtable's split points, so that they can be written in parallel.
+     */
+    private static void addFlushRunnables(List<FlushRunnable> runnables,
+                                          ColumnFamilyStore cfs,
+                                          Memtable memtable,
+                                          PartitionPosition from,
+                                          PartitionPosition to,
+                                          List<Token> splitPoints,
+                                          LifecycleTransaction txn,
+                                          Directories.DataDirectory flushLocation,
+                                          int diskIndex)
+    {
+        PartitionPosition rangeStart = from;
+        for (Token splitPoint : splitPoints)
+        {
+            PartitionPosition t = splitPoint.maxKeyBound();
+            if (rangeStart != null && t.compareTo(rangeStart) <= 0)
+                continue;
+            if (to != null && t.compareTo(to) >= 0)
+                break;
+
+            runnables.add(flushRunnable(cfs, memtable, rangeStart, t, txn, flushLocation, diskIndex));
+            rangeStart = t;
+        }
+        runnables.add(flushRunnable(cfs, memtable, rangeStart, to, txn, flushLocation, diskIndex));
+    }
+
     @SuppressWarnings("resource")   // writer owned by runnable, to be closed or aborted by its caller
     static FlushRunnable flushRunnable(ColumnFamilyStore cfs,
                                        Memtable memtable,
                                        PartitionPosition from,
                                        PartitionPosition to,
                                        LifecycleTransaction txn,
-                                       Directories.DataDirectory flushLocation)
+                                       Directories.DataDirectory flushLocation,
+                                       int diskIndex)
     {
         Memtable.FlushCollection<?> flushSet = memtable.getFlushSet(from, to);
         SSTableFormat.Type formatType = SSTableFormat.Type.current();
@@ -138,7 +173,7 @@ public class Flushing
                                                       descriptor,
                                                       flushSet.partitionCount());
 
-        return new FlushRunnable(flushSet, writer, cfs.metric, true);
+        return new FlushRunnable(flushSet, writer, cfs.metric, true, diskIndex);
     }
 
     public static Throwable abortRunnables(List<FlushRunnable> runnables, Throwable t)
@@ -174,11 +209,21 @@ public class Flushing
         private final boolean isBatchLogTable;
         private final boolean logCompletion;
         private final AtomicReference<FlushRunnableWriterState> state;
+        private final int diskIndex;
 
         public FlushRunnable(Memtable.FlushCollection<?> flushSet,
                              SSTableMultiWriter writer,
                              TableMetrics metrics,
                              boolean logCompletion)
+        {
+            this(flushSet, writer, metrics, logCompletion, 0);
+        }
+
+        FlushRunnable(Memtable.FlushCollection<?> flushSet,
+                      SSTableMultiWriter writer,
+                      TableMetrics metrics,
+                      boolean logCompletion,
+                      int diskIndex)
         {
             this.toFlush = flushSet;
             this.writer = writer;
@@ -186,6 +231,15 @@ public class Flushing
             this.isBatchLogTable = toFlush.metadata() == SystemKeyspace.Batches;
             this.logCompletion = logCompletion;
             this.state = new AtomicReference<>(FlushRunnableWriterState.IDLE);
+            this.diskIndex = diskIndex;
+        }
+
+        /**
+         * The index of the data directory this runnable writes to, which selects the executor it should run on.
+         */
+        public int diskIndex()
+        {
+            return diskIndex;
         }
 
         private void writeSortedContents()
@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.DeserializationHelper;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.io.util.File;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Append-only log of partition updates kept in a memory-mapped file, used as the storage of
+ * {@link PersistentMemoryMemtable}.
+ * <p>
+ * The file starts with a header holding a magic number, the format and messaging versions, the segment size and the
+ * committed length of the file. It is followed by records, each of which is:
+ * <pre>
+ *   int     record length, including this header
+ *   int     CRC32 of the rest of the record
+ *   long    position of the previous record for the same partition, or -1
+ *   int     number of records in the chain ending with this one
+ *   long    minimum timestamp of the update
+ *   ushort  partition key length, followed by the partition key bytes
+ *   ...     serialized {@link PartitionUpdate}
+ * </pre>
+ * The file is mapped in segments of fixed size. A record never crosses a segment boundary unless it is bigger than a
+ * segment, in which case it starts at a boundary and is mapped together with the segments it spans. A zero record
+ * length marks the unused remainder of a segment.
+ * <p>
+ * The committed length is updated after each record is written, thus a record that was partially written when the
+ * process died will be ignored when the file is reopened. The file is not forced to disk; on a regular file system
+ * the data survives process restarts, but survives machine failures only if it was written back by the operating
+ * system (or if the file is on persistent memory). {@link PersistentMemoryMemtable} only relies on the file for
+ * durability in the latter case.
+ * <p>
+ * Appends must be serialized by the caller. Reads are safe to perform concurrently with appends for any record whose
+ * position was returned by a completed {@link #append} call.
+ */
+class MappedMemtableFile
+{
+    private static final Logger logger = LoggerFactory.getLogger(MappedMemtableFile.class);
+
+    static final String EXTENSION = ".db";
+
+    private static final int MAGIC = 0x504D4D31; // "PMM1"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int MESSAGING_VERSION_OFFSET = 8;
+    private static final int SEGMENT_SIZE_OFFSET = 12;
+    private static final int COMMITTED_LENGTH_OFFSET = 16;
+    static final int HEADER_SIZE = 32;
+
+    private static final int RECORD_LENGTH_OFFSET = 0;
+    private static final int RECORD_CRC_OFFSET = 4;
+    private static final int RECORD_PREVIOUS_OFFSET = 8;
+    private static final int RECORD_CHAIN_LENGTH_OFFSET = 16;
+    private static final int RECORD_MIN_TIMESTAMP_OFFSET = 20;
+    private static final int RECORD_KEY_LENGTH_OFFSET = 28;
+    static final int RECORD_HEADER_SIZE = 30;
+
+    /**
+     * A mapped region of the file. Normally this is a single segment, but records bigger than a segment are mapped
+     * in a region that spans several.
+     */
+    private static class Region
+    {
+        final long start;
+        final MappedByteBuffer buffer;
+
+        Region(long start, MappedByteBuffer buffer)
+        {
+            this.start = start;
+            this.buffer = buffer;
+        }
+    }
+
+    interface RecordConsumer
+    {
+        void accept(long position, ByteBuffer key, long minTimestamp);
+    }
+
+    final File file;
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final int messagingVersion;
+
+    /** Regions indexed by segment. Regions that span multiple segments are stored in all of them. */
+    private volatile Region[] regions = new Region[16];
+    private volatile long length;
+
+    private MappedMemtableFile(File file, FileChannel channel, int segmentSize, int messagingVersion)
+    {
+        this.file = file;
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        this.messagingVersion = messagingVersion;
+    }
+
+    /**
+     * Create a new, empty file.
+     */
+    static MappedMemtableFile create(File file, int segmentSize)
+    {
+        FileChannel channel = null;
+        try
+        {
+            channel = file.newReadWriteChannel();
+            MappedMemtableFile mapped = new MappedMemtableFile(file, channel, segmentSize, MessagingService.current_version);
+            ByteBuffer header = mapped.map(0, HEADER_SIZE);
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+            header.putInt(MESSAGING_VERSION_OFFSET, mapped.messagingVersion);
+            header.putInt(SEGMENT_SIZE_OFFSET, segmentSize);
+            mapped.setLength(HEADER_SIZE);
+            return mapped;
+        }
+        catch (IOException e)
+        {
+            FileUtils.closeQuietly(channel);
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * Open an existing file, passing the position, partition key and minimum timestamp of each of its valid records
+     * to the given consumer. Records are listed in the order they were written. The file keeps the segment size it
+     * was created with.
+     */
+    static MappedMemtableFile open(File file, RecordConsumer consumer)
+    {
+        FileChannel channel = null;
+        try
+        {
+            channel = file.newReadWriteChannel();
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException("File too short to be a memtable file: " + channel.size() + " bytes");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION)
+                throw new IOException(String.format("Unrecognized memtable file format (magic %08x, version %d)",
+                                                    header.getInt(MAGIC_OFFSET),
+                                                    header.getInt(FORMAT_VERSION_OFFSET)));
+
+            int segmentSize = header.getInt(SEGMENT_SIZE_OFFSET);
+            if (segmentSize < HEADER_SIZE)
+                throw new IOException("Invalid segment size in memtable file: " + segmentSize);
+            MappedMemtableFile mapped = new MappedMemtableFile(file, channel, segmentSize, header.getInt(MESSAGING_VERSION_OFFSET));
+            long committedLength = header.getLong(COMMITTED_LENGTH_OFFSET);
+            long position = HEADER_SIZE;
+            while (position < committedLength)
+            {
+                int size = mapped.recordLength(position);
+                if (size == 0)
+                {
+                    position = mapped.nextSegmentStart(position);
+                    continue;
+                }
+
+                ByteBuffer record = size >= RECORD_HEADER_SIZE && size <= committedLength - position
+                                    ? mapped.slice(position, size)
+                                    : null;
+                if (record == null || !isValid(record))
+                {
+                    logger.warn("Found corrupted record at position {} in {}, ignoring the rest of the file",
+                                position, file);
+                    break;
+                }
+
+                consumer.accept(position, key(record), record.getLong(RECORD_MIN_TIMESTAMP_OFFSET));
+                position += size;
+            }
+            mapped.length = position;
+            return mapped;
+        }
+        catch (IOException e)
+        {
+            FileUtils.closeQuietly(channel);
+            throw new FSReadError(e, file);
+        }
+    }
+
+    /**
+     * Append a record to the file and return its position.
+     */
+    long append(PartitionUpdate update, long previous, int chainLength, long minTimestamp)
+    {
+        ByteBuffer key = update.partitionKey().getKey();
+        long size = RECORD_HEADER_SIZE + key.remaining() + PartitionUpdate.serializer.serializedSize(update, messagingVersion);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Partition update too big to store in a memtable file: " + size + " bytes");
+
+        try
+        {
+            long position = allocate((int) size);
+            ByteBuffer record = slice(position, (int) size);
+            record.putInt(RECORD_LENGTH_OFFSET, (int) size);
+            record.putLong(RECORD_PREVIOUS_OFFSET, previous);
+            record.putInt(RECORD_CHAIN_LENGTH_OFFSET, chainLength);
+            record.putLong(RECORD_MIN_TIMESTAMP_OFFSET, minTimestamp);
+            record.putShort(RECORD_KEY_LENGTH_OFFSET, (short) key.remaining());
+            record.position(RECORD_HEADER_SIZE);
+            record.put(key.duplicate());
+            PartitionUpdate.serializer.serialize(update, new DataOutputBufferFixed(record), messagingVersion);
+            record.putInt(RECORD_CRC_OFFSET, checksum(record, (int) size));
+
+            setLength(position + size);
+            return position;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * The position of the previous record in the chain of the record at the given position, or -1 if it is the first.
+     */
+    long previous(long position)
+    {
+        return recordAt(position).getLong(RECORD_PREVIOUS_OFFSET);
+    }
+
+    /**
+     * The number of records in the chain ending at the given position.
+     */
+    int chainLength(long position)
+    {
+        return recordAt(position).getInt(RECORD_CHAIN_LENGTH_OFFSET);
+    }
+
+    /**
+     * Deserialize the partition update stored in the record at the given position.
+     */
+    PartitionUpdate read(long position)
+    {
+        ByteBuffer record = recordAt(position);
+        record.position(RECORD_HEADER_SIZE + keyLength(record));
+        try
+        {
+            return PartitionUpdate.serializer.deserialize(new DataInputBuffer(record, false),
+                                                          messagingVersion,
+                                                          DeserializationHelper.Flag.LOCAL);
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    /**
+     * The size of the file, including the header and any unused segment remainders.
+     */
+    long length()
+    {
+        return length;
+    }
+
+    /**
+     * Close the file without releasing the mapped memory, which stays valid until garbage-collected.
+     */
+    void close()
+    {
+        FileUtils.closeQuietly(channel);
+    }
+
+    /**
+     * Release the mapped memory and delete the file. The caller must ensure that no reads are in progress or will be
+     * issued afterwards.
+     */
+    void delete()
+    {
+        close();
+        Region[] regions = this.regions;
+        Region last = null;
+        for (Region region : regions)
+        {
+            if (region != null && region != last)
+                FileUtils.clean(region.buffer);
+            last = region;
+        }
+        file.tryDelete();
+    }
+
+    private void setLength(long length)
+    {
+        this.length = length;
+        map(0, HEADER_SIZE).putLong(COMMITTED_LENGTH_OFFSET, length);
+    }
+
+    private long nextSegmentStart(long position)
+    {
+        return (position / segmentSize + 1) * segmentSize;
+    }
+
+    /**
+     * Find a position for a record of the given size, marking any skipped part of the current segment as unused and
+     * making sure the target region is mapped.
+     */
+    private long allocate(int size) throws IOException
+    {
+        long position = length;
+        int offsetInSegment = (int) (position % segmentSize);
+        if (offsetInSegment != 0 && offsetInSegment + size > segmentSize)
+        {
+            if (segmentSize - offsetInSegment >= 4)
+                slice(position, 4).putInt(RECORD_LENGTH_OFFSET, 0);
+            position = nextSegmentStart(position);
+        }
+        map(position, size);
+        return position;
+    }
+
+    /**
+     * The length of the record at the given position, or 0 if the position holds an unused segment remainder.
+     */
+    private int recordLength(long position)
+    {
+        if (segmentSize - position % segmentSize < 4)
+            return 0;
+        MappedByteBuffer buffer = map(position, 4);
+        return buffer.getInt(offsetInSegment(position) + RECORD_LENGTH_OFFSET);
+    }
+
+    /**
+     * Return the record at the given position as a buffer with the record's length.
+     */
+    private ByteBuffer recordAt(long position)
+    {
+        return slice(position, recordLength(position));
+    }
+
+    private static boolean isValid(ByteBuffer record)
+    {
+        int size = record.remaining();
+        return RECORD_HEADER_SIZE + keyLength(record) <= size
+               && record.getInt(RECORD_CRC_OFFSET) == checksum(record, size);
+    }
+
+    private static int keyLength(ByteBuffer record)
+    {
+        return record.getShort(RECORD_KEY_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    private static ByteBuffer key(ByteBuffer record)
+    {
+        ByteBuffer key = record.duplicate();
+        key.position(RECORD_HEADER_SIZE).limit(RECORD_HEADER_SIZE + keyLength(record));
+        return ByteBufferUtil.clone(key);
+    }
+
+    private static int checksum(ByteBuffer record, int size)
+    {
+        CRC32 crc = new CRC32();
+        FBUtilities.updateChecksum(crc, record, RECORD_PREVIOUS_OFFSET, size - RECORD_PREVIOUS_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    private int offsetInSegment(long position)
+    {
+        return (int) (position - regions[(int) (position / segmentSize)].start);
+    }
+
+    /**
+     * Returns a buffer positioned at the start of the given range, with limit at its end.
+     */
+    private ByteBuffer slice(long position, int size)
+    {
+        ByteBuffer buffer = map(position, size).duplicate();
+        int offset = offsetInSegment(position);
+        buffer.limit(offset + size).position(offset);
+        return buffer.slice();
+    }
+
+    /**
+     * Make sure the given range is mapped and return the buffer of the region that contains it.
+     */
+    private MappedByteBuffer map(long position, int size)
+    {
+        int segment = (int) (position / segmentSize);
+        Region[] regions = this.regions;
+        if (segment < regions.length)
+        {
+            Region region = regions[segment];
+            if (region != null && position + size <= region.start + region.buffer.capacity())
+                return region.buffer;
+        }
+
+        synchronized (this)
+        {
+            regions = this.regions;
+            long end = position + size;
+            int segmentCount = (int) ((end - 1) / segmentSize) - segment + 1;
+            if (segment + segmentCount > regions.length)
+                regions = Arrays.copyOf(regions, Math.max(regions.length * 2, segment + segmentCount));
+            else
+                regions = regions.clone();
+
+            try
+            {
+                long start = (long) segment * segmentSize;
+                Region region = new Region(start, channel.map(FileChannel.MapMode.READ_WRITE, start, (long) segmentCount * segmentSize));
+                for (int i = 0; i < segmentCount; ++i)
+                    regions[segment + i] = region;
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, file);
+            }
+            this.regions = regions;
+            return regions[segment].buffer;
+        }
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.apache.cassandra.db.memtable;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.util.concurrent.ListenableFuture;
@@ -34,6 +36,7 @@ import org.apache.cassandra.db.partitions.Partition;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.rows.EncodingStats;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.index.transactions.UpdateTransaction;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.metrics.TableMetrics;
@@ -163,6 +166,12 @@ public interface Memtable extends Comparable<Memtable>
         Iterable<Memtable> getIndexMemtables();
 
         ShardBoundaries localRangeSplits(int shardCount);
+
+        /**
+         * Get the operation order that reads of this owner's memtables execute in, or null if reads are not tracked.
+         * Memtables may use it to determine when space released by writes can no longer be accessed by readers.
+         */
+        OpOrder getReadOrdering();
     }
 
     // Main write and read operations
@@ -310,6 +319,16 @@ public interface Memtable extends Comparable<Memtable>
      */
     FlushCollection<?> getFlushSet(PartitionPosition from, PartitionPosition to);
 
+    /**
+     * Tokens at which a flush of this memtable can be split into separate sstables that are written in parallel, e.g.
+     * the boundaries of the memtable's shards. Each token is the inclusive end of a split. Empty if the memtable does
+     * not benefit from splitting.
+     */
+    default List<Token> getFlushSplitPoints()
+    {
+        return Collections.emptyList();
+    }
+
     /**
      * A collection of partitions for flushing plus some information required for writing an sstable.
      *
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+import org.agrona.collections.IntArrayList;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.apache.cassandra.db.Columns;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.rows.ColumnData;
+import org.apache.cassandra.db.rows.DeserializationHelper;
+import org.apache.cassandra.db.rows.EncodingStats;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.SerializationHelper;
+import org.apache.cassandra.db.rows.UnfilteredSerializer;
+import org.apache.cassandra.db.tries.MemtableTrie;
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+/**
+ * Storage for the serialized rows of a {@link TrieMemtable} shard in the rowsInTrie mode.
+ * <p>
+ * Rows are serialized against the columns the table had when the shard was created, into buffers of the memtable
+ * trie's buffer type (off-heap unless the memtable allocation type is on-heap). The position of a row, an
+ * {@code Integer} that the shard's trie stores in its nodes using {@link #INLINE_POSITIONS}, is what the trie maps the
+ * row's path to, so that a memtable holding many small rows keeps no object per row instead of the row, its cells and
+ * their values.
+ * <p>
+ * Like the trie's own buffers, the buffers of the store double in size as it grows, starting with
+ * {@link #CHUNK_START_SIZE} bytes. Rows are stored at multiples of {@link #GRANULE}, each preceded by its size.
+ * <p>
+ * Stored rows are never modified: merging an update into a row writes the merged row to a new place, and the place of
+ * the previous version is released. Released places are reused for rows of the same size once the reads that were in
+ * progress when the update completed have finished, as tracked by the memtable's read ordering (the same way the trie
+ * reuses its cells). Writes must be serialized by the caller, reads may happen concurrently with them.
+ */
+class MemtableRowStore
+{
+    private static final int GRANULE_SHIFT = 4;
+    /** Rows are stored at positions that are multiples of this, so that the trie can store their positions. */
+    static final int GRANULE = 1 << GRANULE_SHIFT;
+
+    private static final int CHUNK_START_SHIFT = 16;
+    static final int CHUNK_START_SIZE = 1 << CHUNK_START_SHIFT;
+
+    /**
+     * The largest row stored, with its size. Any row fits in the chunk that follows the current one; larger rows are
+     * kept as objects.
+     */
+    static final int MAX_ROW_SIZE = CHUNK_START_SIZE;
+
+    /** The places of rows up to this size, with their size, are reused. The few larger rows are rarely updated. */
+    static final int MAX_REUSED_SIZE = 1 << 10;
+
+    /**
+     * The store's size above which it requests a flush, well before it runs out of positions. Like
+     * {@link MemtableTrie#reachedAllocatedSizeThreshold}, this is only reached by memtables much larger than normal.
+     */
+    static final long ALLOCATED_SIZE_THRESHOLD = 1L << 30;
+
+    private static final int SIZE_LENGTH = Short.BYTES;
+    private static final int VERSION = MessagingService.current_version;
+
+    /**
+     * Encoding of row positions that the shard's trie uses to store them in its nodes instead of its content list.
+     */
+    static final MemtableTrie.InlineContent<Object> INLINE_POSITIONS = new MemtableTrie.InlineContent<Object>()
+    {
+        public int encode(Object content)
+        {
+            return content instanceof Integer ? (Integer) content >>> GRANULE_SHIFT : -1;
+        }
+
+        public Object decode(int value)
+        {
+            return value << GRANULE_SHIFT;
+        }
+    };
+
+    private final BufferType bufferType;
+    private final TableMetadata metadata;
+    private final SerializationHeader header;
+    private final SerializationHelper helper;
+    private final DataOutputBuffer output = new DataOutputBuffer();
+    @Nullable
+    private final OpOrder readOrder;
+
+    // Chunk i starts at position CHUNK_START_SIZE * (2^i - 1) and has CHUNK_START_SIZE * 2^i bytes. Readers get to a
+    // chunk through a position published by the trie, after the chunk was set.
+    private final ByteBuffer[] chunks = new ByteBuffer[31 - CHUNK_START_SHIFT];
+    private final UnsafeBuffer[] writeChunks = new UnsafeBuffer[chunks.length];
+    private int allocatedPosition = 0;
+    private volatile long allocated = 0;
+
+    // Released places of rows, by the stage of their reuse, as in the trie's memory allocation strategy.
+    private IntArrayList justReleased = new IntArrayList();
+    private IntArrayList awaitingBarrier = new IntArrayList();
+    private IntArrayList awaitingReaders = new IntArrayList();
+    private final IntArrayList[] free = new IntArrayList[(MAX_REUSED_SIZE >> GRANULE_SHIFT) + 1];
+    private OpOrder.Barrier barrier = null;
+
+    /**
+     * @param readOrder the order of the reads of the memtable, or null if they are not tracked, in which case the
+     *                  places of superseded rows are not reused
+     */
+    MemtableRowStore(TableMetadata metadata, BufferType bufferType, @Nullable OpOrder readOrder)
+    {
+        this.metadata = metadata;
+        this.bufferType = bufferType;
+        this.readOrder = readOrder;
+        this.header = new SerializationHeader(false, metadata, metadata.regularAndStaticColumns(), EncodingStats.NO_STATS);
+        this.helper = new SerializationHelper(header);
+    }
+
+    /**
+     * Serializes the given row into the store.
+     *
+     * @return the position of the row, or -1 if the row has columns the store does not know about (added to the
+     * table after the creation of the store), is larger than {@link #MAX_ROW_SIZE} or the store is full, in which case
+     * it must be kept as an object.
+     */
+    int write(Row row)
+    {
+        Columns columns = header.columns(false);
+        for (ColumnData data : row)
+        {
+            if (!columns.contains(data.column()))
+                return -1;
+        }
+
+        output.clear();
+        try
+        {
+            UnfilteredSerializer.serializer.serialize(row, helper, output, VERSION);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError("Serializing to a memory buffer should not fail", e);
+        }
+
+        int length = output.getLength();
+        int size = (SIZE_LENGTH + length + GRANULE - 1) & -GRANULE;
+        if (size > MAX_ROW_SIZE)
+            return -1;
+
+        int position = allocate(size);
+        if (position < 0)
+            return -1;
+
+        UnsafeBuffer chunk = writeChunks[chunkIndex(position)];
+        int inChunkPosition = inChunkPosition(position);
+        chunk.putShort(inChunkPosition, (short) (size >> GRANULE_SHIFT));
+        chunk.putBytes(inChunkPosition + SIZE_LENGTH, output.getData(), 0, length);
+        return position;
+    }
+
+    private int allocate(int size)
+    {
+        if (size <= MAX_REUSED_SIZE)
+        {
+            processBarrier();
+            IntArrayList reusable = free[size >> GRANULE_SHIFT];
+            if (reusable != null && !reusable.isEmpty())
+                return reusable.popInt();
+        }
+
+        int position = allocatedPosition;
+        int chunkIndex = chunkIndex(position);
+        if (chunkIndex < chunks.length && (long) position + size > chunkStart(chunkIndex + 1))
+        {
+            // The rest of the current chunk is wasted, the row goes to the next one.
+            position = (int) chunkStart(++chunkIndex);
+        }
+        if (chunkIndex >= chunks.length)
+            return -1;
+
+        if (chunks[chunkIndex] == null)
+            addChunk(chunkIndex);
+        allocatedPosition = position + size;
+        return position;
+    }
+
+    private void addChunk(int chunkIndex)
+    {
+        int size = CHUNK_START_SIZE << chunkIndex;
+        ByteBuffer chunk = bufferType.allocate(size);
+        writeChunks[chunkIndex] = new UnsafeBuffer(chunk);
+        chunks[chunkIndex] = chunk;
+        allocated = allocated + size;
+    }
+
+    private static int chunkIndex(int position)
+    {
+        return 31 - CHUNK_START_SHIFT - Integer.numberOfLeadingZeros(position + CHUNK_START_SIZE);
+    }
+
+    private static long chunkStart(int chunkIndex)
+    {
+        return ((long) CHUNK_START_SIZE << chunkIndex) - CHUNK_START_SIZE;
+    }
+
+    private static int inChunkPosition(int position)
+    {
+        return (int) (position - chunkStart(chunkIndex(position)));
+    }
+
+    /**
+     * Marks the row at the given position as superseded by the current update. Its place is reused after the update
+     * completes (see {@link #completeUpdate}) and the reads in progress at the time finish.
+     */
+    void release(int position)
+    {
+        if (readOrder != null)
+            justReleased.addInt(position);
+    }
+
+    /**
+     * To be called when an update completes, i.e. when the rows it released are no longer reachable by readers that
+     * start after this call.
+     */
+    void completeUpdate()
+    {
+        if (!justReleased.isEmpty())
+        {
+            moveAll(justReleased, awaitingBarrier);
+            processBarrier();
+        }
+    }
+
+    /**
+     * To be called when an update fails. The rows it released may still be reachable and their places are not reused.
+     */
+    void abortUpdate()
+    {
+        justReleased.clear();
+    }
+
+    private void processBarrier()
+    {
+        if (barrier != null && barrier.getSyncPoint().isFinished())
+        {
+            for (int i = 0; i < awaitingReaders.size(); ++i)
+            {
+                int position = awaitingReaders.getInt(i);
+                int sizeClass = writeChunks[chunkIndex(position)].getShort(inChunkPosition(position));
+                if (sizeClass >= free.length)
+                    continue;
+                if (free[sizeClass] == null)
+                    free[sizeClass] = new IntArrayList();
+                free[sizeClass].addInt(position);
+            }
+            awaitingReaders.clear();
+            barrier = null;
+        }
+
+        if (barrier == null && !awaitingBarrier.isEmpty())
+        {
+            IntArrayList t = awaitingReaders;
+            awaitingReaders = awaitingBarrier;
+            awaitingBarrier = t;
+            barrier = readOrder.newBarrier();
+            barrier.issue();
+        }
+    }
+
+    private static void moveAll(IntArrayList from, IntArrayList to)
+    {
+        for (int i = 0; i < from.size(); ++i)
+            to.addInt(from.getInt(i));
+        from.clear();
+    }
+
+    /**
+     * @return a helper for reading rows with {@link #read}; it must not be shared between threads.
+     */
+    DeserializationHelper readHelper()
+    {
+        return new DeserializationHelper(metadata, VERSION, DeserializationHelper.Flag.LOCAL);
+    }
+
+    /**
+     * Reads the row at the given position. The returned row is on-heap and does not reference the store.
+     */
+    Row read(int position, DeserializationHelper readHelper, Row.Builder builder)
+    {
+        ByteBuffer chunk = chunks[chunkIndex(position)].duplicate();
+        chunk.position(inChunkPosition(position) + SIZE_LENGTH);
+        try (DataInputBuffer in = new DataInputBuffer(chunk, false))
+        {
+            return (Row) UnfilteredSerializer.serializer.deserialize(in, header, readHelper, builder);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError("Deserializing from a memory buffer should not fail", e);
+        }
+    }
+
+    boolean reachedAllocatedSizeThreshold()
+    {
+        return allocated >= ALLOCATED_SIZE_THRESHOLD;
+    }
+
+    long sizeOffHeap()
+    {
+        return bufferType == BufferType.ON_HEAP ? 0 : allocated;
+    }
+
+    long sizeOnHeap()
+    {
+        return bufferType == BufferType.ON_HEAP ? allocated : 0;
+    }
+
+    void discard()
+    {
+        if (bufferType == BufferType.ON_HEAP)
+            return;
+
+        for (ByteBuffer chunk : chunks)
+            if (chunk != null)
+                FileUtils.clean(chunk);
+    }
+}
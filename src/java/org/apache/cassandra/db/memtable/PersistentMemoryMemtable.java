@@ -18,68 +18,497 @@
 
 package org.apache.cassandra.db.memtable;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.PartitionPosition;
 import org.apache.cassandra.db.commitlog.CommitLogPosition;
 import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.partitions.AbstractUnfilteredPartitionIterator;
 import org.apache.cassandra.db.partitions.Partition;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.Bounds;
+import org.apache.cassandra.dht.IncludingExcludingBounds;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.index.transactions.UpdateTransaction;
+import org.apache.cassandra.io.util.File;
+import org.apache.cassandra.schema.TableId;
+import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.HeapCloner;
 
 /**
- * Skeleton for persistent memory memtable.
+ * Memtable whose content is stored in a memory-mapped file, which survives restarts of the process. When the
+ * file is placed on tmpfs, a local fast disk or persistent memory, the memtable does not need to be flushed to make
+ * its content durable and restarting a node does not require replaying the commit log for the table.
+ * <p>
+ * The content is kept as a log of partition updates (see {@link MappedMemtableFile}), where each record links to the
+ * previous record of the same partition. An in-memory index maps each partition key to its latest record, and is
+ * rebuilt from the record headers when the memtable is recovered after a restart. Reading a partition merges its
+ * chain of updates; when a chain gets too long, the next write stores the merged partition instead.
+ * <p>
+ * The first memtable created for a table in a process recovers the data left by the previous process. The newest
+ * file is taken over as the memtable's own file, while any older ones (left by memtables that were switched out but
+ * not discarded, e.g. because the process died while they were flushing) are replayed into it and deleted.
+ * <p>
+ * Flushes are avoided in most cases; the memtable asks to be flushed only when its file grows over the size set by
+ * {@link #FLUSH_SIZE_PROPERTY}, or when a snapshot is taken or an index or view is built, as these only consider the
+ * sstables. Updates to secondary indexes are reported as insertions, and a recovered memtable of a table with indexes
+ * is flushed at startup so that the indexes can see its data.
+ * <p>
+ * The memtable files are not forced to disk, so their content only survives a machine failure if they are on persistent
+ * memory. The memtable thus only reports its writes as durable, which stops the commit log from replaying them and from
+ * keeping the segments that hold them, and only accepts the {@code skipCommitLog} option, when its directory is on a
+ * file system mounted with DAX (direct access), where the stores to the mapped files reach persistent memory without
+ * going through the page cache. Elsewhere, the commit log remains responsible for the durability of the writes.
  */
-public class PersistentMemoryMemtable
-//extends AbstractMemtable
-extends SkipListMemtable        // to test framework
+public class PersistentMemoryMemtable extends AbstractMemtable
 {
-    public PersistentMemoryMemtable(TableMetadataRef metadaRef, Owner owner)
+    private static final Logger logger = LoggerFactory.getLogger(PersistentMemoryMemtable.class);
+
+    /** The directory where memtable files are kept. Defaults to a directory next to the commit log. */
+    public static final String DIRECTORY_PROPERTY = "cassandra.persistent_memtable.directory";
+    public static final String SEGMENT_SIZE_PROPERTY = "cassandra.persistent_memtable.segment_size_in_mb";
+    public static final String FLUSH_SIZE_PROPERTY = "cassandra.persistent_memtable.flush_size_in_mb";
+
+    @VisibleForTesting
+    static volatile int SEGMENT_SIZE = Integer.getInteger(SEGMENT_SIZE_PROPERTY, 32) << 20;
+    @VisibleForTesting
+    static volatile long FLUSH_SIZE = Long.getLong(FLUSH_SIZE_PROPERTY, 4096L) << 20;
+
+    /** The number of updates that can be chained for a partition before they are merged into a single record. */
+    private static final int MAX_CHAIN_LENGTH = 8;
+
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("memtable-(\\d+)" + Pattern.quote(MappedMemtableFile.EXTENSION));
+
+    /** The tables whose memtable files were already recovered by this process. */
+    @VisibleForTesting
+    static final Set<TableId> recoveredTables = ConcurrentHashMap.newKeySet();
+
+    private final Owner owner;
+    private final MappedMemtableFile file;
+
+    // We index the memtable by PartitionPosition only for the purpose of being able
+    // to select key range using Token.KeyBound. However put() ensures that we
+    // actually only store DecoratedKey.
+    private final ConcurrentNavigableMap<PartitionPosition, Long> partitions = new ConcurrentSkipListMap<>();
+
+    private final Lock writeLock = new ReentrantLock();
+    private final boolean recovered;
+    private volatile boolean flushRequested = false;
+    // the write barrier for directing writes to this memtable or the next during a switch
+    private volatile OpOrder.Barrier writeBarrier;
+
+    public PersistentMemoryMemtable(TableMetadataRef metadataRef, Owner owner)
+    {
+        super(metadataRef);
+        this.owner = owner;
+
+        TableMetadata metadata = metadataRef.get();
+        File directory = directory(metadata);
+        synchronized (PersistentMemoryMemtable.class)
+        {
+            directory.tryCreateDirectories();
+            File[] existing = listFiles(directory);
+            recovered = recoveredTables.add(metadata.id) && existing.length > 0;
+            if (recovered)
+            {
+                file = MappedMemtableFile.open(existing[existing.length - 1], this::recoverRecord);
+                columnsCollector.update(metadata.regularAndStaticColumns());
+                for (int i = 0; i < existing.length - 1; ++i)
+                    replay(existing[i]);
+                logger.info("Recovered {} partitions of {}.{} from {}",
+                            partitions.size(), metadata.keyspace, metadata.name, file.file);
+            }
+            else
+            {
+                int generation = existing.length > 0 ? generation(existing[existing.length - 1]) + 1 : 0;
+                file = MappedMemtableFile.create(directory.resolve(fileName(generation)), SEGMENT_SIZE);
+            }
+        }
+    }
+
+    private static File rootDirectory()
+    {
+        String location = System.getProperty(DIRECTORY_PROPERTY);
+        return location != null
+               ? new File(location)
+               : DatabaseDescriptor.getCommitLogLocation().resolveSibling("persistent_memtables");
+    }
+
+    private static File directory(TableMetadata metadata)
+    {
+        return rootDirectory().resolve(metadata.keyspace).resolve(metadata.name + '-' + metadata.id.toHexString());
+    }
+
+    /**
+     * Whether the memtable directory is on a file system mounted with DAX, see {@link #isOnDaxMount}.
+     */
+    private static final Supplier<Boolean> onPersistentMemory = Suppliers.memoize(PersistentMemoryMemtable::detectPersistentMemory);
+
+    private static boolean detectPersistentMemory()
+    {
+        File root = rootDirectory();
+        try
+        {
+            root.tryCreateDirectories();
+            boolean dax = isOnDaxMount(root.toPath().toRealPath(), Files.readAllLines(Paths.get("/proc/mounts")));
+            if (dax)
+                logger.info("Persistent memtable directory {} is on a DAX file system, its writes are durable", root);
+            else
+                logger.info("Persistent memtable directory {} is not on a DAX file system, its writes rely on the commit log for durability", root);
+            return dax;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("Could not determine if persistent memtable directory {} is on persistent memory, assuming it is not: {}",
+                        root, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the given path is on a file system mounted with the {@code dax} option, according to the given
+     * lines of {@code /proc/mounts}
+     */
+    @VisibleForTesting
+    static boolean isOnDaxMount(Path path, List<String> mounts)
     {
-        super(null, metadaRef, owner);
-        // We should possibly link the persistent data of this memtable
+        int longestMountPoint = -1;
+        boolean dax = false;
+        for (String mount : mounts)
+        {
+            // device, mount point, file system type, options, ...
+            String[] fields = mount.split(" ");
+            if (fields.length < 4)
+                continue;
+
+            Path mountPoint = Paths.get(fields[1].replace("\\040", " "));
+            // the last mount on the same mount point hides the previous ones
+            if (!path.startsWith(mountPoint) || mountPoint.getNameCount() < longestMountPoint)
+                continue;
+
+            longestMountPoint = mountPoint.getNameCount();
+            List<String> options = Arrays.asList(fields[3].split(","));
+            dax = options.contains("dax") || options.contains("dax=always");
+        }
+        return dax;
+    }
+
+    private static String fileName(int generation)
+    {
+        return "memtable-" + generation + MappedMemtableFile.EXTENSION;
+    }
+
+    private static int generation(File file)
+    {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(file.name());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * List the memtable files in the given directory, in the order they were created.
+     */
+    private static File[] listFiles(File directory)
+    {
+        File[] files = directory.tryList(f -> generation(f) >= 0);
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files, Comparator.comparingInt(PersistentMemoryMemtable::generation));
+        return files;
+    }
+
+    private void recoverRecord(long position, ByteBuffer key, long minTimestamp)
+    {
+        // Later records for the same partition link to the earlier ones, so we only need to keep the last one.
+        partitions.put(metadata().partitioner.decorateKey(key), position);
+        updateMin(this.minTimestamp, minTimestamp);
+        currentOperations.incrementAndGet();
+    }
+
+    private void replay(File older)
+    {
+        List<Long> positions = new ArrayList<>();
+        MappedMemtableFile olderFile = MappedMemtableFile.open(older, (position, key, minTimestamp) -> positions.add(position));
+        for (long position : positions)
+        {
+            PartitionUpdate update = olderFile.read(position);
+            write(update);
+            updateStats(update);
+        }
+        olderFile.delete();
+        logger.info("Replayed {} partition updates from {}", positions.size(), older);
+    }
+
+    public boolean isClean()
+    {
+        return partitions.isEmpty();
     }
 
     public long put(PartitionUpdate update, UpdateTransaction indexer, OpOrder.Group opGroup)
     {
-        // TODO: implement
-        return super.put(update, indexer, opGroup);
+        long length = write(update);
+        reportToIndexer(update, indexer);
+        updateStats(update);
+
+        if (length >= FLUSH_SIZE && !flushRequested)
+        {
+            flushRequested = true;
+            owner.signalFlushRequired(this, ColumnFamilyStore.FlushReason.MEMTABLE_LIMIT);
+        }
+        // We do not look at the existing data, thus we cannot tell how close the update's timestamps are to it.
+        return Long.MAX_VALUE;
     }
 
-    public MemtableUnfilteredPartitionIterator makePartitionIterator(ColumnFilter columnFilter, DataRange dataRange)
+    /**
+     * Append the update to the file and link it to the partition's previous records, or merge it with them if the
+     * chain of records is too long. Returns the length of the file after the write.
+     */
+    private long write(PartitionUpdate update)
+    {
+        DecoratedKey key = update.partitionKey();
+        writeLock.lock();
+        try
+        {
+            Long previous = partitions.get(key);
+            long position;
+            if (previous == null)
+            {
+                key = HeapCloner.instance.clone(key);
+                position = file.append(update, -1, 1, update.stats().minTimestamp);
+            }
+            else
+            {
+                int chainLength = file.chainLength(previous);
+                if (chainLength < MAX_CHAIN_LENGTH)
+                {
+                    position = file.append(update, previous, chainLength + 1, update.stats().minTimestamp);
+                }
+                else
+                {
+                    PartitionUpdate merged = PartitionUpdate.merge(ImmutableList.of(readPartition(previous), update));
+                    position = file.append(merged, -1, 1, merged.stats().minTimestamp);
+                }
+            }
+            partitions.put(key, position);
+            return file.length();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private void updateStats(PartitionUpdate update)
     {
-        // TODO: implement
-        return super.makePartitionIterator(columnFilter, dataRange);
+        updateMin(minTimestamp, update.stats().minTimestamp);
+        columnsCollector.update(update.columns());
+        statsCollector.update(update.stats());
+        currentOperations.addAndGet(update.operationCount());
     }
 
-    public Partition getPartition(DecoratedKey key)
+    /**
+     * Report the content of the update to the indexer. As we do not read the existing data of the partition, all
+     * rows are reported as inserted.
+     */
+    private static void reportToIndexer(PartitionUpdate update, UpdateTransaction indexer)
     {
-        // TODO: implement
-        return super.getPartition(key);
+        if (indexer == UpdateTransaction.NO_OP)
+            return;
+
+        indexer.start();
+        if (!update.partitionLevelDeletion().isLive())
+            indexer.onPartitionDeletion(update.partitionLevelDeletion());
+        if (update.deletionInfo().hasRanges())
+            update.deletionInfo().rangeIterator(false).forEachRemaining(indexer::onRangeTombstone);
+        if (!update.staticRow().isEmpty())
+            indexer.onInserted(update.staticRow());
+        for (Row row : update)
+            indexer.onInserted(row);
+        indexer.commit();
+    }
+
+    /**
+     * Read the partition whose latest record is at the given position, merging the updates in its chain.
+     */
+    private PartitionUpdate readPartition(long position)
+    {
+        List<PartitionUpdate> updates = new ArrayList<>();
+        for (long p = position; p >= 0; p = file.previous(p))
+            updates.add(file.read(p));
+        return PartitionUpdate.merge(updates);
     }
 
     public long partitionCount()
     {
-        // TODO: implement
-        return super.partitionCount();
+        return partitions.size();
+    }
+
+    public long getLiveDataSize()
+    {
+        return file.length();
+    }
+
+    public Partition getPartition(DecoratedKey key)
+    {
+        Long position = partitions.get(key);
+        return position != null ? readPartition(position) : null;
+    }
+
+    public MemtableUnfilteredPartitionIterator makePartitionIterator(ColumnFilter columnFilter, DataRange dataRange)
+    {
+        AbstractBounds<PartitionPosition> keyRange = dataRange.keyRange();
+
+        boolean isBound = keyRange instanceof Bounds;
+        boolean includeLeft = isBound || keyRange instanceof IncludingExcludingBounds;
+        boolean includeRight = isBound || keyRange instanceof Range;
+        Map<PartitionPosition, Long> subMap = getPartitionsSubMap(keyRange.left, includeLeft, keyRange.right, includeRight);
+
+        return new PersistentMemoryUnfilteredPartitionIterator(subMap, columnFilter, dataRange);
+    }
+
+    private Map<PartitionPosition, Long> getPartitionsSubMap(PartitionPosition left,
+                                                             boolean includeLeft,
+                                                             PartitionPosition right,
+                                                             boolean includeRight)
+    {
+        if (left != null && left.isMinimum())
+            left = null;
+        if (right != null && right.isMinimum())
+            right = null;
+
+        if (left == null)
+            return right == null ? partitions : partitions.headMap(right, includeRight);
+        else
+            return right == null
+                   ? partitions.tailMap(left, includeLeft)
+                   : partitions.subMap(left, includeLeft, right, includeRight);
+    }
+
+    private class PersistentMemoryUnfilteredPartitionIterator extends AbstractUnfilteredPartitionIterator implements MemtableUnfilteredPartitionIterator
+    {
+        private final Iterator<Map.Entry<PartitionPosition, Long>> iter;
+        private final ColumnFilter columnFilter;
+        private final DataRange dataRange;
+
+        PersistentMemoryUnfilteredPartitionIterator(Map<PartitionPosition, Long> source, ColumnFilter columnFilter, DataRange dataRange)
+        {
+            this.iter = source.entrySet().iterator();
+            this.columnFilter = columnFilter;
+            this.dataRange = dataRange;
+        }
+
+        public int getMinLocalDeletionTime()
+        {
+            // Reading all partitions to find this would be too expensive; the stats give a lower bound.
+            return encodingStats().minLocalDeletionTime;
+        }
+
+        public TableMetadata metadata()
+        {
+            return PersistentMemoryMemtable.this.metadata();
+        }
+
+        public boolean hasNext()
+        {
+            return iter.hasNext();
+        }
+
+        public UnfilteredRowIterator next()
+        {
+            Map.Entry<PartitionPosition, Long> entry = iter.next();
+            DecoratedKey key = (DecoratedKey) entry.getKey();
+            return dataRange.clusteringIndexFilter(key)
+                            .getUnfilteredRowIterator(columnFilter, readPartition(entry.getValue()));
+        }
     }
 
     public FlushCollection<?> getFlushSet(PartitionPosition from, PartitionPosition to)
     {
-        // TODO: implement
         // FIXME: If the memtable can still be written to, this uses a view of the metadata that may not be up-to-date
         // with the content. This may cause streaming to fail e.g. if a new column appears and is added to some row in
         // the memtable between the time that this is constructed and the relevant row is written. Such failures should
         // be recoverable by redoing the stream.
         // If an implementation can produce a view/snapshot of the data at a point before the features were collected,
         // this problem will not occur.
-        return super.getFlushSet(from, to);
+        Map<PartitionPosition, Long> toFlush = getPartitionsSubMap(from, true, to, false);
+        long keySize = 0;
+        long partitionCount = 0;
+        for (PartitionPosition key : toFlush.keySet())
+        {
+            keySize += ((DecoratedKey) key).getKey().remaining();
+            ++partitionCount;
+        }
+        final long partitionKeySize = keySize;
+        final long flushedPartitionCount = partitionCount;
+
+        return new AbstractFlushCollection<PartitionUpdate>()
+        {
+            public Memtable memtable()
+            {
+                return PersistentMemoryMemtable.this;
+            }
+
+            public PartitionPosition from()
+            {
+                return from;
+            }
+
+            public PartitionPosition to()
+            {
+                return to;
+            }
+
+            public long partitionCount()
+            {
+                return flushedPartitionCount;
+            }
+
+            public Iterator<PartitionUpdate> iterator()
+            {
+                return Iterators.transform(toFlush.values().iterator(), PersistentMemoryMemtable.this::readPartition);
+            }
+
+            public long partitionKeySize()
+            {
+                return partitionKeySize;
+            }
+        };
     }
 
     public boolean shouldSwitch(ColumnFamilyStore.FlushReason reason)
@@ -88,6 +517,9 @@ extends SkipListMemtable        // to test framework
         switch (reason)
         {
         case STARTUP: // Called after reading and replaying the commit log.
+            // Secondary indexes have not seen the recovered data; flush it so that they are built from the sstables.
+            return recovered && !metadata().indexes.isEmpty() && !isClean();
+
         case SHUTDOWN: // Called to flush data before shutdown.
         case INTERNALLY_FORCED: // Called to ensure ordering and persistence of system table events.
         case MEMTABLE_PERIOD_EXPIRED: // The specified memtable expiration time elapsed.
@@ -102,25 +534,27 @@ extends SkipListMemtable        // to test framework
 
         case VIEW_BUILD_STARTED:
         case INDEX_BUILD_STARTED:
-            // TODO: Figure out secondary indexes and views.
-            return false;
+            // Index and view builds read the sstables only; flush so that they can see the data in the memtable.
+            return true;
 
         case SCHEMA_CHANGE:
             if (!(metadata().params.memtable.factory instanceof Factory))
                 return true;    // User has switched to a different memtable class. Flush and release all held data.
-            // Otherwise, assuming we can handle the change, don't switch.
-            // TODO: Handle
+            // Otherwise don't switch: the records carry the columns they were written with, and are read using the
+            // current metadata, which knows about dropped columns (see metadataUpdated()).
             return false;
 
-        case STREAMING: // Called to flush data so it can be streamed. TODO: How dow we stream?
-        case REPAIR: // Called to flush data for repair. TODO: How do we repair?
-            // ColumnFamilyStore will create sstables of the affected ranges which will not be consulted on reads and
-            // will be deleted after streaming.
+        case STREAMING: // Called to flush data so it can be streamed.
+        case REPAIR: // Called to flush data for repair.
+            // As the factory returns true for streamFromMemtable(), ColumnFamilyStore will create sstables of the
+            // affected ranges from getFlushSet(), which will not be consulted on reads and will be deleted after
+            // streaming or validation.
             return false;
 
         case SNAPSHOT:
-            // We don't flush for this. Returning false will trigger a performSnapshot call.
-            return false;
+            // A copy of the memtable file could not be restored by the tools that consume snapshots, which only
+            // handle sstables. Flush, so that the snapshot links the sstables holding the memtable's data.
+            return true;
 
         case DROP: // Called when a table is dropped. This memtable is no longer necessary.
         case TRUNCATE: // The data is being deleted, but the table remains.
@@ -128,10 +562,11 @@ extends SkipListMemtable        // to test framework
             // This will call discard() below to delete all held data.
             return true;
 
-        case MEMTABLE_LIMIT: // The memtable size limit is reached, and this table was selected for flushing.
-                             // Also passed if we call owner.signalLimitReached()
+        case MEMTABLE_LIMIT: // The memtable file grew over the flush size and we called owner.signalFlushRequired().
+            return true;
+
         case COMMITLOG_DIRTY: // Commitlog thinks it needs to keep data from this table.
-            // Neither of the above should happen as we specify writesAreDurable and don't use an allocator/cleaner.
+            // This should not happen as we specify writesAreDurable and don't use an allocator/cleaner.
             throw new AssertionError();
 
         case USER_FORCED:
@@ -144,28 +579,45 @@ extends SkipListMemtable        // to test framework
 
     public void metadataUpdated()
     {
-        // TODO: handle
+        // Nothing to do, the updates in the file are deserialized using the current metadata.
     }
 
     public void performSnapshot(String snapshotName)
     {
-        // TODO: implement. Figure out how to restore snapshot (with external tools).
+        // shouldSwitch(SNAPSHOT) returns true, this cannot be called.
+        throw new AssertionError();
     }
 
     public void switchOut(OpOrder.Barrier writeBarrier, AtomicReference<CommitLogPosition> commitLogUpperBound)
     {
-        super.switchOut(writeBarrier, commitLogUpperBound);
-        // This can prepare the memtable data for deletion; it will still be used while the flush is proceeding.
-        // A discard call will follow.
+        // This memtable will still be used while the flush is proceeding. A discard call will follow.
+        assert this.writeBarrier == null;
+        this.writeBarrier = writeBarrier;
     }
 
     public void discard()
     {
         // This will be called to release/delete all held data because the memtable is switched, due to having
         // its data flushed, due to a truncate/drop, or due to a schema change to a different memtable class.
+        assert writeBarrier != null : "Memtable must be switched out before being discarded.";
+        file.delete();
+    }
 
-        // TODO: Implement. This should delete all memtable data from pmem.
-        super.discard();
+    /**
+     * Close the memtable's file without deleting it, leaving its content to be recovered as if the process was
+     * restarted.
+     */
+    @VisibleForTesting
+    void close()
+    {
+        file.close();
+    }
+
+    public boolean accepts(OpOrder.Group opGroup, CommitLogPosition commitLogPosition)
+    {
+        // We don't maintain commit log positions, thus we are directed only by the barrier.
+        OpOrder.Barrier barrier = this.writeBarrier;
+        return barrier == null || barrier.isAfter(opGroup);
     }
 
     public CommitLogPosition getApproximateCommitLogLowerBound()
@@ -186,11 +638,6 @@ extends SkipListMemtable        // to test framework
         return new LastCommitLogPosition(CommitLogPosition.NONE);
     }
 
-    public boolean isClean()
-    {
-        return partitionCount() == 0;
-    }
-
     public boolean mayContainDataBefore(CommitLogPosition position)
     {
         // We don't track commit log positions, so if we are dirty, we may.
@@ -215,6 +662,9 @@ extends SkipListMemtable        // to test framework
     public static Factory factory(Map<String, String> furtherOptions)
     {
         Boolean skipOption = Boolean.parseBoolean(furtherOptions.remove("skipCommitLog"));
+        if (skipOption && !onPersistentMemory.get())
+            throw new ConfigurationException("PersistentMemoryMemtable can only skip the commit log when its directory " +
+                                             "is on persistent memory, i.e. on a file system mounted with DAX");
         return skipOption ? commitLogSkippingFactory : commitLogWritingFactory;
     }
 
@@ -244,7 +694,7 @@ extends SkipListMemtable        // to test framework
 
         public boolean writesAreDurable()
         {
-            return true;
+            return onPersistentMemory.get();
         }
 
         public boolean streamToMemtable()
@@ -66,12 +66,18 @@ public class ShardBoundaries
      */
     public int getShardForToken(Token tk)
     {
-        for (int i = 0; i < boundaries.length; i++)
+        // binary search for the first boundary that is equal or greater than the token
+        int low = 0;
+        int high = boundaries.length;
+        while (low < high)
         {
-            if (tk.compareTo(boundaries[i]) <= 0)   // boundaries are end-inclusive
-                return i;
+            int mid = (low + high) >>> 1;
+            if (tk.compareTo(boundaries[mid]) <= 0)   // boundaries are end-inclusive
+                high = mid;
+            else
+                low = mid + 1;
         }
-        return boundaries.length;
+        return low;
     }
 
     /**
@@ -98,6 +104,14 @@ public class ShardBoundaries
         return boundaries.length + 1;
     }
 
+    /**
+     * The (inclusive) upper bound of the given shard. Not defined for the last shard, which extends to the maximum token.
+     */
+    Token shardEnd(int shard)
+    {
+        return boundaries[shard];
+    }
+
     @Override
     public String toString()
     {
@@ -109,6 +109,11 @@ public class SkipListMemtable extends AbstractAllocatorMemtable
             {
                 return null; // not implemented
             }
+
+            public OpOrder getReadOrdering()
+            {
+                return null;
+            }
         });
     }
 
@@ -18,13 +18,21 @@
 package org.apache.cassandra.db.memtable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
@@ -32,15 +40,22 @@ import com.google.common.collect.Iterators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.agrona.concurrent.UnsafeBuffer;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.ByteComparableDecoratedKey;
 import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.ClusteringPrefix;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionInfo;
+import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.RegularAndStaticColumns;
+import org.apache.cassandra.db.Slice;
 import org.apache.cassandra.db.Slices;
 import org.apache.cassandra.db.commitlog.CommitLogPosition;
 import org.apache.cassandra.db.filter.ClusteringIndexFilter;
@@ -51,23 +66,31 @@ import org.apache.cassandra.db.partitions.BTreePartitionUpdater;
 import org.apache.cassandra.db.partitions.ImmutableBTreePartition;
 import org.apache.cassandra.db.partitions.Partition;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.DeserializationHelper;
 import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.tries.MemtableTrie;
 import org.apache.cassandra.db.tries.Trie;
+import org.apache.cassandra.db.tries.TrieEntriesIterator;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.IncludingExcludingBounds;
 import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.index.transactions.UpdateTransaction;
 import org.apache.cassandra.io.compress.BufferType;
 import org.apache.cassandra.metrics.TableMetrics;
 import org.apache.cassandra.metrics.TrieMemtableMetricsView;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
+import org.apache.cassandra.utils.BulkIterator;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MBeanWrapper;
+import org.apache.cassandra.utils.btree.BTree;
+import org.apache.cassandra.utils.btree.UpdateFunction;
 import org.apache.cassandra.utils.bytecomparable.ByteComparable;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.apache.cassandra.utils.memory.Cloner;
@@ -75,12 +98,44 @@ import org.apache.cassandra.utils.memory.EnsureOnHeap;
 import org.apache.cassandra.utils.memory.MemtableAllocator;
 import org.github.jamm.Unmetered;
 
+/**
+ * Memtable that stores its partitions in a set of sharded {@link MemtableTrie}s, mapping the byte-comparable
+ * representation of partition keys to the partition data.
+ * <p>
+ * By default each partition is stored as a {@link BTreePartitionData} that holds its rows in an on-heap B-tree. With
+ * the {@code rowsInTrie} option (CQL: {@code {'class' : 'TrieMemtable', 'rowsInTrie' : 'true'}}) the rows are instead
+ * mapped directly in the trie, at the path formed by the partition key followed by the byte-comparable representation
+ * of the row's clustering, and the partition data only keeps the partition-level information (deletion info, static
+ * row, columns and stats). The rows themselves are stored serialized, in buffers of the trie's buffer type (see
+ * {@link MemtableRowStore}). This removes the per-partition B-tree and the copying of its nodes on every update of the
+ * partition, and the per-row and per-cell objects, which are where most of the garbage generated by memtable writes,
+ * and most of the heap taken by memtables of small rows, come from. Reads decode the rows they need.
+ * <p>
+ * Each shard's trie supports a single writer for structural changes, thus adding new partitions to a shard is done
+ * under the shard's write lock. In the default mode, updates to partitions that are already present are applied
+ * without taking the lock, by merging the update into the current partition data and atomically replacing it in the
+ * trie (retrying if another writer changed it in the meantime), which lets concurrent writes to skewed keys proceed
+ * in parallel.
+ * <p>
+ * If enabled with {@link #ADAPTIVE_SHARDS_PROPERTY}, the shard boundaries of a memtable are chosen from the writes
+ * observed by the memtable it replaces (see {@link AdaptiveShardBoundaries}), so that token ranges that take a large
+ * share of the writes are split among more shards.
+ * <p>
+ * Flushing walks the shard tries directly and hands the sstable writer keys that retain their trie path, so that the
+ * partition index of trie-indexed sstables is built from the memtable's byte-comparable keys without re-encoding them.
+ * With {@link #PARALLEL_FLUSH_PROPERTY}, the flush is also split at the shard boundaries, writing a separate sstable
+ * for each shard in parallel.
+ */
 public class TrieMemtable extends AbstractAllocatorMemtable
 {
     private static final Logger logger = LoggerFactory.getLogger(TrieMemtable.class);
     public static final String TRIE_MEMTABLE_CONFIG_OBJECT_NAME = "org.apache.cassandra.db:type=TrieMemtableConfig";
 
-    public static final Factory FACTORY = new TrieMemtable.Factory();
+    public static final Factory FACTORY = new TrieMemtable.Factory(false);
+    private static final Factory ROWS_IN_TRIE_FACTORY = new TrieMemtable.Factory(true);
+
+    /** Memtable option that selects storing rows directly in the memtable trie. */
+    public static final String ROWS_IN_TRIE_OPTION = "rowsInTrie";
 
     /** Buffer type to use for memtable tries (on- vs off-heap) */
     public static final BufferType BUFFER_TYPE;
@@ -104,6 +159,12 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         MBeanWrapper.instance.registerMBean(new TrieMemtableConfig(), TRIE_MEMTABLE_CONFIG_OBJECT_NAME, MBeanWrapper.OnException.LOG);
     }
 
+    /**
+     * The number of attempts a lock-free put makes before taking the shard's write lock, so that heavily contended
+     * writers to the same partition take turns instead of repeatedly redoing the merge.
+     */
+    private static final int MAX_LOCK_FREE_ATTEMPTS = 4;
+
     /** If keys is below this length, we will use a recursive procedure for inserting data in the memtable trie. */
     @VisibleForTesting
     public static final int MAX_RECURSIVE_KEY_LENGTH = 128;
@@ -123,17 +184,25 @@ public class TrieMemtable extends AbstractAllocatorMemtable
     @Unmetered
     private final ShardBoundaries boundaries;
 
+    // Null if the boundaries do not adapt to the write distribution.
+    @Unmetered
+    private final AdaptiveShardBoundaries adaptiveBoundaries;
+
     /**
      * Core-specific memtable regions. All writes must go through the specific core. The data structures used
      * are concurrent-read safe, thus reads can be carried out from any thread.
      */
-    private final MemtableShard[] shards;
+    @VisibleForTesting
+    final MemtableShard[] shards;
 
     /**
      * A merged view of the memtable map. Used for partition range queries and flush.
      * For efficiency we serve single partition requests off the shard which offers more direct MemtableTrie methods.
      */
-    private final Trie<BTreePartitionData> mergedTrie;
+    private final Trie<Object> mergedTrie;
+
+    /** Whether rows are mapped directly in the trie, rather than in the B-tree of their partition's data. */
+    private final boolean rowsInTrie;
 
     @Unmetered
     private final TrieMemtableMetricsView metrics;
@@ -143,34 +212,97 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
     public static volatile int SHARD_COUNT = Integer.getInteger(SHARD_COUNT_PROPERTY, FBUtilities.getAvailableProcessors());
 
+    @VisibleForTesting
+    public static final String ADAPTIVE_SHARDS_PROPERTY = "cassandra.trie.memtable.adaptive_shards";
+
+    /**
+     * Whether to adapt the shard boundaries to the writes seen by the previous memtable. Recording the writes adds some
+     * cost to the write path, thus it is only enabled on request.
+     */
+    public static volatile boolean ADAPTIVE_SHARDS = Boolean.getBoolean(ADAPTIVE_SHARDS_PROPERTY);
+
+    @VisibleForTesting
+    public static final String PARALLEL_FLUSH_PROPERTY = "cassandra.trie.memtable.parallel_flush";
+
+    /**
+     * Whether to split flushes at the shard boundaries. This speeds up flushing, but produces an sstable per shard
+     * and disk, thus it is only enabled on request.
+     */
+    public static volatile boolean PARALLEL_FLUSH = Boolean.getBoolean(PARALLEL_FLUSH_PROPERTY);
+
     // only to be used by init(), to setup the very first memtable for the cfs
     TrieMemtable(AtomicReference<CommitLogPosition> commitLogLowerBound, TableMetadataRef metadataRef, Owner owner)
+    {
+        this(commitLogLowerBound, metadataRef, owner, false);
+    }
+
+    TrieMemtable(AtomicReference<CommitLogPosition> commitLogLowerBound, TableMetadataRef metadataRef, Owner owner, boolean rowsInTrie)
     {
         super(commitLogLowerBound, metadataRef, owner);
-        this.boundaries = owner.localRangeSplits(SHARD_COUNT);
+        this.rowsInTrie = rowsInTrie;
+        this.adaptiveBoundaries = makeAdaptiveBoundaries(owner);
+        this.boundaries = adaptiveBoundaries != null ? adaptiveBoundaries.boundaries : owner.localRangeSplits(SHARD_COUNT);
         this.metrics = TrieMemtableMetricsView.getOrCreate(metadataRef.keyspace, metadataRef.name);
-        this.shards = generatePartitionShards(boundaries.shardCount(), metadataRef, metrics);
+        this.shards = generatePartitionShards(boundaries.shardCount(), metadataRef, metrics, rowsInTrie, owner.getReadOrdering());
         this.mergedTrie = makeMergedTrie(shards);
-        logger.debug("Created memtable with {} shards", this.shards.length);
+        logger.debug("Created memtable with {} shards{}", this.shards.length, rowsInTrie ? " and rows in trie" : "");
+    }
+
+    private static AdaptiveShardBoundaries makeAdaptiveBoundaries(Owner owner)
+    {
+        int shardCount = SHARD_COUNT;
+        if (!ADAPTIVE_SHARDS || shardCount <= 1)
+            return null;
+
+        // The memtable we are replacing, if any, is still the owner's current one.
+        AdaptiveShardBoundaries previous = null;
+        long[] previousContention = null;
+        Memtable current = owner.getCurrentMemtable();
+        if (current instanceof TrieMemtable)
+        {
+            previous = ((TrieMemtable) current).adaptiveBoundaries;
+            previousContention = ((TrieMemtable) current).shardContention();
+        }
+
+        return AdaptiveShardBoundaries.create(owner.localRangeSplits(AdaptiveShardBoundaries.gridSize(shardCount)),
+                                              shardCount,
+                                              previous,
+                                              previousContention);
+    }
+
+    private long[] shardContention()
+    {
+        long[] contention = new long[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            contention[i] = shards[i].contention;
+        return contention;
+    }
+
+    @VisibleForTesting
+    ShardBoundaries shardBoundaries()
+    {
+        return boundaries;
     }
 
     private static MemtableShard[] generatePartitionShards(int splits,
                                                            TableMetadataRef metadata,
-                                                           TrieMemtableMetricsView metrics)
+                                                           TrieMemtableMetricsView metrics,
+                                                           boolean rowsInTrie,
+                                                           OpOrder readOrdering)
     {
         if (splits == 1)
-            return new MemtableShard[] { new MemtableShard(0, metadata, metrics) };
+            return new MemtableShard[] { new MemtableShard(0, metadata, metrics, rowsInTrie, readOrdering) };
 
         MemtableShard[] partitionMapContainer = new MemtableShard[splits];
         for (int i = 0; i < splits; i++)
-            partitionMapContainer[i] = new MemtableShard(i, metadata, metrics);
+            partitionMapContainer[i] = new MemtableShard(i, metadata, metrics, rowsInTrie, readOrdering);
 
         return partitionMapContainer;
     }
 
-    private static Trie<BTreePartitionData> makeMergedTrie(MemtableShard[] shards)
+    private static Trie<Object> makeMergedTrie(MemtableShard[] shards)
     {
-        List<Trie<BTreePartitionData>> tries = new ArrayList<>(shards.length);
+        List<Trie<Object>> tries = new ArrayList<>(shards.length);
         for (MemtableShard shard : shards)
             tries.add(shard.data);
         return Trie.mergeDistinct(tries);
@@ -178,7 +310,27 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
     protected Factory factory()
     {
-        return FACTORY;
+        return rowsInTrie ? ROWS_IN_TRIE_FACTORY : FACTORY;
+    }
+
+    /**
+     * The trie path of a row (or of a clustering bound) of the given partition. Because the byte-comparable
+     * representation of decorated keys is prefix-free, the rows of a partition are the descendants of the partition's
+     * own path, ordered by their clustering.
+     */
+    static ByteComparable rowPath(DecoratedKey key, ClusteringComparator comparator, ClusteringPrefix<?> clustering)
+    {
+        return ByteComparable.append(key, comparator.asByteComparable(clustering));
+    }
+
+    private static boolean isPartition(Map.Entry<ByteComparable, Object> entry)
+    {
+        return isPartition(entry.getValue());
+    }
+
+    private static boolean isPartition(Object content)
+    {
+        return content instanceof BTreePartitionData;
     }
 
     public boolean isClean()
@@ -212,7 +364,7 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         for (MemtableShard shard : shards)
         {
             shard.allocator.setDiscarded();
-            shard.data.discardBuffers();
+            shard.discardBuffers();
         }
     }
 
@@ -226,9 +378,11 @@ public class TrieMemtable extends AbstractAllocatorMemtable
     {
         DecoratedKey key = update.partitionKey();
         MemtableShard shard = shards[boundaries.getShardForKey(key)];
+        if (adaptiveBoundaries != null)
+            adaptiveBoundaries.recordWrite(key.getToken());
         long colUpdateTimeDelta = shard.put(key, update, indexer, opGroup);
 
-        if (shard.data.reachedAllocatedSizeThreshold() && !switchRequested.getAndSet(true))
+        if (shard.reachedAllocatedSizeThreshold() && !switchRequested.getAndSet(true))
         {
             logger.info("Scheduling flush due to trie size limit reached.");
             owner.signalFlushRequired(this, ColumnFamilyStore.FlushReason.MEMTABLE_LIMIT);
@@ -321,9 +475,9 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         boolean includeStart = isBound || keyRange instanceof IncludingExcludingBounds;
         boolean includeStop = isBound || keyRange instanceof Range;
 
-        Trie<BTreePartitionData> subMap = mergedTrie.subtrie(left, includeStart, right, includeStop);
+        Trie<Object> subMap = partitions(mergedTrie.subtrie(left, includeStart, right, includeStop));
 
-        return new MemtableUnfilteredPartitionIterator(metadata(),
+        return new MemtableUnfilteredPartitionIterator(this,
                                                        allocator.ensureOnHeap(),
                                                        subMap,
                                                        columnFilter,
@@ -333,43 +487,109 @@ public class TrieMemtable extends AbstractAllocatorMemtable
     public Partition getPartition(DecoratedKey key)
     {
         int shardIndex = boundaries.getShardForKey(key);
-        BTreePartitionData data = shards[shardIndex].data.get(key);
+        BTreePartitionData data = (BTreePartitionData) shards[shardIndex].data.get(key);
         if (data != null)
-            return createPartition(metadata(), allocator.ensureOnHeap(), key, data);
+            return createPartition(allocator.ensureOnHeap(), key, data, shardIndex);
         else
             return null;
     }
 
-    private static MemtablePartition createPartition(TableMetadata metadata, EnsureOnHeap ensureOnHeap, DecoratedKey key, BTreePartitionData data)
+    private MemtablePartition createPartition(EnsureOnHeap ensureOnHeap, DecoratedKey key, BTreePartitionData data, int shardIndex)
     {
-        return new MemtablePartition(metadata, ensureOnHeap, key, data);
+        if (rowsInTrie)
+            return new RowTriePartition(metadata(), ensureOnHeap, key, data, shards[shardIndex]);
+        return new MemtablePartition(metadata(), ensureOnHeap, key, data);
     }
 
-    private static MemtablePartition getPartitionFromTrieEntry(TableMetadata metadata, EnsureOnHeap ensureOnHeap, Map.Entry<ByteComparable, BTreePartitionData> en)
+    private MemtablePartition getPartitionFromTrieEntry(EnsureOnHeap ensureOnHeap, Map.Entry<ByteComparable, Object> en)
     {
         DecoratedKey key = BufferDecoratedKey.fromByteComparable(en.getKey(),
                                                                  BYTE_COMPARABLE_VERSION,
-                                                                 metadata.partitioner);
-        return createPartition(metadata, ensureOnHeap, key, en.getValue());
+                                                                 metadata().partitioner);
+        return createPartition(ensureOnHeap, key, (BTreePartitionData) en.getValue(), rowsInTrie ? boundaries.getShardForKey(key) : -1);
     }
 
+    /**
+     * The part of the given trie that holds the partitions. When rows are stored in the trie, this does not descend
+     * into the rows of the partitions, so that iterating partitions does not walk their rows.
+     */
+    private Trie<Object> partitions(Trie<Object> trie)
+    {
+        return rowsInTrie ? trie.topLevelContent() : trie;
+    }
 
-    public FlushCollection<MemtablePartition> getFlushSet(PartitionPosition from, PartitionPosition to)
+    private Iterator<Map.Entry<ByteComparable, Object>> partitionEntryIterator(Trie<Object> partitions)
     {
-        Trie<BTreePartitionData> toFlush = mergedTrie.subtrie(from, true, to, false);
-        long keySize = 0;
-        int keyCount = 0;
+        Iterator<Map.Entry<ByteComparable, Object>> entries = partitions.entryIterator();
+        // The rows of a partition whose partition-level data is still being written are not skipped.
+        return rowsInTrie ? Iterators.filter(entries, TrieMemtable::isPartition) : entries;
+    }
 
-        for (Iterator<Map.Entry<ByteComparable, BTreePartitionData>> it = toFlush.entryIterator(); it.hasNext(); )
+    /**
+     * Iterates the partitions of the given trie for flushing. The keys of the partitions retain their trie paths, which
+     * the sstable writer can use to build its index without encoding the keys again.
+     */
+    private Iterator<MemtablePartition> flushIterator(Trie<Object> trie)
+    {
+        Iterator<MemtablePartition> partitions = new TrieEntriesIterator<Object, MemtablePartition>(trie)
         {
-            Map.Entry<ByteComparable, BTreePartitionData> en = it.next();
-            ByteComparable byteComparable = v -> en.getKey().asPeekableBytes(BYTE_COMPARABLE_VERSION);
-            byte[] keyBytes = DecoratedKey.keyFromByteComparable(byteComparable, BYTE_COMPARABLE_VERSION, metadata().partitioner);
-            keySize += keyBytes.length;
-            keyCount++;
+            protected MemtablePartition mapContent(Object content, byte[] bytes, int byteLength)
+            {
+                if (!isPartition(content))
+                    return null;    // a row, skipped below
+
+                DecoratedKey key = ByteComparableDecoratedKey.fromByteComparable(Arrays.copyOf(bytes, byteLength),
+                                                                                 BYTE_COMPARABLE_VERSION,
+                                                                                 metadata().partitioner);
+                // During flushing we are certain the memtable will remain at least until the flush completes.
+                // No copying to heap is necessary.
+                return createPartition(EnsureOnHeap.NOOP,
+                                       key,
+                                       (BTreePartitionData) content,
+                                       rowsInTrie ? boundaries.getShardForKey(key) : -1);
+            }
+        };
+        return rowsInTrie ? Iterators.filter(partitions, Objects::nonNull) : partitions;
+    }
+
+    /**
+     * The part of the memtable between the given positions. If they fall within a single shard, this is taken directly
+     * from that shard's trie, avoiding the merge of all shards.
+     */
+    private Trie<Object> flushTrie(PartitionPosition from, PartitionPosition to)
+    {
+        int shard = flushShard(from, to);
+        Trie<Object> trie = shard >= 0 ? shards[shard].data : mergedTrie;
+        return partitions(trie.subtrie(from, true, to, false));
+    }
+
+    /**
+     * @return the shard that holds all the keys from {@code from} (inclusive) to {@code to} (exclusive), or -1 if they
+     * may span several shards
+     */
+    @VisibleForTesting
+    int flushShard(PartitionPosition from, PartitionPosition to)
+    {
+        int firstShard = 0;
+        if (from != null)
+        {
+            firstShard = boundaries.getShardForToken(from.getToken());
+            // the flush ranges split at the shard boundaries start after the keys of the end token of the previous
+            // shard, i.e. in the next shard
+            if (firstShard < shards.length - 1 && from.compareTo(boundaries.shardEnd(firstShard).maxKeyBound()) >= 0)
+                ++firstShard;
         }
-        long partitionKeySize = keySize;
-        int partitionCount = keyCount;
+        int lastShard = to != null && !to.isMinimum() ? boundaries.getShardForToken(to.getToken()) : shards.length - 1;
+        return firstShard == lastShard ? firstShard : -1;
+    }
+
+    public FlushCollection<MemtablePartition> getFlushSet(PartitionPosition from, PartitionPosition to)
+    {
+        Trie<Object> toFlush = flushTrie(from, to);
+        PartitionCounter counter = new PartitionCounter();
+        toFlush.forEachValue(counter);
+        long partitionKeySize = counter.pathBytes;
+        int partitionCount = counter.count;
 
         return new AbstractFlushCollection<MemtablePartition>()
         {
@@ -395,24 +615,73 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
             public Iterator<MemtablePartition> iterator()
             {
-                return Iterators.transform(toFlush.entryIterator(),
-                                           // During flushing we are certain the memtable will remain at least until
-                                           // the flush completes. No copying to heap is necessary.
-                                           entry -> getPartitionFromTrieEntry(metadata(), EnsureOnHeap.NOOP, entry));
+                return flushIterator(toFlush);
             }
 
             public long partitionKeySize()
             {
+                // the length of the byte-comparable keys, which is slightly larger than that of the raw keys
                 return partitionKeySize;
             }
         };
     }
 
+    @Override
+    public List<Token> getFlushSplitPoints()
+    {
+        if (!PARALLEL_FLUSH || shards.length <= 1)
+            return Collections.emptyList();
+
+        List<Token> splitPoints = new ArrayList<>(shards.length - 1);
+        for (int i = 0; i < shards.length - 1; ++i)
+            splitPoints.add(boundaries.shardEnd(i));
+        return splitPoints;
+    }
+
+    /**
+     * Counts the partitions in a trie and the total length of their paths, without materializing the keys.
+     */
+    private static class PartitionCounter implements Trie.ValueConsumer<Object>
+    {
+        int pathLength = 0;
+        int count = 0;
+        long pathBytes = 0;
+
+        public void accept(Object content)
+        {
+            if (isPartition(content))
+            {
+                ++count;
+                pathBytes += pathLength;
+            }
+        }
+
+        public void resetPathLength(int newLength)
+        {
+            pathLength = newLength;
+        }
+
+        public void addPathByte(int nextByte)
+        {
+            ++pathLength;
+        }
+
+        public void addPathBytes(UnsafeBuffer buffer, int pos, int count)
+        {
+            pathLength += count;
+        }
+    }
+
     static class MemtableShard
     {
         // The following fields are volatile as we have to make sure that when we
         // collect results from all sub-ranges, the thread accessing the value
-        // is guaranteed to see the changes to the values.
+        // is guaranteed to see the changes to the values. They are updated atomically
+        // as updates to existing partitions are applied without taking the write lock.
+        private static final AtomicLongFieldUpdater<MemtableShard> minTimestampUpdater = AtomicLongFieldUpdater.newUpdater(MemtableShard.class, "minTimestamp");
+        private static final AtomicLongFieldUpdater<MemtableShard> liveDataSizeUpdater = AtomicLongFieldUpdater.newUpdater(MemtableShard.class, "liveDataSize");
+        private static final AtomicLongFieldUpdater<MemtableShard> currentOperationsUpdater = AtomicLongFieldUpdater.newUpdater(MemtableShard.class, "currentOperations");
+        private static final AtomicLongFieldUpdater<MemtableShard> contentionUpdater = AtomicLongFieldUpdater.newUpdater(MemtableShard.class, "contention");
 
         // The smallest timestamp for all partitions stored in this shard
         private volatile long minTimestamp = Long.MAX_VALUE;
@@ -421,6 +690,13 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
         private volatile long currentOperations = 0;
 
+        // The number of writes that had to wait for the write lock or retry a lock-free update, used to adapt the
+        // shard boundaries of the next memtable.
+        private volatile long contention = 0;
+
+        // Only maintained when rows are stored in the trie, as the trie's content count then also includes the rows.
+        private volatile int partitionCount = 0;
+
         @Unmetered
         private ReentrantLock writeLock = new ReentrantLock();
 
@@ -428,8 +704,10 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         // byte-comparable ByteSource representations of the keys to address the partitions.
         //
         // This map is used in a single-producer, multi-consumer fashion: only one thread will insert items but
-        // several threads may read from it and iterate over it. Iterators are created when a the first item of
-        // a flow is requested for example, and then used asynchronously when sub-sequent items are requested.
+        // several threads may read from it and iterate over it. In the default mode other threads may also atomically
+        // replace the data of partitions that are already present (see tryPutExisting). Iterators are created when a
+        // the first item of a flow is requested for example, and then used asynchronously when sub-sequent items are
+        // requested.
         //
         // Therefore, iterators should not throw ConcurrentModificationExceptions if the underlying map is modified
         // during iteration, they should provide a weakly consistent view of the map instead.
@@ -437,8 +715,30 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         // Also, this data is backed by memtable memory, when accessing it callers must specify if it can be accessed
         // unsafely, meaning that the memtable will not be discarded as long as the data is used, or whether the data
         // should be copied on heap for off-heap allocators.
+        //
+        // Space released by the writer (e.g. when a node is converted to a larger type) is reused once the reads that
+        // were in progress at the time complete, as tracked by the owner's read ordering. Anything that accesses the
+        // trie outside of a read operation, like the lock-free writers, must do so within a group of that order.
+        //
+        // If rowsInTrie is set, the map also contains the rows of each partition, at the path of the partition key
+        // followed by the row's clustering; the partition's BTreePartitionData then has an empty tree. The content
+        // of a row path is the position of the serialized row in the shard's row store, which the trie keeps in its
+        // nodes, or the row itself if it could not be serialized (see MemtableRowStore.write).
         @VisibleForTesting
-        final MemtableTrie<BTreePartitionData> data;
+        final MemtableTrie<Object> data;
+
+        private final boolean rowsInTrie;
+
+        @Unmetered
+        private final MemtableRowStore rows;
+
+        // Taken for writing while the rows and partition-level data of an update are written in rowsInTrie mode, so
+        // that readers, which read a partition optimistically and retry under the read lock if a write happened in
+        // the meantime, see either all or none of an update.
+        private final StampedLock rowsLock;
+
+        @Unmetered
+        private final ClusteringComparator comparator;
 
         private final ColumnsCollector columnsCollector;
 
@@ -449,25 +749,185 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         @Unmetered
         private final TrieMemtableMetricsView metrics;
 
-        MemtableShard(int shardId, TableMetadataRef metadata, TrieMemtableMetricsView metrics)
+        @Unmetered
+        private final OpOrder readOrdering;
+
+        MemtableShard(int shardId, TableMetadataRef metadata, TrieMemtableMetricsView metrics, boolean rowsInTrie, OpOrder readOrdering)
         {
-            this(metadata, AbstractAllocatorMemtable.MEMORY_POOL.newAllocator(), metrics);
+            this(metadata, AbstractAllocatorMemtable.MEMORY_POOL.newAllocator(), metrics, rowsInTrie, readOrdering);
         }
 
         @VisibleForTesting
-        MemtableShard(TableMetadataRef metadata, MemtableAllocator allocator, TrieMemtableMetricsView metrics)
+        MemtableShard(TableMetadataRef metadata, MemtableAllocator allocator, TrieMemtableMetricsView metrics, boolean rowsInTrie, OpOrder readOrdering)
         {
-            this.data = new MemtableTrie<>(BUFFER_TYPE);
+            this.data = new MemtableTrie<>(BUFFER_TYPE, readOrdering, rowsInTrie ? MemtableRowStore.INLINE_POSITIONS : null);
+            this.readOrdering = readOrdering;
             this.columnsCollector = new AbstractMemtable.ColumnsCollector(metadata.get().regularAndStaticColumns());
             this.statsCollector = new AbstractMemtable.StatsCollector();
             this.allocator = allocator;
             this.metrics = metrics;
+            this.rowsInTrie = rowsInTrie;
+            this.comparator = metadata.get().comparator;
+            this.rows = rowsInTrie ? new MemtableRowStore(metadata.get(), BUFFER_TYPE, readOrdering) : null;
+            this.rowsLock = rowsInTrie ? new StampedLock() : null;
         }
 
         public long put(DecoratedKey key, PartitionUpdate update, UpdateTransaction indexer, OpOrder.Group opGroup)
         {
             Cloner cloner = allocator.cloner(opGroup);
             BTreePartitionUpdater updater = new BTreePartitionUpdater(allocator, cloner, opGroup, indexer);
+            try
+            {
+                if (rowsInTrie || !tryPutExisting(key, update, updater, indexer, opGroup, cloner))
+                    putLocked(key, update, updater, indexer, opGroup, cloner);
+            }
+            finally
+            {
+                updateMinTimestamp(update.stats().minTimestamp);
+                updateLiveDataSize(updater.dataSize);
+                updateCurrentOperations(update.operationCount());
+
+                // TODO: lambov 2021-03-30: check if stats are further optimisable
+                columnsCollector.update(update.columns());
+                statsCollector.update(update.stats());
+            }
+            return updater.colUpdateTimeDelta;
+        }
+
+        /**
+         * Applies the update to a partition that is already present in the trie without taking the write lock, by
+         * merging it into the partition's current data and atomically replacing the latter. If another writer changes
+         * the partition in the meantime, the merge is redone; after a few failed attempts, the write lock is taken so
+         * that contending writers take turns.
+         * <p>
+         * Only the attempt that succeeds must be visible outside of the memtable: the index events of each attempt are
+         * buffered and passed on to the indexer once the attempt's result is published, and the cells of the update
+         * are cloned into the memtable's memory once, by the first attempt that needs them.
+         *
+         * @return false if the partition is not present in the trie, in which case nothing is done.
+         */
+        private boolean tryPutExisting(DecoratedKey key,
+                                       PartitionUpdate update,
+                                       BTreePartitionUpdater updater,
+                                       UpdateTransaction indexer,
+                                       OpOrder.Group opGroup,
+                                       Cloner cloner)
+        {
+            // The content index must not be released and reused while we are using it.
+            OpOrder.Group readGroup = readOrdering != null ? readOrdering.start() : null;
+            try
+            {
+                int contentIndex = data.getContentIndex(key);
+                if (contentIndex < 0)
+                    return false;
+
+                return putExisting(contentIndex, update, updater, indexer, opGroup, cloner);
+            }
+            finally
+            {
+                if (readGroup != null)
+                    readGroup.close();
+            }
+        }
+
+        private boolean putExisting(int contentIndex,
+                                    PartitionUpdate update,
+                                    BTreePartitionUpdater updater,
+                                    UpdateTransaction indexer,
+                                    OpOrder.Group opGroup,
+                                    Cloner cloner)
+        {
+            BufferedUpdateTransaction events = indexer != UpdateTransaction.NO_OP ? new BufferedUpdateTransaction() : null;
+            BTreePartitionUpdater attemptUpdater = new BTreePartitionUpdater(allocator,
+                                                                             new ReusingCloner(cloner),
+                                                                             opGroup,
+                                                                             events != null ? events : UpdateTransaction.NO_OP);
+            boolean locked = false;
+            try
+            {
+                for (int attempt = 0; ; ++attempt)
+                {
+                    if (attempt == MAX_LOCK_FREE_ATTEMPTS)
+                    {
+                        lock();
+                        locked = true;
+                    }
+
+                    if (events != null)
+                        events.start();
+                    BTreePartitionData current = (BTreePartitionData) data.getContentAt(contentIndex);
+                    BTreePartitionData merged = attemptUpdater.mergePartitionsAttempt(current, update);
+                    if (data.compareAndSetContent(contentIndex, current, merged))
+                    {
+                        metrics.lockFreePuts.inc();
+                        break;
+                    }
+                    metrics.lockFreePutRetries.inc();
+                    contentionUpdater.incrementAndGet(this);
+                }
+            }
+            finally
+            {
+                if (locked)
+                    writeLock.unlock();
+            }
+
+            if (events != null)
+                events.replay(indexer);
+            attemptUpdater.reportAllocatedMemory();
+            updater.dataSize += attemptUpdater.dataSize;
+            updater.colUpdateTimeDelta = Math.min(updater.colUpdateTimeDelta, attemptUpdater.colUpdateTimeDelta);
+            return true;
+        }
+
+        /**
+         * Applies the update under the write lock. This is used to add new partitions, and for all updates when rows
+         * are stored in the trie.
+         */
+        private void putLocked(DecoratedKey key,
+                               PartitionUpdate update,
+                               BTreePartitionUpdater updater,
+                               UpdateTransaction indexer,
+                               OpOrder.Group opGroup,
+                               Cloner cloner)
+        {
+            lock();
+            try
+            {
+                // Another writer may have added the partition since we checked. Partitions that are already present
+                // must only be changed atomically, as lock-free writers may be updating them concurrently.
+                if (!rowsInTrie && tryPutExisting(key, update, updater, indexer, opGroup, cloner))
+                    return;
+
+                long onHeap = sizeOnHeap();
+                long offHeap = sizeOffHeap();
+                // Use the fast recursive put if we know the key is small enough to not cause a stack overflow.
+                try
+                {
+                    if (rowsInTrie)
+                        putRows(key, update, updater, indexer, opGroup, cloner);
+                    else
+                        data.putSingleton(key,
+                                          update,
+                                          (existing, upd) -> updater.mergePartitions((BTreePartitionData) existing, upd),
+                                          key.getKeyLength() < MAX_RECURSIVE_KEY_LENGTH);
+                }
+                catch (MemtableTrie.SpaceExhaustedException e)
+                {
+                    // This should never really happen as a flush would be triggered long before this limit is reached.
+                    throw Throwables.propagate(e);
+                }
+                allocator.offHeap().adjust(sizeOffHeap() - offHeap, opGroup);
+                allocator.onHeap().adjust(sizeOnHeap() - onHeap, opGroup);
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        private void lock()
+        {
             boolean locked = writeLock.tryLock();
             if (locked)
             {
@@ -476,48 +936,107 @@ public class TrieMemtable extends AbstractAllocatorMemtable
             else
             {
                 metrics.contendedPuts.inc();
+                contentionUpdater.incrementAndGet(this);
                 long lockStartTime = System.nanoTime();
                 writeLock.lock();
                 metrics.contentionTime.addNano(System.nanoTime() - lockStartTime);
             }
+        }
+
+        /**
+         * Applies the update when rows are stored in the trie. The rows are written before the partition-level data,
+         * so that partition iteration (which is driven by the latter) cannot find a new partition before its rows, and
+         * both are written under the rows lock, so that readers of the partition see the update atomically.
+         * <p>
+         * Rows are merged without cloning their cells, as they are stored serialized; the few that cannot be (see
+         * {@link MemtableRowStore#write}) are cloned as in the default mode. The stored rows an update supersedes are
+         * released once the whole update is written.
+         */
+        private void putRows(DecoratedKey key,
+                             PartitionUpdate update,
+                             BTreePartitionUpdater updater,
+                             UpdateTransaction indexer,
+                             OpOrder.Group opGroup,
+                             Cloner cloner) throws MemtableTrie.SpaceExhaustedException
+        {
+            // The row heap sizes this collects are not reported, as the rows are not kept as objects.
+            BTreePartitionUpdater rowUpdater = new BTreePartitionUpdater(allocator, null, opGroup, indexer);
+            DeserializationHelper readHelper = rows.readHelper();
+            Row.Builder builder = BTreeRow.sortedBuilder();
+            indexer.start();
+            long stamp = rowsLock.writeLock();
             try
             {
-                try
+                for (Row row : update)
                 {
-                    long onHeap = data.sizeOnHeap();
-                    long offHeap = data.sizeOffHeap();
-                    // Use the fast recursive put if we know the key is small enough to not cause a stack overflow.
-                    try
-                    {
-                        data.putSingleton(key,
-                                          update,
-                                          updater::mergePartitions,
-                                          key.getKeyLength() < MAX_RECURSIVE_KEY_LENGTH);
-                    }
-                    catch (MemtableTrie.SpaceExhaustedException e)
-                    {
-                        // This should never really happen as a flush would be triggered long before this limit is reached.
-                        throw Throwables.propagate(e);
-                    }
-                    allocator.offHeap().adjust(data.sizeOffHeap() - offHeap, opGroup);
-                    allocator.onHeap().adjust(data.sizeOnHeap() - onHeap, opGroup);
+                    Clustering<?> clustering = row.clustering();
+                    data.putSingleton(rowPath(key, comparator, clustering),
+                                      row,
+                                      (existing, upd) -> {
+                                          Row merged = existing == null
+                                                       ? rowUpdater.insert(upd)
+                                                       : rowUpdater.merge(readRow(existing, readHelper, builder), upd);
+                                          int position = rows.write(merged);
+                                          if (existing instanceof Integer)
+                                              rows.release((Integer) existing);
+                                          return position >= 0 ? (Object) position : merged.clone(cloner);
+                                      },
+                                      key.getKeyLength() + clustering.dataSize() < MAX_RECURSIVE_KEY_LENGTH);
                 }
-                finally
-                {
-                    updateMinTimestamp(update.stats().minTimestamp);
-                    updateLiveDataSize(updater.dataSize);
-                    updateCurrentOperations(update.operationCount());
 
-                    // TODO: lambov 2021-03-30: check if stats are further optimisable
-                    columnsCollector.update(update.columns());
-                    statsCollector.update(update.stats());
-                }
+                data.putSingleton(key,
+                                  update,
+                                  (existing, upd) -> {
+                                      if (existing == null)
+                                          ++partitionCount;
+                                      return updater.mergePartitionHeader((BTreePartitionData) existing, upd);
+                                  },
+                                  key.getKeyLength() < MAX_RECURSIVE_KEY_LENGTH);
+                rows.completeUpdate();
+            }
+            catch (Throwable t)
+            {
+                rows.abortUpdate();
+                throw t;
             }
             finally
             {
-                writeLock.unlock();
+                rowsLock.unlockWrite(stamp);
+                indexer.commit();
+                updater.dataSize += rowUpdater.dataSize;
+                updater.colUpdateTimeDelta = Math.min(updater.colUpdateTimeDelta, rowUpdater.colUpdateTimeDelta);
+                updater.reportAllocatedMemory();
             }
-            return updater.colUpdateTimeDelta;
+        }
+
+        /**
+         * Reads the row stored as the given content of a row path.
+         */
+        Row readRow(Object content, DeserializationHelper readHelper, Row.Builder builder)
+        {
+            return content instanceof Integer ? rows.read((Integer) content, readHelper, builder) : (Row) content;
+        }
+
+        boolean reachedAllocatedSizeThreshold()
+        {
+            return data.reachedAllocatedSizeThreshold() || rows != null && rows.reachedAllocatedSizeThreshold();
+        }
+
+        private long sizeOnHeap()
+        {
+            return data.sizeOnHeap() + (rows != null ? rows.sizeOnHeap() : 0);
+        }
+
+        private long sizeOffHeap()
+        {
+            return data.sizeOffHeap() + (rows != null ? rows.sizeOffHeap() : 0);
+        }
+
+        void discardBuffers()
+        {
+            data.discardBuffers();
+            if (rows != null)
+                rows.discard();
         }
 
         public boolean isEmpty()
@@ -527,23 +1046,27 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
         private void updateMinTimestamp(long timestamp)
         {
-            if (timestamp < minTimestamp)
-                minTimestamp = timestamp;
+            long current;
+            while (timestamp < (current = minTimestamp))
+            {
+                if (minTimestampUpdater.compareAndSet(this, current, timestamp))
+                    return;
+            }
         }
 
         void updateLiveDataSize(long size)
         {
-            liveDataSize = liveDataSize + size;
+            liveDataSizeUpdater.addAndGet(this, size);
         }
 
         private void updateCurrentOperations(long op)
         {
-            currentOperations = currentOperations + op;
+            currentOperationsUpdater.addAndGet(this, op);
         }
 
         public int size()
         {
-            return data.valuesCount();
+            return rowsInTrie ? partitionCount : data.valuesCount();
         }
 
         long minTimestamp()
@@ -562,24 +1085,116 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         }
     }
 
+    /**
+     * Collects the index events of an attempt of a lock-free update, so that the indexer only receives those of the
+     * attempt that succeeds. {@link #start} discards the events of the previous attempt.
+     */
+    private static class BufferedUpdateTransaction implements UpdateTransaction
+    {
+        private final List<Consumer<UpdateTransaction>> events = new ArrayList<>();
+
+        public void start()
+        {
+            events.clear();
+        }
+
+        public void onPartitionDeletion(DeletionTime deletionTime)
+        {
+            events.add(indexer -> indexer.onPartitionDeletion(deletionTime));
+        }
+
+        public void onRangeTombstone(RangeTombstone rangeTombstone)
+        {
+            events.add(indexer -> indexer.onRangeTombstone(rangeTombstone));
+        }
+
+        public void onInserted(Row row)
+        {
+            events.add(indexer -> indexer.onInserted(row));
+        }
+
+        public void onUpdated(Row existing, Row updated)
+        {
+            events.add(indexer -> indexer.onUpdated(existing, updated));
+        }
+
+        public void commit()
+        {
+            // the events are passed on by replay
+        }
+
+        void replay(UpdateTransaction indexer)
+        {
+            indexer.start();
+            try
+            {
+                for (Consumer<UpdateTransaction> event : events)
+                    event.accept(indexer);
+            }
+            finally
+            {
+                indexer.commit();
+            }
+        }
+    }
+
+    /**
+     * Remembers the clones made by the wrapped cloner, so that the attempts of a lock-free update do not copy the
+     * same cells of the update into the memtable's memory again when an earlier attempt failed to publish its result.
+     */
+    private static class ReusingCloner implements Cloner
+    {
+        private final Cloner cloner;
+        private IdentityHashMap<Object, Object> clones;
+
+        ReusingCloner(Cloner cloner)
+        {
+            this.cloner = cloner;
+        }
+
+        public DecoratedKey clone(DecoratedKey key)
+        {
+            return (DecoratedKey) reuse(key, k -> cloner.clone((DecoratedKey) k));
+        }
+
+        public Clustering<?> clone(Clustering<?> clustering)
+        {
+            return (Clustering<?>) reuse(clustering, c -> cloner.clone((Clustering<?>) c));
+        }
+
+        public Cell<?> clone(Cell<?> cell)
+        {
+            return (Cell<?>) reuse(cell, c -> cloner.clone((Cell<?>) c));
+        }
+
+        private Object reuse(Object value, Function<Object, Object> clone)
+        {
+            if (clones == null)
+                clones = new IdentityHashMap<>();
+            return clones.computeIfAbsent(value, clone);
+        }
+    }
+
     static class MemtableUnfilteredPartitionIterator extends AbstractUnfilteredPartitionIterator implements Memtable.MemtableUnfilteredPartitionIterator
     {
+        private final TrieMemtable memtable;
         private final TableMetadata metadata;
         private final EnsureOnHeap ensureOnHeap;
-        private final Trie<BTreePartitionData> source;
-        private final Iterator<Map.Entry<ByteComparable, BTreePartitionData>> iter;
+        private final Trie<Object> source;
+        private final Iterator<Map.Entry<ByteComparable, Object>> iter;
         private final ColumnFilter columnFilter;
         private final DataRange dataRange;
 
-        public MemtableUnfilteredPartitionIterator(TableMetadata metadata,
+        public MemtableUnfilteredPartitionIterator(TrieMemtable memtable,
                                                    EnsureOnHeap ensureOnHeap,
-                                                   Trie<BTreePartitionData> source,
+                                                   Trie<Object> source,
                                                    ColumnFilter columnFilter,
                                                    DataRange dataRange)
         {
-            this.metadata = metadata;
+            this.memtable = memtable;
+            this.metadata = memtable.metadata();
             this.ensureOnHeap = ensureOnHeap;
-            this.iter = source.entryIterator();
+            this.iter = memtable.partitionEntryIterator(source);
             this.source = source;
             this.columnFilter = columnFilter;
             this.dataRange = dataRange;
@@ -587,9 +1202,12 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
         public int getMinLocalDeletionTime()
         {
+            // The stats of the partition data include the stats of all rows of the partition, even if they are stored
+            // separately in the trie.
             int minLocalDeletionTime = Integer.MAX_VALUE;
-            for (BTreePartitionData partition : source.values())
-                minLocalDeletionTime = Math.min(minLocalDeletionTime, partition.stats.minLocalDeletionTime);
+            for (Object content : source.values())
+                if (content instanceof BTreePartitionData)
+                    minLocalDeletionTime = Math.min(minLocalDeletionTime, ((BTreePartitionData) content).stats.minLocalDeletionTime);
 
             return minLocalDeletionTime;
         }
@@ -606,7 +1224,7 @@ public class TrieMemtable extends AbstractAllocatorMemtable
 
         public UnfilteredRowIterator next()
         {
-            Partition partition = getPartitionFromTrieEntry(metadata(), ensureOnHeap, iter.next());
+            Partition partition = memtable.getPartitionFromTrieEntry(ensureOnHeap, iter.next());
             DecoratedKey key = partition.partitionKey();
             ClusteringIndexFilter filter = dataRange.clusteringIndexFilter(key);
 
@@ -617,7 +1235,7 @@ public class TrieMemtable extends AbstractAllocatorMemtable
     static class MemtablePartition extends ImmutableBTreePartition
     {
 
-        private final EnsureOnHeap ensureOnHeap;
+        final EnsureOnHeap ensureOnHeap;
 
         private MemtablePartition(TableMetadata table, EnsureOnHeap ensureOnHeap, DecoratedKey key, BTreePartitionData data)
         {
@@ -697,13 +1315,137 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         }
     }
 
+    /**
+     * A memtable partition whose rows are stored in the memtable trie rather than in the B-tree of its data. The
+     * B-tree is built on demand, from only the rows that fall within the clustering span of the request if possible.
+     */
+    static class RowTriePartition extends MemtablePartition
+    {
+        private final MemtableShard shard;
+        private BTreePartitionData fullHolder;
+
+        private RowTriePartition(TableMetadata table, EnsureOnHeap ensureOnHeap, DecoratedKey key, BTreePartitionData header, MemtableShard shard)
+        {
+            super(table, ensureOnHeap, key, header);
+            this.shard = shard;
+        }
+
+        /**
+         * Builds the partition data with the rows between the given clustering bounds, both inclusive. The
+         * partition-level data is read again together with the rows, so that both reflect the same writes.
+         */
+        private BTreePartitionData withRows(ClusteringPrefix<?> start, ClusteringPrefix<?> end)
+        {
+            long stamp = shard.rowsLock.tryOptimisticRead();
+            if (stamp != 0)
+            {
+                BTreePartitionData data = readWithRows(start, end);
+                if (shard.rowsLock.validate(stamp))
+                    return data;
+            }
+
+            // A write to the shard happened while reading; read again, holding off writers.
+            stamp = shard.rowsLock.readLock();
+            try
+            {
+                return readWithRows(start, end);
+            }
+            finally
+            {
+                shard.rowsLock.unlockRead(stamp);
+            }
+        }
+
+        private BTreePartitionData readWithRows(ClusteringPrefix<?> start, ClusteringPrefix<?> end)
+        {
+            BTreePartitionData header = (BTreePartitionData) shard.data.get(partitionKey);
+            if (header == null)
+                header = super.holder();
+
+            ClusteringComparator comparator = metadata().comparator;
+            Trie<Object> rowsTrie = shard.data.subtrie(rowPath(partitionKey, comparator, start), true,
+                                                       rowPath(partitionKey, comparator, end), true);
+            DeserializationHelper readHelper = shard.rows.readHelper();
+            Row.Builder builder = BTreeRow.sortedBuilder();
+            List<Row> rows = new ArrayList<>();
+            for (Object content : rowsTrie.values())
+            {
+                if (!isPartition(content))
+                    rows.add(shard.readRow(content, readHelper, builder));
+            }
+
+            try (BulkIterator<Row> iterator = BulkIterator.of(rows.iterator()))
+            {
+                return header.withTree(BTree.build(iterator, rows.size(), UpdateFunction.noOp()));
+            }
+        }
+
+        @Override
+        protected BTreePartitionData holder()
+        {
+            if (fullHolder == null)
+                fullHolder = withRows(Slice.ALL.start(), Slice.ALL.end());
+            return fullHolder;
+        }
+
+        @Override
+        public Row getRow(Clustering<?> clustering)
+        {
+            BTreePartitionData data = clustering == Clustering.STATIC_CLUSTERING
+                                      ? super.holder()
+                                      : withRows(clustering, clustering);
+            return new MemtablePartition(metadata(), ensureOnHeap, partitionKey, data).getRow(clustering);
+        }
+
+        @Override
+        public UnfilteredRowIterator unfilteredIterator(ColumnFilter selection, Slices slices, boolean reversed)
+        {
+            // Slices are always in clustering order, regardless of the direction of the query.
+            BTreePartitionData data = slices.size() == 0
+                                      ? super.holder()
+                                      : withRows(slices.get(0).start(), slices.get(slices.size() - 1).end());
+            return unfilteredIterator(data, selection, slices, reversed);
+        }
+
+        @Override
+        public UnfilteredRowIterator unfilteredIterator(ColumnFilter selection, NavigableSet<Clustering<?>> clusteringsInQueryOrder, boolean reversed)
+        {
+            BTreePartitionData data;
+            if (clusteringsInQueryOrder.isEmpty())
+                data = super.holder();
+            else if (reversed)
+                data = withRows(clusteringsInQueryOrder.last(), clusteringsInQueryOrder.first());
+            else
+                data = withRows(clusteringsInQueryOrder.first(), clusteringsInQueryOrder.last());
+            return new MemtablePartition(metadata(), ensureOnHeap, partitionKey, data)
+                   .unfilteredIterator(selection, clusteringsInQueryOrder, reversed);
+        }
+    }
+
+    /**
+     * Creates a factory for the given options. Supports {@link #ROWS_IN_TRIE_OPTION}, which selects storing rows
+     * directly in the memtable trie (defaults to false).
+     */
+    public static Factory factory(Map<String, String> furtherOptions)
+    {
+        boolean rowsInTrie = Boolean.parseBoolean(furtherOptions.remove(ROWS_IN_TRIE_OPTION));
+        return rowsInTrie ? ROWS_IN_TRIE_FACTORY : FACTORY;
+    }
+
     static class Factory implements Memtable.Factory
     {
+        private final boolean rowsInTrie;
+
+        Factory(boolean rowsInTrie)
+        {
+            this.rowsInTrie = rowsInTrie;
+        }
+
         public Memtable create(AtomicReference<CommitLogPosition> commitLogLowerBound,
                                TableMetadataRef metadaRef,
                                Owner owner)
         {
-            return new TrieMemtable(commitLogLowerBound, metadaRef, owner);
+            return new TrieMemtable(commitLogLowerBound, metadaRef, owner, rowsInTrie);
         }
 
         @Override
@@ -753,5 +1495,31 @@ public class TrieMemtable extends AbstractAllocatorMemtable
         {
             return "" + SHARD_COUNT;
         }
+
+        @Override
+        public void setAdaptiveShards(boolean adaptiveShards)
+        {
+            ADAPTIVE_SHARDS = adaptiveShards;
+            logger.info("Set adaptive shard boundaries to {}", adaptiveShards);
+        }
+
+        @Override
+        public boolean getAdaptiveShards()
+        {
+            return ADAPTIVE_SHARDS;
+        }
+
+        @Override
+        public void setParallelFlush(boolean parallelFlush)
+        {
+            PARALLEL_FLUSH = parallelFlush;
+            logger.info("Set parallel flush to {}", parallelFlush);
+        }
+
+        @Override
+        public boolean getParallelFlush()
+        {
+            return PARALLEL_FLUSH;
+        }
     }
 }
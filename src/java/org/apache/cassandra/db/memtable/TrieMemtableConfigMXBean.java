@@ -23,4 +23,12 @@ public interface TrieMemtableConfigMXBean
     public void setShardCount(String numShards);
 
     public String getShardCount();
+
+    public void setAdaptiveShards(boolean adaptiveShards);
+
+    public boolean getAdaptiveShards();
+
+    public void setParallelFlush(boolean parallelFlush);
+
+    public boolean getParallelFlush();
 }
@@ -55,4 +55,12 @@ public final class BTreePartitionData
         this.staticRow = staticRow == null ? Rows.EMPTY_STATIC_ROW : staticRow;
         this.stats = stats;
     }
+
+    /**
+     * Returns a copy of this holder with the given rows tree.
+     */
+    public BTreePartitionData withTree(Object[] tree)
+    {
+        return new BTreePartitionData(columns, tree, deletionInfo, staticRow, stats);
+    }
 }
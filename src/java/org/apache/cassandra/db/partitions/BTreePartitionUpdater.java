@@ -61,7 +61,7 @@ public class BTreePartitionUpdater implements UpdateFunction<Row, Row>, ColumnDa
     @Override
     public Row insert(Row insert)
     {
-        Row data = insert.clone(cloner);
+        Row data = cloner != null ? insert.clone(cloner) : insert;
         indexer.onInserted(insert);
 
         this.dataSize += data.dataSize();
@@ -121,7 +121,44 @@ public class BTreePartitionUpdater implements UpdateFunction<Row, Row>, ColumnDa
         }
     }
 
+    /**
+     * Merges the update into the current data as one attempt of an optimistic concurrent update, which is repeated
+     * if another writer changes the data before the result can be published. Resets the sizes and timestamp delta
+     * collected by any previous attempt. The caller is responsible for passing on the index events of the attempt
+     * that succeeds only, and for reporting the allocated memory when done.
+     */
+    public BTreePartitionData mergePartitionsAttempt(BTreePartitionData current, final PartitionUpdate update)
+    {
+        this.dataSize = 0;
+        this.heapSize = 0;
+        this.colUpdateTimeDelta = Long.MAX_VALUE;
+        return makeMergedPartition(current, update);
+    }
+
+    /**
+     * Merges the partition-level data of the update (deletion info, static row, columns and stats) into the current
+     * data, leaving its rows untouched. Used when the rows are not kept in the partition's tree but stored separately
+     * (see the rowsInTrie mode of {@link org.apache.cassandra.db.memtable.TrieMemtable}), in which case the caller is
+     * responsible for merging the rows using {@link #insert(Row)} and {@link #merge(Row, Row)}, and for starting and
+     * committing the index transaction around the whole operation.
+     */
+    public BTreePartitionData mergePartitionHeader(BTreePartitionData current, final PartitionUpdate update)
+    {
+        if (current == null)
+        {
+            current = BTreePartitionData.EMPTY;
+            this.onAllocatedOnHeap(BTreePartitionData.UNSHARED_HEAP_SIZE);
+        }
+
+        return makeMergedPartition(current, update, false);
+    }
+
     protected BTreePartitionData makeMergedPartition(BTreePartitionData current, PartitionUpdate update)
+    {
+        return makeMergedPartition(current, update, true);
+    }
+
+    private BTreePartitionData makeMergedPartition(BTreePartitionData current, PartitionUpdate update, boolean mergeRows)
     {
         DeletionInfo newDeletionInfo = apply(current.deletionInfo, update.deletionInfo());
 
@@ -135,7 +172,9 @@ public class BTreePartitionUpdater implements UpdateFunction<Row, Row>, ColumnDa
                        ? this.insert(newStatic)
                        : this.merge(current.staticRow, newStatic));
 
-        Object[] tree = BTree.update(current.tree, update.holder().tree, update.metadata().comparator, this);
+        Object[] tree = mergeRows
+                        ? BTree.update(current.tree, update.holder().tree, update.metadata().comparator, this)
+                        : current.tree;
         EncodingStats newStats = current.stats.mergeWith(update.stats());
         onAllocatedOnHeap(newStats.unsharedHeapSize() - current.stats.unsharedHeapSize());
 
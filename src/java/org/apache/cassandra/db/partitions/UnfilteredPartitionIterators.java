@@ -187,8 +187,17 @@ public abstract class UnfilteredPartitionIterators
         };
     }
 
-    @SuppressWarnings("resource")
     public static UnfilteredPartitionIterator mergeLazily(final List<? extends UnfilteredPartitionIterator> iterators)
+    {
+        return mergeLazily(iterators, false);
+    }
+
+    /**
+     * Merges the given iterators lazily, merging the rows of each partition as byte-comparable tries if
+     * {@code trieMerge} is set (see {@link UnfilteredRowIterators#merge(List, boolean)}).
+     */
+    @SuppressWarnings("resource")
+    public static UnfilteredPartitionIterator mergeLazily(final List<? extends UnfilteredPartitionIterator> iterators, boolean trieMerge)
     {
         assert !iterators.isEmpty();
 
@@ -212,7 +221,7 @@ public abstract class UnfilteredPartitionIterators
                 {
                     protected UnfilteredRowIterator initializeIterator()
                     {
-                        return UnfilteredRowIterators.merge(toMerge);
+                        return UnfilteredRowIterators.merge(toMerge, trieMerge);
                     }
                 };
             }
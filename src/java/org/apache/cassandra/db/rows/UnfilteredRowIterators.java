@@ -22,11 +22,15 @@ import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.CassandraRelevantProperties;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.transform.FilteredRows;
 import org.apache.cassandra.db.transform.MoreRows;
 import org.apache.cassandra.db.transform.Transformation;
+import org.apache.cassandra.db.tries.TrieMergeIterator;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileUtils;
@@ -44,6 +48,17 @@ public abstract class UnfilteredRowIterators
 {
     private static final Logger logger = LoggerFactory.getLogger(UnfilteredRowIterators.class);
 
+    /**
+     * Whether reads merge the rows of their sources in forward order as byte-comparable tries (see
+     * {@link TrieMergeIterator}) instead of comparing their clusterings. This saves comparisons when many sources
+     * overlap, e.g. on wide partitions that are spread over many sstables.
+     * <p>
+     * This is only consulted by the read commands, which pass it to {@link #merge(List, boolean)}; compaction,
+     * update merging and replica filtering protection always use the comparator-based merge.
+     */
+    @VisibleForTesting
+    public static volatile boolean TRIE_MERGE_READS = CassandraRelevantProperties.TRIE_MERGE_READS.getBoolean();
+
     private UnfilteredRowIterators() {}
 
     /**
@@ -134,7 +149,20 @@ public abstract class UnfilteredRowIterators
         if (iterators.size() == 1)
             return iterators.get(0);
 
-        return UnfilteredRowMergeIterator.create(iterators, null);
+        return UnfilteredRowMergeIterator.create(iterators, null, false);
+    }
+
+    /**
+     * Returns an iterator that is the result of merging other iterators, merging them as byte-comparable tries
+     * in forward order if {@code trieMerge} is set.
+     */
+    public static UnfilteredRowIterator merge(List<UnfilteredRowIterator> iterators, boolean trieMerge)
+    {
+        assert !iterators.isEmpty();
+        if (iterators.size() == 1)
+            return iterators.get(0);
+
+        return UnfilteredRowMergeIterator.create(iterators, null, trieMerge);
     }
 
     /**
@@ -145,7 +173,7 @@ public abstract class UnfilteredRowIterators
      */
     public static UnfilteredRowIterator merge(List<UnfilteredRowIterator> iterators, MergeListener mergeListener)
     {
-        return UnfilteredRowMergeIterator.create(iterators, mergeListener);
+        return UnfilteredRowMergeIterator.create(iterators, mergeListener, false);
     }
 
     /**
@@ -400,7 +428,8 @@ public abstract class UnfilteredRowIterators
                                            RegularAndStaticColumns columns,
                                            DeletionTime partitionDeletion,
                                            boolean reversed,
-                                           MergeListener listener)
+                                           MergeListener listener,
+                                           boolean trieMerge)
         {
             super(metadata,
                   iterators.get(0).partitionKey(),
@@ -422,13 +451,19 @@ public abstract class UnfilteredRowIterators
                 }
             }
 
-            this.mergeIterator = MergeIterator.getCloseable(iterators,
-                                                            reversed ? metadata.comparator.reversed() : metadata.comparator,
-                                                            new MergeReducer(iterators.size(), reversed, listener));
+            MergeReducer reducer = new MergeReducer(iterators.size(), reversed, listener);
+            if (trieMerge && !reversed)
+                this.mergeIterator = TrieMergeIterator.getCloseable(iterators,
+                                                                    unfiltered -> metadata.comparator.asByteComparable(unfiltered.clustering()),
+                                                                    reducer);
+            else
+                this.mergeIterator = MergeIterator.getCloseable(iterators,
+                                                                reversed ? metadata.comparator.reversed() : metadata.comparator,
+                                                                reducer);
             this.listener = listener;
         }
 
-        private static UnfilteredRowMergeIterator create(List<UnfilteredRowIterator> iterators, MergeListener listener)
+        private static UnfilteredRowMergeIterator create(List<UnfilteredRowIterator> iterators, MergeListener listener, boolean trieMerge)
         {
             try
             {
@@ -438,7 +473,8 @@ public abstract class UnfilteredRowIterators
                                                       collectColumns(iterators),
                                                       collectPartitionLevelDeletion(iterators, listener),
                                                       iterators.get(0).isReverseOrder(),
-                                                      listener);
+                                                      listener,
+                                                      trieMerge);
             }
             catch (RuntimeException | Error e)
             {
@@ -26,6 +26,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
 import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -66,6 +67,7 @@ public class CassandraCompressedStreamWriter extends CassandraStreamWriter
         try (ChannelProxy fc = sstable.getDataChannel().newChannel())
         {
             long progress = 0L;
+            DataDirectoryIOBudget budget = DataDirectoryIOBudget.forSSTable(sstable);
 
             // we want to send continuous chunks together to minimise reads from disk and network writes
             List<Section> sections = fuseAdjacentChunks(compressionInfo.chunks());
@@ -96,6 +98,8 @@ public class CassandraCompressedStreamWriter extends CassandraStreamWriter
 
                     bytesTransferred += toTransfer;
                     progress += toTransfer;
+                    if (budget != null)
+                        budget.acquireRead(toTransfer);
                     session.progress(sstable.descriptor.fileFor(Component.DATA).toString(), ProgressInfo.Direction.OUT, progress, totalSize);
                 }
             }
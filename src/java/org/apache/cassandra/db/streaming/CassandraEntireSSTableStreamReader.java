@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableMultiWriter;
@@ -109,6 +110,7 @@ public class CassandraEntireSSTableStreamReader implements IStreamReader
         try
         {
             writer = createWriter(cfs, totalSize, manifest.components());
+            DataDirectoryIOBudget budget = DataDirectoryIOBudget.forFile(writer.descriptor.directory);
             long bytesRead = 0;
             for (Component component : manifest.components())
             {
@@ -123,6 +125,8 @@ public class CassandraEntireSSTableStreamReader implements IStreamReader
                              prettyPrintMemory(totalSize));
 
                 writer.writeComponent(component.type, in, length);
+                if (budget != null)
+                    budget.acquireWrite(length);
                 session.progress(writer.descriptor.fileFor(component).toString(), ProgressInfo.Direction.IN, length, length);
                 bytesRead += length;
 
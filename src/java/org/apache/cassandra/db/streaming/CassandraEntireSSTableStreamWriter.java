@@ -24,6 +24,7 @@ import java.nio.channels.FileChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.net.AsyncStreamingOutputPlus;
@@ -74,6 +75,7 @@ public class CassandraEntireSSTableStreamWriter
                      prettyPrintMemory(totalSize));
 
         long progress = 0L;
+        DataDirectoryIOBudget budget = DataDirectoryIOBudget.forSSTable(sstable);
 
         for (Component component : manifest.components())
         {
@@ -92,6 +94,8 @@ public class CassandraEntireSSTableStreamWriter
             FileChannel channel = context.channel(sstable.descriptor, component, length);
             long bytesWritten = out.writeFileToChannel(channel, limiter);
             progress += bytesWritten;
+            if (budget != null)
+                budget.acquireRead(bytesWritten);
 
             session.progress(sstable.descriptor.fileFor(component).toString(), ProgressInfo.Direction.OUT, bytesWritten, length);
 
@@ -29,6 +29,7 @@ import com.google.common.base.Preconditions;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.compress.ZstdDictionaryCompressor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
 import org.apache.cassandra.net.AsyncStreamingOutputPlus;
@@ -79,7 +80,10 @@ public class CassandraOutgoingFile implements OutgoingStream
     {
         boolean keepSSTableLevel = operation == StreamOperation.BOOTSTRAP || operation == StreamOperation.REBUILD;
 
-        CompressionInfo compressionInfo = sstable.compression
+        // Chunks compressed with a dictionary can only be decompressed with the sstable's CompressionDictionary
+        // component, which the receiver of a partial stream does not get, so we send these sstables' data decompressed
+        // (see CassandraStreamWriter). Streaming the entire sstable copies the component with the rest.
+        CompressionInfo compressionInfo = sstable.compression && !(sstable.getCompressionMetadata().compressor() instanceof ZstdDictionaryCompressor)
                 ? CompressionInfo.newLazyInstance(sstable.getCompressionMetadata(), sections)
                 : null;
 
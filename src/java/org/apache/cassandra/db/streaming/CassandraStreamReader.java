@@ -18,6 +18,7 @@
 package org.apache.cassandra.db.streaming;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -29,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.db.commitlog.IntervalSet;
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
 import org.apache.cassandra.exceptions.UnknownColumnException;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.TrackedDataInputPlus;
@@ -41,8 +43,13 @@ import org.apache.cassandra.io.sstable.SSTableMultiWriter;
 import org.apache.cassandra.io.sstable.SSTableSimpleIterator;
 import org.apache.cassandra.io.sstable.format.RangeAwareSSTableWriter;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SerializedUnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.File;
+import org.apache.cassandra.io.util.TeeDataInputPlus;
 import org.apache.cassandra.streaming.ProgressInfo;
 import org.apache.cassandra.streaming.StreamReceiver;
 import org.apache.cassandra.streaming.StreamSession;
@@ -51,6 +58,7 @@ import org.apache.cassandra.streaming.messages.StreamMessageHeader;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.STREAMING_COPY_SERIALIZED_ROWS;
 import static org.apache.cassandra.net.MessagingService.current_version;
 
 /**
@@ -70,6 +78,8 @@ public class CassandraStreamReader implements IStreamReader
     protected final int sstableLevel;
     protected final SerializationHeader.Component header;
     protected final int fileSeqNum;
+    // the on-disk bytes written so far that have been charged against the write budget of their data directory
+    private long bytesCharged;
 
     public CassandraStreamReader(StreamMessageHeader header, CassandraStreamHeader streamHeader, StreamSession session)
     {
@@ -119,7 +129,7 @@ public class CassandraStreamReader implements IStreamReader
         try (StreamCompressionInputStream streamCompressionInputStream = new StreamCompressionInputStream(inputPlus, current_version))
         {
             TrackedDataInputPlus in = new TrackedDataInputPlus(streamCompressionInputStream);
-            deserializer = new StreamDeserializer(cfs.metadata(), in, inputVersion, getHeader(cfs.metadata()));
+            deserializer = newDeserializer(cfs.metadata(), in);
             writer = createWriter(cfs, totalSize, repairedAt, pendingRepair, format);
             while (in.getBytesRead() < totalSize)
             {
@@ -144,6 +154,29 @@ public class CassandraStreamReader implements IStreamReader
         }
     }
 
+    /**
+     * Creates the deserializer for the partitions of the stream. If enabled with
+     * {@link org.apache.cassandra.config.CassandraRelevantProperties#STREAMING_COPY_SERIALIZED_ROWS} and the rows can
+     * be copied by the writer, that is if the source sstable is in the latest version of the trie-indexed format, which
+     * the writer uses, and the table is not a counter table whose local shards are cleared as they are received, the
+     * partitions also give access to the serialized form of their rows (see {@link SerializedStreamDeserializer}).
+     */
+    protected StreamDeserializer newDeserializer(TableMetadata metadata, DataInputPlus in) throws IOException
+    {
+        if (canCopySerializedRows(metadata))
+            return new SerializedStreamDeserializer(metadata, in, inputVersion, getHeader(metadata));
+        return new StreamDeserializer(metadata, in, inputVersion, getHeader(metadata));
+    }
+
+    private boolean canCopySerializedRows(TableMetadata metadata)
+    {
+        return STREAMING_COPY_SERIALIZED_ROWS.getBoolean()
+               && !metadata.isCounter()
+               && header != null
+               && format == SSTableFormat.Type.BTI
+               && inputVersion.equals(format.info.getLatestVersion());
+    }
+
     protected SerializationHeader getHeader(TableMetadata metadata) throws UnknownColumnException
     {
         return header != null? header.toHeader(metadata) : null; //pre-3.0 sstable have no SerializationHeader
@@ -186,6 +219,23 @@ public class CassandraStreamReader implements IStreamReader
     {
         writer.append(deserializer.newPartition());
         deserializer.checkForExceptions();
+        maybeChargeWrites(writer);
+    }
+
+    /**
+     * Charges the bytes written since the last charge, once there are enough of them, against the write budget of the
+     * data directory currently written to, see {@link DataDirectoryIOBudget}.
+     */
+    private void maybeChargeWrites(SSTableMultiWriter writer)
+    {
+        long bytesWritten = writer.getOnDiskBytesWritten();
+        if (bytesWritten - bytesCharged < DataDirectoryIOBudget.ACQUIRE_GRANULARITY)
+            return;
+
+        DataDirectoryIOBudget budget = DataDirectoryIOBudget.forFile(new File(writer.getFilename()));
+        if (budget != null)
+            budget.acquireWrite(bytesWritten - bytesCharged);
+        bytesCharged = bytesWritten;
     }
 
     public static class StreamDeserializer extends UnmodifiableIterator<Unfiltered> implements UnfilteredRowIterator
@@ -297,4 +347,94 @@ public class CassandraStreamReader implements IStreamReader
         {
         }
     }
+
+    /**
+     * A {@link StreamDeserializer} that records the bytes of the rows as it reads them, so that a writer that would
+     * serialize them identically copies them (see {@link SSTableWriter#canCopySerialized}).
+     * <p>
+     * This only saves the serialization of the received rows. The sender still streams the sections of the source
+     * Data.db as partitions, in the unchanged wire format, and every row is still deserialized here, as the writer
+     * needs them to build the partition and row indexes, the filter, the stats and the sstable-attached indexes. The
+     * rows are only copied if the receiving writer has the same sstable version and serialization header as the
+     * source sstable, which in practice means that the source was written in the latest trie-indexed format version,
+     * without the columns of the table having changed since.
+     */
+    public static class SerializedStreamDeserializer extends StreamDeserializer implements SerializedUnfilteredRowIterator
+    {
+        private final Version version;
+        private final SerializationHeader header;
+        private final DataOutputBuffer buffer;
+
+        private ByteBuffer serializedStaticRow;
+        // whether the buffer holds an unfiltered that has been returned already
+        private boolean consumed;
+
+        public SerializedStreamDeserializer(TableMetadata metadata, DataInputPlus in, Version version, SerializationHeader header) throws IOException
+        {
+            this(metadata, in, new DataOutputBuffer(), version, header);
+        }
+
+        private SerializedStreamDeserializer(TableMetadata metadata, DataInputPlus in, DataOutputBuffer buffer, Version version, SerializationHeader header) throws IOException
+        {
+            super(metadata, new TeeDataInputPlus(in, buffer), version, header);
+            this.version = version;
+            this.header = header;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public SerializedStreamDeserializer newPartition() throws IOException
+        {
+            buffer.clear();
+            super.newPartition();
+
+            // the writer serializes the partition key and deletion itself
+            ByteBuffer serialized = buffer.buffer();
+            serialized.position(ByteBufferUtil.serializedSizeWithShortLength(partitionKey().getKey())
+                                + (int) DeletionTime.serializer.serializedSize(partitionLevelDeletion()));
+            serializedStaticRow = ByteBufferUtil.clone(serialized);
+            consumed = true;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (consumed)
+            {
+                buffer.clear();
+                consumed = false;
+            }
+            return super.hasNext();
+        }
+
+        @Override
+        public Unfiltered next()
+        {
+            Unfiltered unfiltered = super.next();
+            consumed = true;
+            return unfiltered;
+        }
+
+        public Version serializedVersion()
+        {
+            return version;
+        }
+
+        public SerializationHeader serializationHeader()
+        {
+            return header;
+        }
+
+        public ByteBuffer serializedStaticRow()
+        {
+            return serializedStaticRow;
+        }
+
+        public ByteBuffer serializedUnfiltered()
+        {
+            assert consumed;
+            return buffer.buffer();
+        }
+    }
 }
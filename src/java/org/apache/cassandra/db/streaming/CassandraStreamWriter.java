@@ -26,13 +26,16 @@ import org.slf4j.LoggerFactory;
 
 import net.jpountz.lz4.LZ4Compressor;
 import net.jpountz.lz4.LZ4Factory;
+import org.apache.cassandra.db.compaction.DataDirectoryIOBudget;
 import org.apache.cassandra.io.compress.BufferType;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.ChannelProxy;
 import org.apache.cassandra.io.util.DataIntegrityMetadata;
 import org.apache.cassandra.io.util.DataIntegrityMetadata.ChecksumValidator;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.net.AsyncStreamingOutputPlus;
 import org.apache.cassandra.streaming.ProgressInfo;
 import org.apache.cassandra.streaming.StreamManager;
@@ -85,6 +88,8 @@ public class CassandraStreamWriter
 
         AsyncStreamingOutputPlus out = (AsyncStreamingOutputPlus) output;
         try(ChannelProxy proxy = sstable.getDataChannel().newChannel();
+            // compressed sstables only get here if the receiver cannot decompress their chunks, see CassandraOutgoingFile
+            RandomAccessReader reader = sstable.compression ? sstable.openDataReader(null, AccessIntent.SCAN) : null;
             ChecksumValidator validator = sstable.descriptor.fileFor(Component.CRC).exists()
                                           ? DataIntegrityMetadata.checksumValidator(sstable.descriptor)
                                           : null)
@@ -93,6 +98,7 @@ public class CassandraStreamWriter
 
             // setting up data compression stream
             long progress = 0L;
+            DataDirectoryIOBudget budget = DataDirectoryIOBudget.forSSTable(sstable);
 
             // stream each of the required sections of the file
             for (SSTableReader.PartitionPositionBounds section : sections)
@@ -110,9 +116,13 @@ public class CassandraStreamWriter
                 while (bytesRead < length)
                 {
                     int toTransfer = (int) Math.min(bufferSize, length - bytesRead);
-                    long lastBytesRead = write(proxy, validator, out, start, transferOffset, toTransfer, bufferSize);
+                    long lastBytesRead = reader != null
+                                         ? write(reader, out, start, toTransfer)
+                                         : write(proxy, validator, out, start, transferOffset, toTransfer, bufferSize);
                     start += lastBytesRead;
                     bytesRead += lastBytesRead;
+                    if (budget != null)
+                        budget.acquireRead(lastBytesRead);
                     progress += (lastBytesRead - transferOffset);
                     session.progress(sstable.descriptor.fileFor(Component.DATA).toString(), ProgressInfo.Direction.OUT, progress, totalSize);
                     transferOffset = 0;
@@ -175,4 +185,34 @@ public class CassandraStreamWriter
 
         return toTransfer;
     }
+
+    /**
+     * Read uncompressed bytes from a compressed data file and write them to the output stream
+     *
+     * @param reader The data file reader to read from
+     * @param start The read offset from the beginning of the uncompressed data.
+     * @param toTransfer The number of bytes to be transferred.
+     *
+     * @return Number of bytes transferred.
+     *
+     * @throws java.io.IOException on any I/O error
+     */
+    protected long write(RandomAccessReader reader, AsyncStreamingOutputPlus output, long start, int toTransfer) throws IOException
+    {
+        ByteBuffer buffer = BufferPools.forNetworking().get(toTransfer, BufferType.OFF_HEAP);
+        try
+        {
+            reader.seek(start);
+            buffer.limit(toTransfer);
+            // fills the buffer between its position and limit without moving them
+            reader.readFully(buffer);
+            output.writeToChannel(StreamCompressionSerializer.serialize(compressor, buffer, current_version), limiter);
+        }
+        finally
+        {
+            BufferPools.forNetworking().put(buffer);
+        }
+
+        return toTransfer;
+    }
 }
@@ -38,7 +38,7 @@ import java.util.*;
 public final class ComponentManifest implements Iterable<Component>
 {
     private static final List<Component> STREAM_COMPONENTS = ImmutableList.of(Component.DATA, Component.PRIMARY_INDEX, Component.PARTITION_INDEX, Component.ROW_INDEX,
-                                                                              Component.STATS, Component.COMPRESSION_INFO, Component.FILTER, Component.SUMMARY,
+                                                                              Component.STATS, Component.COMPRESSION_INFO, Component.COMPRESSION_DICTIONARY, Component.FILTER, Component.SUMMARY,
                                                                               Component.DIGEST, Component.CRC);
 
     private final LinkedHashMap<Component, Long> components;
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import org.agrona.collections.IntArrayList;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+/**
+ * Allocation strategy for the cells and content slots of a {@link MemtableTrie}, which decides if and when the indexes
+ * the trie releases (e.g. the cells of a sparse node that was converted to a split one) can be reused.
+ * <p>
+ * A released index cannot be reused immediately, because concurrent readers may have followed a pointer to it before
+ * the mutation that released it completed, and will continue to read it until they complete. The mutator calls
+ * {@link #completeMutation} when the release has become visible (i.e. after the final volatile write of a mutation),
+ * or {@link #abortMutation} if the mutation failed and the released indexes may still be referenced.
+ * <p>
+ * Like the trie's mutation methods, this is not thread-safe and must only be used by the mutator thread.
+ */
+interface MemoryAllocationStrategy
+{
+    /**
+     * Allocate an index, either a new one or one that was released and can now be reused.
+     */
+    int allocate() throws MemtableTrie.SpaceExhaustedException;
+
+    /**
+     * Mark an index as released by the current mutation.
+     */
+    void recycle(int index);
+
+    /**
+     * To be called when a mutation completes. Any indexes released by it are no longer reachable by readers that
+     * start after this call.
+     */
+    void completeMutation();
+
+    /**
+     * To be called when a mutation fails. Indexes released by it may still be reachable and are never reused.
+     */
+    void abortMutation();
+
+    /**
+     * The number of released indexes that have not been reused yet.
+     */
+    long releasedCount();
+
+    /**
+     * Source of new indexes.
+     */
+    interface Allocator
+    {
+        int allocate() throws MemtableTrie.SpaceExhaustedException;
+    }
+
+    /**
+     * Strategy that never reuses indexes. Suitable for tries whose readers are not tracked, and for short-lived tries.
+     */
+    class NoReuseStrategy implements MemoryAllocationStrategy
+    {
+        private final Allocator allocator;
+        private long released = 0;
+
+        NoReuseStrategy(Allocator allocator)
+        {
+            this.allocator = allocator;
+        }
+
+        public int allocate() throws MemtableTrie.SpaceExhaustedException
+        {
+            return allocator.allocate();
+        }
+
+        public void recycle(int index)
+        {
+            ++released;
+        }
+
+        public void completeMutation()
+        {
+            // nothing to do
+        }
+
+        public void abortMutation()
+        {
+            // nothing to do
+        }
+
+        public long releasedCount()
+        {
+            return released;
+        }
+    }
+
+    /**
+     * Strategy that reuses released indexes once all read operations that started before their release have completed,
+     * as tracked by the given {@link OpOrder}. All readers of the trie must be executed within a group of that order.
+     * <p>
+     * Indexes go through the following stages:
+     * - released by a mutation that is still in progress, and possibly still reachable;
+     * - released by a completed mutation, waiting for a barrier to be issued;
+     * - waiting for the readers that started before the barrier to complete;
+     * - free to be reused.
+     * Only one barrier is in flight at any time. It is issued on completion of a mutation, and checked on the next
+     * completion or when a new index is needed.
+     */
+    class OpOrderReuseStrategy implements MemoryAllocationStrategy
+    {
+        private final Allocator allocator;
+        private final OpOrder readOrder;
+
+        private IntArrayList justReleased = new IntArrayList();
+        private IntArrayList awaitingBarrier = new IntArrayList();
+        private IntArrayList awaitingReaders = new IntArrayList();
+        private IntArrayList free = new IntArrayList();
+        private OpOrder.Barrier barrier = null;
+        private long aborted = 0;
+
+        OpOrderReuseStrategy(Allocator allocator, OpOrder readOrder)
+        {
+            this.allocator = allocator;
+            this.readOrder = readOrder;
+        }
+
+        public int allocate() throws MemtableTrie.SpaceExhaustedException
+        {
+            if (free.isEmpty())
+                processBarrier();
+            if (!free.isEmpty())
+                return free.popInt();
+            return allocator.allocate();
+        }
+
+        public void recycle(int index)
+        {
+            justReleased.addInt(index);
+        }
+
+        public void completeMutation()
+        {
+            if (!justReleased.isEmpty())
+            {
+                IntArrayList t = awaitingBarrier;
+                if (t.isEmpty())
+                {
+                    awaitingBarrier = justReleased;
+                    justReleased = t;
+                }
+                else
+                {
+                    moveAll(justReleased, awaitingBarrier);
+                }
+            }
+
+            if (barrier != null || !awaitingBarrier.isEmpty())
+                processBarrier();
+        }
+
+        public void abortMutation()
+        {
+            aborted += justReleased.size();
+            justReleased.clear();
+        }
+
+        public long releasedCount()
+        {
+            return justReleased.size() + awaitingBarrier.size() + awaitingReaders.size() + free.size() + aborted;
+        }
+
+        private void processBarrier()
+        {
+            if (barrier != null && barrier.getSyncPoint().isFinished())
+            {
+                if (free.isEmpty())
+                {
+                    IntArrayList t = free;
+                    free = awaitingReaders;
+                    awaitingReaders = t;
+                }
+                else
+                {
+                    moveAll(awaitingReaders, free);
+                }
+                barrier = null;
+            }
+
+            if (barrier == null && !awaitingBarrier.isEmpty())
+            {
+                IntArrayList t = awaitingReaders;
+                awaitingReaders = awaitingBarrier;
+                awaitingBarrier = t;
+                barrier = readOrder.newBarrier();
+                barrier.issue();
+            }
+        }
+
+        private static void moveAll(IntArrayList from, IntArrayList to)
+        {
+            for (int i = 0; i < from.size(); ++i)
+                to.addInt(from.getInt(i));
+            from.clear();
+        }
+    }
+}
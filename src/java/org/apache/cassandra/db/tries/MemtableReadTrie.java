@@ -112,6 +112,12 @@ public class MemtableReadTrie<T> extends Trie<T>
        augmented node and wrap a PrefixNode around it, which changes the `content()` method and routes all other
        calls to the augmented node's methods.
 
+     Content can also be stored in the node pointers themselves, if the trie is given an encoding of (some of) its
+     content values as integers (see MemtableTrie.InlineContent). Such "inline" content is marked by setting the
+     INLINE_CONTENT_FLAG bit of the content index, whose other bits hold the encoded value; the index is otherwise
+     placed in leaf and prefix nodes like the indexes of the content list, which are always smaller than the flag.
+     Inline content takes no space in the content list and is decoded every time it is read.
+
      When building a trie we first allocate the content, then create a chain node leading to it. While we only have
      single transitions leading to a chain node, we can expand that node (attaching a character and using pointer - 1)
      instead of creating a new one. When a chain node already has a child and needs a new one added we change the type
@@ -216,13 +222,21 @@ public class MemtableReadTrie<T> extends Trie<T>
     static final int CONTENTS_START_SHIFT = 4;
     static final int CONTENTS_START_SIZE = 1 << CONTENTS_START_SHIFT;
 
+    /**
+     * Bit set in the content indexes of inline content, i.e. content that is encoded in the index itself.
+     * The indexes of the content list are always smaller.
+     */
+    static final int INLINE_CONTENT_FLAG = 1 << 30;
+
     final UnsafeBuffer[] buffers;
     final AtomicReferenceArray<T>[] contentArrays;
+    final MemtableTrie.InlineContent<T> inlineContent;
 
-    MemtableReadTrie(UnsafeBuffer[] buffers, AtomicReferenceArray<T>[] contentArrays, int root)
+    MemtableReadTrie(UnsafeBuffer[] buffers, AtomicReferenceArray<T>[] contentArrays, MemtableTrie.InlineContent<T> inlineContent, int root)
     {
         this.buffers = buffers;
         this.contentArrays = contentArrays;
+        this.inlineContent = inlineContent;
         this.root = root;
     }
 
@@ -275,8 +289,16 @@ public class MemtableReadTrie<T> extends Trie<T>
         return getChunk(pos).getInt(inChunkPointer(pos));
     }
 
+    static boolean isInlineContent(int index)
+    {
+        return index >= INLINE_CONTENT_FLAG;
+    }
+
     T getContent(int index)
     {
+        if (isInlineContent(index))
+            return inlineContent.decode(index & ~INLINE_CONTENT_FLAG);
+
         int leadBit = getChunkIdx(index, CONTENTS_START_SHIFT, CONTENTS_START_SIZE);
         int ofs = inChunkPointer(index, leadBit, CONTENTS_START_SIZE);
         AtomicReferenceArray<T> array = contentArrays[leadBit];
@@ -461,17 +483,25 @@ public class MemtableReadTrie<T> extends Trie<T>
      * Get the content for a given node
      */
     T getNodeContent(int node)
+    {
+        int index = getNodeContentIndex(node);
+        return (index >= 0)
+               ? getContent(index)
+               : null;
+    }
+
+    /**
+     * Get the index of the content for a given node, or -1 if the node has no content
+     */
+    int getNodeContentIndex(int node)
     {
         if (isLeaf(node))
-            return getContent(~node);
+            return ~node;
 
         if (offset(node) != PREFIX_OFFSET)
-            return null;
+            return -1;
 
-        int index = getInt(node + PREFIX_CONTENT_OFFSET);
-        return (index >= 0)
-               ? getContent(index)
-               : null;
+        return getInt(node + PREFIX_CONTENT_OFFSET);
     }
 
     int splitBlockPointerAddress(int node, int childIndex, int subLevelLimit)
@@ -836,6 +866,36 @@ public class MemtableReadTrie<T> extends Trie<T>
         return null;
     }
 
+    /**
+     * Get the index of the content mapped by the specified key, or -1 if the key is not mapped.
+     * Content indexes do not change once allocated, thus the result can be used to access the content of the key
+     * (see {@link MemtableTrie#compareAndSetContent}) for as long as the trie is alive. This does not hold for inline
+     * content (see {@link MemtableTrie.InlineContent}), whose index changes with the content.
+     */
+    public int getContentIndex(ByteComparable path)
+    {
+        int n = root;
+        ByteSource source = path.asComparableBytes(BYTE_COMPARABLE_VERSION);
+        while (!isNull(n))
+        {
+            int c = source.next();
+            if (c == ByteSource.END_OF_STREAM)
+                return getNodeContentIndex(n);
+
+            n = advance(n, c, source);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the content at the given index, as returned by {@link #getContentIndex}.
+     */
+    public T getContentAt(int index)
+    {
+        return getContent(index);
+    }
+
     public boolean isEmpty()
     {
         return isNull(root);
@@ -31,6 +31,7 @@ import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.bytecomparable.ByteSource;
 import org.apache.cassandra.utils.bytecomparable.ByteComparable;
 import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.github.jamm.MemoryLayoutSpecification;
 
 /**
@@ -41,6 +42,15 @@ import org.github.jamm.MemoryLayoutSpecification;
  * write; if any read sees the write, then any subsequent (i.e. started after it completed) read should also see it).
  * This implementation does not currently guarantee this, but we still get the desired result as `apply` is only used
  * with singleton tries.
+ *
+ * In addition to the single mutator thread, any number of threads may replace the content of keys that are already
+ * present using {@link #compareAndSetContent}. This is safe as long as the mutator does not modify the content of
+ * existing keys while such updates may be in progress, i.e. if it is only used to add new keys.
+ *
+ * Mutations may make cells and content slots unreachable, e.g. when a sparse node is converted to a split one, or when
+ * the transformer removes a key's content. If the trie is given the {@link OpOrder} its readers execute in, such
+ * space is reused by later mutations once all reads that could still be referencing it have completed (see
+ * {@link MemoryAllocationStrategy.OpOrderReuseStrategy}); otherwise it remains allocated until the trie is discarded.
  */
 public class MemtableTrie<T> extends MemtableReadTrie<T>
 {
@@ -68,6 +78,9 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
 
     private final BufferType bufferType;    // on or off heap
 
+    private final MemoryAllocationStrategy cellAllocator;
+    private final MemoryAllocationStrategy objectAllocator;
+
     private static final long EMPTY_SIZE_ON_HEAP; // for space calculations
     private static final long EMPTY_SIZE_OFF_HEAP; // for space calculations
 
@@ -80,12 +93,48 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
     }
 
     public MemtableTrie(BufferType bufferType)
+    {
+        this(bufferType, null);
+    }
+
+    /**
+     * Creates a trie which reuses the space released by mutations once all reads that were in progress when the space
+     * was released have completed. All reads of the trie must be executed within a group of the given order.
+     *
+     * @param readOrder the order reads execute in, or null if reads are not tracked, in which case space is not reused
+     */
+    public MemtableTrie(BufferType bufferType, OpOrder readOrder)
+    {
+        this(bufferType, readOrder, null);
+    }
+
+    /**
+     * Creates a trie which stores the content values the given encoding accepts in its nodes instead of its content
+     * list, see {@link InlineContent}.
+     *
+     * @param readOrder the order reads execute in, or null if reads are not tracked, in which case space is not reused
+     * @param inlineContent the encoding of the content that is stored in the nodes, or null to store all content in
+     *                      the content list
+     */
+    public MemtableTrie(BufferType bufferType, OpOrder readOrder, InlineContent<T> inlineContent)
     {
         super(new UnsafeBuffer[31 - BUF_START_SHIFT],  // last one is 1G for a total of ~2G bytes
               new AtomicReferenceArray[29 - CONTENTS_START_SHIFT],  // takes at least 4 bytes to write pointer to one content -> 4 times smaller than buffers
+              inlineContent,
               NONE);
         this.bufferType = bufferType;
         assert INITIAL_BUFFER_CAPACITY % BLOCK_SIZE == 0;
+
+        if (readOrder != null)
+        {
+            cellAllocator = new MemoryAllocationStrategy.OpOrderReuseStrategy(this::allocateNewBlock, readOrder);
+            objectAllocator = new MemoryAllocationStrategy.OpOrderReuseStrategy(this::allocateNewContentIndex, readOrder);
+        }
+        else
+        {
+            cellAllocator = new MemoryAllocationStrategy.NoReuseStrategy(this::allocateNewBlock);
+            objectAllocator = new MemoryAllocationStrategy.NoReuseStrategy(this::allocateNewContentIndex);
+        }
     }
 
     // Buffer, content list and block management
@@ -130,6 +179,18 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
 
 
     private int allocateBlock() throws SpaceExhaustedException
+    {
+        int newBlockPos = allocatedPos;
+        int v = cellAllocator.allocate();
+        if (v != newBlockPos)
+        {
+            // This is a reused block. Clear it, as the node creation methods rely on unset fields being 0.
+            getChunk(v).setMemory(inChunkPointer(v), BLOCK_SIZE, (byte) 0);
+        }
+        return v;
+    }
+
+    private int allocateNewBlock() throws SpaceExhaustedException
     {
         // Note: If this method is modified, please run MemtableTrieTest.testOver1GSize to verify it acts correctly
         // close to the 2G limit.
@@ -155,22 +216,81 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
         return v;
     }
 
-    private int addContent(T value)
+    private int allocateNewContentIndex()
     {
         int index = contentCount++;
         int leadBit = getChunkIdx(index, CONTENTS_START_SHIFT, CONTENTS_START_SIZE);
-        int ofs = inChunkPointer(index, leadBit, CONTENTS_START_SIZE);
-        AtomicReferenceArray<T> array = contentArrays[leadBit];
-        if (array == null)
+        if (contentArrays[leadBit] == null)
         {
-            assert ofs == 0;
-            contentArrays[leadBit] = array = new AtomicReferenceArray<>(CONTENTS_START_SIZE << leadBit);
+            assert inChunkPointer(index, leadBit, CONTENTS_START_SIZE) == 0;
+            contentArrays[leadBit] = new AtomicReferenceArray<>(CONTENTS_START_SIZE << leadBit);
         }
+        return index;
+    }
+
+    private int addContent(T value) throws SpaceExhaustedException
+    {
+        int inlineIndex = inlineIndex(value);
+        if (inlineIndex != -1)
+            return inlineIndex;
+
+        int index = objectAllocator.allocate();
+        int leadBit = getChunkIdx(index, CONTENTS_START_SHIFT, CONTENTS_START_SIZE);
+        int ofs = inChunkPointer(index, leadBit, CONTENTS_START_SIZE);
+        AtomicReferenceArray<T> array = contentArrays[leadBit];
         array.lazySet(ofs, value); // no need for a volatile set here; at this point the item is not referenced
                                    // by any node in the trie, and a volatile set will be made to reference it.
         return index;
     }
 
+    /**
+     * @return the index encoding the given value if it is to be stored inline, -1 otherwise
+     */
+    private int inlineIndex(T value)
+    {
+        if (inlineContent == null || value == null)
+            return -1;
+
+        int encoded = inlineContent.encode(value);
+        if (encoded < 0)
+            return -1;
+
+        assert encoded <= InlineContent.MAX_VALUE : encoded;
+        return INLINE_CONTENT_FLAG | encoded;
+    }
+
+    /**
+     * Replaces the content at the given index with the given value. If either is inline, the value gets a new index,
+     * which the caller must place in the node instead of the previous one.
+     *
+     * @return the index of the new value
+     */
+    private int replaceContent(int index, T value) throws SpaceExhaustedException
+    {
+        if (!isInlineContent(index) && inlineIndex(value) == -1)
+        {
+            setContent(index, value);
+            return index;
+        }
+
+        int newIndex = addContent(value);
+        if (newIndex != index)
+            releaseContent(index);
+        return newIndex;
+    }
+
+    /**
+     * Releases a content slot that is no longer referenced by the trie after the current mutation.
+     */
+    private void releaseContent(int index)
+    {
+        if (isInlineContent(index))
+            return;
+
+        setContent(index, null);
+        objectAllocator.recycle(index);
+    }
+
     private void setContent(int index, T value)
     {
         int leadBit = getChunkIdx(index, CONTENTS_START_SHIFT, CONTENTS_START_SIZE);
@@ -179,6 +299,23 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
         array.set(ofs, value);
     }
 
+    /**
+     * Atomically replace the content at the given index (as returned by {@link #getContentIndex}) with the given
+     * value, if it is currently the expected one.
+     * Unlike the other write methods, this can be called by several threads concurrently with each other and with
+     * the mutator thread, provided that the latter does not modify the content of existing keys while this is done.
+     *
+     * @return true if the content was replaced, false if it was changed by another thread.
+     */
+    public boolean compareAndSetContent(int index, T expected, T value)
+    {
+        assert !isInlineContent(index) && inlineIndex(value) == -1 : "Inline content cannot be replaced atomically";
+        int leadBit = getChunkIdx(index, CONTENTS_START_SHIFT, CONTENTS_START_SIZE);
+        int ofs = inChunkPointer(index, leadBit, CONTENTS_START_SIZE);
+        AtomicReferenceArray<T> array = contentArrays[leadBit];
+        return array.compareAndSet(ofs, expected, value);
+    }
+
     public void discardBuffers()
     {
         if (bufferType == BufferType.ON_HEAP)
@@ -296,6 +433,8 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
                 attachChildToSplitNonVolatile(split, t, p);
             }
             attachChildToSplitNonVolatile(split, trans, newChild);
+            // The sparse node is the only node in its block, which becomes unreachable when the split is attached.
+            cellAllocator.recycle(node & -BLOCK_SIZE);
             return split;
         }
 
@@ -657,7 +796,7 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
         /**
          * Descend to a child node. Prepares a new entry in the stack for the node.
          */
-        <U> void descend(int transition, U mutationContent, final UpsertTransformer<T, U> transformer)
+        <U> void descend(int transition, U mutationContent, final UpsertTransformer<T, U> transformer) throws SpaceExhaustedException
         {
             int existingPreContentNode;
             if (currentDepth < 0)
@@ -700,6 +839,7 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
          * Combine existing and and new content.
          */
         private <U> int updateContentIndex(U mutationContent, int existingContentIndex, final UpsertTransformer<T, U> transformer)
+        throws SpaceExhaustedException
         {
             if (mutationContent != null)
             {
@@ -707,11 +847,13 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
                 {
                     final T existingContent = getContent(existingContentIndex);
                     T combinedContent = transformer.apply(existingContent, mutationContent);
-                    setContent(existingContentIndex, combinedContent);
                     if (combinedContent != null)
-                        return existingContentIndex;
+                        return replaceContent(existingContentIndex, combinedContent);
                     else
+                    {
+                        releaseContent(existingContentIndex);
                         return -1;
+                    }
                 }
                 else
                 {
@@ -749,7 +891,15 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
             int contentIndex = contentIndex();
             int updatedPostContentNode = updatedPostContentNode();
             if (contentIndex == -1)
+            {
+                // If the content was removed, a full prefix node that held it is dropped with it.
+                int existingPreContentNode = existingPreContentNode();
+                if (existingPreContentNode != existingPostContentNode() &&
+                    !isLeaf(existingPreContentNode) &&
+                    !isEmbeddedPrefixNode(existingPreContentNode))
+                    cellAllocator.recycle(existingPreContentNode & -BLOCK_SIZE);
                 return updatedPostContentNode;
+            }
 
             if (isNull(updatedPostContentNode))
                 return ~contentIndex;
@@ -767,7 +917,8 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
             // Otherwise modify in place
             if (updatedPostContentNode != existingPostContentNode) // to use volatile write but also ensure we don't corrupt embedded nodes
                 putIntVolatile(existingPreContentNode + PREFIX_POINTER_OFFSET, updatedPostContentNode);
-            assert contentIndex == getInt(existingPreContentNode + PREFIX_CONTENT_OFFSET);
+            if (contentIndex != getInt(existingPreContentNode + PREFIX_CONTENT_OFFSET)) // inline content changed
+                putIntVolatile(existingPreContentNode + PREFIX_CONTENT_OFFSET, contentIndex);
             return existingPreContentNode;
         }
 
@@ -819,6 +970,34 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
         T apply(T existing, U update);
     }
 
+    /**
+     * Encoding of content values as integers, which the trie stores in its nodes instead of its content list. This
+     * saves the object and the content list entry of each such value, which matters for tries that map many keys to
+     * values that can be represented by a number, e.g. positions in some other storage.
+     * <p>
+     * The trie decodes the value on every read of the content, thus the decoded objects are short-lived. The content
+     * index of a key changes with its inline content (see {@link #getContentIndex}), which is why such content cannot
+     * be replaced with {@link #compareAndSetContent}.
+     *
+     * @param <T> The content type for the {@link MemtableTrie}.
+     */
+    public interface InlineContent<T>
+    {
+        /** The largest value that can be stored inline. */
+        int MAX_VALUE = INLINE_CONTENT_FLAG - 1;
+
+        /**
+         * @return the value to store for the given content, between 0 and {@link #MAX_VALUE}, or -1 if the content
+         * must be stored as an object
+         */
+        int encode(T content);
+
+        /**
+         * @return the content for the given value, as returned by {@link #encode}
+         */
+        T decode(int value);
+    }
+
     /**
      * Modify this trie to apply the mutation given in the form of a trie. Any content in the mutation will be resolved
      * with the given function before being placed in this trie (even if there's no pre-existing content in this trie).
@@ -828,6 +1007,20 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
      * value. Applied even if there's no pre-existing value in the memtable trie.
      */
     public <U> void apply(Trie<U> mutation, final UpsertTransformer<T, U> transformer) throws SpaceExhaustedException
+    {
+        try
+        {
+            applyInternal(mutation, transformer);
+            completeMutation();
+        }
+        catch (Throwable t)
+        {
+            abortMutation();
+            throw t;
+        }
+    }
+
+    private <U> void applyInternal(Trie<U> mutation, final UpsertTransformer<T, U> transformer) throws SpaceExhaustedException
     {
         Cursor<U> mutationCursor = mutation.cursor();
         assert mutationCursor.depth() == 0;
@@ -902,9 +1095,36 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
      */
     public <R> void putRecursive(ByteComparable key, R value, final UpsertTransformer<T, R> transformer) throws SpaceExhaustedException
     {
-        int newRoot = putRecursive(root, key.asComparableBytes(BYTE_COMPARABLE_VERSION), value, transformer);
-        if (newRoot != root)
-            root = newRoot;
+        try
+        {
+            int newRoot = putRecursive(root, key.asComparableBytes(BYTE_COMPARABLE_VERSION), value, transformer);
+            if (newRoot != root)
+                root = newRoot;
+            completeMutation();
+        }
+        catch (Throwable t)
+        {
+            abortMutation();
+            throw t;
+        }
+    }
+
+    /**
+     * Called after the final write of a mutation, when any space it released is no longer reachable for new reads.
+     */
+    private void completeMutation()
+    {
+        cellAllocator.completeMutation();
+        objectAllocator.completeMutation();
+    }
+
+    /**
+     * Called when a mutation fails. The space it released may still be reachable and must not be reused.
+     */
+    private void abortMutation()
+    {
+        cellAllocator.abortMutation();
+        objectAllocator.abortMutation();
     }
 
     private <R> int putRecursive(int node, ByteSource key, R value, final UpsertTransformer<T, R> transformer) throws SpaceExhaustedException
@@ -935,14 +1155,15 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
         if (isLeaf(node))
         {
             int contentIndex = ~node;
-            setContent(contentIndex, transformer.apply(getContent(contentIndex), value));
-            return node;
+            return ~replaceContent(contentIndex, transformer.apply(getContent(contentIndex), value));
         }
 
         if (offset(node) == PREFIX_OFFSET)
         {
             int contentIndex = getInt(node + PREFIX_CONTENT_OFFSET);
-            setContent(contentIndex, transformer.apply(getContent(contentIndex), value));
+            int newIndex = replaceContent(contentIndex, transformer.apply(getContent(contentIndex), value));
+            if (newIndex != contentIndex)
+                putIntVolatile(node + PREFIX_CONTENT_OFFSET, newIndex);
             return node;
         }
         else
@@ -969,7 +1190,7 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
     int advanceAllocatedPos(int wantedPos) throws SpaceExhaustedException
     {
         while (allocatedPos < wantedPos)
-            allocateBlock();
+            allocateNewBlock();
         return allocatedPos;
     }
 
@@ -986,16 +1207,24 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
                (bufferType == BufferType.ON_HEAP ? allocatedPos + EMPTY_SIZE_ON_HEAP : EMPTY_SIZE_OFF_HEAP);
     }
 
+    /**
+     * {@inheritDoc}
+     * Inline content (see {@link InlineContent}) is not included.
+     */
     @Override
     public Iterable<T> valuesUnordered()
     {
         return () -> new Iterator<T>()
         {
             int idx = 0;
+            T next = null;
 
             public boolean hasNext()
             {
-                return idx < contentCount;
+                // Skip released and removed content.
+                while (next == null && idx < contentCount)
+                    next = getContent(idx++);
+                return next != null;
             }
 
             public T next()
@@ -1003,14 +1232,28 @@ public class MemtableTrie<T> extends MemtableReadTrie<T>
                 if (!hasNext())
                     throw new NoSuchElementException();
 
-                return getContent(idx++);
+                T result = next;
+                next = null;
+                return result;
             }
         };
     }
 
+    /**
+     * The number of values in the content list, which does not include inline content (see {@link InlineContent}).
+     */
     public int valuesCount()
     {
-        return contentCount;
+        return contentCount - (int) objectAllocator.releasedCount();
+    }
+
+    /**
+     * The number of cells released by mutations and not reused yet, including ones awaiting the completion of reads.
+     */
+    @VisibleForTesting
+    long releasedCellCount()
+    {
+        return cellAllocator.releasedCount();
     }
 
     public long unusedReservedMemory()
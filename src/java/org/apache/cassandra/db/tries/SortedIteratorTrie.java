@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Function;
+
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.bytecomparable.ByteSource;
+
+/**
+ * Single-use trie presenting the items of an iterator, mapped by the given function to their keys. The keys must be
+ * prefix-free and listed in strictly increasing order.
+ * <p>
+ * The cursor holds the byte-comparable representation of the current and the next key, and reads the next item from the
+ * iterator only when it advances beyond the current one. The items are thus consumed as the cursor advances, and the
+ * trie can only be walked once.
+ */
+class SortedIteratorTrie<T> extends Trie<T>
+{
+    private static final int INITIAL_KEY_CAPACITY = 32;
+
+    private final Iterator<T> items;
+    private final Function<? super T, ByteComparable> keyMapper;
+    private boolean walked = false;
+
+    SortedIteratorTrie(Iterator<T> items, Function<? super T, ByteComparable> keyMapper)
+    {
+        this.items = items;
+        this.keyMapper = keyMapper;
+    }
+
+    protected Cursor<T> cursor()
+    {
+        assert !walked : "Sorted iterator tries can only be walked once";
+        walked = true;
+        return new SortedIteratorCursor();
+    }
+
+    class SortedIteratorCursor implements Cursor<T>
+    {
+        private byte[] key = new byte[INITIAL_KEY_CAPACITY];
+        private byte[] nextKey = new byte[INITIAL_KEY_CAPACITY];
+        private int keyLength = 0;
+        private T item = null;
+        private int depth = 0;
+        private int incomingTransition = -1;
+
+        SortedIteratorCursor()
+        {
+            if (items.hasNext())
+            {
+                item = items.next();
+                keyLength = readNextKey(item);
+                swapKeys();
+            }
+        }
+
+        public int depth()
+        {
+            return depth;
+        }
+
+        public int incomingTransition()
+        {
+            return incomingTransition;
+        }
+
+        public T content()
+        {
+            return depth == keyLength ? item : null;
+        }
+
+        public int advance()
+        {
+            if (depth < keyLength)
+            {
+                incomingTransition = key[depth] & 0xFF;
+                return ++depth;
+            }
+            return advanceToNextKey(keyLength);
+        }
+
+        @Override
+        public int advanceMultiple(TransitionsReceiver receiver)
+        {
+            if (depth >= keyLength)
+                return advanceToNextKey(keyLength);
+
+            // descend straight to the item
+            if (receiver != null)
+                for (int i = depth; i < keyLength - 1; ++i)
+                    receiver.addPathByte(key[i] & 0xFF);
+            incomingTransition = key[keyLength - 1] & 0xFF;
+            return depth = keyLength;
+        }
+
+        public int skipChildren()
+        {
+            if (depth == 0)
+                return exhausted();
+            return advanceToNextKey(depth);
+        }
+
+        /**
+         * Read items until one whose key differs from the current in the first {@code prefixLength} bytes, and position
+         * the cursor on the first byte of its key that differs.
+         */
+        private int advanceToNextKey(int prefixLength)
+        {
+            while (items.hasNext())
+            {
+                item = items.next();
+                int length = readNextKey(item);
+                int diff = 0;
+                int limit = Math.min(length, keyLength);
+                while (diff < limit && key[diff] == nextKey[diff])
+                    ++diff;
+                if (diff == limit)
+                    throw new IllegalStateException("Keys must be prefix-free and distinct");
+                assert (nextKey[diff] & 0xFF) > (key[diff] & 0xFF) : "Keys must be listed in increasing order";
+
+                keyLength = length;
+                swapKeys();
+                if (diff < prefixLength)
+                {
+                    incomingTransition = key[diff] & 0xFF;
+                    return depth = diff + 1;
+                }
+            }
+            return exhausted();
+        }
+
+        private int exhausted()
+        {
+            item = null;
+            incomingTransition = -1;
+            return depth = -1;
+        }
+
+        private int readNextKey(T item)
+        {
+            ByteSource source = keyMapper.apply(item).asComparableBytes(BYTE_COMPARABLE_VERSION);
+            int length = 0;
+            int next;
+            while ((next = source.next()) != ByteSource.END_OF_STREAM)
+            {
+                if (length == nextKey.length)
+                    nextKey = Arrays.copyOf(nextKey, length * 2);
+                nextKey[length++] = (byte) next;
+            }
+            assert length > 0 : "Empty keys are not supported";
+            return length;
+        }
+
+        private void swapKeys()
+        {
+            byte[] t = key;
+            key = nextKey;
+            nextKey = t;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+/**
+ * A view of a trie that does not descend below the nodes that have content, i.e. that only lists the content that
+ * has no other content on its path.
+ *
+ * This is useful for tries that store items at some paths and parts of the items at the paths that extend them (e.g.
+ * partitions and their rows), where walking the items alone must not be slowed down by their parts.
+ */
+class TopLevelContentTrie<T> extends Trie<T>
+{
+    private final Trie<T> source;
+
+    TopLevelContentTrie(Trie<T> source)
+    {
+        this.source = source;
+    }
+
+    @Override
+    protected Cursor<T> cursor()
+    {
+        return new TopLevelContentCursor<>(source.cursor());
+    }
+
+    private static class TopLevelContentCursor<T> implements Cursor<T>
+    {
+        private final Cursor<T> source;
+
+        TopLevelContentCursor(Cursor<T> source)
+        {
+            this.source = source;
+        }
+
+        public int advance()
+        {
+            return source.content() != null ? source.skipChildren() : source.advance();
+        }
+
+        @Override
+        public int advanceMultiple(TransitionsReceiver receiver)
+        {
+            return source.content() != null ? source.skipChildren() : source.advanceMultiple(receiver);
+        }
+
+        public int skipChildren()
+        {
+            return source.skipChildren();
+        }
+
+        public int depth()
+        {
+            return source.depth();
+        }
+
+        public T content()
+        {
+            return source.content();
+        }
+
+        public int incomingTransition()
+        {
+            return source.incomingTransition();
+        }
+    }
+}
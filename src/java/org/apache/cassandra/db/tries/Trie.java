@@ -394,6 +394,15 @@ public abstract class Trie<T>
         return new SlicedTrie<>(this, left, includeLeft, right, includeRight);
     }
 
+    /**
+     * Returns a view of this trie that does not descend below content, i.e. that only lists the content that does not
+     * have other content on its path. The view is live, i.e. any write to the source will be reflected in it.
+     */
+    public Trie<T> topLevelContent()
+    {
+        return new TopLevelContentTrie<>(this);
+    }
+
     /**
      * Returns the ordered entry set of this trie's content as an iterable.
      */
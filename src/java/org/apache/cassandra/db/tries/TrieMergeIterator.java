@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.cassandra.utils.AbstractIterator;
+import org.apache.cassandra.utils.CloseableIterator;
+import org.apache.cassandra.utils.Reducer;
+import org.apache.cassandra.utils.Throwables;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+
+/**
+ * Merges sorted input iterators which individually contain unique items, like
+ * {@link org.apache.cassandra.utils.MergeIterator}, but orders the items by the byte-comparable representation of their
+ * keys instead of using a comparator.
+ * <p>
+ * Each source is presented as a trie (see {@link SortedIteratorTrie}) and the sources are merged as tries, which
+ * compares the sources' positions by their depth and incoming transition only and descends directly to the item
+ * wherever a key is only present in one source. Items with equal keys are passed to the reducer together, as with
+ * the merge iterator.
+ * <p>
+ * The keys must be prefix-free, and the order of the items must be the order of their byte-comparable keys.
+ */
+public class TrieMergeIterator<In, Out> extends AbstractIterator<Out> implements CloseableIterator<Out>
+{
+    private final List<? extends CloseableIterator<In>> sources;
+    private final Reducer<In, Out> reducer;
+    private final Iterator<Source<In>> merged;
+
+    /** The sources positioned on the current key, if there is more than one. Filled by the merge resolver. */
+    private final List<Source<In>> equal;
+
+    private TrieMergeIterator(List<? extends CloseableIterator<In>> sources,
+                              Function<? super In, ByteComparable> keyMapper,
+                              Reducer<In, Out> reducer)
+    {
+        this.sources = sources;
+        this.reducer = reducer;
+        this.equal = new ArrayList<>(sources.size());
+
+        List<Trie<Source<In>>> tries = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); ++i)
+            tries.add(new SortedIteratorTrie<>(new Source<>(i, sources.get(i)), source -> keyMapper.apply(source.current)));
+        this.merged = Trie.merge(tries, new EqualCollector()).values().iterator();
+    }
+
+    @SuppressWarnings("unchecked") // singleSourceReduceIsTrivial() guarantees that Out is the same as In
+    public static <In, Out> CloseableIterator<Out> getCloseable(List<? extends CloseableIterator<In>> sources,
+                                                                Function<? super In, ByteComparable> keyMapper,
+                                                                Reducer<In, Out> reducer)
+    {
+        if (sources.size() == 1 && reducer.singleSourceReduceIsTrivial())
+            return (CloseableIterator<Out>) sources.get(0);
+        return new TrieMergeIterator<>(sources, keyMapper, reducer);
+    }
+
+    protected Out computeNext()
+    {
+        if (!merged.hasNext())
+            return endOfData();
+
+        Source<In> source = merged.next();
+        reducer.onKeyChange();
+        if (equal.isEmpty())
+        {
+            reducer.reduce(source.index, source.current);
+        }
+        else
+        {
+            for (Source<In> s : equal)
+                reducer.reduce(s.index, s.current);
+            equal.clear();
+        }
+        return reducer.getReduced();
+    }
+
+    public void close()
+    {
+        Throwable t = null;
+        for (CloseableIterator<In> source : sources)
+        {
+            try
+            {
+                source.close();
+            }
+            catch (Throwable e)
+            {
+                t = Throwables.merge(t, e);
+            }
+        }
+        Throwables.maybeFail(t);
+    }
+
+    /**
+     * Iterator over a source, which presents itself as the content of the source's trie. The current item is valid
+     * while the trie's cursor is positioned on its key.
+     */
+    private static class Source<In> implements Iterator<Source<In>>
+    {
+        final int index;
+        final Iterator<In> iterator;
+        In current;
+
+        Source(int index, Iterator<In> iterator)
+        {
+            this.index = index;
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        public Source<In> next()
+        {
+            current = iterator.next();
+            return this;
+        }
+    }
+
+    /**
+     * Collects the sources that have content for the same key, returning one of them as the merged content.
+     */
+    private class EqualCollector implements Trie.CollectionMergeResolver<Source<In>>
+    {
+        public Source<In> resolve(Collection<Source<In>> contents)
+        {
+            equal.addAll(contents);
+            return equal.get(0);
+        }
+
+        public Source<In> resolve(Source<In> c1, Source<In> c2)
+        {
+            equal.add(c1);
+            equal.add(c2);
+            return c1;
+        }
+    }
+}
@@ -86,7 +86,11 @@ final class CachesTable extends AbstractVirtualTable
         SimpleDataSet result = new SimpleDataSet(metadata());
 
         if (null != ChunkCache.instance)
+        {
             addRow(result, "chunks", ChunkCache.instance.metrics);
+            if (null != ChunkCache.instance.compressedMetrics)
+                addRow(result, "compressed_chunks", ChunkCache.instance.compressedMetrics);
+        }
         addRow(result, "counters", CacheService.instance.counterCache.getMetrics());
         addRow(result, "keys", CacheService.instance.keyCache.getMetrics());
         addRow(result, "rows", CacheService.instance.rowCache.getMetrics());
@@ -27,6 +27,10 @@ import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 import java.util.zip.CRC32;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.ZstdDictTrainer;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
@@ -40,6 +44,13 @@ import static org.apache.cassandra.utils.Throwables.merge;
 
 public class CompressedSequentialWriter extends SequentialWriter
 {
+    private static final Logger logger = LoggerFactory.getLogger(CompressedSequentialWriter.class);
+
+    // Zstd recommends training dictionaries on about 100 times their size of samples ...
+    private static final int DICTIONARY_SAMPLES_RATIO = 100;
+    // ... but we don't want to hold too much data on heap while collecting them
+    private static final int MAX_DICTIONARY_SAMPLES_SIZE = 16 << 20;
+
     private final ChecksumWriter crcMetadata;
 
     // holds offset in the file where current chunk should be written
@@ -48,7 +59,16 @@ public class CompressedSequentialWriter extends SequentialWriter
 
     // index file writer (random I/O)
     private final CompressionMetadata.Writer metadataWriter;
-    private final ICompressor compressor;
+    // switched to a ZstdDictionaryCompressor once we have trained a dictionary
+    private ICompressor compressor;
+
+    // file to write the trained dictionary to, empty if we don't train one
+    private final Optional<File> dictionaryFile;
+    // collects samples from the first chunks written; null once the dictionary has been trained
+    private ZstdDictTrainer dictionaryTrainer;
+    private int dictionarySamplesSize;
+    private int dictionarySamplesTarget;
+    private ZstdDictionaryCompressor dictionaryCompressor;
 
     // used to store compressed data
     private ByteBuffer compressed;
@@ -81,6 +101,30 @@ public class CompressedSequentialWriter extends SequentialWriter
                                       SequentialWriterOption option,
                                       CompressionParams parameters,
                                       MetadataCollector sstableMetadataCollector)
+    {
+        this(file, offsetsPath, null, digestFile, option, parameters, sstableMetadataCollector);
+    }
+
+    /**
+     * Create CompressedSequentialWriter which, if the compressor asks for it, trains a compression dictionary from
+     * the first chunks written and uses it for the rest of the file.
+     *
+     * @param file File to write
+     * @param offsetsPath File name to write compression metadata
+     * @param dictionaryPath File to write the trained dictionary to, or null not to train one. The file is written
+     *                       (possibly empty) even if the compressor does not use dictionaries.
+     * @param digestFile File to write digest
+     * @param option Write option (buffer size and type will be set the same as compression params)
+     * @param parameters Compression mparameters
+     * @param sstableMetadataCollector Metadata collector
+     */
+    public CompressedSequentialWriter(File file,
+                                      File offsetsPath,
+                                      File dictionaryPath,
+                                      File digestFile,
+                                      SequentialWriterOption option,
+                                      CompressionParams parameters,
+                                      MetadataCollector sstableMetadataCollector)
     {
         super(file, SequentialWriterOption.newBuilder()
                                           .bufferSize(option.bufferSize())
@@ -88,6 +132,7 @@ public class CompressedSequentialWriter extends SequentialWriter
                                           .bufferSize(parameters.chunkLength())
                                           .bufferType(parameters.getSstableCompressor().preferredBufferType())
                                           .finishOnClose(option.finishOnClose())
+                                          .directIO(option.directIO())
                                           .build());
         this.compressor = parameters.getSstableCompressor();
         this.digestFile = Optional.ofNullable(digestFile);
@@ -102,6 +147,17 @@ public class CompressedSequentialWriter extends SequentialWriter
 
         this.sstableMetadataCollector = sstableMetadataCollector;
         crcMetadata = new ChecksumWriter(new DataOutputStream(Channels.newOutputStream(channel)));
+
+        this.dictionaryFile = Optional.ofNullable(dictionaryPath);
+        if (dictionaryPath != null && compressor instanceof ZstdCompressor)
+        {
+            int dictionarySize = ((ZstdCompressor) compressor).dictionarySize();
+            if (dictionarySize > 0)
+            {
+                dictionarySamplesTarget = (int) Math.min((long) dictionarySize * DICTIONARY_SAMPLES_RATIO, MAX_DICTIONARY_SAMPLES_SIZE);
+                dictionaryTrainer = new ZstdDictTrainer(dictionarySamplesTarget, dictionarySize);
+            }
+        }
     }
 
     @Override
@@ -143,6 +199,8 @@ public class CompressedSequentialWriter extends SequentialWriter
         {
             // compressing data with buffer re-use
             buffer.flip();
+            if (dictionaryTrainer != null)
+                sampleForDictionary();
             compressed.clear();
             compressor.compress(buffer, compressed);
         }
@@ -203,6 +261,49 @@ public class CompressedSequentialWriter extends SequentialWriter
             runPostFlush.run();
     }
 
+    /**
+     * Adds the chunk about to be compressed to the dictionary samples, and trains the dictionary once we have
+     * enough of them. The chunks written until then are compressed without a dictionary.
+     */
+    private void sampleForDictionary()
+    {
+        byte[] sample = new byte[buffer.remaining()];
+        buffer.duplicate().get(sample);
+        if (dictionaryTrainer.addSample(sample))
+        {
+            dictionarySamplesSize += sample.length;
+            if (dictionarySamplesSize < dictionarySamplesTarget)
+                return;
+        }
+
+        byte[] dictionary = ZstdDictionaryCompressor.train(dictionaryTrainer);
+        dictionaryTrainer = null;
+        if (dictionary == null)
+        {
+            logger.debug("Could not train a compression dictionary for {}, compressing it without one", getFile());
+            return;
+        }
+
+        dictionaryCompressor = new ZstdDictionaryCompressor(dictionary, ((ZstdCompressor) compressor).getCompressionLevel());
+        compressor = dictionaryCompressor;
+        metadataWriter.useCompressor(dictionaryCompressor);
+    }
+
+    private void writeDictionary(File file)
+    {
+        try (FileOutputStreamPlus out = new FileOutputStreamPlus(file))
+        {
+            if (dictionaryCompressor != null)
+                out.write(dictionaryCompressor.dictionary());
+            out.flush();
+            out.sync();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
     public CompressionMetadata open(long overrideLength)
     {
         if (overrideLength <= 0)
@@ -389,6 +490,7 @@ public class CompressedSequentialWriter extends SequentialWriter
         {
             syncInternal();
             digestFile.ifPresent(crcMetadata::writeFullChecksum);
+            dictionaryFile.ifPresent(CompressedSequentialWriter.this::writeDictionary);
             sstableMetadataCollector.addCompressionRatio(compressedSize, uncompressedSize);
             metadataWriter.finalizeLength(current(), chunkCount).prepareToCommit();
         }
@@ -403,6 +505,7 @@ public class CompressedSequentialWriter extends SequentialWriter
                 catch (Throwable t) { accumulate = merge(accumulate, t); }
                 compressed = null;
             }
+            dictionaryTrainer = null;
 
             return accumulate;
         }
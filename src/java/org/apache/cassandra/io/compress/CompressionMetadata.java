@@ -22,6 +22,7 @@ import java.io.DataOutput;
 import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.util.Collection;
 import java.util.HashMap;
@@ -67,6 +68,8 @@ public class CompressionMetadata
     private final long chunkOffsetsSize;
     public final File indexFilePath;
     public final CompressionParams parameters;
+    // the compressor of the parameters, or a dictionary compressor if the sstable has a compression dictionary
+    private final ICompressor compressor;
 
     /**
      * Create metadata about given compressed file including uncompressed data length, chunk size
@@ -92,11 +95,21 @@ public class CompressionMetadata
     @VisibleForTesting
     public CompressionMetadata(Descriptor desc, long compressedLength)
     {
-        this(desc.fileFor(Component.COMPRESSION_INFO), compressedLength, desc.version.hasMaxCompressedLength());
+        this(desc.fileFor(Component.COMPRESSION_INFO), desc.fileFor(Component.COMPRESSION_DICTIONARY), compressedLength, desc.version.hasMaxCompressedLength());
     }
 
     @VisibleForTesting
     public CompressionMetadata(File indexFilePath, long compressedLength, boolean hasMaxCompressedSize)
+    {
+        this(indexFilePath, null, compressedLength, hasMaxCompressedSize);
+    }
+
+    /**
+     * @param dictionaryFilePath the {@link Component#COMPRESSION_DICTIONARY} of the sstable, which is ignored if it
+     *                           is null, does not exist or is empty.
+     */
+    @VisibleForTesting
+    public CompressionMetadata(File indexFilePath, File dictionaryFilePath, long compressedLength, boolean hasMaxCompressedSize)
     {
         this.indexFilePath = indexFilePath;
 
@@ -138,14 +151,43 @@ public class CompressionMetadata
         }
 
         this.chunkOffsetsSize = chunkOffsets.size();
+        this.compressor = compressorFor(parameters, dictionaryFilePath);
+    }
+
+    private static ICompressor compressorFor(CompressionParams parameters, File dictionaryFilePath)
+    {
+        if (dictionaryFilePath == null || !(parameters.getSstableCompressor() instanceof ZstdCompressor))
+            return parameters.getSstableCompressor();
+
+        byte[] dictionary;
+        try
+        {
+            if (!dictionaryFilePath.exists() || dictionaryFilePath.length() == 0)
+                return parameters.getSstableCompressor();
+
+            dictionary = Files.readAllBytes(dictionaryFilePath.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new CorruptSSTableException(e, dictionaryFilePath);
+        }
+
+        int level = ((ZstdCompressor) parameters.getSstableCompressor()).getCompressionLevel();
+        return new ZstdDictionaryCompressor(dictionary, level);
     }
 
     // do not call this constructor directly, unless used in testing
     @VisibleForTesting
     public CompressionMetadata(File filePath, CompressionParams parameters, Memory offsets, long offsetsSize, long dataLength, long compressedLength)
+    {
+        this(filePath, parameters, parameters.getSstableCompressor(), offsets, offsetsSize, dataLength, compressedLength);
+    }
+
+    private CompressionMetadata(File filePath, CompressionParams parameters, ICompressor compressor, Memory offsets, long offsetsSize, long dataLength, long compressedLength)
     {
         this.indexFilePath = filePath;
         this.parameters = parameters;
+        this.compressor = compressor;
         this.dataLength = dataLength;
         this.compressedFileLength = compressedLength;
         this.chunkOffsets = offsets;
@@ -154,7 +196,7 @@ public class CompressionMetadata
 
     public ICompressor compressor()
     {
-        return parameters.getSstableCompressor();
+        return compressor;
     }
 
     public int chunkLength()
@@ -329,6 +371,7 @@ public class CompressionMetadata
     {
         // path to the file
         private final CompressionParams parameters;
+        private ICompressor compressor;
         private final File filePath;
         private int maxCount = 100;
         private SafeMemory offsets = new SafeMemory(maxCount * 8L);
@@ -340,6 +383,7 @@ public class CompressionMetadata
         private Writer(CompressionParams parameters, File path)
         {
             this.parameters = parameters;
+            this.compressor = parameters.getSstableCompressor();
             filePath = path;
         }
 
@@ -348,6 +392,15 @@ public class CompressionMetadata
             return new Writer(parameters, path);
         }
 
+        /**
+         * Sets the compressor the chunks are written with from now on, which is what readers opened early on the
+         * sstable must use.
+         */
+        public void useCompressor(ICompressor compressor)
+        {
+            this.compressor = compressor;
+        }
+
         public void addOffset(long offset)
         {
             if (count == maxCount)
@@ -440,7 +493,7 @@ public class CompressionMetadata
             if (tCount < this.count)
                 compressedLength = tOffsets.getLong(tCount * 8L);
 
-            return new CompressionMetadata(filePath, parameters, tOffsets, tCount * 8L, dataLength, compressedLength);
+            return new CompressionMetadata(filePath, parameters, compressor, tOffsets, tCount * 8L, dataLength, compressedLength);
         }
 
         /**
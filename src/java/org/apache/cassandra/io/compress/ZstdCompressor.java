@@ -20,7 +20,7 @@ package org.apache.cassandra.io.compress;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -48,12 +48,23 @@ public class ZstdCompressor implements ICompressor
     public static final int DEFAULT_COMPRESSION_LEVEL = 3;
     private static final boolean ENABLE_CHECKSUM_FLAG = true;
 
+    // Dictionaries larger than this bring little benefit and make training costly
+    public static final int MAX_DICTIONARY_SIZE_IN_KB = 1024;
+
     @VisibleForTesting
     public static final String COMPRESSION_LEVEL_OPTION_NAME = "compression_level";
 
-    private static final ConcurrentHashMap<Integer, ZstdCompressor> instances = new ConcurrentHashMap<>();
+    /**
+     * Size of the dictionary to train for each sstable from the first chunks written to it; 0 (the default)
+     * disables dictionary training. See {@link ZstdDictionaryCompressor}.
+     */
+    public static final String DICTIONARY_SIZE_OPTION_NAME = "dictionary_size_in_kb";
+
+    // keyed by compression level in the high 32 bits and dictionary size in the low ones
+    private static final ConcurrentHashMap<Long, ZstdCompressor> instances = new ConcurrentHashMap<>();
 
     private final int compressionLevel;
+    private final int dictionarySize;
     private final Set<Uses> recommendedUses;
 
     /**
@@ -69,19 +80,27 @@ public class ZstdCompressor implements ICompressor
         if (!isValid(level))
             throw new IllegalArgumentException(String.format("%s=%d is invalid", COMPRESSION_LEVEL_OPTION_NAME, level));
 
-        return getOrCreate(level);
+        int dictionarySizeInKB = getOrDefaultDictionarySize(options);
+
+        if (dictionarySizeInKB < 0 || dictionarySizeInKB > MAX_DICTIONARY_SIZE_IN_KB)
+            throw new IllegalArgumentException(String.format("%s=%d is invalid, must be between 0 and %d",
+                                                             DICTIONARY_SIZE_OPTION_NAME, dictionarySizeInKB, MAX_DICTIONARY_SIZE_IN_KB));
+
+        return getOrCreate(level, dictionarySizeInKB * 1024);
     }
 
     /**
      * Private constructor
      *
      * @param compressionLevel
+     * @param dictionarySize
      */
-    private ZstdCompressor(int compressionLevel)
+    private ZstdCompressor(int compressionLevel, int dictionarySize)
     {
         this.compressionLevel = compressionLevel;
+        this.dictionarySize = dictionarySize;
         this.recommendedUses = ImmutableSet.of(Uses.GENERAL);
-        logger.trace("Creating Zstd Compressor with compression level={}", compressionLevel);
+        logger.trace("Creating Zstd Compressor with compression level={}, dictionary size={}", compressionLevel, dictionarySize);
     }
 
     /**
@@ -92,7 +111,13 @@ public class ZstdCompressor implements ICompressor
      */
     public static ZstdCompressor getOrCreate(int level)
     {
-        return instances.computeIfAbsent(level, l -> new ZstdCompressor(level));
+        return getOrCreate(level, 0);
+    }
+
+    private static ZstdCompressor getOrCreate(int level, int dictionarySize)
+    {
+        long key = ((long) level << 32) | dictionarySize;
+        return instances.computeIfAbsent(key, k -> new ZstdCompressor(level, dictionarySize));
     }
 
     /**
@@ -199,6 +224,25 @@ public class ZstdCompressor implements ICompressor
         return Integer.valueOf(val);
     }
 
+    /**
+     * Parse the dictionary size option
+     *
+     * @param options
+     * @return
+     */
+    private static int getOrDefaultDictionarySize(Map<String, String> options)
+    {
+        if (options == null)
+            return 0;
+
+        String val = options.get(DICTIONARY_SIZE_OPTION_NAME);
+
+        if (val == null)
+            return 0;
+
+        return Integer.valueOf(val);
+    }
+
     /**
      * Return the preferred BufferType
      *
@@ -230,7 +274,7 @@ public class ZstdCompressor implements ICompressor
     @Override
     public Set<String> supportedOptions()
     {
-        return new HashSet<>(Collections.singletonList(COMPRESSION_LEVEL_OPTION_NAME));
+        return new HashSet<>(Arrays.asList(COMPRESSION_LEVEL_OPTION_NAME, DICTIONARY_SIZE_OPTION_NAME));
     }
 
 
@@ -240,6 +284,14 @@ public class ZstdCompressor implements ICompressor
         return compressionLevel;
     }
 
+    /**
+     * @return the size in bytes of the dictionary to train for each sstable, or 0 if dictionaries are disabled
+     */
+    public int dictionarySize()
+    {
+        return dictionarySize;
+    }
+
     @Override
     public Set<Uses> recommendedUses()
     {
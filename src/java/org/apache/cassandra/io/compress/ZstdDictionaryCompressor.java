@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+
+/**
+ * Zstd compressor using a dictionary trained for a single sstable.
+ * <p>
+ * Small chunks of small, repetitive rows compress poorly on their own because every chunk has to rebuild the
+ * statistics of the data from scratch. When {@link ZstdCompressor#DICTIONARY_SIZE_OPTION_NAME} is set, the
+ * {@link CompressedSequentialWriter} samples the first chunks it writes, trains a dictionary from them and compresses
+ * the rest of the sstable with it. The dictionary is stored in the
+ * {@link org.apache.cassandra.io.sstable.Component#COMPRESSION_DICTIONARY} component and loaded once per sstable by
+ * {@link CompressionMetadata}, which shares this compressor between all readers.
+ * <p>
+ * Chunks written before the dictionary was trained are regular Zstd frames, which this compressor decompresses as
+ * well: frames that do not reference a dictionary ignore the one we load.
+ * <p>
+ * This class is not meant to be created from table options, only by the sstable writer and reader.
+ */
+public class ZstdDictionaryCompressor implements ICompressor
+{
+    private final byte[] dictionary;
+    private final int compressionLevel;
+    private final ZstdDictDecompress decompressDictionary;
+    // only needed when writing, so only created on first use
+    private volatile ZstdDictCompress compressDictionary;
+
+    public ZstdDictionaryCompressor(byte[] dictionary, int compressionLevel)
+    {
+        this.dictionary = dictionary;
+        this.compressionLevel = compressionLevel;
+        this.decompressDictionary = new ZstdDictDecompress(dictionary);
+    }
+
+    /**
+     * Train a dictionary from the samples collected in {@code trainer}.
+     *
+     * @return the trained dictionary, or null if the samples were not sufficient to produce one
+     */
+    public static byte[] train(ZstdDictTrainer trainer)
+    {
+        try
+        {
+            byte[] dictionary = trainer.trainSamples();
+            return dictionary.length > 0 ? dictionary : null;
+        }
+        catch (ZstdException e)
+        {
+            // typically not enough (or too uniform) samples
+            return null;
+        }
+    }
+
+    public byte[] dictionary()
+    {
+        return dictionary;
+    }
+
+    private ZstdDictCompress compressDictionary()
+    {
+        ZstdDictCompress dict = compressDictionary;
+        if (dict == null)
+        {
+            synchronized (this)
+            {
+                dict = compressDictionary;
+                if (dict == null)
+                    compressDictionary = dict = new ZstdDictCompress(dictionary, compressionLevel);
+            }
+        }
+        return dict;
+    }
+
+    @Override
+    public int initialCompressedBufferLength(int chunkLength)
+    {
+        return (int) Zstd.compressBound(chunkLength);
+    }
+
+    @Override
+    public int uncompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws IOException
+    {
+        long dsz = Zstd.decompressFastDict(output, outputOffset, input, inputOffset, inputLength, decompressDictionary);
+
+        if (Zstd.isError(dsz))
+            throw new IOException(String.format("Decompression failed due to %s", Zstd.getErrorName(dsz)));
+
+        return (int) dsz;
+    }
+
+    @Override
+    public void uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        long dsz = Zstd.decompressDirectByteBufferFastDict(output, output.position(), output.remaining(),
+                                                           input, input.position(), input.remaining(),
+                                                           decompressDictionary);
+
+        if (Zstd.isError(dsz))
+            throw new IOException(String.format("Decompression failed due to %s", Zstd.getErrorName(dsz)));
+
+        input.position(input.limit());
+        output.position(output.position() + (int) dsz);
+    }
+
+    @Override
+    public void compress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        long csz = Zstd.compressDirectByteBufferFastDict(output, output.position(), output.remaining(),
+                                                         input, input.position(), input.remaining(),
+                                                         compressDictionary());
+
+        if (Zstd.isError(csz))
+            throw new IOException(String.format("Compression failed due to %s", Zstd.getErrorName(csz)));
+
+        input.position(input.limit());
+        output.position(output.position() + (int) csz);
+    }
+
+    @Override
+    public BufferType preferredBufferType()
+    {
+        return BufferType.OFF_HEAP;
+    }
+
+    @Override
+    public boolean supports(BufferType bufferType)
+    {
+        return bufferType == BufferType.OFF_HEAP;
+    }
+
+    @Override
+    public Set<String> supportedOptions()
+    {
+        return Collections.emptySet();
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.sstable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
@@ -157,6 +158,11 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         writer.addUnfiltered(unfiltered);
     }
 
+    public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        writer.addSerializedUnfiltered(unfiltered, serialized);
+    }
+
     // attempts to append the row, if fails resets the writer position
     public boolean tryAppend(UnfilteredRowIterator partition)
     {
@@ -41,7 +41,8 @@ import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.schema.TableMetadata;
 
 /**
- * Wrapper that converts a cursor into an UnfilteredPartitionIterator for testing.
+ * Wrapper that converts a cursor into an UnfilteredPartitionIterator, for testing and for compaction of partitions
+ * that need iterator transformations (e.g. garbage collection with tombstone sources).
  */
 public class IteratorFromCursor implements UnfilteredPartitionIterator
 {
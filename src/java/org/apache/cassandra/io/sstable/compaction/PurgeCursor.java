@@ -51,6 +51,7 @@ public class PurgeCursor implements SSTableCursor, DeletionPurger
     private final int nowInSec;
     private final int gcBefore;
     private final boolean purgeTombstones;
+    private final boolean purgeRows;
     private LongPredicate purgeEvaluator;
 
     private DeletionTime partitionLevelDeletion;
@@ -63,6 +64,18 @@ public class PurgeCursor implements SSTableCursor, DeletionPurger
 
     public PurgeCursor(SSTableCursor wrapped, CompactionController controller, int nowInSec)
     {
+        this(wrapped, controller, nowInSec, true);
+    }
+
+    /**
+     * @param purgeRows whether to purge the content of rows. If false, only partition-level deletions and range
+     *                  tombstones are purged, and rows are passed on unchanged for the consumer to purge, e.g. with
+     *                  {@link org.apache.cassandra.db.rows.Row#purge} when the table enforces strict liveness, where
+     *                  whether a row survives depends on the content of the whole row.
+     */
+    public PurgeCursor(SSTableCursor wrapped, CompactionController controller, int nowInSec, boolean purgeRows)
+    {
+        this.purgeRows = purgeRows;
         this.gcBefore = controller.gcBefore;
         this.purgeTombstones = controller.compactingRepaired(); // this is also true if !cfs.onlyPurgeRepairedTombstones
         this.wrapped = wrapped;
@@ -117,14 +130,26 @@ public class PurgeCursor implements SSTableCursor, DeletionPurger
                         break;  // no bound remained, move on to next item
                 case ROW:
                     clusteringKey = wrapped.clusteringKey();
+                    if (!purgeRows)
+                    {
+                        rowLevelDeletion = wrapped.rowLevelDeletion();
+                        clusteringKeyLivenessInfo = wrapped.clusteringKeyLivenessInfo();
+                        return type;
+                    }
                     rowLevelDeletion = maybePurge(wrapped.rowLevelDeletion());
                     clusteringKeyLivenessInfo = maybePurge(wrapped.clusteringKeyLivenessInfo(), nowInSec);
                     return type;
                 case COMPLEX_COLUMN:
-                    this.complexColumnDeletion = maybePurge(wrapped.complexColumnDeletion());
+                    this.complexColumnDeletion = purgeRows ? maybePurge(wrapped.complexColumnDeletion())
+                                                           : wrapped.complexColumnDeletion();
                     return type;
                 case SIMPLE_COLUMN:
                 case COMPLEX_COLUMN_CELL:
+                    if (!purgeRows)
+                    {
+                        cell = wrapped.cell();
+                        return type;
+                    }
                     // This also applies cells' time-to-live, converting expired cells to tombstones.
                     cell = wrapped.cell().purge(this, nowInSec);
                     if (cell != null)
@@ -64,8 +64,12 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
 
     private Cell<?> currentCell;
     private int currentIndex;
+    private SSTableCursor currentSource;
     private int numMergedVersions = 0;
 
+    // A source the consumer has advanced itself, see takeOverPartition.
+    private SSTableCursor takenOverSource;
+
     public SSTableCursorMerger(List<SSTableCursor> cursors, TableMetadata metadata)
     {
         this(cursors, metadata, NO_MERGE_LISTENER);
@@ -77,7 +81,10 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
         this.mergeListener = mergeListener;
         this.merger = new Merger<>(cursors,
                                    x -> {
-                                       x.advance();
+                                       if (x == takenOverSource)
+                                           takenOverSource = null;
+                                       else
+                                           x.advance();
                                        return x;
                                    },
                                    SSTableCursor::close,
@@ -181,9 +188,11 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
     public void reduce(int idx, SSTableCursor current)
     {
         ++numMergedVersions;
+        mergeListener.onSourceItem(idx, current);
         if (currentIndex == -1)
         {
             currentIndex = idx;
+            currentSource = current;
             currentType = current.type();
             switch (currentType)
             {
@@ -255,8 +264,6 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
 
     public SSTableCursor getReduced()
     {
-        mergeListener.onItem(this, numMergedVersions);
-
         switch (currentType)
         {
             case COMPLEX_COLUMN_CELL:
@@ -325,9 +332,32 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
                 break;
         }
 
+        mergeListener.onItem(this, numMergedVersions);
         return this;
     }
 
+    /**
+     * If the merger is positioned on a partition that only one of its sources contains, returns the index of that
+     * source in the list given to the merger, otherwise -1.
+     */
+    public int unmergedPartitionSource()
+    {
+        return currentType == Type.PARTITION && numMergedVersions == 1 ? currentIndex : -1;
+    }
+
+    /**
+     * Hands the source of the current partition over to the caller, who advances it through the partition instead of
+     * the merger, e.g. to copy the partition without merging it. The caller must leave the source on the header of
+     * the following partition, or exhausted, and then advance the merger, which continues the merge from there.
+     * Only valid if the partition is not merged, see {@link #unmergedPartitionSource}.
+     */
+    public SSTableCursor takeOverPartition()
+    {
+        assert unmergedPartitionSource() >= 0;
+        takenOverSource = currentSource;
+        return currentSource;
+    }
+
     private DeletionTime gatherDeletions(DeletionTime initialValue, Iterable<SSTableCursor> sources)
     {
         DeletionTime collected = initialValue;
@@ -415,7 +445,19 @@ public class SSTableCursorMerger extends Reducer<SSTableCursor, SSTableCursor> i
 
     public interface MergeListener
     {
+        /**
+         * Called for each item the merger produces, with the merger positioned on it and the number of sources it was
+         * merged from. Items that the merge drops (e.g. deleted cells) are not reported.
+         */
         void onItem(SSTableCursor cursor, int numVersions);
+
+        /**
+         * Called for each source taking part in the merge of the next item, with the source positioned on its
+         * version of the item and the index of the source in the list given to the merger.
+         */
+        default void onSourceItem(int sourceIndex, SSTableCursor source)
+        {
+        }
     }
 
     static MergeListener NO_MERGE_LISTENER = (cursor, numVersions) -> {};
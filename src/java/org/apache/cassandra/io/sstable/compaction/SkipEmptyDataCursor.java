@@ -61,11 +61,23 @@ import org.apache.cassandra.schema.ColumnMetadata;
 public class SkipEmptyDataCursor implements SSTableCursor
 {
     private final SSTableCursor wrapped;
+    private final boolean skipEmptyPartitions;
     private Type type = Type.UNINITIALIZED;
 
     public SkipEmptyDataCursor(SSTableCursor wrapped)
+    {
+        this(wrapped, true);
+    }
+
+    /**
+     * @param skipEmptyPartitions whether to also skip partitions with no deletion and no content. If false, partition
+     *                            headers are reported as soon as the wrapped cursor reaches them, without looking into
+     *                            the partition, and the consumer must deal with partitions that turn out to be empty.
+     */
+    public SkipEmptyDataCursor(SSTableCursor wrapped, boolean skipEmptyPartitions)
     {
         this.wrapped = wrapped;
+        this.skipEmptyPartitions = skipEmptyPartitions;
     }
 
     public Type advance()
@@ -101,7 +113,7 @@ public class SkipEmptyDataCursor implements SSTableCursor
                     // There is no cell. We may have advanced to a new row or new partition.
                     break;
                 case PARTITION:
-                    if (!partitionLevelDeletion().isLive())
+                    if (!skipEmptyPartitions || !partitionLevelDeletion().isLive())
                         return type;   // we have to report this partition even without any content
                     if (advanceToNonEmptyRow())
                         return type;   // We have reached a cell (or RT). We must report the partition, then the row.
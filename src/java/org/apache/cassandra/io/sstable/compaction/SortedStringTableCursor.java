@@ -18,6 +18,8 @@
 
 package org.apache.cassandra.io.sstable.compaction;
 
+import javax.annotation.Nullable;
+
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.cassandra.db.Clustering;
 import org.apache.cassandra.db.ClusteringBoundOrBoundary;
@@ -34,12 +36,14 @@ import org.apache.cassandra.db.rows.DeserializationHelper;
 import org.apache.cassandra.db.rows.UnfilteredSerializer;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.schema.ColumnMetadata;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Cursor over sstable data files.
@@ -48,6 +52,8 @@ import java.io.IOException;
 public class SortedStringTableCursor implements SSTableCursor
 {
     private final RandomAccessReader dataFile;
+    private final long startPosition;
+    private final long endPosition;
     private final SSTableReader sstable;
     private final DeserializationHelper helper;
     private final SerializationHeader header;
@@ -73,6 +79,7 @@ public class SortedStringTableCursor implements SSTableCursor
     private DeletionTime complexColumnDeletion;
 
     private Type currentType = Type.UNINITIALIZED;
+    private long unfilteredPosition;
 
     public SortedStringTableCursor(SSTableReader sstable)
     {
@@ -81,12 +88,30 @@ public class SortedStringTableCursor implements SSTableCursor
 
     public SortedStringTableCursor(SSTableReader sstable, RateLimiter limiter)
     {
-        this(sstable, sstable.openDataReader(limiter));
+        this(sstable, sstable.openDataReader(limiter, AccessIntent.COMPACTION));
+    }
+
+    /**
+     * Creates a cursor over the part of the data file between the given positions, which must be partition boundaries
+     * (e.g. as returned by {@link SSTableReader#getPositionsForRanges}).
+     */
+    public SortedStringTableCursor(SSTableReader sstable, RateLimiter limiter, long startPosition, long endPosition)
+    {
+        this(sstable, sstable.openDataReader(limiter, AccessIntent.COMPACTION), startPosition, endPosition);
     }
 
     public SortedStringTableCursor(SSTableReader sstable, RandomAccessReader dataFile)
+    {
+        this(sstable, dataFile, 0, dataFile.length());
+    }
+
+    private SortedStringTableCursor(SSTableReader sstable, RandomAccessReader dataFile, long startPosition, long endPosition)
     {
         this.dataFile = dataFile;
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        if (startPosition > 0)
+            dataFile.seek(startPosition);
         this.header = sstable.header;
         this.helper = new DeserializationHelper(sstable.metadata(), sstable.descriptor.version.correspondingMessagingVersion(), DeserializationHelper.Flag.LOCAL);
         this.sstable = sstable;
@@ -108,7 +133,7 @@ public class SortedStringTableCursor implements SSTableCursor
 
     private boolean consumePartitionHeader() throws IOException
     {
-        if (dataFile.isEOF())
+        if (dataFile.getFilePointer() >= endPosition)
         {
             currentType = Type.EXHAUSTED;
             return false;
@@ -137,6 +162,7 @@ public class SortedStringTableCursor implements SSTableCursor
         boolean haveData;
         do
         {
+            unfilteredPosition = dataFile.getFilePointer();
             rowFlags = dataFile.readUnsignedByte();
             if (UnfilteredSerializer.isEndOfPartition(rowFlags))
                 return false;
@@ -429,14 +455,35 @@ public class SortedStringTableCursor implements SSTableCursor
         return currentCell;
     }
 
+    /**
+     * The position in the data file of the unfiltered (row or range tombstone marker) the cursor is in. Once the cursor
+     * has moved past the last unfiltered of a partition, this is the position of the end of partition marker, i.e.
+     * the position where that last unfiltered ends.
+     */
+    public long unfilteredPosition()
+    {
+        return unfilteredPosition;
+    }
+
+    /**
+     * Returns the serialized data between the given positions of the data file (e.g. an unfiltered, from its position
+     * to the position of the item that follows it), if the data file reader still has it buffered, or null otherwise.
+     * The result is only valid until the cursor is advanced.
+     */
+    @Nullable
+    public ByteBuffer bufferedSerialized(long start, long end)
+    {
+        return dataFile.bufferedSlice(start, end);
+    }
+
     public long bytesProcessed()
     {
-        return dataFile.getFilePointer();
+        return dataFile.getFilePointer() - startPosition;
     }
 
     public long bytesTotal()
     {
-        return dataFile.length();
+        return endPosition - startPosition;
     }
 
     public void close()
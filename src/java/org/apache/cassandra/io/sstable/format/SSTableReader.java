@@ -30,10 +30,12 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
@@ -112,7 +114,9 @@ import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.sstable.metadata.ValidationMetadata;
+import org.apache.cassandra.io.sstable.metadata.ZoneMapMetadata;
 import org.apache.cassandra.io.storage.StorageProvider;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.ChannelProxy;
 import org.apache.cassandra.io.util.CheckedFunction;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
@@ -121,6 +125,7 @@ import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.FileOutputStreamPlus;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.PrefetchingRebufferer;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.metrics.RestorableMeter;
 import org.apache.cassandra.schema.CachingParams;
@@ -271,6 +276,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
 
     // not final since we need to be able to change level on a file.
     protected volatile StatsMetadata sstableMetadata;
+    // loaded on first use, see getZoneMap()
+    private volatile Optional<ZoneMapMetadata> zoneMap;
 
     public final SerializationHeader header;
 
@@ -867,7 +874,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         File filterFile = descriptor.fileFor(Component.FILTER);
         try (DataOutputStreamPlus stream = new FileOutputStreamPlus(filterFile))
         {
-            BloomFilter.serializer.serialize((BloomFilter) filter, stream);
+            BloomFilter.serializer.serialize(filter, stream);
             stream.flush();
         }
         catch (IOException e)
@@ -2073,6 +2080,34 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return sstableMetadata;
     }
 
+    /**
+     * Loads the zone maps of the sstable on first use, as only reads with a row filter need them.
+     *
+     * @return the zone maps of the sstable, or null if it has none, or if its metadata is not written yet
+     */
+    public ZoneMapMetadata getZoneMap()
+    {
+        Optional<ZoneMapMetadata> zones = zoneMap;
+        if (zones == null)
+        {
+            if (openReason == OpenReason.EARLY)
+                return null;
+            if (!descriptor.version.hasZoneMaps())
+                return null;
+
+            try
+            {
+                zones = Optional.ofNullable((ZoneMapMetadata) descriptor.getMetadataSerializer().deserialize(descriptor, MetadataType.ZONES));
+            }
+            catch (IOException e)
+            {
+                throw new CorruptSSTableException(e, descriptor.fileFor(Component.STATS));
+            }
+            zoneMap = zones;
+        }
+        return zones.orElse(null);
+    }
+
     public RandomAccessReader openDataReader(RateLimiter limiter)
     {
         assert limiter != null;
@@ -2084,6 +2119,29 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return dfile.createReader();
     }
 
+    /**
+     * Open a reader of the data file with the given access intent, rate limited by the given limiter if not null.
+     */
+    public RandomAccessReader openDataReader(RateLimiter limiter, AccessIntent intent)
+    {
+        return dfile.createReader(limiter, intent);
+    }
+
+    /**
+     * Open a rebufferer of the data file for a reader that reads the parts of the file it announces ahead of time,
+     * see {@link FileHandle#instantiatePrefetchingRebufferer}.
+     *
+     * @return the rebufferer, or null if the data file cannot be read ahead this way
+     */
+    @Nullable
+    public PrefetchingRebufferer openPrefetchingDataRebufferer(AccessIntent intent,
+                                                               Executor executor,
+                                                               int maxDepth,
+                                                               PrefetchingRebufferer.Listener listener)
+    {
+        return dfile.instantiatePrefetchingRebufferer(intent, executor, maxDepth, listener);
+    }
+
     public RandomAccessReader openIndexReader()
     {
         if (ifile != null)
@@ -2108,6 +2166,16 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return ifile;
     }
 
+    /**
+     * Advise the OS to read ahead the given range of the data file, see {@link FileHandle#adviseWillNeed}.
+     *
+     * @return the number of on-disk bytes advised
+     */
+    public long adviseDataWillNeed(long position, long length)
+    {
+        return dfile.adviseWillNeed(position, length);
+    }
+
     /**
      * @return Number of key cache hit
      */
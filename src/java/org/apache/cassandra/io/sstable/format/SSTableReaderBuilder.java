@@ -177,7 +177,7 @@ public abstract class SSTableReaderBuilder
             if (recreateBloomFilter)
             {
                 logger.debug("Recreating bloom filter for {} with fpChance={}", descriptor, metadata.params.bloomFilterFpChance);
-                bf = FilterFactory.getFilter(estimatedKeys, metadata.params.bloomFilterFpChance);
+                bf = FilterFactory.getFilter(estimatedKeys, metadata.params.bloomFilterFpChance, FilterFactory.Type.fromMetadata(metadata, descriptor.version));
             }
 
             // we read the positions in a BRAF so we don't have to worry about an entry spanning a mmap boundary.
@@ -205,6 +205,9 @@ public abstract class SSTableReaderBuilder
                 if (!summaryLoaded)
                     summary = summaryBuilder.build(metadata.partitioner);
             }
+
+            if (recreateBloomFilter)
+                bf = FilterFactory.complete(bf);
         }
 
         if (!summaryLoaded)
@@ -214,7 +217,7 @@ public abstract class SSTableReaderBuilder
         }
     }
 
-    public static IFilter loadBloomFilter(File file, boolean oldFormat)
+    public static IFilter loadBloomFilter(File file, Version version)
     {
         if (file.exists())
         {
@@ -222,7 +225,7 @@ public abstract class SSTableReaderBuilder
             IFilter filter = null;
             try (FileInputStreamPlus stream = file.newInputStream())
             {
-                filter = BloomFilter.serializer.deserialize(stream, oldFormat);
+                filter = BloomFilter.serializer.deserialize(stream, version);
                 return filter;
             }
             catch (Throwable t)
@@ -407,7 +410,7 @@ public abstract class SSTableReaderBuilder
             double desiredFPChance = metadata.params.bloomFilterFpChance;
 
             if (SSTableReader.shouldLoadBloomFilter(descriptor, components, currentFPChance, desiredFPChance))
-                bf = loadBloomFilter(descriptor.fileFor(Component.FILTER), descriptor.version.hasOldBfFormat());
+                bf = loadBloomFilter(descriptor.fileFor(Component.FILTER), descriptor.version);
 
             boolean recreateBloomFilter = bf == null && SSTableReader.mayRecreateBloomFilter(descriptor, components, currentFPChance, isOffline, desiredFPChance);
             load(recreateBloomFilter, !isOffline, optimizationStrategy, statsMetadata, components);
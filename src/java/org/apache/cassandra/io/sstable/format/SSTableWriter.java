@@ -20,6 +20,7 @@ package org.apache.cassandra.io.sstable.format;
 
 import java.io.IOException;
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +31,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
 
+import javax.annotation.Nullable;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
@@ -55,6 +58,7 @@ import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.Schema;
 import org.apache.cassandra.schema.SchemaConstants;
 import org.apache.cassandra.schema.TableMetadata;
@@ -129,10 +133,33 @@ public abstract class SSTableWriter extends SSTable implements Transactional
                                        SerializationHeader header,
                                        Collection<Index.Group> indexGroups,
                                        LifecycleNewTracker lifecycleNewTracker)
+    {
+        return create(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, indexGroups, lifecycleNewTracker, null);
+    }
+
+    /**
+     * Create a writer whose data file is compressed with the given parameters instead of the table's ones.
+     * <p>
+     * The override only applies to tables that have compression enabled, and is used by compaction strategies that
+     * select the compression of their outputs, e.g. per level. A null {@code compression} means the table's parameters.
+     */
+    public static SSTableWriter create(Descriptor descriptor,
+                                       Long keyCount,
+                                       Long repairedAt,
+                                       UUID pendingRepair,
+                                       boolean isTransient,
+                                       TableMetadataRef metadata,
+                                       MetadataCollector metadataCollector,
+                                       SerializationHeader header,
+                                       Collection<Index.Group> indexGroups,
+                                       LifecycleNewTracker lifecycleNewTracker,
+                                       @Nullable CompressionParams compression)
     {
         Factory writerFactory = descriptor.getFormat().getWriterFactory();
+        if (compression != null && !metadata.getLocal().params.compression.isEnabled())
+            compression = null;
         return writerFactory.open(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers(descriptor, indexGroups, lifecycleNewTracker, metadata.get()), lifecycleNewTracker,
-                                  indexComponents(indexGroups));
+                                  indexComponents(indexGroups), compression);
     }
 
     public static SSTableWriter create(Descriptor descriptor,
@@ -203,6 +230,9 @@ public abstract class SSTableWriter extends SSTable implements Transactional
 
     /**
      * Appends partition data to this writer.
+     * <p>
+     * If the partition was read from the serialized form of another sstable that this writer can copy (see
+     * {@link #canCopySerialized}), its rows are written as they were serialized there.
      *
      * @param partition the partition to write
      * @return the created index entry if something was written, that is if {@code iterator}
@@ -220,6 +250,18 @@ public abstract class SSTableWriter extends SSTable implements Transactional
             if (!startPartition(partition.partitionKey(), partition.partitionLevelDeletion()))
                 return null;
 
+            if (partition instanceof SerializedUnfilteredRowIterator && canCopySerialized((SerializedUnfilteredRowIterator) partition))
+            {
+                SerializedUnfilteredRowIterator serialized = (SerializedUnfilteredRowIterator) partition;
+                if (!serialized.staticRow().isEmpty())
+                    addSerializedUnfiltered(serialized.staticRow(), serialized.serializedStaticRow());
+
+                while (serialized.hasNext())
+                    addSerializedUnfiltered(serialized.next(), serialized.serializedUnfiltered());
+
+                return endPartition();
+            }
+
             if (!partition.staticRow().isEmpty())
                 addUnfiltered(partition.staticRow());
 
@@ -252,6 +294,33 @@ public abstract class SSTableWriter extends SSTable implements Transactional
 
     public abstract void addUnfiltered(Unfiltered unfiltered) throws IOException;
 
+    /**
+     * Whether this writer would serialize the rows of the given partition exactly as they are serialized in its
+     * source, so that {@link #addSerializedUnfiltered} can be used for them.
+     */
+    protected boolean canCopySerialized(SerializedUnfilteredRowIterator partition)
+    {
+        return canCopySerialized(partition.serializedVersion(), partition.serializationHeader());
+    }
+
+    /**
+     * Whether this writer would serialize rows exactly as an sstable of the given version and serialization header
+     * does, so that {@link #addSerializedUnfiltered} can be used for the rows read from such an sstable.
+     */
+    public boolean canCopySerialized(Version version, SerializationHeader serializationHeader)
+    {
+        return false;
+    }
+
+    /**
+     * Same as {@link #addUnfiltered}, for an unfiltered whose serialized form is known to be what this writer would
+     * write, see {@link #canCopySerialized}.
+     */
+    public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        addUnfiltered(unfiltered);
+    }
+
     public abstract RowIndexEntry endPartition() throws IOException;
 
     public abstract long getFilePointer();
@@ -453,7 +522,8 @@ public abstract class SSTableWriter extends SSTable implements Transactional
                                            SerializationHeader header,
                                            Collection<SSTableFlushObserver> observers,
                                            LifecycleNewTracker lifecycleNewTracker,
-                                           Set<Component> indexComponents);
+                                           Set<Component> indexComponents,
+                                           @Nullable CompressionParams compression);
     }
 
     protected void maybeLogLargePartitionWarning(DecoratedKey key, long rowSize)
@@ -47,6 +47,7 @@ import org.apache.cassandra.schema.TableId;
 import org.apache.cassandra.schema.TableMetadataRef;
 
 import static java.lang.String.format;
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_STREAMING;
 import static org.apache.cassandra.utils.FBUtilities.prettyPrintMemory;
 
 public class SSTableZeroCopyWriter extends SSTable implements SSTableMultiWriter
@@ -83,7 +84,8 @@ public class SSTableZeroCopyWriter extends SSTable implements SSTableMultiWriter
 
     private static SequentialWriter makeWriter(Descriptor descriptor, Component component)
     {
-        return new SequentialWriter(descriptor.fileFor(component), WRITER_OPTION, false);
+        boolean directIO = component.type == Component.Type.DATA && DIRECT_IO_STREAMING.getBoolean();
+        return new SequentialWriter(descriptor.fileFor(component), WRITER_OPTION.withDirectIO(directIO), false);
     }
 
     private void write(DataInputPlus in, long size, SequentialWriter out) throws FSWriteError
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.util.AccessIntent;
+import org.apache.cassandra.io.util.PrefetchingRebufferer;
+import org.apache.cassandra.metrics.TableMetrics;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_COMPACTION;
+import static org.apache.cassandra.config.CassandraRelevantProperties.SCAN_PREFETCH_MAX_CHUNKS;
+import static org.apache.cassandra.config.CassandraRelevantProperties.SCAN_PREFETCH_THREADS;
+
+/**
+ * Reads the chunks of the data file of an sstable ahead of a sequential scan, on a small pool of threads shared by all
+ * the scanners, so that the I/O of the following chunks overlaps with the processing of the current ones (see
+ * {@link PrefetchingRebufferer}). The scanner announces the extent of the data file covered by each of the ranges it
+ * scans, which it finds in the partition index, and is handed the prefetched chunks as it reaches them.
+ * <p>
+ * Unlike {@link ScanReadAhead}, which only asks the OS to populate the page cache, this also takes the reads of the
+ * chunks, and for compressed sstables their decompression, off the thread of the scan.
+ */
+public class ScanPrefetch
+{
+    private static class ExecutorHolder
+    {
+        static final ExecutorService executor = DebuggableThreadPoolExecutor.createWithMaximumPoolSize("ScanPrefetch",
+                                                                                                      SCAN_PREFETCH_THREADS.getInt(),
+                                                                                                      60,
+                                                                                                      TimeUnit.SECONDS);
+    }
+
+    private ScanPrefetch()
+    {
+    }
+
+    /**
+     * @return a rebufferer that prefetches the data file of the given sstable for a scan, or null if prefetching is
+     * disabled or not possible for the sstable
+     */
+    @Nullable
+    public static PrefetchingRebufferer create(SSTableReader sstable, AccessIntent intent)
+    {
+        int maxChunks = SCAN_PREFETCH_MAX_CHUNKS.getInt();
+        // the readers that bypass the page cache do not read ahead
+        if (maxChunks <= 0 || (intent == AccessIntent.COMPACTION && DIRECT_IO_COMPACTION.getBoolean()))
+            return null;
+
+        ColumnFamilyStore cfs = ColumnFamilyStore.getIfExists(sstable.metadata().id);
+        return sstable.openPrefetchingDataRebufferer(intent, ExecutorHolder.executor, maxChunks, listener(cfs == null ? null : cfs.metric));
+    }
+
+    private static PrefetchingRebufferer.Listener listener(@Nullable TableMetrics metrics)
+    {
+        return new PrefetchingRebufferer.Listener()
+        {
+            public void onPrefetch(int length)
+            {
+                if (metrics != null)
+                    metrics.scanPrefetchedBytes.inc(length);
+            }
+
+            public void onWait()
+            {
+                if (metrics != null)
+                    metrics.scanPrefetchWaits.inc();
+            }
+
+            public void onClose(int depth)
+            {
+                if (metrics != null)
+                    metrics.scanPrefetchDepth.update(depth);
+            }
+        };
+    }
+}
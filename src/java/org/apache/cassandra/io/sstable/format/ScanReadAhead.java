@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Counter;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.util.DiskOptimizationStrategy;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.SCAN_READ_AHEAD_CHUNKS;
+
+/**
+ * Asks the OS to read ahead the data file of an sstable during a sequential scan, so that the disk reads of the
+ * following chunks overlap with the processing of the current ones. The kernel read-ahead of buffered reads does not
+ * do this for reads through the chunk cache, which are issued one chunk at a time.
+ * <p>
+ * The scanner reports the data file positions of the partitions it reads with {@link #onPosition}. Whenever less
+ * than half of the advised window is left ahead of the scan, the window is extended to the next
+ * {@link org.apache.cassandra.config.CassandraRelevantProperties#SCAN_READ_AHEAD_CHUNKS} chunks.
+ */
+public class ScanReadAhead
+{
+    private final SSTableReader sstable;
+    private final long window;
+    @Nullable
+    private final Counter advisedBytes;
+
+    // the data file position up to which read-ahead has been advised
+    private long advisedUpTo = 0;
+
+    private ScanReadAhead(SSTableReader sstable, long window, @Nullable Counter advisedBytes)
+    {
+        this.sstable = sstable;
+        this.window = window;
+        this.advisedBytes = advisedBytes;
+    }
+
+    /**
+     * @return a read-ahead for a scan of the given sstable, or null if read-ahead is disabled
+     */
+    @Nullable
+    public static ScanReadAhead create(SSTableReader sstable)
+    {
+        int chunks = SCAN_READ_AHEAD_CHUNKS.getInt();
+        if (chunks <= 0)
+            return null;
+
+        int chunkLength = sstable.compression ? sstable.getCompressionMetadata().chunkLength()
+                                              : DiskOptimizationStrategy.MAX_BUFFER_SIZE;
+        ColumnFamilyStore cfs = ColumnFamilyStore.getIfExists(sstable.metadata().id);
+        return new ScanReadAhead(sstable, (long) chunks * chunkLength, cfs == null ? null : cfs.metric.readAheadAdvisedBytes);
+    }
+
+    /**
+     * Notifies that the scan has reached the given (uncompressed) position of the data file.
+     */
+    public void onPosition(long position)
+    {
+        if (advisedUpTo - position > window / 2)
+            return;
+
+        long start = Math.max(position, advisedUpTo);
+        long end = position + window;
+        long advised = sstable.adviseDataWillNeed(start, end - start);
+        advisedUpTo = end;
+        if (advisedBytes != null && advised > 0)
+            advisedBytes.inc(advised);
+    }
+}
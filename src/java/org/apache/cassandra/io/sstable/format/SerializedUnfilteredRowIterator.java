@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+
+/**
+ * A partition deserialized from the data file format of an sstable, that also gives access to the serialized form of
+ * its rows.
+ * <p>
+ * A writer for the same sstable version and serialization header lays out a partition exactly as its source did, so
+ * it can copy these bytes instead of serializing the rows again (see {@link SSTableWriter#append}). It still gets the
+ * deserialized rows, to collect the sstable metadata and to build its indexes.
+ */
+public interface SerializedUnfilteredRowIterator extends UnfilteredRowIterator
+{
+    /**
+     * @return the sstable version of the serialized form
+     */
+    Version serializedVersion();
+
+    /**
+     * @return the header the rows were serialized with
+     */
+    SerializationHeader serializationHeader();
+
+    /**
+     * @return the serialized form of the static row, only valid if the header has static columns
+     */
+    ByteBuffer serializedStaticRow();
+
+    /**
+     * @return the serialized form of the last unfiltered returned by {@link #next()}, valid until the following call
+     * to {@link #hasNext()}
+     */
+    ByteBuffer serializedUnfiltered();
+}
@@ -19,7 +19,9 @@
 package org.apache.cassandra.io.sstable.format;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -128,27 +130,45 @@ public abstract class SortedTablePartitionWriter implements AutoCloseable
         state = header.hasStatic() ? State.AWAITING_STATIC_ROW : State.AWAITING_ROWS;
     }
 
-    protected void doWriteStaticRow(Row staticRow) throws IOException
+    protected void doWriteStaticRow(Row staticRow, @Nullable ByteBuffer serialized) throws IOException
     {
         assert state == State.AWAITING_STATIC_ROW;
         long staticRowPosition = writer.position();
-        UnfilteredSerializer.serializer.serializeStaticRow(staticRow, helper, writer, version);
+        if (serialized != null)
+            writer.write(serialized.duplicate());
+        else
+            UnfilteredSerializer.serializer.serializeStaticRow(staticRow, helper, writer, version);
         if (!observers.isEmpty())
             observers.forEach(o -> o.staticRow(staticRow, staticRowPosition));
         state = State.AWAITING_ROWS;
     }
 
     public void addUnfiltered(Unfiltered unfiltered) throws IOException
+    {
+        addUnfiltered(unfiltered, null);
+    }
+
+    /**
+     * Adds an unfiltered given with its serialized form, as this writer would serialize it at the current position of
+     * the partition. This is the case if it comes from the same position in a partition of an sstable of the same
+     * version, written with the same header (see {@link SSTableWriter#canCopySerialized}).
+     */
+    public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        addUnfiltered(unfiltered, serialized);
+    }
+
+    private void addUnfiltered(Unfiltered unfiltered, @Nullable ByteBuffer serialized) throws IOException
     {
         if (state == State.AWAITING_STATIC_ROW)
         {
             if (unfiltered.isRow() && ((Row) unfiltered).isStatic())
             {
-                doWriteStaticRow((Row) unfiltered);
+                doWriteStaticRow((Row) unfiltered, serialized);
                 return;
             }
 
-            doWriteStaticRow(Rows.EMPTY_STATIC_ROW);
+            doWriteStaticRow(Rows.EMPTY_STATIC_ROW, null);
         }
 
         assert state == State.AWAITING_ROWS;
@@ -164,7 +184,10 @@ public abstract class SortedTablePartitionWriter implements AutoCloseable
         }
 
         long unfilteredPosition = writer.position();
-        unfilteredSerializer.serialize(unfiltered, helper, writer, pos - previousRowStart, version);
+        if (serialized != null)
+            writer.write(serialized.duplicate());
+        else
+            unfilteredSerializer.serialize(unfiltered, helper, writer, pos - previousRowStart, version);
 
         // notify observers about each new row
         if (!observers.isEmpty())
@@ -188,7 +211,7 @@ public abstract class SortedTablePartitionWriter implements AutoCloseable
     public long endPartition() throws IOException
     {
         if (state == State.AWAITING_STATIC_ROW)
-            doWriteStaticRow(Rows.EMPTY_STATIC_ROW);
+            doWriteStaticRow(Rows.EMPTY_STATIC_ROW, null);
         assert state == State.AWAITING_ROWS;
         state = State.COMPLETED;
 
@@ -25,10 +25,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionPurger;
 import org.apache.cassandra.db.DeletionTime;
@@ -52,6 +55,7 @@ import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
+import org.apache.cassandra.io.sstable.metadata.ZoneMapMetadata;
 import org.apache.cassandra.io.util.ChecksummedSequentialWriter;
 import org.apache.cassandra.io.util.DataPosition;
 import org.apache.cassandra.io.util.File;
@@ -65,6 +69,10 @@ import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Throwables;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_COMPACTION;
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_STREAMING;
+import static org.apache.cassandra.config.CassandraRelevantProperties.PAGE_CACHE_DROP_BEHIND;
+
 public abstract class SortedTableWriter extends SSTableWriter
 {
     protected static final Logger logger = LoggerFactory.getLogger(SortedTableWriter.class);
@@ -89,12 +97,15 @@ public abstract class SortedTableWriter extends SSTableWriter
                                 TableMetadataRef metadata,
                                 MetadataCollector metadataCollector,
                                 SerializationHeader header,
-                                Collection<SSTableFlushObserver> observers)
+                                Collection<SSTableFlushObserver> observers,
+                                @Nullable CompressionParams compressionOverride)
     {
         super(descriptor, components, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers);
         lifecycleNewTracker.trackNew(this); // must track before any files are created
+        if (descriptor.version.hasZoneMaps())
+            metadataCollector.zoneMapColumns(ZoneMapMetadata.columnsFor(metadata.get()));
 
-        dataFile = constructDataFileWriter(descriptor, metadata, metadataCollector, lifecycleNewTracker, writerOption);
+        dataFile = constructDataFileWriter(descriptor, metadata, metadataCollector, lifecycleNewTracker, writerOption, compressionOverride);
         dbuilder = SSTableReaderBuilder.defaultDataHandleBuilder(descriptor).compressed(compression);
         isInternalKeyspace = SchemaConstants.isInternalKeyspace(metadata.keyspace);
     }
@@ -103,14 +114,44 @@ public abstract class SortedTableWriter extends SSTableWriter
                                                               TableMetadataRef metadata,
                                                               MetadataCollector metadataCollector,
                                                               LifecycleNewTracker lifecycleNewTracker,
-                                                              SequentialWriterOption writerOption)
+                                                              SequentialWriterOption writerOption,
+                                                              @Nullable CompressionParams compressionOverride)
+    {
+        writerOption = writerOption.withDirectIO(directIOFor(lifecycleNewTracker.opType()));
+        SequentialWriter writer = newDataFileWriter(descriptor, metadata, metadataCollector, lifecycleNewTracker, writerOption, compressionOverride);
+        if (dropCacheBehindFor(lifecycleNewTracker.opType()) && !writerOption.directIO())
+        {
+            ColumnFamilyStore cfs = ColumnFamilyStore.getIfExists(metadata.id);
+            writer.setDropCacheBehind(cfs == null ? bytes -> {} : cfs.metric.pageCacheDroppedBytes::inc);
+        }
+        return writer;
+    }
+
+    private static SequentialWriter newDataFileWriter(Descriptor descriptor,
+                                                      TableMetadataRef metadata,
+                                                      MetadataCollector metadataCollector,
+                                                      LifecycleNewTracker lifecycleNewTracker,
+                                                      SequentialWriterOption writerOption,
+                                                      @Nullable CompressionParams compressionOverride)
     {
         if (metadata.getLocal().params.compression.isEnabled())
         {
-            final CompressionParams compressionParams = compressionFor(lifecycleNewTracker.opType(), metadata);
+            // an explicit override (e.g. per-level compression chosen by the compaction strategy) takes precedence
+            // over the table's parameters and the flush compression fallback
+            final CompressionParams compressionParams = compressionOverride != null
+                                                        ? compressionOverride
+                                                        : compressionFor(lifecycleNewTracker.opType(), metadata);
+
+            // the dictionary component is listed in the TOC whenever the requested compression asks for one, so we
+            // must write it even if the compression used for this particular sstable (e.g. a fast flush compressor)
+            // does not train one
+            File dictionaryFile = (compressionOverride != null ? compressionOverride : metadata.getLocal().params.compression).trainsDictionary()
+                                  ? descriptor.fileFor(Component.COMPRESSION_DICTIONARY)
+                                  : null;
 
             return new CompressedSequentialWriter(descriptor.fileFor(Component.DATA),
                                                   descriptor.fileFor(Component.COMPRESSION_INFO),
+                                                  dictionaryFile,
                                                   descriptor.fileFor(Component.DIGEST),
                                                   writerOption,
                                                   compressionParams,
@@ -125,6 +166,34 @@ public abstract class SortedTableWriter extends SSTableWriter
         }
     }
 
+    /**
+     * Whether the data file written by the given operation should bypass the page cache, see
+     * {@link org.apache.cassandra.io.util.DirectIO}. Flushed sstables are not written with direct I/O, as their data
+     * is likely to be read soon.
+     */
+    private static boolean directIOFor(OperationType opType)
+    {
+        switch (opType)
+        {
+            case FLUSH:
+            case WRITE:
+                return false;
+            case STREAM:
+                return DIRECT_IO_STREAMING.getBoolean();
+            default:
+                return DIRECT_IO_COMPACTION.getBoolean();
+        }
+    }
+
+    /**
+     * Whether the data file written by the given operation should be dropped from the page cache as it is written,
+     * see {@link SequentialWriter#setDropCacheBehind}. As for direct I/O, flushed sstables are kept in the page cache.
+     */
+    private static boolean dropCacheBehindFor(OperationType opType)
+    {
+        return opType != OperationType.FLUSH && opType != OperationType.WRITE && PAGE_CACHE_DROP_BEHIND.getBoolean();
+    }
+
     /**
      * Given an OpType, determine the correct Compression Parameters
      * @param opType
@@ -238,6 +307,7 @@ public abstract class SortedTableWriter extends SSTableWriter
             Row row = (Row) unfiltered;
             metadataCollector.updateClusteringValues(row.clustering());
             Rows.collectStats(row, metadataCollector);
+            metadataCollector.updateZoneMaps(row);
         }
         else
         {
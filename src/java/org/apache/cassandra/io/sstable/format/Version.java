@@ -83,6 +83,19 @@ public abstract class Version
      */
     public abstract boolean hasPartitionLevelDeletionsPresenceMarker();
 
+    /**
+     * If the sstable may have zone maps of some of its columns in the stats, see
+     * {@link org.apache.cassandra.io.sstable.metadata.ZoneMapMetadata}.
+     */
+    public abstract boolean hasZoneMaps();
+
+    /**
+     * If the filter component may hold another filter than a classic Bloom filter (see
+     * {@link org.apache.cassandra.utils.FilterFactory.Type}), whose serialized form starts with a negative type marker
+     * instead of the hash count.
+     */
+    public abstract boolean hasFilterTypes();
+
     public String getVersion()
     {
         return version;
@@ -29,6 +29,7 @@ import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.db.SerializationHeader;
@@ -58,6 +59,7 @@ public class BigFormat implements SSTableFormat
                                                                                Component.PRIMARY_INDEX,
                                                                                Component.FILTER,
                                                                                Component.COMPRESSION_INFO,
+                                                                               Component.COMPRESSION_DICTIONARY,
                                                                                Component.STATS,
                                                                                Component.DIGEST,
                                                                                Component.CRC,
@@ -69,6 +71,7 @@ public class BigFormat implements SSTableFormat
                                                                                Component.SUMMARY,
                                                                                Component.STATS,
                                                                                Component.COMPRESSION_INFO,
+                                                                               Component.COMPRESSION_DICTIONARY,
                                                                                Component.FILTER,
                                                                                Component.DIGEST,
                                                                                Component.CRC);
@@ -156,10 +159,11 @@ public class BigFormat implements SSTableFormat
                                   SerializationHeader header,
                                   Collection<SSTableFlushObserver> observers,
                                   LifecycleNewTracker lifecycleNewTracker,
-                                  Set<Component> indexComponents)
+                                  Set<Component> indexComponents,
+                                  CompressionParams compression)
         {
             SSTable.validateRepairedMetadata(repairedAt, pendingRepair, isTransient);
-            return new BigTableWriter(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, lifecycleNewTracker, indexComponents);
+            return new BigTableWriter(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, lifecycleNewTracker, indexComponents, compression);
         }
     }
 
@@ -191,7 +195,7 @@ public class BigFormat implements SSTableFormat
     // we always incremented the major version.
     static class BigVersion extends Version
     {
-        public static final String current_version = "nc";
+        public static final String current_version = "nd";
         public static final String earliest_supported_version = "ma";
 
         // ma (3.0.0): swap bf hash order
@@ -204,6 +208,7 @@ public class BigFormat implements SSTableFormat
         // na (4.0-rc1): uncompressed chunks, pending repair session, isTransient, checksummed sstable metadata file, new Bloomfilter format
         // nb (4.0.0): originating host id
         // nc (5.0): token space coverage
+        // nd: zone maps of selected columns, filter types
         //
         // NOTE: when adding a new version, please add that to LegacySSTableTest, too.
 
@@ -220,6 +225,8 @@ public class BigFormat implements SSTableFormat
         private final boolean hasMetadataChecksum;
         private final boolean hasIsTransient;
         private final boolean hasTokenSpaceCoverage;
+        private final boolean hasZoneMaps;
+        private final boolean hasFilterTypes;
 
         /**
          * CASSANDRA-9067: 4.0 bloom filter representation changed (two longs just swapped)
@@ -246,6 +253,8 @@ public class BigFormat implements SSTableFormat
             hasMetadataChecksum = version.compareTo("na") >= 0;
             hasOldBfFormat = version.compareTo("na") < 0;
             hasTokenSpaceCoverage = version.compareTo("nc") >= 0;
+            hasZoneMaps = version.compareTo("nd") >= 0;
+            hasFilterTypes = version.compareTo("nd") >= 0;
         }
 
         @Override
@@ -314,6 +323,18 @@ public class BigFormat implements SSTableFormat
             return hasPartitionLevelDeletionPresenceMarker;
         }
 
+        @Override
+        public boolean hasZoneMaps()
+        {
+            return hasZoneMaps;
+        }
+
+        @Override
+        public boolean hasFilterTypes()
+        {
+            return hasFilterTypes;
+        }
+
         @Override
         public boolean isCompatible()
         {
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
+
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.AbstractIterator;
 
@@ -41,6 +43,8 @@ import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableReadsListener;
+import org.apache.cassandra.io.sstable.format.ScanReadAhead;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -63,6 +67,8 @@ public class BigTableScanner implements ISSTableScanner
     private final DataRange dataRange;
     private final BigTableRowIndexEntry.IndexSerializer<IndexInfo> rowIndexEntrySerializer;
     private final SSTableReadsListener listener;
+    @Nullable
+    private final ScanReadAhead readAhead;
     private long startScan = -1;
     private long bytesScanned = 0;
 
@@ -79,7 +85,7 @@ public class BigTableScanner implements ISSTableScanner
                                              DataRange dataRange,
                                              SSTableReadsListener listener)
     {
-        return new BigTableScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener);
+        return new BigTableScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener, AccessIntent.SCAN);
     }
 
     public static ISSTableScanner getScanner(BigTableReader sstable, Collection<Range<Token>> tokenRanges)
@@ -94,18 +100,19 @@ public class BigTableScanner implements ISSTableScanner
 
     public static ISSTableScanner getScanner(BigTableReader sstable, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
     {
-        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER);
+        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER, AccessIntent.COMPACTION);
     }
 
     private BigTableScanner(BigTableReader sstable,
                             ColumnFilter columns,
                             DataRange dataRange,
                             Iterator<AbstractBounds<PartitionPosition>> rangeIterator,
-                            SSTableReadsListener listener)
+                            SSTableReadsListener listener,
+                            AccessIntent intent)
     {
         assert sstable != null;
 
-        this.dfile = sstable.openDataReader();
+        this.dfile = sstable.openDataReader(null, intent);
         this.ifile = sstable.openIndexReader();
         this.sstable = sstable;
         this.columns = columns;
@@ -113,6 +120,7 @@ public class BigTableScanner implements ISSTableScanner
         this.rowIndexEntrySerializer = new BigTableRowIndexEntry.Serializer(sstable.descriptor.version, sstable.header);
         this.rangeIterator = rangeIterator;
         this.listener = listener;
+        this.readAhead = ScanReadAhead.create(sstable);
     }
 
     private static List<AbstractBounds<PartitionPosition>> makeBounds(SSTableReader sstable, Collection<Range<Token>> tokenRanges)
@@ -352,6 +360,8 @@ public class BigTableScanner implements ISSTableScanner
 
                         if (startScan != -1)
                             bytesScanned += dfile.getFilePointer() - startScan;
+                        if (readAhead != null)
+                            readAhead.onPosition(currentEntry.position);
 
                         try
                         {
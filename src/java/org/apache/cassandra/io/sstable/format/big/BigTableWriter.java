@@ -54,6 +54,7 @@ import org.apache.cassandra.io.util.FileOutputStreamPlus;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.SequentialWriter;
 import org.apache.cassandra.io.util.SequentialWriterOption;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.utils.BloomFilter;
@@ -86,9 +87,10 @@ public class BigTableWriter extends SortedTableWriter
                           SerializationHeader header,
                           Collection<SSTableFlushObserver> observers,
                           LifecycleNewTracker lifecycleNewTracker,
-                          Set<Component> indexComponents)
+                          Set<Component> indexComponents,
+                          CompressionParams compression)
     {
-        super(descriptor, components(metadata.getLocal(), indexComponents), lifecycleNewTracker, WRITER_OPTION, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers);
+        super(descriptor, components(metadata.getLocal(), indexComponents, compression), lifecycleNewTracker, WRITER_OPTION, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, compression);
         iwriter = new IndexWriter(keyCount);
 
         this.rowIndexEntrySerializer = new BigTableRowIndexEntry.Serializer(descriptor.version, header);
@@ -96,7 +98,7 @@ public class BigTableWriter extends SortedTableWriter
         txnProxy = new TransactionalProxy();
     }
 
-    private static Set<Component> components(TableMetadata metadata, Collection<Component> indexComponents)
+    private static Set<Component> components(TableMetadata metadata, Collection<Component> indexComponents, CompressionParams compression)
     {
         Set<Component> components = Sets.newHashSet(Component.DATA,
                                                     Component.PRIMARY_INDEX,
@@ -111,6 +113,8 @@ public class BigTableWriter extends SortedTableWriter
         if (metadata.params.compression.isEnabled())
         {
             components.add(Component.COMPRESSION_INFO);
+            if ((compression != null ? compression : metadata.params.compression).trainsDictionary())
+                components.add(Component.COMPRESSION_DICTIONARY);
         }
         else
         {
@@ -184,6 +188,9 @@ public class BigTableWriter extends SortedTableWriter
     @SuppressWarnings("resource")
     public boolean openEarly(Consumer<SSTableReader> callWhenReady)
     {
+        // the early-opened reader reads the data through a separate channel
+        dataFile.writePendingDirectIO();
+
         // find the max (exclusive) readable key
         IndexSummaryBuilder.ReadableBoundary boundary = iwriter.getMaxReadable();
         if (boundary == null)
@@ -250,7 +257,7 @@ public class BigTableWriter extends SortedTableWriter
                                                            ifile,
                                                            dfile,
                                                            indexSummary,
-                                                           iwriter.bf.sharedCopy(),
+                                                           iwriter.completedFilter().sharedCopy(),
                                                            maxDataAge,
                                                            stats,
                                                            openReason,
@@ -302,7 +309,7 @@ public class BigTableWriter extends SortedTableWriter
         private final SequentialWriter indexFile;
         public final FileHandle.Builder builder;
         public final IndexSummaryBuilder summary;
-        public final IFilter bf;
+        public IFilter bf;
         private DataPosition mark;
 
         IndexWriter(long keyCount)
@@ -310,7 +317,7 @@ public class BigTableWriter extends SortedTableWriter
             indexFile = new SequentialWriter(descriptor.fileFor(Component.PRIMARY_INDEX), WRITER_OPTION);
             builder = SSTableReaderBuilder.defaultIndexHandleBuilder(descriptor, Component.PRIMARY_INDEX);
             summary = new IndexSummaryBuilder(keyCount, metadata().params.minIndexInterval, Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata().params.bloomFilterFpChance);
+            bf = FilterFactory.getFilter(keyCount, metadata().params.bloomFilterFpChance, FilterFactory.Type.fromMetadata(metadata(), descriptor.version));
             // register listeners to be alerted when the data files are flushed
             indexFile.setPostFlushListener(() -> summary.markIndexSynced(indexFile.getLastFlushOffset()));
             dataFile.setPostFlushListener(() -> summary.markDataSynced(dataFile.getLastFlushOffset()));
@@ -354,7 +361,7 @@ public class BigTableWriter extends SortedTableWriter
                 try (FileOutputStreamPlus stream = new FileOutputStreamPlus(path))
                 {
                     // bloom filter
-                    BloomFilter.serializer.serialize((BloomFilter) bf, stream);
+                    BloomFilter.serializer.serialize(completedFilter(), stream);
                     stream.flush();
                     stream.sync();
                 }
@@ -365,6 +372,16 @@ public class BigTableWriter extends SortedTableWriter
             }
         }
 
+        /**
+         * Returns the filter completed with all the keys written, see {@link FilterFactory#complete}. Nothing must be
+         * appended after this is called.
+         */
+        IFilter completedFilter()
+        {
+            bf = FilterFactory.complete(bf);
+            return bf;
+        }
+
         public void mark()
         {
             mark = indexFile.mark();
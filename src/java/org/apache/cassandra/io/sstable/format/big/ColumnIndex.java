@@ -100,9 +100,9 @@ public class ColumnIndex extends SortedTablePartitionWriter
     }
 
     @Override
-    protected void doWriteStaticRow(Row staticRow) throws IOException
+    protected void doWriteStaticRow(Row staticRow, ByteBuffer serialized) throws IOException
     {
-        super.doWriteStaticRow(staticRow);
+        super.doWriteStaticRow(staticRow, serialized);
         this.headerLength = currentPosition();
     }
 
@@ -22,8 +22,16 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.cursors.LongCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +45,7 @@ import org.apache.cassandra.io.tries.ValueIterator;
 import org.apache.cassandra.io.tries.Walker;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.io.util.PinnedPagesRebufferer;
 import org.apache.cassandra.io.util.Rebufferer;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.PageAware;
@@ -74,11 +83,24 @@ public class PartitionIndex implements Closeable
     private final DecoratedKey filterFirst;
     /** Key to apply when a caller asks for a full index. Normally null, but set to last for zero-copied indexes. */
     private final DecoratedKey filterLast;
+    /** The pages of the trie kept in memory, shared by all the copies of the index, see {@link PartitionIndexPinning}. */
+    private final AtomicReference<PinnedPagesRebufferer.Pages> pinnedPages;
 
     public static final long NOT_FOUND = Long.MIN_VALUE;
     public static final int FOOTER_LENGTH = 3 * 8;
 
     public PartitionIndex(FileHandle fh, long trieRoot, long keyCount, DecoratedKey first, DecoratedKey last, DecoratedKey filterFirst, DecoratedKey filterLast)
+    {
+        this(fh, trieRoot, keyCount, first, last, filterFirst, filterLast, new AtomicReference<>());
+    }
+
+    private PartitionIndex(PartitionIndex src)
+    {
+        this(src.fh, src.root, src.keyCount, src.first, src.last, src.filterFirst, src.filterLast, src.pinnedPages);
+    }
+
+    private PartitionIndex(FileHandle fh, long trieRoot, long keyCount, DecoratedKey first, DecoratedKey last, DecoratedKey filterFirst, DecoratedKey filterLast,
+                           AtomicReference<PinnedPagesRebufferer.Pages> pinnedPages)
     {
         this.keyCount = keyCount;
         this.fh = fh.sharedCopy();
@@ -87,11 +109,7 @@ public class PartitionIndex implements Closeable
         this.root = trieRoot;
         this.filterFirst = filterFirst;
         this.filterLast = filterLast;
-    }
-
-    private PartitionIndex(PartitionIndex src)
-    {
-        this(src.fh, src.root, src.keyCount, src.first, src.last, src.filterFirst, src.filterLast);
+        this.pinnedPages = pinnedPages;
     }
 
     static class Payload
@@ -219,7 +237,62 @@ public class PartitionIndex implements Closeable
 
     protected Rebufferer instantiateRebufferer()
     {
-        return fh.instantiateRebufferer();
+        Rebufferer rebufferer = fh.instantiateRebufferer();
+        PinnedPagesRebufferer.Pages pinned = pinnedPages.get();
+        return pinned == null ? rebufferer : new PinnedPagesRebufferer(rebufferer, pinned);
+    }
+
+    /**
+     * Lists the pages holding the top levels of the trie, which every lookup goes through.
+     *
+     * @return for each number of levels from 1 (the root) to {@code maxLevels}, the sorted positions of the pages
+     * holding the nodes of these levels. Stops at fewer levels if the trie has fewer levels, or if more than
+     * {@code maxPages} pages would be needed.
+     */
+    List<long[]> topLevelPages(int maxLevels, int maxPages)
+    {
+        try (Reader reader = openReader())
+        {
+            return reader.topLevelPages(maxLevels, maxPages);
+        }
+    }
+
+    /**
+     * Keeps a copy of the given pages of the trie in memory, for all the copies of this index, replacing the pages
+     * kept until now. Does nothing if these pages are already kept.
+     *
+     * @param pages the sorted positions of the pages to keep, see {@link #topLevelPages}, or null to keep none
+     */
+    void pin(@Nullable long[] pages)
+    {
+        PinnedPagesRebufferer.Pages current = pinnedPages.get();
+        if (pages == null || pages.length == 0)
+        {
+            pinnedPages.set(null);
+            return;
+        }
+        if (current != null && current.hasPositions(pages))
+            return;
+
+        // copy from the file, not from the current copy
+        Rebufferer source = fh.instantiateRebufferer();
+        try
+        {
+            pinnedPages.set(PinnedPagesRebufferer.Pages.copy(source, pages));
+        }
+        finally
+        {
+            source.closeReader();
+        }
+    }
+
+    /**
+     * @return the memory used by the pages of the trie kept in memory, in bytes
+     */
+    public long pinnedBytes()
+    {
+        PinnedPagesRebufferer.Pages pinned = pinnedPages.get();
+        return pinned == null ? 0 : pinned.size();
     }
 
 
@@ -351,6 +424,37 @@ public class PartitionIndex implements Closeable
             return getCurrentIndexPos();
         }
 
+        List<long[]> topLevelPages(int maxLevels, int maxPages)
+        {
+            List<long[]> levels = new ArrayList<>(maxLevels);
+            LongHashSet pages = new LongHashSet();
+            LongArrayList level = new LongArrayList();
+            level.add(root);
+            while (levels.size() < maxLevels && !level.isEmpty())
+            {
+                LongArrayList next = new LongArrayList();
+                for (LongCursor node : level)
+                {
+                    pages.add(PageAware.pageStart(node.value));
+                    if (pages.size() > maxPages)
+                        return levels;
+
+                    go(node.value);
+                    for (int i = 0, range = transitionRange(); i < range; i++)
+                    {
+                        long child = transition(i);
+                        if (child != -1)
+                            next.add(child);
+                    }
+                }
+                long[] levelPages = pages.toArray();
+                Arrays.sort(levelPages);
+                levels.add(levelPages);
+                level = next;
+            }
+            return levels;
+        }
+
         /**
          * To be used only in analysis.
          */
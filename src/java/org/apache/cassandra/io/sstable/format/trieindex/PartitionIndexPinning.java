@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trieindex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.lifecycle.SSTableSet;
+import org.apache.cassandra.db.lifecycle.View;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+import org.apache.cassandra.utils.PageAware;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.PARTITION_INDEX_PINNED_LEVELS;
+import static org.apache.cassandra.config.CassandraRelevantProperties.PARTITION_INDEX_PINNED_MEMORY_MB;
+import static org.apache.cassandra.config.CassandraRelevantProperties.PARTITION_INDEX_PINNING_INTERVAL_SECONDS;
+
+/**
+ * Keeps the top levels of the partition index tries of the sstables in memory, within a memory budget.
+ * <p>
+ * Every lookup in a partition index goes through the first levels of its trie, so that reading them from an mmapped
+ * or cached file costs a page fault or a chunk cache miss whenever they have been evicted, e.g. after a restart or
+ * when the data set is much larger than memory. Pinned pages are copied off-heap, and read from there by all the
+ * readers of the sstable (see {@link PartitionIndex#pin}).
+ * <p>
+ * The budget is redistributed periodically between the live sstables, one trie level at a time, in order of the reads
+ * per second of the sstable (as for index summaries, see {@link org.apache.cassandra.io.sstable.IndexSummaryManager})
+ * divided by the memory needed for the level, so that the most read sstables get the most levels.
+ */
+public class PartitionIndexPinning
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionIndexPinning.class);
+
+    public static final PartitionIndexPinning instance = new PartitionIndexPinning(PARTITION_INDEX_PINNED_MEMORY_MB.getLong() << 20,
+                                                                                   PARTITION_INDEX_PINNED_LEVELS.getInt());
+
+    private final long budget;
+    private final int maxLevels;
+
+    @VisibleForTesting
+    PartitionIndexPinning(long budget, int maxLevels)
+    {
+        this.budget = budget;
+        this.maxLevels = maxLevels;
+    }
+
+    /**
+     * Schedules the periodic redistribution of the budget, if there is one.
+     */
+    public void start()
+    {
+        int interval = PARTITION_INDEX_PINNING_INTERVAL_SECONDS.getInt();
+        if (budget <= 0 || maxLevels <= 0 || interval <= 0)
+            return;
+
+        logger.info("Pinning up to {} levels of the partition indexes in {} MiB of memory, redistributed every {} seconds",
+                    maxLevels, budget >> 20, interval);
+        ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(() -> {
+            try
+            {
+                redistribute();
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                logger.error("Failed to redistribute the memory for pinned partition index pages", t);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Redistributes the budget between the live sstables of all the tables.
+     *
+     * @return the memory used by the pinned pages, in bytes
+     */
+    public long redistribute()
+    {
+        List<ColumnFamilyStore.RefViewFragment> views = new ArrayList<>();
+        try
+        {
+            List<TrieIndexSSTableReader> sstables = new ArrayList<>();
+            for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+            {
+                ColumnFamilyStore.RefViewFragment view = cfs.selectAndReference(View.selectFunction(SSTableSet.CANONICAL));
+                views.add(view);
+                for (SSTableReader sstable : view.sstables)
+                {
+                    if (sstable instanceof TrieIndexSSTableReader && sstable.openReason != SSTableReader.OpenReason.EARLY)
+                        sstables.add((TrieIndexSSTableReader) sstable);
+                }
+            }
+            return redistribute(sstables);
+        }
+        finally
+        {
+            for (ColumnFamilyStore.RefViewFragment view : views)
+                view.release();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized long redistribute(Collection<TrieIndexSSTableReader> sstables)
+    {
+        int maxPages = (int) Math.min(Integer.MAX_VALUE, budget / PageAware.PAGE_SIZE);
+        List<Candidate> candidates = new ArrayList<>(sstables.size());
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Math.max(1, sstables.size()), Candidate.BY_READS_PER_BYTE);
+        for (TrieIndexSSTableReader sstable : sstables)
+        {
+            Candidate candidate = new Candidate(sstable, sstable.partitionIndex.topLevelPages(maxLevels, maxPages));
+            candidates.add(candidate);
+            if (candidate.hasNextLevel())
+                queue.add(candidate);
+        }
+
+        long remaining = budget;
+        while (!queue.isEmpty())
+        {
+            Candidate candidate = queue.poll();
+            long cost = candidate.nextLevelBytes();
+            // the deeper levels of the sstable do not fit either
+            if (cost > remaining)
+                continue;
+
+            remaining -= cost;
+            candidate.levels++;
+            if (candidate.hasNextLevel())
+                queue.add(candidate);
+        }
+
+        long pinned = 0;
+        for (Candidate candidate : candidates)
+        {
+            candidate.sstable.partitionIndex.pin(candidate.levels == 0 ? null : candidate.levelPages.get(candidate.levels - 1));
+            pinned += candidate.sstable.partitionIndex.pinnedBytes();
+        }
+        logger.debug("Pinned {} bytes of the partition indexes of {} sstables", pinned, candidates.size());
+        return pinned;
+    }
+
+    private static class Candidate
+    {
+        static final Comparator<Candidate> BY_READS_PER_BYTE = Comparator.comparingDouble((Candidate c) -> -c.readsPerSecond / c.nextLevelBytes())
+                                                                         .thenComparingLong(Candidate::nextLevelBytes);
+
+        final TrieIndexSSTableReader sstable;
+        final double readsPerSecond;
+        // the pages of the first 1, 2... levels
+        final List<long[]> levelPages;
+        // the number of levels to pin
+        int levels = 0;
+
+        Candidate(TrieIndexSSTableReader sstable, List<long[]> levelPages)
+        {
+            this.sstable = sstable;
+            this.readsPerSecond = sstable.getReadMeter() == null ? 0.0 : sstable.getReadMeter().fifteenMinuteRate();
+            this.levelPages = levelPages;
+        }
+
+        boolean hasNextLevel()
+        {
+            return levels < levelPages.size();
+        }
+
+        long nextLevelBytes()
+        {
+            int pages = levelPages.get(levels).length - (levels == 0 ? 0 : levelPages.get(levels - 1).length);
+            // a level may share its pages with the previous one
+            return Math.max(1, (long) pages * PageAware.PAGE_SIZE);
+        }
+    }
+}
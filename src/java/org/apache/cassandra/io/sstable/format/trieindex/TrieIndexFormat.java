@@ -45,6 +45,7 @@ import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.Schema;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.utils.Throwables;
@@ -71,6 +72,7 @@ public class TrieIndexFormat implements SSTableFormat
                                                                                Component.ROW_INDEX,
                                                                                Component.FILTER,
                                                                                Component.COMPRESSION_INFO,
+                                                                               Component.COMPRESSION_DICTIONARY,
                                                                                Component.STATS,
                                                                                Component.DIGEST,
                                                                                Component.CRC,
@@ -81,6 +83,7 @@ public class TrieIndexFormat implements SSTableFormat
                                                                                Component.ROW_INDEX,
                                                                                Component.STATS,
                                                                                Component.COMPRESSION_INFO,
+                                                                               Component.COMPRESSION_DICTIONARY,
                                                                                Component.FILTER,
                                                                                Component.DIGEST,
                                                                                Component.CRC);
@@ -176,10 +179,11 @@ public class TrieIndexFormat implements SSTableFormat
                                   SerializationHeader header,
                                   Collection<SSTableFlushObserver> observers,
                                   LifecycleNewTracker lifecycleNewTracker,
-                                  Set<Component> indexComponents)
+                                  Set<Component> indexComponents,
+                                  CompressionParams compression)
         {
             SSTable.validateRepairedMetadata(repairedAt, pendingRepair, isTransient);
-            return new TrieIndexSSTableWriter(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, lifecycleNewTracker, indexComponents);
+            return new TrieIndexSSTableWriter(descriptor, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, lifecycleNewTracker, indexComponents, compression);
         }
     }
 
@@ -289,7 +293,7 @@ public class TrieIndexFormat implements SSTableFormat
     //
     static class TrieIndexVersion extends Version
     {
-        public static final String current_version = "cb";
+        public static final String current_version = "cc";
         public static final String earliest_supported_version = "aa";
 
         // aa (DSE 6.0): trie index format
@@ -306,6 +310,7 @@ public class TrieIndexFormat implements SSTableFormat
         // bb (DSE 6.8.5): added hostId of the node from which the sstable originated (DB-4629)
         // ca (DSE-DB aka Stargazer based on OSS 4.0): bb fields without maxColumnValueLengths + all OSS fields
         // cb (OSS 5.0): token space coverage
+        // cc: zone maps of selected columns, filter types
         // NOTE: when adding a new version, please add that to LegacySSTableTest, too.
 
         private final boolean isLatestVersion;
@@ -411,6 +416,18 @@ public class TrieIndexFormat implements SSTableFormat
             return version.compareTo("cb") >= 0;
         }
 
+        @Override
+        public boolean hasZoneMaps()
+        {
+            return version.compareTo("cc") >= 0;
+        }
+
+        @Override
+        public boolean hasFilterTypes()
+        {
+            return version.compareTo("cc") >= 0;
+        }
+
         @Override
         public boolean hasMaxColumnValueLengths()
         {
@@ -407,6 +407,20 @@ public class TrieIndexSSTableReader extends SSTableReader
         return new KeysRange(bounds).iterator();
     }
 
+    /**
+     * @param bounds Must not be wrapped around ranges
+     * @return the position in the data file of the first partition after the given bounds, or the length of the data
+     * file if there is none
+     */
+    public long dataPositionAfter(AbstractBounds<PartitionPosition> bounds)
+    {
+        if (bounds.right.isMinimum() || bounds.right.compareTo(last) >= 0)
+            return uncompressedLength();
+
+        RowIndexEntry entry = getPosition(bounds.right, bounds.inclusiveRight() ? GT : GE, false, false, SSTableReadsListener.NOOP_LISTENER);
+        return entry != null ? entry.position : uncompressedLength();
+    }
+
     private final class KeysRange
     {
         PartitionPosition left;
@@ -900,7 +914,7 @@ public class TrieIndexSSTableReader extends SSTableReader
         IFilter bf = null;
         try
         {
-            bf = FilterFactory.getFilter(estimatedKeysCount, fpChance);
+            bf = FilterFactory.getFilter(estimatedKeysCount, fpChance, FilterFactory.Type.fromMetadata(metadata, descriptor.version));
 
             Factory readerFactory = descriptor.getFormat().getReaderFactory();
             try (PartitionIterator iter = (PartitionIterator) readerFactory.indexIterator(descriptor, metadata))
@@ -914,12 +928,13 @@ public class TrieIndexSSTableReader extends SSTableReader
                     iter.advance();
                 }
             }
+            bf = FilterFactory.complete(bf);
 
             File path = descriptor.fileFor(Component.FILTER);
             try (SeekableByteChannel fos = Files.newByteChannel(path.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
                  DataOutputStreamPlus stream = new BufferedDataOutputStreamPlus(fos))
             {
-                BloomFilter.serializer.serialize((BloomFilter) bf, stream);
+                BloomFilter.serializer.serialize(bf, stream);
                 stream.flush();
                 SyncUtil.sync((FileChannel) fos);
             }
@@ -955,7 +970,7 @@ public class TrieIndexSSTableReader extends SSTableReader
 
         IFilter bf = null;
         if (SSTableReader.shouldLoadBloomFilter(descriptor, components, currentFPChance, desiredFPChance))
-            bf = SSTableReaderBuilder.loadBloomFilter(descriptor.fileFor(Component.FILTER), descriptor.version.hasOldBfFormat());
+            bf = SSTableReaderBuilder.loadBloomFilter(descriptor.fileFor(Component.FILTER), descriptor.version);
 
         boolean recreateBloomFilter = bf == null && SSTableReader.mayRecreateBloomFilter(descriptor, components, currentFPChance, isOffline, desiredFPChance);
         if (recreateBloomFilter)
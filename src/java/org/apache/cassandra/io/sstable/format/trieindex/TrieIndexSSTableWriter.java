@@ -18,11 +18,14 @@
 package org.apache.cassandra.io.sstable.format.trieindex;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
@@ -49,6 +52,7 @@ import org.apache.cassandra.io.sstable.format.SSTableFlushObserver;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableReaderBuilder;
 import org.apache.cassandra.io.sstable.format.SortedTableWriter;
+import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.BufferedDataOutputStreamPlus;
@@ -58,6 +62,7 @@ import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.SequentialWriter;
 import org.apache.cassandra.io.util.SequentialWriterOption;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.schema.TableMetadataRef;
 import org.apache.cassandra.utils.BloomFilter;
@@ -74,6 +79,8 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
     private static final Logger logger = LoggerFactory.getLogger(TrieIndexSSTableWriter.class);
 
     private final PartitionWriter partitionWriter;
+    // the headers of the sources checked for being serialized as this writer would (see canCopySerialized)
+    private final Map<SerializationHeader, Boolean> copyableHeaders = new IdentityHashMap<>();
     private final IndexWriter iwriter;
     private final TransactionalProxy txnProxy;
 
@@ -93,16 +100,17 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
                                   SerializationHeader header,
                                   Collection<SSTableFlushObserver> observers,
                                   LifecycleNewTracker lifecycleNewTracker,
-                                  Set<Component> indexComponents)
+                                  Set<Component> indexComponents,
+                                  CompressionParams compression)
     {
-        super(descriptor, components(metadata.getLocal(), indexComponents), lifecycleNewTracker, WRITER_OPTION, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers);
+        super(descriptor, components(metadata.getLocal(), indexComponents, compression), lifecycleNewTracker, WRITER_OPTION, keyCount, repairedAt, pendingRepair, isTransient, metadata, metadataCollector, header, observers, compression);
 
         iwriter = new IndexWriter(metadata.get());
         partitionWriter = new PartitionWriter(this.header, metadata().comparator, dataFile, iwriter.rowIndexFile, descriptor.version, this.observers);
         txnProxy = new TransactionalProxy();
     }
 
-    private static Set<Component> components(TableMetadata metadata, Collection<Component> indexComponents)
+    private static Set<Component> components(TableMetadata metadata, Collection<Component> indexComponents, CompressionParams compression)
     {
         Set<Component> components = Sets.newHashSet(Component.DATA,
                                                     Component.PARTITION_INDEX,
@@ -117,6 +125,8 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
         if (metadata.params.compression.isEnabled())
         {
             components.add(Component.COMPRESSION_INFO);
+            if ((compression != null ? compression : metadata.params.compression).trainsDictionary())
+                components.add(Component.COMPRESSION_DICTIONARY);
         }
         else
         {
@@ -164,6 +174,25 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
         partitionWriter.addUnfiltered(unfiltered);
     }
 
+    @Override
+    public boolean canCopySerialized(Version version, SerializationHeader serializationHeader)
+    {
+        if (version.getSSTableFormat() != descriptor.formatType.info || !version.equals(descriptor.version))
+            return false;
+
+        // the encoding of the rows depends on the columns and the encoding stats of the header
+        if (serializationHeader == header)
+            return true;
+        return copyableHeaders.computeIfAbsent(serializationHeader, h -> h.toComponent().equals(header.toComponent()));
+    }
+
+    @Override
+    public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+    {
+        addUnfilteredMetadata(unfiltered);
+        partitionWriter.addSerializedUnfiltered(unfiltered, serialized);
+    }
+
     public RowIndexEntry endPartition() throws IOException
     {
         endPartitionMetadata();
@@ -183,6 +212,8 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
 
         return iwriter.buildPartial(dataLength, partitionIndex ->
         {
+            // the early-opened reader reads the data through a separate channel
+            dataFile.writePendingDirectIO();
             StatsMetadata stats = statsMetadata();
             FileHandle ifile = iwriter.rowIndexFHBuilder.complete(iwriter.rowIndexFile.getLastFlushOffset());
             if (compression)
@@ -236,7 +267,7 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
                                                             rowIndexFile,
                                                             dfile,
                                                             partitionIndex,
-                                                            iwriter.bf.sharedCopy(),
+                                                            iwriter.completedFilter().sharedCopy(),
                                                             maxDataAge,
                                                             stats,
                                                             openReason,
@@ -302,7 +333,7 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
         private final SequentialWriter partitionIndexFile;
         public final FileHandle.Builder partitionIndexFHBuilder;
         public final PartitionIndexBuilder partitionIndex;
-        public final IFilter bf;
+        public IFilter bf;
         boolean partitionIndexCompleted = false;
         private DataPosition riMark;
         private DataPosition piMark;
@@ -314,7 +345,7 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
             partitionIndexFile = new SequentialWriter(descriptor.fileFor(Component.PARTITION_INDEX), WRITER_OPTION);
             partitionIndexFHBuilder = SSTableReaderBuilder.defaultIndexHandleBuilder(descriptor, Component.PARTITION_INDEX);
             partitionIndex = new PartitionIndexBuilder(partitionIndexFile, partitionIndexFHBuilder);
-            bf = FilterFactory.getFilter(keyCount, table.params.bloomFilterFpChance);
+            bf = FilterFactory.getFilter(keyCount, table.params.bloomFilterFpChance, FilterFactory.Type.fromMetadata(table, descriptor.version));
             // register listeners to be alerted when the data files are flushed
             partitionIndexFile.setPostFlushListener(() -> partitionIndex.markPartitionIndexSynced(partitionIndexFile.getLastFlushOffset()));
             rowIndexFile.setPostFlushListener(() -> partitionIndex.markRowIndexSynced(rowIndexFile.getLastFlushOffset()));
@@ -368,7 +399,7 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
                      DataOutputStreamPlus stream = new BufferedDataOutputStreamPlus(fos))
                 {
                     // bloom filter
-                    BloomFilter.serializer.serialize((BloomFilter) bf, stream);
+                    BloomFilter.serializer.serialize(completedFilter(), stream);
                     stream.flush();
                     SyncUtil.sync((FileChannel) fos);
                 }
@@ -379,6 +410,16 @@ public class TrieIndexSSTableWriter extends SortedTableWriter
             }
         }
 
+        /**
+         * Returns the filter completed with all the keys written, see {@link FilterFactory#complete}. Nothing must be
+         * appended after this is called.
+         */
+        IFilter completedFilter()
+        {
+            bf = FilterFactory.complete(bf);
+            return bf;
+        }
+
         public void mark()
         {
             riMark = rowIndexFile.mark();
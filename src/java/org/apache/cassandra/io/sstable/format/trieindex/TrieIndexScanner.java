@@ -27,6 +27,8 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
+
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 
@@ -49,7 +51,11 @@ import org.apache.cassandra.io.sstable.format.RowIndexEntry;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableReader.PartitionPositionBounds;
 import org.apache.cassandra.io.sstable.format.SSTableReadsListener;
+import org.apache.cassandra.io.sstable.format.ScanPrefetch;
+import org.apache.cassandra.io.sstable.format.ScanReadAhead;
+import org.apache.cassandra.io.util.AccessIntent;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.PrefetchingRebufferer;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.AbstractIterator;
@@ -71,6 +77,10 @@ public class TrieIndexScanner implements ISSTableScanner
     private final ColumnFilter columns;
     private final DataRange dataRange;
     private final SSTableReadsListener listener;
+    @Nullable
+    private final PrefetchingRebufferer prefetch;
+    @Nullable
+    private final ScanReadAhead readAhead;
     private long startScan = -1;
     private long bytesScanned = 0;
 
@@ -87,7 +97,7 @@ public class TrieIndexScanner implements ISSTableScanner
                                              DataRange dataRange,
                                              SSTableReadsListener listener)
     {
-        return new TrieIndexScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener);
+        return new TrieIndexScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener, AccessIntent.SCAN);
     }
 
     public static ISSTableScanner getScanner(TrieIndexSSTableReader sstable, Collection<Range<Token>> tokenRanges)
@@ -102,23 +112,29 @@ public class TrieIndexScanner implements ISSTableScanner
 
     public static ISSTableScanner getScanner(TrieIndexSSTableReader sstable, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
     {
-        return new TrieIndexScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER);
+        return new TrieIndexScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER, AccessIntent.COMPACTION);
     }
 
     private TrieIndexScanner(TrieIndexSSTableReader sstable,
                              ColumnFilter columns,
                              DataRange dataRange,
                              Iterator<AbstractBounds<PartitionPosition>> rangeIterator,
-                             SSTableReadsListener listener)
+                             SSTableReadsListener listener,
+                             AccessIntent intent)
     {
         assert sstable != null;
 
-        this.dfile = sstable.openDataReader();
+        // the scan reads the partitions whole, unless it is restricted to some of their rows
+        this.prefetch = dataRange == null || (dataRange.selectsAllPartition() && !dataRange.isReversed())
+                        ? ScanPrefetch.create(sstable, intent)
+                        : null;
+        this.dfile = prefetch != null ? prefetch.createReader() : sstable.openDataReader(null, intent);
         this.sstable = sstable;
         this.columns = columns;
         this.dataRange = dataRange;
         this.rangeIterator = rangeIterator;
         this.listener = listener;
+        this.readAhead = prefetch == null ? ScanReadAhead.create(sstable) : null;
     }
 
     public static List<AbstractBounds<PartitionPosition>> makeBounds(SSTableReader sstable, Collection<Range<Token>> tokenRanges)
@@ -299,7 +315,10 @@ public class TrieIndexScanner implements ISSTableScanner
                     // try next range
                     if (!rangeIterator.hasNext())
                         return endOfData();
-                    iterator = sstable.coveredKeysIterator(rangeIterator.next());
+                    AbstractBounds<PartitionPosition> range = rangeIterator.next();
+                    iterator = sstable.coveredKeysIterator(range);
+                    if (prefetch != null && iterator.entry() != null)
+                        prefetch.prefetch(iterator.entry().position, sstable.dataPositionAfter(range));
                 }
                 startScan = -1;
 
@@ -322,6 +341,8 @@ public class TrieIndexScanner implements ISSTableScanner
                                 bytesScanned += getCurrentPosition() - startScan;
 
                             startScan = rowIndexEntry.position;
+                            if (readAhead != null)
+                                readAhead.onPosition(rowIndexEntry.position);
                             if (dataRange == null)
                             {
                                 return sstable.simpleIterator(dfile, partitionKey(), rowIndexEntry, false);
@@ -36,7 +36,7 @@ import org.apache.cassandra.utils.ByteBufferUtil;
  */
 public class CompactionMetadata extends MetadataComponent
 {
-    public static final IMetadataComponentSerializer serializer = new CompactionMetadataSerializer();
+    public static final IMetadataComponentSerializer<CompactionMetadata> serializer = new CompactionMetadataSerializer();
 
     public final ICardinality cardinalityEstimator;
 
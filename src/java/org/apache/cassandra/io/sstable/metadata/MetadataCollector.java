@@ -20,6 +20,7 @@ package org.apache.cassandra.io.sstable.metadata;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -31,9 +32,11 @@ import org.apache.cassandra.db.commitlog.IntervalSet;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.partitions.PartitionStatisticsCollector;
 import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.Unfiltered;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.ColumnMetadata;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.EstimatedHistogram;
@@ -139,6 +142,8 @@ public class MetadataCollector implements PartitionStatisticsCollector
 
     private final UUID originatingHostId;
 
+    private ZoneMapMetadata.Collector zoneMapCollector;
+
     public MetadataCollector(ClusteringComparator comparator)
     {
         this(comparator, StorageService.instance.getLocalHostUUID());
@@ -334,6 +339,21 @@ public class MetadataCollector implements PartitionStatisticsCollector
         }
     }
 
+    /**
+     * Collects the zone maps of the given columns, see {@link ZoneMapMetadata}.
+     */
+    public MetadataCollector zoneMapColumns(List<ColumnMetadata> columns)
+    {
+        zoneMapCollector = columns.isEmpty() ? null : new ZoneMapMetadata.Collector(columns);
+        return this;
+    }
+
+    public void updateZoneMaps(Row row)
+    {
+        if (zoneMapCollector != null)
+            zoneMapCollector.update(row);
+    }
+
     public void updateHasLegacyCounterShards(boolean hasLegacyCounterShards)
     {
         this.hasLegacyCounterShards = this.hasLegacyCounterShards || hasLegacyCounterShards;
@@ -370,6 +390,8 @@ public class MetadataCollector implements PartitionStatisticsCollector
                                                              Collections.emptyMap()));
         components.put(MetadataType.COMPACTION, new CompactionMetadata(cardinality));
         components.put(MetadataType.HEADER, header.toComponent());
+        if (zoneMapCollector != null)
+            components.put(MetadataType.ZONES, zoneMapCollector.finalizeMetadata());
         return components;
     }
 
@@ -68,6 +68,7 @@ public class MetadataSerializer implements IMetadataSerializer
 
     public void serialize(Map<MetadataType, MetadataComponent> components, DataOutputPlus out, Version version) throws IOException
     {
+        assert version.hasZoneMaps() || !components.containsKey(MetadataType.ZONES) : "Zone maps cannot be written in version " + version;
         boolean checksum = version.hasMetadataChecksum();
         CRC32 crc = new CRC32();
         // sort components by type
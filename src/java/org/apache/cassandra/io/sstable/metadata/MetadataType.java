@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.sstable.metadata;
 
 import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.io.sstable.format.Version;
 
 /**
  * Defines Metadata component type.
@@ -31,12 +32,15 @@ public enum MetadataType
     /** Metadata always keep in memory */
     STATS(StatsMetadata.serializer),
     /** Serialization header */
-    HEADER((IMetadataComponentSerializer)SerializationHeader.serializer);
+    HEADER(SerializationHeader.serializer),
+    /** Zone maps of regular columns, only written for the tables that select some columns, see {@link Version#hasZoneMaps()} */
+    ZONES(ZoneMapMetadata.serializer);
 
     public final IMetadataComponentSerializer<MetadataComponent> serializer;
 
-    private MetadataType(IMetadataComponentSerializer<MetadataComponent> serializer)
+    @SuppressWarnings("unchecked") // each serializer is only given the components of its own type
+    private MetadataType(IMetadataComponentSerializer<? extends MetadataComponent> serializer)
     {
-        this.serializer = serializer;
+        this.serializer = (IMetadataComponentSerializer<MetadataComponent>) serializer;
     }
 }
@@ -57,7 +57,7 @@ import org.apache.cassandra.utils.streamhist.TombstoneHistogram;
  */
 public class StatsMetadata extends MetadataComponent
 {
-    public static final IMetadataComponentSerializer serializer = new StatsMetadataSerializer();
+    public static final IMetadataComponentSerializer<StatsMetadata> serializer = new StatsMetadataSerializer();
     public static final ISerializer<IntervalSet<CommitLogPosition>> commitLogPositionSetSerializer = IntervalSet.serializer(CommitLogPosition.serializer);
 
     public final EstimatedHistogram estimatedPartitionSize;
@@ -32,7 +32,7 @@ import org.apache.cassandra.io.util.DataOutputPlus;
  */
 public class ValidationMetadata extends MetadataComponent
 {
-    public static final IMetadataComponentSerializer serializer = new ValidationMetadataSerializer();
+    public static final IMetadataComponentSerializer<ValidationMetadata> serializer = new ValidationMetadataSerializer();
 
     public final String partitioner;
     public final double bloomFilterFPChance;
@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.metadata;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * The smallest and largest values, and the number of rows without a value, of some regular columns of the sstable.
+ * <p>
+ * The columns are selected per table with the {@link #TABLE_EXTENSIONS_ZONE_MAP_COLUMNS_KEY} table extension. Only
+ * written for tables that select some columns, and loaded on demand, see
+ * {@link org.apache.cassandra.io.sstable.format.SSTableReader#getZoneMap()}.
+ * <p>
+ * A read with a row filter can tell from them that no live cell of the sstable can satisfy the filter (see
+ * {@link #mayMatch}). Note that the sstable may still hold other cells or deletions of the rows that do satisfy it
+ * because of the cells of other sstables, so that it cannot simply be left out of the read, see
+ * {@link org.apache.cassandra.db.PartitionRangeReadCommand}.
+ * <p>
+ * The zones cover the whole sstable, not each row index block. Reads only use them to leave out a whole sstable, as the
+ * sstable iterators cannot skip index blocks on a row filter, so per block zones would only grow the row index.
+ */
+public class ZoneMapMetadata extends MetadataComponent
+{
+    private static final Logger logger = LoggerFactory.getLogger(ZoneMapMetadata.class);
+
+    public static final IMetadataComponentSerializer<ZoneMapMetadata> serializer = new ZoneMapMetadataSerializer();
+
+    /**
+     * The table extension selecting the columns for which zone maps are written, as their comma separated names
+     * encoded in UTF-8, e.g. {@code ALTER TABLE ks.t WITH extensions = {'ZONE_MAP_COLUMNS': '0x7374617475732c7473'}}
+     * for the columns {@code status} and {@code ts}. Only regular columns that are neither counters nor non-frozen
+     * collections are supported; the others are ignored. Existing sstables get their zone maps when compacted.
+     */
+    public static final String TABLE_EXTENSIONS_ZONE_MAP_COLUMNS_KEY = "ZONE_MAP_COLUMNS";
+
+    /** The zones of the columns, by column name. */
+    public final Map<ByteBuffer, Zone> zones;
+
+    public ZoneMapMetadata(Map<ByteBuffer, Zone> zones)
+    {
+        this.zones = zones;
+    }
+
+    public MetadataType getType()
+    {
+        return MetadataType.ZONES;
+    }
+
+    /**
+     * @return the zone of the given column, or null if there is none or it was written for another type of column
+     */
+    public Zone zone(ColumnMetadata column)
+    {
+        Zone zone = zones.get(column.name.bytes);
+        return zone != null && zone.type.equals(column.type.toString()) ? zone : null;
+    }
+
+    /**
+     * @return false if no row can satisfy the given filter using only the live cells of the sstable for the columns
+     * of the filter, true if some may
+     */
+    public boolean mayMatch(RowFilter filter)
+    {
+        return mayMatch(filter.root());
+    }
+
+    private boolean mayMatch(RowFilter.FilterElement element)
+    {
+        if (element.isEmpty())
+            return true;
+
+        if (element.isDisjunction())
+        {
+            for (RowFilter.Expression expression : element.expressions())
+            {
+                if (mayMatch(expression))
+                    return true;
+            }
+            for (RowFilter.FilterElement child : element.children())
+            {
+                if (mayMatch(child))
+                    return true;
+            }
+            return false;
+        }
+
+        for (RowFilter.Expression expression : element.expressions())
+        {
+            if (!mayMatch(expression))
+                return false;
+        }
+        for (RowFilter.FilterElement child : element.children())
+        {
+            if (!mayMatch(child))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean mayMatch(RowFilter.Expression expression)
+    {
+        if (!(expression instanceof RowFilter.SimpleExpression))
+            return true;
+
+        Zone zone = zone(expression.column());
+        if (zone == null)
+            return true;
+
+        AbstractType<?> type = expression.column().type;
+        ByteBuffer value = expression.getIndexValue();
+        switch (expression.operator())
+        {
+            case EQ:
+                return zone.hasValues() && type.compareForCQL(zone.min, value) <= 0 && type.compareForCQL(zone.max, value) >= 0;
+            case LT:
+                return zone.hasValues() && type.compareForCQL(zone.min, value) < 0;
+            case LTE:
+                return zone.hasValues() && type.compareForCQL(zone.min, value) <= 0;
+            case GT:
+                return zone.hasValues() && type.compareForCQL(zone.max, value) > 0;
+            case GTE:
+                return zone.hasValues() && type.compareForCQL(zone.max, value) >= 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the columns of the table for which zone maps are written
+     */
+    public static List<ColumnMetadata> columnsFor(TableMetadata metadata)
+    {
+        ByteBuffer bb = metadata.params.extensions.get(TABLE_EXTENSIONS_ZONE_MAP_COLUMNS_KEY);
+        if (bb == null)
+            return Collections.emptyList();
+
+        try
+        {
+            List<ColumnMetadata> columns = new ArrayList<>();
+            for (String name : ByteBufferUtil.string(bb).split(","))
+            {
+                ColumnMetadata column = metadata.getColumn(ColumnIdentifier.getInterned(name.trim(), true));
+                if (column != null && column.isRegular() && !column.isComplex() && !column.type.isCounter() && !columns.contains(column))
+                    columns.add(column);
+            }
+            return columns;
+        }
+        catch (CharacterCodingException | BufferUnderflowException ex)
+        {
+            logger.error("Failed to decode metadata extensions for the zone map columns ({}), using none", bb);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        return zones.equals(((ZoneMapMetadata) o).zones);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return zones.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ZoneMapMetadata" + zones;
+    }
+
+    /**
+     * The smallest and largest value of a column, and the number of rows with and without a value for it.
+     */
+    public static class Zone
+    {
+        /** The type of the column when the sstable was written. */
+        public final String type;
+        /** The smallest value of the column, or null if no row has a value. */
+        public final ByteBuffer min;
+        /** The largest value of the column, or null if no row has a value. */
+        public final ByteBuffer max;
+        public final long valueCount;
+        public final long nullCount;
+
+        public Zone(String type, ByteBuffer min, ByteBuffer max, long valueCount, long nullCount)
+        {
+            assert (valueCount == 0) == (min == null) && (min == null) == (max == null);
+            this.type = type;
+            this.min = min;
+            this.max = max;
+            this.valueCount = valueCount;
+            this.nullCount = nullCount;
+        }
+
+        public boolean hasValues()
+        {
+            return valueCount > 0;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            Zone zone = (Zone) o;
+            return valueCount == zone.valueCount &&
+                   nullCount == zone.nullCount &&
+                   type.equals(zone.type) &&
+                   Objects.equals(min, zone.min) &&
+                   Objects.equals(max, zone.max);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(type, min, max, valueCount, nullCount);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("[%s, %s], %d values, %d nulls",
+                                 min == null ? "null" : ByteBufferUtil.bytesToHex(min),
+                                 max == null ? "null" : ByteBufferUtil.bytesToHex(max),
+                                 valueCount,
+                                 nullCount);
+        }
+    }
+
+    /**
+     * Collects the zones of some columns from the rows written to an sstable.
+     */
+    public static class Collector
+    {
+        private final ColumnMetadata[] columns;
+        private final ByteBuffer[] min;
+        private final ByteBuffer[] max;
+        private final long[] valueCount;
+        private final long[] nullCount;
+
+        public Collector(List<ColumnMetadata> columns)
+        {
+            this.columns = columns.toArray(new ColumnMetadata[0]);
+            this.min = new ByteBuffer[this.columns.length];
+            this.max = new ByteBuffer[this.columns.length];
+            this.valueCount = new long[this.columns.length];
+            this.nullCount = new long[this.columns.length];
+        }
+
+        public void update(Row row)
+        {
+            if (row.isStatic())
+                return;
+
+            for (int i = 0; i < columns.length; i++)
+            {
+                ColumnMetadata column = columns[i];
+                Cell<?> cell = row.getCell(column);
+                // a tombstone cannot make a row satisfy a filter
+                if (cell == null || cell.isTombstone())
+                {
+                    nullCount[i]++;
+                    continue;
+                }
+
+                ByteBuffer value = cell.buffer();
+                if (valueCount[i]++ == 0)
+                {
+                    min[i] = max[i] = ByteBufferUtil.clone(value);
+                }
+                else if (column.type.compareForCQL(value, min[i]) < 0)
+                {
+                    min[i] = ByteBufferUtil.clone(value);
+                }
+                else if (column.type.compareForCQL(value, max[i]) > 0)
+                {
+                    max[i] = ByteBufferUtil.clone(value);
+                }
+            }
+        }
+
+        public ZoneMapMetadata finalizeMetadata()
+        {
+            Map<ByteBuffer, Zone> zones = new HashMap<>();
+            for (int i = 0; i < columns.length; i++)
+                zones.put(columns[i].name.bytes, new Zone(columns[i].type.toString(), min[i], max[i], valueCount[i], nullCount[i]));
+            return new ZoneMapMetadata(zones);
+        }
+    }
+
+    public static class ZoneMapMetadataSerializer implements IMetadataComponentSerializer<ZoneMapMetadata>
+    {
+        public int serializedSize(Version version, ZoneMapMetadata component)
+        {
+            int size = TypeSizes.sizeofUnsignedVInt(component.zones.size());
+            for (Map.Entry<ByteBuffer, Zone> entry : component.zones.entrySet())
+            {
+                Zone zone = entry.getValue();
+                size += ByteBufferUtil.serializedSizeWithVIntLength(entry.getKey());
+                size += TypeSizes.sizeof(zone.type);
+                size += TypeSizes.sizeofUnsignedVInt(zone.valueCount);
+                size += TypeSizes.sizeofUnsignedVInt(zone.nullCount);
+                if (zone.hasValues())
+                {
+                    size += ByteBufferUtil.serializedSizeWithVIntLength(zone.min);
+                    size += ByteBufferUtil.serializedSizeWithVIntLength(zone.max);
+                }
+            }
+            return size;
+        }
+
+        public void serialize(Version version, ZoneMapMetadata component, DataOutputPlus out) throws IOException
+        {
+            out.writeUnsignedVInt(component.zones.size());
+            for (Map.Entry<ByteBuffer, Zone> entry : component.zones.entrySet())
+            {
+                Zone zone = entry.getValue();
+                ByteBufferUtil.writeWithVIntLength(entry.getKey(), out);
+                out.writeUTF(zone.type);
+                out.writeUnsignedVInt(zone.valueCount);
+                out.writeUnsignedVInt(zone.nullCount);
+                if (zone.hasValues())
+                {
+                    ByteBufferUtil.writeWithVIntLength(zone.min, out);
+                    ByteBufferUtil.writeWithVIntLength(zone.max, out);
+                }
+            }
+        }
+
+        public ZoneMapMetadata deserialize(Version version, DataInputPlus in) throws IOException
+        {
+            int count = (int) in.readUnsignedVInt();
+            Map<ByteBuffer, Zone> zones = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++)
+            {
+                ByteBuffer name = ByteBufferUtil.readWithVIntLength(in);
+                String type = in.readUTF();
+                long valueCount = in.readUnsignedVInt();
+                long nullCount = in.readUnsignedVInt();
+                ByteBuffer min = null;
+                ByteBuffer max = null;
+                if (valueCount > 0)
+                {
+                    min = ByteBufferUtil.readWithVIntLength(in);
+                    max = ByteBufferUtil.readWithVIntLength(in);
+                }
+                zones.put(name, new Zone(type, min, max, valueCount, nullCount));
+            }
+            return new ZoneMapMetadata(zones);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+/**
+ * Hint given when instantiating a rebufferer about how the data it reads will be accessed. Caches use it to decide
+ * whether the chunks a reader touches are worth keeping.
+ */
+public enum AccessIntent
+{
+    /** Reads of a few chunks to serve a request, e.g. single-partition reads. */
+    POINT_READ,
+    /** Sequential reads serving a request, e.g. range and full-table reads. */
+    SCAN,
+    /** Sequential reads by background operations, e.g. compaction, validation, scrub and index builds. */
+    COMPACTION
+}
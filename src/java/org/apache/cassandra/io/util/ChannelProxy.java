@@ -24,6 +24,8 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.StandardOpenOption;
 
+import javax.annotation.Nullable;
+
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.utils.INativeLibrary;
 import org.apache.cassandra.utils.concurrent.RefCounted;
@@ -44,6 +46,9 @@ public final class ChannelProxy extends SharedCloseableImpl
 
     private final FileChannel channel;
 
+    /** The alignment of the reads of channels opened with O_DIRECT, 0 for regular channels. */
+    private final int directAlignment;
+
     public static FileChannel openChannel(File file)
     {
         try
@@ -62,11 +67,17 @@ public final class ChannelProxy extends SharedCloseableImpl
     }
 
     public ChannelProxy(File file, FileChannel channel)
+    {
+        this(file, channel, 0);
+    }
+
+    private ChannelProxy(File file, FileChannel channel, int directAlignment)
     {
         super(new Cleanup(file.path(), channel));
 
         this.file = file;
         this.channel = channel;
+        this.directAlignment = directAlignment;
     }
 
     public ChannelProxy(ChannelProxy copy)
@@ -75,6 +86,25 @@ public final class ChannelProxy extends SharedCloseableImpl
 
         this.file = copy.file;
         this.channel = copy.channel;
+        this.directAlignment = copy.directAlignment;
+    }
+
+    /**
+     * Opens the given file for reads that bypass the page cache (O_DIRECT), see {@link DirectIO}. Reads can still
+     * be made at any position and length: they go through an aligned bounce buffer.
+     *
+     * @return a new channel, or null if the file cannot be opened with O_DIRECT
+     */
+    @Nullable
+    public static ChannelProxy openDirect(File file)
+    {
+        FileChannel channel = DirectIO.tryOpen(file, StandardOpenOption.READ);
+        return channel != null ? new ChannelProxy(file, channel, DirectIO.alignment(file)) : null;
+    }
+
+    public boolean isDirect()
+    {
+        return directAlignment != 0;
     }
 
     private final static class Cleanup implements RefCounted.Tidy
@@ -113,6 +143,12 @@ public final class ChannelProxy extends SharedCloseableImpl
      */
     public final ChannelProxy newChannel()
     {
+        if (isDirect())
+        {
+            ChannelProxy channel = openDirect(file);
+            if (channel != null)
+                return channel;
+        }
         return new ChannelProxy(file);
     }
 
@@ -135,6 +171,9 @@ public final class ChannelProxy extends SharedCloseableImpl
     {
         try
         {
+            if (isDirect())
+                return DirectIO.read(channel, directAlignment, buffer, position);
+
             // FIXME: consider wrapping in a while loop
             return channel.read(buffer, position);
         }
@@ -84,6 +84,71 @@ public abstract class CompressedChunkReader extends AbstractReaderFileProxy impl
         return new BufferManagingRebufferer.Aligned(this);
     }
 
+    /**
+     * The size of the buffer needed by {@link #readCompressedChunk} for the chunk at the given position, i.e. its
+     * compressed length plus the length of its checksum.
+     */
+    public int compressedBufferSize(long position)
+    {
+        return metadata.chunkFor(position).length + Integer.BYTES;
+    }
+
+    /**
+     * Read the compressed bytes of the chunk at the given position, verifying their checksum if required. The filled
+     * buffer is positioned at 0, with limit set at the compressed length of the chunk, and can be passed to
+     * {@link #uncompressChunk}.
+     */
+    public void readCompressedChunk(long position, ByteBuffer compressed)
+    {
+        CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+        try
+        {
+            int length = chunk.length + Integer.BYTES;
+            compressed.clear().limit(length);
+            if (channel.read(compressed, chunk.offset) != length)
+                throw new CorruptBlockException(channel.filePath(), chunk);
+
+            compressed.flip();
+            int checksum = compressed.getInt(chunk.length);
+            compressed.limit(chunk.length);
+            if (shouldCheckCrc() && checksum != (int) ChecksumType.CRC32.of(compressed.duplicate()))
+                throw new CorruptBlockException(channel.filePath(), chunk);
+        }
+        catch (CorruptBlockException e)
+        {
+            StorageProvider.instance.invalidateFileSystemCache(channel.getFile());
+            throw new CorruptSSTableException(e, channel.filePath());
+        }
+    }
+
+    /**
+     * Uncompress the chunk at the given position, whose bytes were read by {@link #readCompressedChunk}, into the
+     * given buffer. The compressed buffer is not modified.
+     */
+    public void uncompressChunk(long position, ByteBuffer compressed, ByteBuffer uncompressed)
+    {
+        // accesses must always be aligned
+        assert (position & -uncompressed.capacity()) == position;
+
+        ByteBuffer input = compressed.duplicate();
+        uncompressed.clear();
+        try
+        {
+            if (input.remaining() < maxCompressedLength)
+                metadata.compressor().uncompress(input, uncompressed);
+            else
+                uncompressed.put(input);
+        }
+        catch (IOException e)
+        {
+            // Make sure reader does not see stale data.
+            uncompressed.position(0).limit(0);
+            throw new CorruptSSTableException(new CorruptBlockException(channel.filePath(), metadata.chunkFor(position), e),
+                                              channel.filePath());
+        }
+        uncompressed.flip();
+    }
+
     public static class Standard extends CompressedChunkReader
     {
         // we read the raw compressed bytes into this buffer, then uncompressed them into the provided one.
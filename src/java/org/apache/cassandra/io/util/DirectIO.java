@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.utils.NoSpamLogger;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * Support for reading and writing files with O_DIRECT, i.e. bypassing the page cache.
+ * <p>
+ * Compaction and streaming move large amounts of data that will not be read again through the page cache (compaction
+ * inputs are deleted once the compaction completes, and the outputs are read through the chunk cache), and commit
+ * log segments are only read on replay. Going through the page cache for them evicts the pages that requests need,
+ * and leaves the kernel to write back large amounts of dirty pages at once.
+ * <p>
+ * Direct transfers must be aligned: their file position, length and memory address must all be multiples of the
+ * block size of the file system. Direct readers ({@link ChannelProxy#openDirect}) read through an aligned bounce
+ * buffer and direct writers ({@link #reopenForWrite}) stage writes in an aligned buffer, so that their users can keep
+ * reading and writing at any position and length.
+ * <p>
+ * O_DIRECT is requested with {@code com.sun.nio.file.ExtendedOpenOption.DIRECT}, which only exists from JDK 10. Where
+ * it, or the file system, is not supported, the files are accessed through the page cache as usual.
+ */
+public final class DirectIO
+{
+    private static final Logger logger = LoggerFactory.getLogger(DirectIO.class);
+    private static final NoSpamLogger nospam1h = NoSpamLogger.getLogger(logger, 1, TimeUnit.HOURS);
+
+    /** The alignment used when the block size of the file store is unknown, or smaller than this. */
+    static final int MIN_ALIGNMENT = 4096;
+
+    private static final OpenOption DIRECT = findDirectOption();
+    private static final MethodHandle GET_BLOCK_SIZE = findGetBlockSize();
+
+    private static final FastThreadLocal<ByteBuffer> bounceBuffer = new FastThreadLocal<>();
+
+    private DirectIO()
+    {
+    }
+
+    private static OpenOption findDirectOption()
+    {
+        try
+        {
+            Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : options.getEnumConstants())
+            {
+                if ("DIRECT".equals(((Enum<?>) option).name()))
+                    return (OpenOption) option;
+            }
+        }
+        catch (ClassNotFoundException e)
+        {
+            // not supported by this JDK
+        }
+        return null;
+    }
+
+    private static MethodHandle findGetBlockSize()
+    {
+        try
+        {
+            return MethodHandles.publicLookup().findVirtual(FileStore.class, "getBlockSize", MethodType.methodType(long.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the JDK supports opening files with O_DIRECT. Individual file systems may still not support it.
+     */
+    public static boolean isAvailable()
+    {
+        return DIRECT != null;
+    }
+
+    /**
+     * Opens the given file with O_DIRECT and the given options.
+     *
+     * @return the opened channel, or null if the JDK or the file system does not support direct I/O
+     */
+    @Nullable
+    static FileChannel tryOpen(File file, OpenOption... options)
+    {
+        if (DIRECT == null)
+            return null;
+
+        OpenOption[] directOptions = new OpenOption[options.length + 1];
+        System.arraycopy(options, 0, directOptions, 0, options.length);
+        directOptions[options.length] = DIRECT;
+        try
+        {
+            return FileChannel.open(file.toPath(), directOptions);
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            nospam1h.warn("Could not open {} with O_DIRECT, falling back to buffered I/O: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Returns a write channel for {@code file} that bypasses the page cache, replacing (and closing) the given
+     * regular channel on the file, or the given channel itself if the file cannot be opened with O_DIRECT.
+     * <p>
+     * The file is first opened (and created) normally because some file systems create the file before rejecting
+     * O_DIRECT, which would break a fallback with {@link StandardOpenOption#CREATE_NEW}.
+     * <p>
+     * Note that the returned channel holds back the data that does not fill its staging buffer until it is forced or
+     * closed, or {@link #writePending} is called; before then, that data cannot be read through other channels on
+     * the file.
+     */
+    public static FileChannel reopenForWrite(File file, FileChannel channel) throws IOException
+    {
+        // we need to read back the blocks we partially overwrite
+        FileChannel direct = tryOpen(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (direct == null)
+            return channel;
+
+        try
+        {
+            long position = channel.position();
+            channel.close();
+            DirectIOWriteChannel writeChannel = new DirectIOWriteChannel(file, direct, alignment(file));
+            if (position != 0)
+                writeChannel.position(position);
+            return writeChannel;
+        }
+        catch (Throwable t)
+        {
+            direct.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Writes out the data that a direct write channel holds back in its staging buffer, so that it can be read through
+     * other channels on the file. Does nothing for other channels, which write to the page cache directly.
+     */
+    public static void writePending(FileChannel channel) throws IOException
+    {
+        if (channel instanceof DirectIOWriteChannel)
+            ((DirectIOWriteChannel) channel).writePending();
+    }
+
+    /**
+     * @return the channel used to access the file, which is {@code channel} itself unless it is a direct write channel.
+     */
+    public static FileChannel unwrap(FileChannel channel)
+    {
+        return channel instanceof DirectIOWriteChannel ? ((DirectIOWriteChannel) channel).delegate() : channel;
+    }
+
+    /**
+     * @return the alignment to use for direct transfers to and from the given file, a power of two.
+     */
+    static int alignment(File file)
+    {
+        if (GET_BLOCK_SIZE != null)
+        {
+            try
+            {
+                long blockSize = (long) GET_BLOCK_SIZE.invoke(Files.getFileStore(file.toPath()));
+                if (blockSize > MIN_ALIGNMENT && Long.bitCount(blockSize) == 1 && blockSize <= (1 << 20))
+                    return (int) blockSize;
+            }
+            catch (Throwable t)
+            {
+                logger.debug("Could not get the block size of the file store of {}, using {}", file, MIN_ALIGNMENT, t);
+            }
+        }
+        return MIN_ALIGNMENT;
+    }
+
+    static long alignDown(long position, int alignment)
+    {
+        return position & -alignment;
+    }
+
+    static int alignUp(int length, int alignment)
+    {
+        return (length + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Allocates an off-heap buffer of the given capacity whose address is a multiple of {@code alignment}. The
+     * buffer should be released with {@link #free}.
+     */
+    static ByteBuffer allocateAligned(int capacity, int alignment)
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+        int offset = (int) (MemoryUtil.getAddress(buffer) & (alignment - 1));
+        int start = offset == 0 ? 0 : alignment - offset;
+        buffer.position(start).limit(start + capacity);
+        return buffer.slice();
+    }
+
+    static void free(ByteBuffer buffer)
+    {
+        FileUtils.cleanWithAttachment(buffer);
+    }
+
+    /**
+     * @return a thread-local aligned buffer of at least the given size, cleared and limited to {@code size}.
+     */
+    private static ByteBuffer bounceBuffer(int size, int alignment)
+    {
+        ByteBuffer buffer = bounceBuffer.get();
+        if (buffer == null || buffer.capacity() < size || (MemoryUtil.getAddress(buffer) & (alignment - 1)) != 0)
+        {
+            if (buffer != null)
+                free(buffer);
+            // round up to a power of two to avoid reallocating for every slightly bigger read
+            buffer = allocateAligned(Math.max(Integer.highestOneBit(size - 1) << 1, alignment), alignment);
+            bounceBuffer.set(buffer);
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Reads from a channel opened with O_DIRECT into {@code dst}, starting at {@code position}, as many bytes as
+     * {@code dst} can hold or the file has. {@code dst} and {@code position} do not need to be aligned: the read is
+     * done through an aligned bounce buffer, and the requested part copied into {@code dst}.
+     *
+     * @return the number of bytes read, or -1 if {@code position} is at or beyond the end of the file
+     */
+    static int read(FileChannel channel, int alignment, ByteBuffer dst, long position) throws IOException
+    {
+        if (!dst.hasRemaining())
+            return 0;
+
+        long start = alignDown(position, alignment);
+        int skip = (int) (position - start);
+        ByteBuffer buffer = bounceBuffer(alignUp(skip + dst.remaining(), alignment), alignment);
+        int read = readAligned(channel, alignment, buffer, start);
+        if (read <= skip)
+            return -1;
+
+        buffer.position(skip).limit(Math.min(read, skip + dst.remaining()));
+        int length = buffer.remaining();
+        dst.put(buffer);
+        return length;
+    }
+
+    /**
+     * Fills the given aligned buffer from the given aligned position, stopping early only at the end of the file.
+     *
+     * @return the number of bytes read
+     */
+    static int readAligned(FileChannel channel, int alignment, ByteBuffer buffer, long position) throws IOException
+    {
+        int start = buffer.position();
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position + buffer.position() - start);
+            // a read that ends in the middle of a block has reached the end of the file
+            if (read <= 0 || ((buffer.position() - start) & (alignment - 1)) != 0)
+                break;
+        }
+        return buffer.position() - start;
+    }
+}
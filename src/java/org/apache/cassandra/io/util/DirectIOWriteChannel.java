@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A write-only {@link FileChannel} over a file opened with O_DIRECT, which accepts writes of any length at any
+ * position, see {@link DirectIO#reopenForWrite}.
+ * <p>
+ * Writes are copied to an aligned staging buffer, which is written to the file whenever it fills up. A partially
+ * filled staging buffer is only written, its last block padded with zeros, when the channel is forced, repositioned or
+ * closed, or {@link #writePending} is called; the partial last block then stays in the staging buffer so that the
+ * following writes can complete it.
+ * Because of this padding, the file can be longer than {@link #size()}; forcing and closing the channel truncate it to
+ * its actual size.
+ * <p>
+ * Writing at a position below the size of the file reads back the affected block so that the bytes around the
+ * written range are preserved. This is only expected for the occasional rewrite of a header.
+ */
+final class DirectIOWriteChannel extends FileChannel
+{
+    /** Size of the staging buffer: the size of the writes issued to the file while appending. */
+    static final int STAGING_BUFFER_SIZE = 1 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int alignment;
+    private final ByteBuffer staging;
+
+    /** The aligned file position of the start of the staging buffer. */
+    private long stagingOffset;
+    /** Whether the staging buffer holds data that has not been written to the file. */
+    private boolean dirty;
+    /** The size of the file as seen by the users of this channel. */
+    private long size;
+    /** The size of the file on disk, which includes the padding of the last block. */
+    private long fileSize;
+
+    DirectIOWriteChannel(File file, FileChannel channel, int alignment) throws IOException
+    {
+        assert Integer.bitCount(alignment) == 1 && alignment <= STAGING_BUFFER_SIZE : alignment;
+        this.file = file;
+        this.channel = channel;
+        this.alignment = alignment;
+        this.staging = DirectIO.allocateAligned(STAGING_BUFFER_SIZE, alignment);
+        this.size = this.fileSize = channel.size();
+    }
+
+    FileChannel delegate()
+    {
+        return channel;
+    }
+
+    private void ensureOpen() throws ClosedChannelException
+    {
+        if (!isOpen())
+            throw new ClosedChannelException();
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException
+    {
+        ensureOpen();
+        int length = src.remaining();
+        while (src.hasRemaining())
+        {
+            int n = Math.min(src.remaining(), staging.remaining());
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + n);
+            staging.put(slice);
+            src.position(src.position() + n);
+            dirty = true;
+
+            if (!staging.hasRemaining())
+            {
+                writeStaging(staging.capacity());
+                stagingOffset += staging.capacity();
+                staging.clear();
+                dirty = false;
+            }
+        }
+        size = Math.max(size, position());
+        return length;
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        long written = 0;
+        for (int i = offset; i < offset + length; i++)
+            written += write(srcs[i]);
+        return written;
+    }
+
+    /**
+     * Writes out the staging buffer, padding its last block, so that all the data written so far can be read through
+     * other channels on the file.
+     */
+    synchronized void writePending() throws IOException
+    {
+        ensureOpen();
+        writeTail();
+    }
+
+    private void writeTail() throws IOException
+    {
+        if (!dirty)
+            return;
+
+        int end = staging.position();
+        int length = DirectIO.alignUp(end, alignment);
+        if (length > end)
+            fillPadding(end, length);
+        writeStaging(length);
+
+        // keep the partial block at the start of the staging buffer, so that the following writes complete it
+        int written = (int) DirectIO.alignDown(end, alignment);
+        if (written > 0)
+        {
+            ByteBuffer tail = staging.duplicate();
+            tail.position(written).limit(end);
+            staging.clear();
+            staging.put(tail);
+            stagingOffset += written;
+        }
+        dirty = false;
+    }
+
+    /**
+     * Fills the end of the last block of the staging buffer after the written data: with the data that follows in the
+     * file if we are overwriting existing data, with zeros otherwise.
+     */
+    private void fillPadding(int end, int length) throws IOException
+    {
+        ByteBuffer padding = staging.duplicate();
+        padding.position(end).limit(length);
+        long blockStart = stagingOffset + length - alignment;
+        if (stagingOffset + end < size)
+        {
+            ByteBuffer existing = DirectIO.allocateAligned(alignment, alignment);
+            try
+            {
+                int read = DirectIO.readAligned(channel, alignment, existing, blockStart);
+                int from = end - (length - alignment);
+                existing.limit(Math.max(read, from)).position(from);
+                padding.put(existing);
+            }
+            finally
+            {
+                DirectIO.free(existing);
+            }
+        }
+        while (padding.hasRemaining())
+            padding.put((byte) 0);
+    }
+
+    private void writeStaging(int length) throws IOException
+    {
+        ByteBuffer buffer = staging.duplicate();
+        buffer.position(0).limit(length);
+        while (buffer.hasRemaining())
+            channel.write(buffer, stagingOffset + buffer.position());
+        fileSize = Math.max(fileSize, stagingOffset + length);
+    }
+
+    /**
+     * Loads the start of the block containing {@code position} into the staging buffer, so that writes can start at
+     * that position.
+     */
+    private void load(long position) throws IOException
+    {
+        stagingOffset = DirectIO.alignDown(position, alignment);
+        int skip = (int) (position - stagingOffset);
+        staging.clear();
+        if (skip > 0 && stagingOffset < size)
+        {
+            staging.limit(alignment);
+            int read = DirectIO.readAligned(channel, alignment, staging, stagingOffset);
+            staging.limit(staging.capacity());
+            // the file may be shorter than our size if we have not written out the last block yet
+            staging.position(Math.min(read, skip));
+        }
+        while (staging.position() < skip)
+            staging.put((byte) 0);
+    }
+
+    @Override
+    public synchronized long position() throws IOException
+    {
+        ensureOpen();
+        return stagingOffset + staging.position();
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException
+    {
+        ensureOpen();
+        if (newPosition != position())
+        {
+            writeTail();
+            load(newPosition);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException
+    {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long newSize) throws IOException
+    {
+        ensureOpen();
+        if (newSize < size)
+        {
+            writeTail();
+            channel.truncate(newSize);
+            size = fileSize = newSize;
+        }
+        if (position() > newSize)
+        {
+            writeTail();
+            load(newSize);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void force(boolean metaData) throws IOException
+    {
+        ensureOpen();
+        writeTail();
+        truncatePadding();
+        channel.force(metaData);
+    }
+
+    private void truncatePadding() throws IOException
+    {
+        if (fileSize > size)
+        {
+            channel.truncate(size);
+            fileSize = size;
+        }
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException
+    {
+        try
+        {
+            writeTail();
+            truncatePadding();
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            finally
+            {
+                DirectIO.free(staging);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DirectIOWriteChannel(" + file + ')';
+    }
+
+    @Override
+    public int read(ByteBuffer dst)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
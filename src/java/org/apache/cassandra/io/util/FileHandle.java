@@ -19,6 +19,9 @@ package org.apache.cassandra.io.util;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
 
 import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
@@ -32,6 +35,7 @@ import org.apache.cassandra.utils.concurrent.Ref;
 import org.apache.cassandra.utils.concurrent.RefCounted;
 import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_COMPACTION;
 import static org.apache.cassandra.utils.Throwables.maybeFail;
 import org.apache.cassandra.utils.Throwables;
 
@@ -142,7 +146,80 @@ public class FileHandle extends SharedCloseableImpl
      */
     public RandomAccessReader createReader(RateLimiter limiter)
     {
-        return new RandomAccessReader(instantiateRebufferer(limiter));
+        return createReader(limiter, AccessIntent.POINT_READ);
+    }
+
+    /**
+     * Create {@link RandomAccessReader} with configured method of reading content of the file, passing the given
+     * access intent to the rebufferer (e.g. so that scans do not evict point-read data from the chunk cache).
+     * Reading from file will be rate limited by given {@link RateLimiter}, if not null.
+     *
+     * @param limiter RateLimiter to use for rate limiting read, or null
+     * @param intent how the reader will access the file
+     * @return RandomAccessReader for the file
+     */
+    public RandomAccessReader createReader(RateLimiter limiter, AccessIntent intent)
+    {
+        if (intent == AccessIntent.COMPACTION && DIRECT_IO_COMPACTION.getBoolean())
+        {
+            RandomAccessReader reader = createDirectReader(limiter);
+            if (reader != null)
+                return reader;
+        }
+        return new RandomAccessReader(instantiateRebufferer(limiter, intent));
+    }
+
+    /**
+     * Create a {@link RandomAccessReader} with its own channel, opened with O_DIRECT, which reads the file without
+     * going through either the page cache or the chunk cache.
+     *
+     * @return the reader, or null if the file cannot be opened with O_DIRECT
+     */
+    @SuppressWarnings("resource")
+    private RandomAccessReader createDirectReader(RateLimiter limiter)
+    {
+        ChannelProxy directChannel = ChannelProxy.openDirect(channel.getFile());
+        if (directChannel == null)
+            return null;
+
+        try
+        {
+            ChunkReader reader = compressionMetadata.isPresent()
+                                 ? new CompressedChunkReader.Standard(directChannel, compressionMetadata.get())
+                                 : new SimpleChunkReader(directChannel, rebuffererFactory.fileLength(), BufferType.OFF_HEAP, DiskOptimizationStrategy.MAX_BUFFER_SIZE);
+            Rebufferer rebufferer = reader.instantiateRebufferer();
+            if (limiter != null)
+                rebufferer = new LimitingRebufferer(rebufferer, limiter, DiskOptimizationStrategy.MAX_BUFFER_SIZE);
+            return new RandomAccessReader.RandomAccessReaderWithOwnChannel(rebufferer);
+        }
+        catch (Throwable t)
+        {
+            directChannel.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Create a rebufferer for a reader that reads the chunks of the parts of the file it announces ahead of time, on
+     * the given executor, see {@link PrefetchingRebufferer}. The chunks are read with a separate chunk reader, which
+     * does not go through the chunk cache.
+     *
+     * @param intent how the reader will access the file
+     * @return the rebufferer, or null if the file is memory-mapped without compression, and thus not read in chunks
+     */
+    @Nullable
+    public PrefetchingRebufferer instantiatePrefetchingRebufferer(AccessIntent intent,
+                                                                  Executor executor,
+                                                                  int maxDepth,
+                                                                  PrefetchingRebufferer.Listener listener)
+    {
+        if (rebuffererFactory instanceof MmapRebufferer || rebuffererFactory instanceof EmptyRebufferer)
+            return null;
+
+        ChunkReader reader = compressionMetadata.isPresent()
+                             ? new CompressedChunkReader.Standard(channel, compressionMetadata.get())
+                             : new SimpleChunkReader(channel, rebuffererFactory.fileLength(), BufferType.OFF_HEAP, DiskOptimizationStrategy.MAX_BUFFER_SIZE);
+        return new PrefetchingRebufferer(instantiateRebufferer(intent), reader, executor, maxDepth, listener);
     }
 
     public FileDataInput createReader(long position)
@@ -168,14 +245,46 @@ public class FileHandle extends SharedCloseableImpl
         INativeLibrary.instance.trySkipCache(channel.getFileDescriptor(), 0, position, path());
     }
 
+    /**
+     * Advise the OS to read ahead the part of the file holding the given range.
+     *
+     * @param position uncompressed position of the start of the range
+     * @param length uncompressed length of the range
+     * @return the number of on-disk bytes advised, which, for compressed files, covers the whole chunks of the range
+     */
+    public long adviseWillNeed(long position, long length)
+    {
+        long end = Math.min(position + length, dataLength());
+        if (end <= position)
+            return 0;
+
+        long onDiskStart = position;
+        long onDiskEnd = end;
+        if (compressionMetadata.isPresent())
+        {
+            CompressionMetadata metadata = compressionMetadata.get();
+            onDiskStart = metadata.chunkFor(position).offset;
+            CompressionMetadata.Chunk last = metadata.chunkFor(end - 1);
+            // each chunk is followed by its checksum
+            onDiskEnd = last.offset + last.length + Integer.BYTES;
+        }
+        INativeLibrary.instance.tryWillNeed(channel.getFileDescriptor(), onDiskStart, onDiskEnd - onDiskStart, path());
+        return onDiskEnd - onDiskStart;
+    }
+
     public Rebufferer instantiateRebufferer()
     {
-        return instantiateRebufferer(null);
+        return instantiateRebufferer(null, AccessIntent.POINT_READ);
+    }
+
+    public Rebufferer instantiateRebufferer(AccessIntent intent)
+    {
+        return instantiateRebufferer(null, intent);
     }
 
-    private Rebufferer instantiateRebufferer(RateLimiter limiter)
+    private Rebufferer instantiateRebufferer(RateLimiter limiter, AccessIntent intent)
     {
-        Rebufferer rebufferer = rebuffererFactory.instantiateRebufferer();
+        Rebufferer rebufferer = rebuffererFactory.instantiateRebufferer(intent);
 
         if (limiter != null)
             rebufferer = new LimitingRebufferer(rebufferer, limiter, DiskOptimizationStrategy.MAX_BUFFER_SIZE);
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.cassandra.utils.PageAware;
+
+/**
+ * Rebufferer that serves some pages of the file from a copy in memory, and the others from its source.
+ *
+ * Instantiated once per reader, thread-unsafe, see {@link WrappingRebufferer}. The served pages are only as large as
+ * a page, so this is only suitable for readers that never read across page boundaries, like the trie walkers.
+ */
+@NotThreadSafe
+public class PinnedPagesRebufferer extends WrappingRebufferer
+{
+    private final Pages pages;
+
+    public PinnedPagesRebufferer(Rebufferer source, Pages pages)
+    {
+        super(source);
+        this.pages = pages;
+    }
+
+    @Override
+    public BufferHolder rebuffer(long position)
+    {
+        assert buffer == null : "Buffer holder has been already acquired and has been not released yet";
+        ByteBuffer page = pages.page(position);
+        if (page == null)
+            return super.rebuffer(position);
+
+        buffer = page;
+        offset = PageAware.pageStart(position);
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[%d pages]:%s", getClass().getSimpleName(), pages.count(), source.toString());
+    }
+
+    /**
+     * An immutable copy of some pages of a file, shared by the rebufferers reading them.
+     * <p>
+     * The copy is kept in a direct buffer, which is not cleaned explicitly: a reader may still be using a page when
+     * the copy is replaced, so the memory is released once no reader references it any more.
+     */
+    public static class Pages
+    {
+        // the sorted positions of the pages
+        private final long[] positions;
+        private final ByteBuffer[] pages;
+        private final long size;
+
+        private Pages(long[] positions, ByteBuffer[] pages, long size)
+        {
+            this.positions = positions;
+            this.pages = pages;
+            this.size = size;
+        }
+
+        /**
+         * Copies the pages at the given positions, read from {@code source}.
+         *
+         * @param positions the sorted positions of the pages to copy, multiples of {@link PageAware#PAGE_SIZE}
+         */
+        public static Pages copy(Rebufferer source, long[] positions)
+        {
+            ByteBuffer memory = ByteBuffer.allocateDirect(positions.length * PageAware.PAGE_SIZE);
+            ByteBuffer[] pages = new ByteBuffer[positions.length];
+            for (int i = 0; i < positions.length; i++)
+            {
+                assert PageAware.pageStart(positions[i]) == positions[i] && (i == 0 || positions[i] > positions[i - 1]) : Arrays.toString(positions);
+                BufferHolder bh = source.rebuffer(positions[i]);
+                try
+                {
+                    ByteBuffer data = bh.buffer().duplicate();
+                    int start = (int) (positions[i] - bh.offset());
+                    data.position(start).limit(Math.min(data.limit(), start + PageAware.PAGE_SIZE));
+
+                    memory.limit(i * PageAware.PAGE_SIZE + data.remaining()).position(i * PageAware.PAGE_SIZE);
+                    pages[i] = memory.slice();
+                    pages[i].put(data).flip();
+                }
+                finally
+                {
+                    bh.release();
+                }
+            }
+            return new Pages(positions, pages, memory.capacity());
+        }
+
+        /**
+         * @return the page holding the given position, as a new buffer starting at the beginning of the page, or
+         * null if that page is not pinned
+         */
+        ByteBuffer page(long position)
+        {
+            int index = Arrays.binarySearch(positions, PageAware.pageStart(position));
+            return index < 0 ? null : pages[index].duplicate();
+        }
+
+        public int count()
+        {
+            return positions.length;
+        }
+
+        /**
+         * @return the memory used by the copy, in bytes
+         */
+        public long size()
+        {
+            return size;
+        }
+
+        /**
+         * @return whether these are copies of the pages at the given positions
+         */
+        public boolean hasPositions(long[] positions)
+        {
+            return Arrays.equals(this.positions, positions);
+        }
+    }
+}
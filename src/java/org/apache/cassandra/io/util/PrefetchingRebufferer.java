@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.utils.Throwables;
+import org.apache.cassandra.utils.memory.BufferPools;
+
+/**
+ * Rebufferer that reads the chunks of the parts of a file that its reader is going to read sequentially ahead of
+ * time, on the given executor, so that the I/O of the next chunks overlaps with the processing of the current ones.
+ * <p>
+ * The reader announces these parts with {@link #prefetch}, and is then handed the buffers of the prefetched chunks as
+ * it reaches them. Chunks that have not been prefetched are read through the wrapped rebufferer.
+ * <p>
+ * The number of chunks read ahead adapts to the speed of the reader relative to the disk: it is doubled whenever the
+ * reader has to wait for a chunk that is still being read, up to the given maximum, and decremented whenever the
+ * last of the chunks read ahead is already available, i.e. when the disk is comfortably ahead of the reader.
+ * <p>
+ * Like the other reader-specific rebufferers, instances are not thread-safe.
+ */
+public class PrefetchingRebufferer implements Rebufferer
+{
+    private static final int MIN_DEPTH = 2;
+
+    /**
+     * Receives the events of a prefetching rebufferer, e.g. to maintain metrics.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when the read of a chunk ahead of the reader is issued.
+         */
+        void onPrefetch(int length);
+
+        /**
+         * Called when the reader has to wait for a chunk that is still being read.
+         */
+        void onWait();
+
+        /**
+         * Called when the reader is closed, with the number of chunks that were read ahead of it at that point.
+         */
+        void onClose(int depth);
+    }
+
+    private final Rebufferer wrapped;
+    private final ChunkReader source;
+    private final Executor executor;
+    private final Listener listener;
+    private final int chunkSize;
+    private final long alignmentMask;
+    private final int maxDepth;
+
+    // the chunks read ahead, in order of position
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    // the chunks discarded while they were being read
+    private final List<Chunk> discarded = new ArrayList<>();
+    // the position of the next chunk to read ahead, and the end of the part of the file to read ahead
+    private long nextPosition = 0;
+    private long end = 0;
+    private int depth;
+
+    PrefetchingRebufferer(Rebufferer wrapped, ChunkReader source, Executor executor, int maxDepth, Listener listener)
+    {
+        assert Integer.bitCount(source.chunkSize()) == 1 : String.format("%d must be a power of two", source.chunkSize());
+        this.wrapped = wrapped;
+        this.source = source;
+        this.executor = executor;
+        this.listener = listener;
+        this.chunkSize = source.chunkSize();
+        this.alignmentMask = -chunkSize;
+        this.maxDepth = maxDepth;
+        this.depth = Math.min(MIN_DEPTH, maxDepth);
+    }
+
+    /**
+     * @return a reader of the file that reads through this rebufferer
+     */
+    public RandomAccessReader createReader()
+    {
+        return new RandomAccessReader(this);
+    }
+
+    /**
+     * Announces that the reader is going to read the given part of the file, from its start to its end. The parts
+     * must be announced in file order, and the chunks of the previous part that the reader has not reached are
+     * discarded.
+     */
+    public void prefetch(long start, long end)
+    {
+        long first = start & alignmentMask;
+        while (!chunks.isEmpty() && chunks.peekFirst().position < first)
+            chunks.pollFirst().discard();
+
+        this.nextPosition = chunks.isEmpty() ? first : chunks.peekLast().position + chunkSize;
+        this.end = Math.min(end, source.fileLength());
+        readAhead();
+    }
+
+    @Override
+    public BufferHolder rebuffer(long position)
+    {
+        long aligned = position & alignmentMask;
+        // the reader skipped these
+        while (!chunks.isEmpty() && chunks.peekFirst().position < aligned)
+            chunks.pollFirst().discard();
+
+        if (chunks.isEmpty() || chunks.peekFirst().position != aligned)
+        {
+            // not read ahead, e.g. before the part the reader announced or after a skip past the chunks read ahead
+            if (chunks.isEmpty() && aligned >= nextPosition && aligned < end)
+            {
+                nextPosition = aligned + chunkSize;
+                readAhead();
+            }
+            return wrapped.rebuffer(position);
+        }
+
+        Chunk chunk = chunks.pollFirst();
+        if (!chunk.future.isDone())
+        {
+            listener.onWait();
+            depth = Math.min(maxDepth, depth * 2);
+        }
+        else if (depth > MIN_DEPTH && (chunks.isEmpty() || chunks.peekLast().future.isDone()))
+        {
+            --depth;
+        }
+
+        try
+        {
+            chunk.future.join();
+        }
+        catch (CompletionException e)
+        {
+            chunk.discard();
+            throw Throwables.throwAsUncheckedException(e.getCause());
+        }
+        finally
+        {
+            readAhead();
+        }
+        return chunk;
+    }
+
+    private void readAhead()
+    {
+        while (chunks.size() < depth && nextPosition < end)
+        {
+            Chunk chunk = new Chunk(nextPosition);
+            try
+            {
+                chunk.future = CompletableFuture.runAsync(chunk::read, executor);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // e.g. on shutdown, the reader reads the chunk itself
+                chunk.release();
+                return;
+            }
+            chunks.addLast(chunk);
+            nextPosition += chunkSize;
+            listener.onPrefetch(chunkSize);
+        }
+    }
+
+    @VisibleForTesting
+    int depth()
+    {
+        return depth;
+    }
+
+    @Override
+    public void closeReader()
+    {
+        listener.onClose(depth);
+        while (!chunks.isEmpty())
+            chunks.pollFirst().discard();
+        // wait for the reads in progress, as the file may be closed once the reader is
+        for (Chunk chunk : discarded)
+        {
+            try
+            {
+                chunk.future.join();
+            }
+            catch (CompletionException e)
+            {
+                // the reader is not interested in the failures of chunks it will not read
+            }
+        }
+        discarded.clear();
+        wrapped.closeReader();
+    }
+
+    @Override
+    public void close()
+    {
+        wrapped.close();
+    }
+
+    @Override
+    public ChannelProxy channel()
+    {
+        return wrapped.channel();
+    }
+
+    @Override
+    public long fileLength()
+    {
+        return wrapped.fileLength();
+    }
+
+    @Override
+    public double getCrcCheckChance()
+    {
+        return wrapped.getCrcCheckChance();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PrefetchingRebufferer:" + wrapped;
+    }
+
+    private class Chunk implements BufferHolder
+    {
+        final long position;
+        final ByteBuffer buffer;
+        CompletableFuture<Void> future;
+        volatile boolean cancelled;
+
+        Chunk(long position)
+        {
+            this.position = position;
+            this.buffer = BufferPools.forChunkCache().get(chunkSize, source.preferredBufferType()).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        void read()
+        {
+            if (!cancelled)
+                source.readChunk(position, buffer);
+        }
+
+        /**
+         * Releases the buffer once the read of the chunk, if in progress, completes.
+         */
+        void discard()
+        {
+            cancelled = true;
+            if (!future.isDone())
+            {
+                discarded.removeIf(chunk -> chunk.future.isDone());
+                discarded.add(this);
+            }
+            future.whenComplete((ignored, error) -> release());
+        }
+
+        @Override
+        public ByteBuffer buffer()
+        {
+            return buffer;
+        }
+
+        @Override
+        public long offset()
+        {
+            return position;
+        }
+
+        @Override
+        public void release()
+        {
+            BufferPools.forChunkCache().put(buffer);
+        }
+    }
+}
@@ -18,8 +18,10 @@
 package org.apache.cassandra.io.util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import com.google.common.primitives.Ints;
@@ -143,6 +145,23 @@ public class RandomAccessReader extends RebufferingInputStream implements FileDa
         return current() == length();
     }
 
+    /**
+     * Returns a view of the given range of the file if it is all within the current buffer, or null otherwise. This
+     * does not change the position of the reader, and the view is only valid until the reader is next moved.
+     */
+    @Nullable
+    public ByteBuffer bufferedSlice(long start, long end)
+    {
+        long bufferOffset = bufferHolder.offset();
+        if (buffer == null || start < bufferOffset || end > bufferOffset + buffer.limit())
+            return null;
+
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(Ints.checkedCast(end - bufferOffset));
+        slice.position(Ints.checkedCast(start - bufferOffset));
+        return slice;
+    }
+
     public long bytesRemaining()
     {
         return length() - getFilePointer();
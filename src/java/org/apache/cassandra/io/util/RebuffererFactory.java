@@ -30,5 +30,13 @@ public interface RebuffererFactory extends ReaderFileProxy
 {
     Rebufferer instantiateRebufferer();
 
+    /**
+     * Instantiate a rebufferer for a reader with the given access intent. Factories that do not cache data ignore it.
+     */
+    default Rebufferer instantiateRebufferer(AccessIntent intent)
+    {
+        return instantiateRebufferer();
+    }
+
     void invalidateIfCached(long position);
 }
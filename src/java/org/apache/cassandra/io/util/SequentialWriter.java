@@ -21,9 +21,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
 
+import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.utils.INativeLibrary;
 import org.apache.cassandra.utils.PageAware;
 import org.apache.cassandra.utils.SyncUtil;
 import org.apache.cassandra.utils.concurrent.Transactional;
@@ -62,6 +65,10 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
 
     protected Runnable runPostFlush;
 
+    // if set, the synced part of the file is dropped from the page cache, and the number of bytes dropped reported here
+    private LongConsumer onCacheDropped;
+    private long cacheDroppedUpTo = 0;
+
     private final TransactionalProxy txnProxy = txnProxy();
 
     // due to lack of multiple-inheritance, we proxy our transactional implementation
@@ -133,6 +140,23 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
         }
     }
 
+    private static FileChannel openChannel(File file, boolean directIO)
+    {
+        FileChannel channel = openChannel(file);
+        if (!directIO)
+            return channel;
+
+        try
+        {
+            return DirectIO.reopenForWrite(file, channel);
+        }
+        catch (Throwable t)
+        {
+            FileUtils.closeQuietly(channel);
+            throw new FSWriteError(t, file);
+        }
+    }
+
     /**
      * Create heap-based, non-compressed SequenialWriter with default buffer size(64k).
      *
@@ -162,7 +186,7 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
      */
     public SequentialWriter(File file, SequentialWriterOption option, boolean strictFlushing)
     {
-        super(openChannel(file), option.allocateBuffer());
+        super(openChannel(file, option.directIO()), option.allocateBuffer());
         this.strictFlushing = strictFlushing;
         this.fchannel = (FileChannel)channel;
 
@@ -186,11 +210,31 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
         syncInternal();
     }
 
+    /**
+     * Makes the data flushed so far readable through other channels on the file, e.g. by early-opened sstables.
+     * This is only needed when writing with direct I/O, which stages writes in an aligned buffer until it fills up
+     * or the file is synced.
+     */
+    public void writePendingDirectIO()
+    {
+        try
+        {
+            DirectIO.writePending(fchannel);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getFile());
+        }
+    }
+
     protected void syncDataOnlyInternal()
     {
         try
         {
+            DirectIO.writePending(fchannel);
             SyncUtil.force(fchannel, false);
+            if (onCacheDropped != null)
+                dropSyncedFromCache(fchannel.position());
         }
         catch (IOException e)
         {
@@ -198,6 +242,28 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
         }
     }
 
+    /**
+     * Asks the OS, in the background, to drop the pages of the file up to {@code syncedPosition} that have not been
+     * dropped yet. The last partial page is kept, as the following writes will dirty it again.
+     * <p>
+     * The advice is given through a new descriptor on the file, as this writer may be closed by the time it runs; if
+     * the file has been deleted by then, nothing is done.
+     */
+    private void dropSyncedFromCache(long syncedPosition)
+    {
+        long start = Math.min(cacheDroppedUpTo, PageAware.pageStart(syncedPosition));
+        long end = PageAware.pageStart(syncedPosition);
+        cacheDroppedUpTo = end;
+        if (end <= start)
+            return;
+
+        LongConsumer onDropped = onCacheDropped;
+        ScheduledExecutors.optionalTasks.execute(() -> {
+            INativeLibrary.instance.trySkipCache(file, start, end - start);
+            onDropped.accept(end - start);
+        });
+    }
+
     /*
      * This is only safe to call before truncation or close for CompressedSequentialWriter
      * Otherwise it will leave a non-uniform size compressed block in the middle of the file
@@ -214,7 +280,9 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
     {
         flushData();
 
-        if (option.trickleFsync())
+        // dropping written data from the page cache needs it to be synced first, so we sync at the trickle fsync
+        // interval in that case too
+        if (option.trickleFsync() || onCacheDropped != null)
         {
             bytesSinceTrickleFsync += buffer.position();
             if (bytesSinceTrickleFsync >= option.trickleFsyncByteInterval())
@@ -234,6 +302,20 @@ public class SequentialWriter extends BufferedDataOutputStreamPlus implements Tr
         this.runPostFlush = runPostFlush;
     }
 
+    /**
+     * Makes this writer drop the data it has written from the page cache, in the background, as it is synced to disk.
+     * The file is then synced every {@link SequentialWriterOption#trickleFsyncByteInterval()} bytes even if trickle
+     * fsync is not enabled. Use this for files that are not expected to be read soon, so that writing them does not
+     * evict the pages that reads need.
+     *
+     * @param onCacheDropped called with the number of bytes advised to be dropped, after each advice
+     */
+    public void setDropCacheBehind(LongConsumer onCacheDropped)
+    {
+        assert this.onCacheDropped == null;
+        this.onCacheDropped = onCacheDropped;
+    }
+
     /**
      * Override this method instead of overriding flush()
      * @throws FSWriteError on any I/O error.
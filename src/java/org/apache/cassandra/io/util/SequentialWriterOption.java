@@ -37,6 +37,7 @@ public class SequentialWriterOption
      *   <li>trickle fsync: false
      *   <li>trickle fsync byte interval: 10 MB
      *   <li>finish on close: false
+     *   <li>direct I/O: false
      * </ul>
      */
     public static final SequentialWriterOption DEFAULT = SequentialWriterOption.newBuilder().build();
@@ -46,18 +47,21 @@ public class SequentialWriterOption
     private final boolean trickleFsync;
     private final int trickleFsyncByteInterval;
     private final boolean finishOnClose;
+    private final boolean directIO;
 
     private SequentialWriterOption(int bufferSize,
                                    BufferType bufferType,
                                    boolean trickleFsync,
                                    int trickleFsyncByteInterval,
-                                   boolean finishOnClose)
+                                   boolean finishOnClose,
+                                   boolean directIO)
     {
         this.bufferSize = bufferSize;
         this.bufferType = bufferType;
         this.trickleFsync = trickleFsync;
         this.trickleFsyncByteInterval = trickleFsyncByteInterval;
         this.finishOnClose = finishOnClose;
+        this.directIO = directIO;
     }
 
     public static Builder newBuilder()
@@ -90,6 +94,24 @@ public class SequentialWriterOption
         return finishOnClose;
     }
 
+    /**
+     * @return whether the file should be written with O_DIRECT, bypassing the page cache, see {@link DirectIO}.
+     */
+    public boolean directIO()
+    {
+        return directIO;
+    }
+
+    /**
+     * @return these options, with direct I/O enabled or disabled as requested
+     */
+    public SequentialWriterOption withDirectIO(boolean directIO)
+    {
+        if (directIO == this.directIO)
+            return this;
+        return new SequentialWriterOption(bufferSize, bufferType, trickleFsync, trickleFsyncByteInterval, finishOnClose, directIO);
+    }
+
     /**
      * Allocate buffer using set buffer type and buffer size.
      *
@@ -111,6 +133,7 @@ public class SequentialWriterOption
         /* default tricle fsync byte interval: 10MB */
         private int trickleFsyncByteInterval = 10 * 1024 * 1024;
         private boolean finishOnClose = false;
+        private boolean directIO = false;
 
         /* construct throguh SequentialWriteOption.newBuilder */
         private Builder() {}
@@ -118,7 +141,7 @@ public class SequentialWriterOption
         public SequentialWriterOption build()
         {
             return new SequentialWriterOption(bufferSize, bufferType, trickleFsync,
-                                   trickleFsyncByteInterval, finishOnClose);
+                                   trickleFsyncByteInterval, finishOnClose, directIO);
         }
 
         public Builder bufferSize(int bufferSize)
@@ -150,5 +173,11 @@ public class SequentialWriterOption
             this.finishOnClose = finishOnClose;
             return this;
         }
+
+        public Builder directIO(boolean directIO)
+        {
+            this.directIO = directIO;
+            return this;
+        }
     }
 }
@@ -26,6 +26,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import org.apache.cassandra.cache.CacheSize;
 import org.apache.cassandra.cache.ChunkCache;
 
 import static org.apache.cassandra.config.CassandraRelevantProperties.USE_MICROMETER;
@@ -37,6 +38,15 @@ public interface ChunkCacheMetrics extends StatsCounter, CacheMetrics
         return USE_MICROMETER.getBoolean() ? new MicrometerChunkCacheMetrics(cache) : new CodahaleChunkCacheMetrics(cache);
     }
 
+    /**
+     * Create metrics for the tier of the chunk cache that holds compressed chunks.
+     */
+    static ChunkCacheMetrics createForCompressedTier(CacheSize tier)
+    {
+        return USE_MICROMETER.getBoolean() ? new MicrometerChunkCacheMetrics(tier, MicrometerChunkCacheMetrics.COMPRESSED_CHUNK_CACHE_PREFIX)
+                                           : new CodahaleChunkCacheMetrics(tier, CodahaleChunkCacheMetrics.COMPRESSED_CHUNK_CACHE_TYPE);
+    }
+
     @Override
     void recordHits(int count);
 
@@ -24,7 +24,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import com.codahale.metrics.Timer;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
-import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.cache.CacheSize;
 import org.apache.cassandra.utils.FBUtilities;
 
 /**
@@ -32,6 +32,9 @@ import org.apache.cassandra.utils.FBUtilities;
  */
 public class CodahaleChunkCacheMetrics implements ChunkCacheMetrics
 {
+    public static final String CHUNK_CACHE_TYPE = "ChunkCache";
+    public static final String COMPRESSED_CHUNK_CACHE_TYPE = "CompressedChunkCache";
+
     /** Metrics in common with ICache implementations */
     private final CodahaleCacheMetrics metrics;
 
@@ -43,9 +46,20 @@ public class CodahaleChunkCacheMetrics implements ChunkCacheMetrics
      *
      * @param cache Chunk cache to measure metrics
      */
-    CodahaleChunkCacheMetrics(ChunkCache cache)
+    CodahaleChunkCacheMetrics(CacheSize cache)
+    {
+        this(cache, CHUNK_CACHE_TYPE);
+    }
+
+    /**
+     * Create metrics for the provided chunk cache tier.
+     *
+     * @param cache Chunk cache tier to measure metrics
+     * @param type Type of the cache in the metric names
+     */
+    CodahaleChunkCacheMetrics(CacheSize cache, String type)
     {
-        metrics = new CodahaleCacheMetrics("ChunkCache", cache);
+        metrics = new CodahaleCacheMetrics(type, cache);
         missLatency = metrics.registerTimer("MissLatency");
     }
 
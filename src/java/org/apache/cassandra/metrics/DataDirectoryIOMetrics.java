@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.File;
+
+import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * Metrics for the background I/O charged against the budget of a data directory, see
+ * {@link org.apache.cassandra.db.compaction.DataDirectoryIOBudget}.
+ */
+public class DataDirectoryIOMetrics
+{
+    public static final String TYPE_NAME = "DataDirectory";
+
+    /** Bytes read from the directory by compaction, validation and outgoing streams */
+    public final Meter readBytes;
+    /** Bytes written to the directory by compaction and incoming streams */
+    public final Meter writeBytes;
+    /** Time spent waiting for the read budget, in microseconds */
+    public final Counter readThrottledMicros;
+    /** Time spent waiting for the write budget, in microseconds */
+    public final Counter writeThrottledMicros;
+    /** One-minute read rate over the read budget of the directory, or 0 if reads are not throttled */
+    public final Gauge<Double> readUtilization;
+    /** One-minute write rate over the write budget of the directory, or 0 if writes are not throttled */
+    public final Gauge<Double> writeUtilization;
+
+    public DataDirectoryIOMetrics(File location)
+    {
+        MetricNameFactory factory = new DefaultNameFactory(TYPE_NAME, location.toString().replaceAll("[:,=*?\"]", "."));
+        readBytes = Metrics.meter(factory.createMetricName("ReadBytes"));
+        writeBytes = Metrics.meter(factory.createMetricName("WriteBytes"));
+        readThrottledMicros = Metrics.counter(factory.createMetricName("ReadThrottledMicros"));
+        writeThrottledMicros = Metrics.counter(factory.createMetricName("WriteThrottledMicros"));
+        readUtilization = Metrics.register(factory.createMetricName("ReadUtilization"),
+                                           (Gauge<Double>) () -> utilization(readBytes, DatabaseDescriptor.getDataDirectoryReadThroughputMbPerSec()));
+        writeUtilization = Metrics.register(factory.createMetricName("WriteUtilization"),
+                                            (Gauge<Double>) () -> utilization(writeBytes, DatabaseDescriptor.getDataDirectoryWriteThroughputMbPerSec()));
+    }
+
+    private static double utilization(Meter bytes, int throughputMbPerSec)
+    {
+        return throughputMbPerSec > 0 ? bytes.getOneMinuteRate() / (throughputMbPerSec * 1024.0 * 1024.0) : 0;
+    }
+}
@@ -35,23 +35,34 @@ import org.apache.cassandra.utils.FBUtilities;
  */
 public class MicrometerChunkCacheMetrics extends MicrometerMetrics implements ChunkCacheMetrics
 {
-    public static final String CHUNK_CACHE_MISS_LATENCY = "chunk_cache_miss_latency_seconds";
-    public static final String CHUNK_CACHE_EVICTIONS = "chunk_cache_evictions";
+    public static final String CHUNK_CACHE_PREFIX = "chunk_cache";
+    public static final String COMPRESSED_CHUNK_CACHE_PREFIX = "compressed_chunk_cache";
+    private static final String MISS_LATENCY_SUFFIX = "_miss_latency_seconds";
+    private static final String EVICTIONS_SUFFIX = "_evictions";
+    public static final String CHUNK_CACHE_MISS_LATENCY = CHUNK_CACHE_PREFIX + MISS_LATENCY_SUFFIX;
+    public static final String CHUNK_CACHE_EVICTIONS = CHUNK_CACHE_PREFIX + EVICTIONS_SUFFIX;
 
     private final CacheSize cache;
+    private final String prefix;
 
     private volatile MicrometerCacheMetrics metrics;
     private volatile Timer missLatency;
     private volatile Counter evictions;
 
     MicrometerChunkCacheMetrics(CacheSize cache)
+    {
+        this(cache, CHUNK_CACHE_PREFIX);
+    }
+
+    MicrometerChunkCacheMetrics(CacheSize cache, String prefix)
     {
         this.cache = cache;
-        this.metrics = new MicrometerCacheMetrics("chunk_cache", cache);
+        this.prefix = prefix;
+        this.metrics = new MicrometerCacheMetrics(prefix, cache);
         this.metrics.register(registryWithTags().left, registryWithTags().right);
 
-        this.missLatency = timer(CHUNK_CACHE_MISS_LATENCY);
-        this.evictions = counter(CHUNK_CACHE_EVICTIONS);
+        this.missLatency = timer(prefix + MISS_LATENCY_SUFFIX);
+        this.evictions = counter(prefix + EVICTIONS_SUFFIX);
     }
 
     @Override
@@ -59,11 +70,11 @@ public class MicrometerChunkCacheMetrics extends MicrometerMetrics implements Ch
     {
         super.register(newRegistry, newTags);
 
-        this.metrics = new MicrometerCacheMetrics("chunk_cache", cache);
+        this.metrics = new MicrometerCacheMetrics(prefix, cache);
         this.metrics.register(newRegistry, newTags);
 
-        this.missLatency = timer(CHUNK_CACHE_MISS_LATENCY);
-        this.evictions = counter(CHUNK_CACHE_EVICTIONS);
+        this.missLatency = timer(prefix + MISS_LATENCY_SUFFIX);
+        this.evictions = counter(prefix + EVICTIONS_SUFFIX);
     }
 
     @Override
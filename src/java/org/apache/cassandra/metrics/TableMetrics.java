@@ -303,6 +303,16 @@ public class TableMetrics
     public final Counter bytesAnticompacted;
     /** number of bytes where the whole sstable was contained in a repairing range so that we only mutated the repair status */
     public final Counter bytesMutatedAnticompaction;
+    /** number of bytes of written sstable data files that were advised to be dropped from the page cache once synced */
+    public final Counter pageCacheDroppedBytes;
+    /** number of bytes of sstable data files that scanners advised the OS to read ahead */
+    public final Counter readAheadAdvisedBytes;
+    /** number of bytes of sstable data file chunks that scanners read ahead of their position, see ScanPrefetch */
+    public final Counter scanPrefetchedBytes;
+    /** number of times a scanner had to wait for a chunk that was still being read ahead */
+    public final Counter scanPrefetchWaits;
+    /** number of chunks that scanners read ahead of their position when they complete */
+    public final Histogram scanPrefetchDepth;
     /** ratio of how much we anticompact vs how much we could mutate the repair status*/
     public final Gauge<Double> mutatedAnticompactionGauge;
 
@@ -990,6 +1000,11 @@ public class TableMetrics
         partitionsValidated = createTableHistogram("PartitionsValidated", cfs.getKeyspaceMetrics().partitionsValidated, false);
         bytesAnticompacted = createTableCounter("BytesAnticompacted");
         bytesMutatedAnticompaction = createTableCounter("BytesMutatedAnticompaction");
+        pageCacheDroppedBytes = createTableCounter("PageCacheDroppedBytes");
+        readAheadAdvisedBytes = createTableCounter("ReadAheadAdvisedBytes");
+        scanPrefetchedBytes = createTableCounter("ScanPrefetchedBytes");
+        scanPrefetchWaits = createTableCounter("ScanPrefetchWaits");
+        scanPrefetchDepth = createTableHistogram("ScanPrefetchDepth", false);
         mutatedAnticompactionGauge = createTableGauge("MutatedAnticompactionGauge", () ->
         {
             double bytesMutated = bytesMutatedAnticompaction.getCount();
@@ -30,6 +30,8 @@ public class TrieMemtableMetricsView
     private static final String UNCONTENDED_PUTS = "Uncontended memtable puts";
     private static final String CONTENDED_PUTS = "Contended memtable puts";
     private static final String CONTENTION_TIME = "Contention time";
+    private static final String LOCK_FREE_PUTS = "Lock-free memtable puts";
+    private static final String LOCK_FREE_PUT_RETRIES = "Lock-free memtable put retries";
     private static final String LAST_FLUSH_SHARD_SIZES = "Shard sizes during last flush";
 
     private static final Map<String, TrieMemtableMetricsView> perTableMetrics = new ConcurrentHashMap<>();
@@ -43,6 +45,12 @@ public class TrieMemtableMetricsView
     // shard put contention measurements
     public final LatencyMetrics contentionTime;
 
+    // the number of memtable puts to existing partitions that were applied without taking the write lock
+    public final Counter lockFreePuts;
+
+    // the number of times a lock-free put had to be redone because another put changed the partition concurrently
+    public final Counter lockFreePutRetries;
+
     // shard sizes distribution
     public final MinMaxAvgMetric lastFlushShardDataSizes;
 
@@ -64,6 +72,8 @@ public class TrieMemtableMetricsView
         uncontendedPuts = Metrics.counter(factory.createMetricName(UNCONTENDED_PUTS));
         contendedPuts = Metrics.counter(factory.createMetricName(CONTENDED_PUTS));
         contentionTime = new LatencyMetrics(factory, CONTENTION_TIME);
+        lockFreePuts = Metrics.counter(factory.createMetricName(LOCK_FREE_PUTS));
+        lockFreePutRetries = Metrics.counter(factory.createMetricName(LOCK_FREE_PUT_RETRIES));
         lastFlushShardDataSizes = new MinMaxAvgMetric(factory, LAST_FLUSH_SHARD_SIZES);
     }
 
@@ -73,6 +83,8 @@ public class TrieMemtableMetricsView
 
         Metrics.remove(factory.createMetricName(UNCONTENDED_PUTS));
         Metrics.remove(factory.createMetricName(CONTENDED_PUTS));
+        Metrics.remove(factory.createMetricName(LOCK_FREE_PUTS));
+        Metrics.remove(factory.createMetricName(LOCK_FREE_PUT_RETRIES));
         contentionTime.release();
         lastFlushShardDataSizes.release();
     }
@@ -258,6 +258,15 @@ public final class CompressionParams
         return sstableCompressor;
     }
 
+    /**
+     * Returns whether sstables written with these parameters train a compression dictionary and store it in
+     * {@link org.apache.cassandra.io.sstable.Component#COMPRESSION_DICTIONARY}.
+     */
+    public boolean trainsDictionary()
+    {
+        return sstableCompressor instanceof ZstdCompressor && ((ZstdCompressor) sstableCompressor).dictionarySize() > 0;
+    }
+
     public ImmutableMap<String, String> getOtherOptions()
     {
         return otherOptions;
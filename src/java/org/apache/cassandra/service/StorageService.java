@@ -1621,6 +1621,26 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         CompactionManager.instance.setRate(value);
     }
 
+    public int getDataDirectoryReadThroughputMbPerSec()
+    {
+        return DatabaseDescriptor.getDataDirectoryReadThroughputMbPerSec();
+    }
+
+    public void setDataDirectoryReadThroughputMbPerSec(int value)
+    {
+        DatabaseDescriptor.setDataDirectoryReadThroughputMbPerSec(value);
+    }
+
+    public int getDataDirectoryWriteThroughputMbPerSec()
+    {
+        return DatabaseDescriptor.getDataDirectoryWriteThroughputMbPerSec();
+    }
+
+    public void setDataDirectoryWriteThroughputMbPerSec(int value)
+    {
+        DatabaseDescriptor.setDataDirectoryWriteThroughputMbPerSec(value);
+    }
+
     public int getBatchlogReplayThrottleInKB()
     {
         return DatabaseDescriptor.getBatchlogReplayThrottleInKB();
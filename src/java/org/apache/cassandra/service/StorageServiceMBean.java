@@ -617,6 +617,12 @@ public interface StorageServiceMBean extends NotificationEmitter
     public int getCompactionThroughputMbPerSec();
     public void setCompactionThroughputMbPerSec(int value);
 
+    /** Throughput limits of the compaction, validation and streaming I/O of each data directory, 0 for unlimited */
+    public int getDataDirectoryReadThroughputMbPerSec();
+    public void setDataDirectoryReadThroughputMbPerSec(int value);
+    public int getDataDirectoryWriteThroughputMbPerSec();
+    public void setDataDirectoryWriteThroughputMbPerSec(int value);
+
     public int getBatchlogReplayThrottleInKB();
     public void setBatchlogReplayThrottleInKB(int value);
 
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.utils.concurrent.Ref;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+import org.apache.cassandra.utils.obs.IBitSet;
+
+/**
+ * A blocked Bloom filter: the bitset is split in blocks of {@link #BLOCK_BITS} bits, the size of a cache line, and
+ * all the bits of a key are in the block selected by its hash.
+ * <p>
+ * The bits of a key in a classic {@link BloomFilter} are spread over the whole bitset, so checking a key that is not
+ * in the filter can cost one cache miss per hash function, for each sstable that a read checks. Here it costs one (or
+ * two, as the off-heap memory of the bitset is not aligned on cache lines). In exchange, the filter needs a few more
+ * bits per key for the same false positive rate, because the blocks are not loaded evenly, see
+ * {@link BloomCalculations#computeBlockedBloomSpec}.
+ * <p>
+ * The block is selected by the second half of the murmur3 hash of the key. The bits within the block are the top bits
+ * of the first half, successively multiplied by an odd constant: the double hashing used by {@link BloomFilter} only
+ * gives a few distinct combinations of bits within such a small block, and a noticeably higher false positive rate.
+ */
+public class BlockedBloomFilter extends WrappedSharedCloseable implements IFilter
+{
+    /** The number of bits of a block. */
+    public static final int BLOCK_BITS = 512;
+    private static final int BLOCK_SHIFT = 9;
+    // 2^64 divided by the golden ratio, as in Fibonacci hashing
+    private static final long BIT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final static FastThreadLocal<long[]> reusableHash = new FastThreadLocal<long[]>()
+    {
+        protected long[] initialValue()
+        {
+            return new long[2];
+        }
+    };
+
+    public final IBitSet bitset;
+    public final int hashCount;
+    private final long blockCount;
+
+    BlockedBloomFilter(int hashCount, IBitSet bitset)
+    {
+        super(bitset);
+        assert bitset.capacity() >= BLOCK_BITS && bitset.capacity() % BLOCK_BITS == 0 : bitset.capacity();
+        this.hashCount = hashCount;
+        this.bitset = bitset;
+        this.blockCount = bitset.capacity() >>> BLOCK_SHIFT;
+    }
+
+    private BlockedBloomFilter(BlockedBloomFilter copy)
+    {
+        super(copy);
+        this.hashCount = copy.hashCount;
+        this.bitset = copy.bitset;
+        this.blockCount = copy.blockCount;
+    }
+
+    /**
+     * @return the number of bits needed by a blocked Bloom filter for the given number of elements, a whole number of
+     * blocks
+     */
+    static long bitsFor(long numElements, int bucketsPerElement)
+    {
+        long blocks = Math.max(1, (numElements * bucketsPerElement + BLOCK_BITS - 1) >>> BLOCK_SHIFT);
+        return blocks << BLOCK_SHIFT;
+    }
+
+    public long serializedSize()
+    {
+        return BloomFilter.serializer.serializedSize(this);
+    }
+
+    public void add(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        long blockStart = FBUtilities.abs(hash[1] % blockCount) << BLOCK_SHIFT;
+        long bits = hash[0];
+        for (int i = 0; i < hashCount; i++)
+        {
+            bitset.set(blockStart + (bits >>> (Long.SIZE - BLOCK_SHIFT)));
+            bits *= BIT_MULTIPLIER;
+        }
+    }
+
+    public final boolean isPresent(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        long blockStart = FBUtilities.abs(hash[1] % blockCount) << BLOCK_SHIFT;
+        long bits = hash[0];
+        for (int i = 0; i < hashCount; i++)
+        {
+            if (!bitset.get(blockStart + (bits >>> (Long.SIZE - BLOCK_SHIFT))))
+                return false;
+            bits *= BIT_MULTIPLIER;
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        bitset.clear();
+    }
+
+    public IFilter sharedCopy()
+    {
+        return new BlockedBloomFilter(this);
+    }
+
+    @Override
+    public long offHeapSize()
+    {
+        return bitset.offHeapSize();
+    }
+
+    public String toString()
+    {
+        return "BlockedBloomFilter[hashCount=" + hashCount + ";capacity=" + bitset.capacity() + ']';
+    }
+
+    public void addTo(Ref.IdentityCollection identities)
+    {
+        super.addTo(identities);
+        bitset.addTo(identities);
+    }
+}
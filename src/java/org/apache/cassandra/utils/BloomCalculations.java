@@ -172,6 +172,70 @@ public class BloomCalculations
         return new BloomSpecification(K, bucketsPerElement);
     }
 
+    /**
+     * The maximum number of buckets per element of a blocked Bloom filter, which needs more buckets than a classic
+     * Bloom filter to reach the same false positive rate.
+     */
+    static final int maxBlockedBucketsPerElement = 32;
+
+    /**
+     * Given a maximum tolerable false positive probability, compute the specification of a blocked Bloom filter (see
+     * {@link BlockedBloomFilter}) with the minimal number of buckets per element, and then of hash functions, which
+     * gives less than the specified false positive rate. If the rate cannot be reached, the specification with the
+     * lowest rate for the maximum number of buckets per element is returned.
+     * <p>
+     * The number of keys in a block follows a Poisson distribution, and the false positive rate is the average of the
+     * false positive rates of the blocks, each a classic Bloom filter of {@link BlockedBloomFilter#BLOCK_BITS} bits.
+     *
+     * @param maxBucketsPerElement The maximum number of buckets available for the filter.
+     * @param maxFalsePosProb The maximum tolerable false positive rate.
+     */
+    public static BloomSpecification computeBlockedBloomSpec(int maxBucketsPerElement, double maxFalsePosProb)
+    {
+        maxBucketsPerElement = Math.max(minBuckets, Math.min(maxBucketsPerElement, maxBlockedBucketsPerElement));
+        BloomSpecification best = null;
+        for (int buckets = minBuckets; buckets <= maxBucketsPerElement; buckets++)
+        {
+            int bestK = minK;
+            double bestProb = blockedFalsePositiveProbability(buckets, minK);
+            for (int k = minK + 1; k <= buckets; k++)
+            {
+                double prob = blockedFalsePositiveProbability(buckets, k);
+                if (prob >= bestProb)
+                    break;
+                bestK = k;
+                bestProb = prob;
+            }
+            best = new BloomSpecification(bestK, buckets);
+            if (bestProb <= maxFalsePosProb)
+            {
+                // as for classic filters, relax K as long as the rate stays low enough
+                while (best.K > minK && blockedFalsePositiveProbability(buckets, best.K - 1) <= maxFalsePosProb)
+                    best = new BloomSpecification(best.K - 1, buckets);
+                return best;
+            }
+        }
+        return best;
+    }
+
+    static double blockedFalsePositiveProbability(int bucketsPerElement, int k)
+    {
+        double blockBits = BlockedBloomFilter.BLOCK_BITS;
+        double lambda = blockBits / bucketsPerElement;
+        // sum over the likely numbers of keys in a block, weighted by their Poisson probability
+        int maxKeys = (int) Math.ceil(lambda + 10 * Math.sqrt(lambda) + 10);
+        double keysProb = Math.exp(-lambda);
+        double prob = 0;
+        for (int keys = 0; keys <= maxKeys; keys++)
+        {
+            if (keys > 0)
+                keysProb *= lambda / keys;
+            double bitSetProb = 1 - Math.pow(1 - 1 / blockBits, (double) k * keys);
+            prob += keysProb * Math.pow(bitSetProb, k);
+        }
+        return prob;
+    }
+
     /**
      * Calculates the maximum number of buckets per element that this implementation
      * can support.  Crucially, it will lower the bucket count if necessary to meet
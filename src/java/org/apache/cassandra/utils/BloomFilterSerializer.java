@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.utils.obs.IBitSet;
 import org.apache.cassandra.utils.obs.MemoryLimiter;
@@ -36,6 +37,15 @@ public final class BloomFilterSerializer
 {
     private final static Logger logger = LoggerFactory.getLogger(BloomFilterSerializer.class);
 
+    /**
+     * A serialized classic Bloom filter starts with its hash count, which is positive. The serialized form of the other
+     * filter types starts with a negative marker identifying the type, followed by their fields. Older versions cannot
+     * read these markers, so the other types are only written in the sstable versions that have
+     * {@link Version#hasFilterTypes() filter types}, see {@link FilterFactory.Type#fromMetadata(org.apache.cassandra.schema.TableMetadata, Version)}.
+     */
+    private static final int BLOCKED_BLOOM_FILTER_MARKER = -1;
+    private static final int XOR_FILTER_MARKER = -2;
+
     private final MemoryLimiter memoryLimiter;
 
     public BloomFilterSerializer(MemoryLimiter memoryLimiter)
@@ -49,10 +59,68 @@ public final class BloomFilterSerializer
         bf.bitset.serialize(out);
     }
 
-    @SuppressWarnings("resource")
+    public void serialize(BlockedBloomFilter bf, DataOutputPlus out) throws IOException
+    {
+        out.writeInt(BLOCKED_BLOOM_FILTER_MARKER);
+        out.writeInt(bf.hashCount);
+        bf.bitset.serialize(out);
+    }
+
+    public void serialize(XorFilter filter, DataOutputPlus out) throws IOException
+    {
+        out.writeInt(XOR_FILTER_MARKER);
+        out.writeInt(filter.fingerprintBits);
+        out.writeLong(filter.seed);
+        out.writeInt(filter.segmentLength);
+        out.writeInt(filter.segmentCount);
+        filter.fingerprints.serialize(out);
+    }
+
+    /**
+     * Serializes a filter of any of the types built by {@link FilterFactory}, once completed with
+     * {@link FilterFactory#complete}.
+     */
+    public void serialize(IFilter filter, DataOutputPlus out) throws IOException
+    {
+        if (filter instanceof BlockedBloomFilter)
+            serialize((BlockedBloomFilter) filter, out);
+        else if (filter instanceof XorFilter)
+            serialize((XorFilter) filter, out);
+        else
+            serialize((BloomFilter) filter, out);
+    }
+
+    /**
+     * Deserializes the filter component of an sstable of the given version.
+     */
+    public <I extends InputStream & DataInput> IFilter deserialize(I in, Version version) throws IOException
+    {
+        return deserialize(in, version.hasOldBfFormat(), version.hasFilterTypes());
+    }
+
     public <I extends InputStream & DataInput> IFilter deserialize(I in, boolean oldBfFormat) throws IOException
+    {
+        return deserialize(in, oldBfFormat, !oldBfFormat);
+    }
+
+    @SuppressWarnings("resource")
+    private <I extends InputStream & DataInput> IFilter deserialize(I in, boolean oldBfFormat, boolean hasFilterTypes) throws IOException
     {
         int hashes = in.readInt();
+        if (hashes < 0 && !hasFilterTypes)
+            throw new IOException("Unexpected filter type marker " + hashes + " in a version without filter types");
+        if (hashes == XOR_FILTER_MARKER)
+            return deserializeXorFilter(in);
+
+        boolean blocked = false;
+        if (hashes < 0)
+        {
+            if (hashes != BLOCKED_BLOOM_FILTER_MARKER)
+                throw new IOException("Unknown filter type marker " + hashes);
+            blocked = true;
+            hashes = in.readInt();
+        }
+
         IBitSet bs;
         try
         {
@@ -65,7 +133,37 @@ public final class BloomFilterSerializer
                          "lowering number of sstables through compaction", e.getMessage());
             return AlwaysPresent;
         }
-        return new BloomFilter(hashes, bs);
+        return blocked ? new BlockedBloomFilter(hashes, bs) : new BloomFilter(hashes, bs);
+    }
+
+    @SuppressWarnings("resource")
+    private <I extends InputStream & DataInput> IFilter deserializeXorFilter(I in) throws IOException
+    {
+        int fingerprintBits = in.readInt();
+        long seed = in.readLong();
+        int segmentLength = in.readInt();
+        int segmentCount = in.readInt();
+
+        OffHeapBitSet fingerprints;
+        try
+        {
+            fingerprints = OffHeapBitSet.deserialize(in, false, memoryLimiter);
+        }
+        catch (MemoryLimiter.ReachedMemoryLimitException | OutOfMemoryError e)
+        {
+            logger.error("Failed to create xor filter during deserialization: ({}) - " +
+                         "continuing but this will have severe performance implications, consider increasing FP chance or" +
+                         "lowering number of sstables through compaction", e.getMessage());
+            return AlwaysPresent;
+        }
+
+        if (!XorFilter.isValidLayout(fingerprintBits, segmentLength, segmentCount, fingerprints.capacity()))
+        {
+            fingerprints.close();
+            throw new IOException(String.format("Invalid xor filter layout: %d fingerprint bits, %d segments of %d slots, %d bits",
+                                                fingerprintBits, segmentCount, segmentLength, fingerprints.capacity()));
+        }
+        return new XorFilter(fingerprintBits, seed, segmentLength, segmentCount, fingerprints);
     }
 
     /**
@@ -81,4 +179,35 @@ public final class BloomFilterSerializer
         size += bf.bitset.serializedSize();
         return size;
     }
+
+    /**
+     * Calculates a serialized size of the given blocked Bloom Filter
+     *
+     * @param bf blocked Bloom filter to calculate serialized size
+     * @return serialized size of the given filter
+     */
+    public long serializedSize(BlockedBloomFilter bf)
+    {
+        int size = TypeSizes.sizeof(BLOCKED_BLOOM_FILTER_MARKER); // type marker
+        size += TypeSizes.sizeof(bf.hashCount); // hash count
+        size += bf.bitset.serializedSize();
+        return size;
+    }
+
+    /**
+     * Calculates a serialized size of the given xor filter
+     *
+     * @param filter xor filter to calculate serialized size
+     * @return serialized size of the given filter
+     */
+    public long serializedSize(XorFilter filter)
+    {
+        int size = TypeSizes.sizeof(XOR_FILTER_MARKER); // type marker
+        size += TypeSizes.sizeof(filter.fingerprintBits);
+        size += TypeSizes.sizeof(filter.seed);
+        size += TypeSizes.sizeof(filter.segmentLength);
+        size += TypeSizes.sizeof(filter.segmentCount);
+        size += filter.fingerprints.serializedSize();
+        return size;
+    }
 }
@@ -17,13 +17,20 @@
  */
 package org.apache.cassandra.utils;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.obs.IBitSet;
 import org.apache.cassandra.utils.obs.MemoryLimiter;
 import org.apache.cassandra.utils.obs.OffHeapBitSet;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.XOR_FILTER_MAX_KEYS;
+
 public class FilterFactory
 {
     public static final IFilter AlwaysPresent = new AlwaysPresentFilter();
@@ -31,6 +38,69 @@ public class FilterFactory
     private static final Logger logger = LoggerFactory.getLogger(FilterFactory.class);
     private static final long BITSET_EXCESS = 20;
 
+    /**
+     * The table extension selecting the type of filter built for the sstables of a table, as a single byte (see
+     * {@link Type#val}), e.g. {@code ALTER TABLE ks.t WITH extensions = {'FILTER_TYPE': '0x01'}}. Existing sstables
+     * keep their filter until they are compacted, and sstables written in a version without
+     * {@link Version#hasFilterTypes() filter types} always get a classic Bloom filter.
+     */
+    public static final String TABLE_EXTENSIONS_FILTER_TYPE_KEY = "FILTER_TYPE";
+
+    public enum Type
+    {
+        /** A classic Bloom filter, see {@link BloomFilter}. */
+        CLASSIC((byte) 0x00),
+        /** A Bloom filter whose bits for a key are all in one cache line, see {@link BlockedBloomFilter}. */
+        BLOCKED((byte) 0x01),
+        /**
+         * A static filter built once all the keys of the sstable are written, see {@link XorFilter}. Falls back to
+         * {@link #BLOCKED} for sstables expected to have, or that turn out to have, more than
+         * {@link org.apache.cassandra.config.CassandraRelevantProperties#XOR_FILTER_MAX_KEYS} keys.
+         */
+        XOR((byte) 0x02);
+
+        public final byte val;
+
+        Type(byte val)
+        {
+            this.val = val;
+        }
+
+        public static Type fromMetadata(TableMetadata metadata)
+        {
+            ByteBuffer bb = null;
+            try
+            {
+                bb = metadata.params.extensions.get(TABLE_EXTENSIONS_FILTER_TYPE_KEY);
+                return bb == null ? CLASSIC : fromByte(bb.get(bb.position())); // do not change the position of the ByteBuffer!
+            }
+            catch (BufferUnderflowException | IllegalStateException ex)
+            {
+                logger.error("Failed to decode metadata extensions for the filter type ({}), using {}", bb, CLASSIC);
+                return CLASSIC;
+            }
+        }
+
+        /**
+         * @return the filter type of the sstables of the given version of the given table
+         */
+        public static Type fromMetadata(TableMetadata metadata, Version version)
+        {
+            return version.hasFilterTypes() ? fromMetadata(metadata) : CLASSIC;
+        }
+
+        public static Type fromByte(byte val) throws IllegalStateException
+        {
+            for (Type type : values())
+            {
+                if (type.val == val)
+                    return type;
+            }
+
+            throw new IllegalStateException("Invalid byte: " + val);
+        }
+    }
+
     /**
      * @return A BloomFilter with the lowest practical false positive
      *         probability for the given number of elements.
@@ -61,27 +131,69 @@ public class FilterFactory
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability)
     {
-        return getFilter(numElements, maxFalsePosProbability, BloomFilter.memoryLimiter);
+        return getFilter(numElements, maxFalsePosProbability, Type.CLASSIC);
+    }
+
+    /**
+     * @return The smallest filter of the given type that can provide the given false positive probability rate for
+     * the given number of elements.
+     */
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, Type type)
+    {
+        return getFilter(numElements, maxFalsePosProbability, type, BloomFilter.memoryLimiter);
     }
 
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, MemoryLimiter memoryLimiter)
+    {
+        return getFilter(numElements, maxFalsePosProbability, Type.CLASSIC, memoryLimiter);
+    }
+
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, Type type, MemoryLimiter memoryLimiter)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return AlwaysPresent;
+        if (type == Type.XOR)
+        {
+            long maxKeys = XOR_FILTER_MAX_KEYS.getLong();
+            if (numElements <= maxKeys)
+                return new XorFilter.Builder(numElements, maxFalsePosProbability, maxKeys, memoryLimiter);
+
+            logger.debug("Building a blocked Bloom filter instead of an xor filter for {} elements", numElements);
+            type = Type.BLOCKED;
+        }
+        if (type == Type.BLOCKED)
+        {
+            BloomCalculations.BloomSpecification spec = BloomCalculations.computeBlockedBloomSpec(BloomCalculations.maxBlockedBucketsPerElement, maxFalsePosProbability);
+            return createFilter(spec.K, BlockedBloomFilter.bitsFor(numElements, spec.bucketsPerElement), type, numElements, memoryLimiter);
+        }
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
         return createFilter(spec.K, numElements, spec.bucketsPerElement, memoryLimiter);
     }
 
-    @SuppressWarnings("resource")
+    /**
+     * Completes a filter returned by {@link #getFilter} once all the keys have been added to it. Filters of the
+     * {@link Type#XOR} type are built at this point, and their builder released; the other filters are returned as is.
+     * Until then, a filter must not be serialized, and its shared copies find all keys.
+     */
+    public static IFilter complete(IFilter filter)
+    {
+        return filter instanceof XorFilter.Builder ? ((XorFilter.Builder) filter).build() : filter;
+    }
+
     private static IFilter createFilter(int hash, long numElements, int bucketsPer, MemoryLimiter memoryLimiter)
+    {
+        return createFilter(hash, (numElements * bucketsPer) + BITSET_EXCESS, Type.CLASSIC, numElements, memoryLimiter);
+    }
+
+    @SuppressWarnings("resource")
+    private static IFilter createFilter(int hash, long numBits, Type type, long numElements, MemoryLimiter memoryLimiter)
     {
         try
         {
-            long numBits = (numElements * bucketsPer) + BITSET_EXCESS;
             IBitSet bitset = new OffHeapBitSet(numBits, memoryLimiter);
-            return new BloomFilter(hash, bitset);
+            return type == Type.BLOCKED ? new BlockedBloomFilter(hash, bitset) : new BloomFilter(hash, bitset);
         }
         catch (MemoryLimiter.ReachedMemoryLimitException | OutOfMemoryError e)
         {
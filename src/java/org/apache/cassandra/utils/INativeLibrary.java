@@ -83,6 +83,16 @@ public interface INativeLibrary
      */
     void trySkipCache(int fd, long offset, int len, String fileName);
 
+    /**
+     * try to advise OS to read ahead the pages associated with the specified region, as they will be needed soon.
+     */
+    void tryWillNeed(File f, long offset, long len);
+
+    /**
+     * try to advise OS to read ahead the pages associated with the specified region, as they will be needed soon.
+     */
+    void tryWillNeed(int fd, long offset, long len, String fileName);
+
     /**
      * execute OS file control command
      */
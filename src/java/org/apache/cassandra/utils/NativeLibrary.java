@@ -210,37 +210,64 @@ public class NativeLibrary implements INativeLibrary
 
     @Override
     public void trySkipCache(File f, long offset, long len)
+    {
+        tryFadvise(f, offset, len, POSIX_FADV_DONTNEED);
+    }
+
+    @Override
+    public void trySkipCache(int fd, long offset, long len, String fileName)
+    {
+        tryFadvise(fd, offset, len, fileName, POSIX_FADV_DONTNEED);
+    }
+
+    @Override
+    public void trySkipCache(int fd, long offset, int len, String fileName)
+    {
+        tryFadvise(fd, offset, len, fileName, POSIX_FADV_DONTNEED);
+    }
+
+    @Override
+    public void tryWillNeed(File f, long offset, long len)
+    {
+        tryFadvise(f, offset, len, POSIX_FADV_WILLNEED);
+    }
+
+    @Override
+    public void tryWillNeed(int fd, long offset, long len, String fileName)
+    {
+        tryFadvise(fd, offset, len, fileName, POSIX_FADV_WILLNEED);
+    }
+
+    private void tryFadvise(File f, long offset, long len, int advice)
     {
         if (!f.exists())
             return;
 
         try (FileInputStreamPlus fis = new FileInputStreamPlus(f))
         {
-            trySkipCache(getfd(fis.getChannel()), offset, len, f.path());
+            tryFadvise(getfd(fis.getChannel()), offset, len, f.path(), advice);
         }
         catch (IOException e)
         {
-            logger.warn("Could not skip cache", e);
+            logger.warn("Could not advise the page cache for {}", f, e);
         }
     }
 
-    @Override
-    public void trySkipCache(int fd, long offset, long len, String fileName)
+    private void tryFadvise(int fd, long offset, long len, String fileName, int advice)
     {
         if (len == 0)
-            trySkipCache(fd, 0, 0, fileName);
+            tryFadvise(fd, 0, 0, fileName, advice);
 
         while (len > 0)
         {
             int sublen = (int) Math.min(Integer.MAX_VALUE, len);
-            trySkipCache(fd, offset, sublen, fileName);
+            tryFadvise(fd, offset, sublen, fileName, advice);
             len -= sublen;
-            offset -= sublen;
+            offset += sublen;
         }
     }
 
-    @Override
-    public void trySkipCache(int fd, long offset, int len, String fileName)
+    private void tryFadvise(int fd, long offset, int len, String fileName, int advice)
     {
         if (fd < 0)
             return;
@@ -249,14 +276,14 @@ public class NativeLibrary implements INativeLibrary
         {
             if (osType == LINUX)
             {
-                int result = wrappedLibrary.callPosixFadvise(fd, offset, len, POSIX_FADV_DONTNEED);
+                int result = wrappedLibrary.callPosixFadvise(fd, offset, len, advice);
                 if (result != 0)
                     NoSpamLogger.log(
                     logger,
                     NoSpamLogger.Level.WARN,
                     10,
                     TimeUnit.MINUTES,
-                    "Failed trySkipCache on file: {} Error: " + wrappedLibrary.callStrerror(result).getString(0),
+                    "Failed posix_fadvise (advice " + advice + ") on file: {} Error: " + wrappedLibrary.callStrerror(result).getString(0),
                     fileName);
             }
         }
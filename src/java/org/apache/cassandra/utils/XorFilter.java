@@ -0,0 +1,607 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.Arrays;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.io.util.Memory;
+import org.apache.cassandra.utils.concurrent.Ref;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+import org.apache.cassandra.utils.obs.MemoryLimiter;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+
+/**
+ * A static filter of the xor family, built once from a complete set of keys: an sstable is immutable, so its filter
+ * does not need to support additions after it is written.
+ * <p>
+ * Each key is mapped to three slots of an array of fingerprints, such that the fingerprint of every key in the set is
+ * the xor of its three slots. A lookup reads the three slots, touching at most three cache lines, and finds a key that
+ * is not in the set with a probability of 2^-{@link #fingerprintBits}. The array needs about 1.125 slots per key, i.e.
+ * about 1.125 * log2(1/fp) bits per key, against 1.44 * log2(1/fp) for a Bloom filter.
+ * <p>
+ * The layout is that of the 3-wise binary fuse filters of Graf and Lemire, "Binary Fuse Filters: Fast and Smaller Than
+ * Xor Filters" (2022): the array is split in segments, and the three slots of a key are in three consecutive segments.
+ * The fingerprints are packed, so that the false positive chance can be chosen to the bit.
+ * <p>
+ * Keys are added to a {@link Builder}, which records their hashes until {@link Builder#build} constructs the filter.
+ */
+public class XorFilter extends WrappedSharedCloseable implements IFilter
+{
+    private static final Logger logger = LoggerFactory.getLogger(XorFilter.class);
+
+    /** The widest supported fingerprint, for a false positive chance of 2^-32. */
+    static final int MAX_FINGERPRINT_BITS = 32;
+    // the segments are at most this long, so that their offsets fit in the 18 bits taken from the hash for them
+    private static final int MAX_SEGMENT_LENGTH = 1 << 18;
+    // the construction fails with a very small probability, and is retried with another seed
+    private static final int MAX_CONSTRUCTION_ATTEMPTS = 100;
+    // the largest number of keys the construction can handle, with int indexes for the slots
+    private static final int MAX_KEYS = 1 << 30;
+
+    private final static FastThreadLocal<long[]> reusableHash = new FastThreadLocal<long[]>()
+    {
+        protected long[] initialValue()
+        {
+            return new long[2];
+        }
+    };
+
+    public final int fingerprintBits;
+    public final long seed;
+    public final int segmentLength;
+    public final int segmentCount;
+    public final OffHeapBitSet fingerprints;
+    private final int segmentLengthMask;
+    private final long segmentCountLength;
+
+    XorFilter(int fingerprintBits, long seed, int segmentLength, int segmentCount, OffHeapBitSet fingerprints)
+    {
+        super(fingerprints);
+        assert fingerprintBits > 0 && fingerprintBits <= MAX_FINGERPRINT_BITS : fingerprintBits;
+        assert Integer.bitCount(segmentLength) == 1 && segmentLength <= MAX_SEGMENT_LENGTH : segmentLength;
+        assert fingerprints.capacity() >= bitsFor(segmentLength, segmentCount, fingerprintBits) : fingerprints.capacity();
+        this.fingerprintBits = fingerprintBits;
+        this.seed = seed;
+        this.segmentLength = segmentLength;
+        this.segmentCount = segmentCount;
+        this.fingerprints = fingerprints;
+        this.segmentLengthMask = segmentLength - 1;
+        this.segmentCountLength = (long) segmentCount * segmentLength;
+    }
+
+    private XorFilter(XorFilter copy)
+    {
+        super(copy);
+        this.fingerprintBits = copy.fingerprintBits;
+        this.seed = copy.seed;
+        this.segmentLength = copy.segmentLength;
+        this.segmentCount = copy.segmentCount;
+        this.fingerprints = copy.fingerprints;
+        this.segmentLengthMask = copy.segmentLengthMask;
+        this.segmentCountLength = copy.segmentCountLength;
+    }
+
+    /**
+     * @return the number of fingerprint bits giving a false positive chance of at most {@code maxFalsePosProbability}
+     */
+    static int fingerprintBitsFor(double maxFalsePosProbability)
+    {
+        int bits = (int) Math.ceil(-Math.log(maxFalsePosProbability) / Math.log(2));
+        return Math.max(1, Math.min(MAX_FINGERPRINT_BITS, bits));
+    }
+
+    /**
+     * @return whether the given set of fingerprints is large enough for a filter with the given layout
+     */
+    static boolean isValidLayout(int fingerprintBits, int segmentLength, int segmentCount, long capacity)
+    {
+        return fingerprintBits > 0 && fingerprintBits <= MAX_FINGERPRINT_BITS
+               && Integer.bitCount(segmentLength) == 1 && segmentLength <= MAX_SEGMENT_LENGTH
+               && segmentCount > 0 && capacity >= bitsFor(segmentLength, segmentCount, fingerprintBits);
+    }
+
+    // the array has two more segments than the first slot of a key can be in, and a word of padding for getBits
+    private static long bitsFor(int segmentLength, int segmentCount, int fingerprintBits)
+    {
+        return (long) (segmentCount + 2) * segmentLength * fingerprintBits + Long.SIZE;
+    }
+
+    public long serializedSize()
+    {
+        return BloomFilter.serializer.serializedSize(this);
+    }
+
+    public void add(FilterKey key)
+    {
+        throw new UnsupportedOperationException("Xor filters cannot be modified once built");
+    }
+
+    public final boolean isPresent(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        long h = mix(hash[0] + seed);
+        int h0 = firstSlot(h, segmentCountLength);
+        int h1 = h0 + segmentLength;
+        int h2 = h1 + segmentLength;
+        h1 ^= (int) (h >>> 18) & segmentLengthMask;
+        h2 ^= (int) h & segmentLengthMask;
+        return (fingerprint(h, fingerprintBits) ^ get(fingerprints, fingerprintBits, h0)
+                ^ get(fingerprints, fingerprintBits, h1) ^ get(fingerprints, fingerprintBits, h2)) == 0;
+    }
+
+    private static long fingerprint(long h, int fingerprintBits)
+    {
+        return (h ^ (h >>> 32)) & ((1L << fingerprintBits) - 1);
+    }
+
+    private static long get(OffHeapBitSet fingerprints, int fingerprintBits, int slot)
+    {
+        return fingerprints.getBits((long) slot * fingerprintBits, fingerprintBits);
+    }
+
+    private static void set(OffHeapBitSet fingerprints, int fingerprintBits, int slot, long fingerprint)
+    {
+        fingerprints.setBits((long) slot * fingerprintBits, fingerprintBits, fingerprint);
+    }
+
+    /**
+     * @return the slot of the key with hash {@code h} in its {@code index}th segment (0, 1 or 2), as in
+     * {@link #isPresent}
+     */
+    private static int slot(int index, long h, int segmentLength, long segmentCountLength)
+    {
+        int slot = firstSlot(h, segmentCountLength) + index * segmentLength;
+        return slot ^ ((int) ((h & ((1L << 36) - 1)) >>> (36 - 18 * index)) & (segmentLength - 1));
+    }
+
+    /**
+     * @return the high half of the unsigned product of {@code h} and {@code range}, a number in [0, range) that
+     * depends on the high bits of {@code h}
+     */
+    private static int firstSlot(long h, long range)
+    {
+        return (int) ((((h >>> 32) * range) + (((h & 0xFFFFFFFFL) * range) >>> 32)) >>> 32);
+    }
+
+    // the finalizer of murmur3, to derive a new hash for each seed
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Xor filters cannot be modified once built");
+    }
+
+    public IFilter sharedCopy()
+    {
+        return new XorFilter(this);
+    }
+
+    @Override
+    public long offHeapSize()
+    {
+        return fingerprints.offHeapSize();
+    }
+
+    public String toString()
+    {
+        return "XorFilter[fingerprintBits=" + fingerprintBits + ";segmentLength=" + segmentLength + ";segmentCount=" + segmentCount + ']';
+    }
+
+    public void addTo(Ref.IdentityCollection identities)
+    {
+        super.addTo(identities);
+        fingerprints.addTo(identities);
+    }
+
+    /**
+     * Constructs the filter of the given (first halves of the murmur3) key hashes, see Algorithm 3 of the paper. The
+     * key hashes are sorted and deduplicated in place if the construction fails because of duplicates.
+     */
+    @VisibleForTesting
+    static XorFilter construct(Memory keys, int size, int fingerprintBits, MemoryLimiter memoryLimiter) throws MemoryLimiter.ReachedMemoryLimitException
+    {
+        if (size > MAX_KEYS)
+            throw new IllegalArgumentException("Cannot build an xor filter for " + size + " keys, the maximum is " + MAX_KEYS);
+
+        int segmentLength = size == 0 ? 4 : Math.min(MAX_SEGMENT_LENGTH, 1 << (int) Math.floor(Math.log(size) / Math.log(3.33) + 2.25));
+        double sizeFactor = size <= 1 ? 0 : Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(size));
+        long capacity = Math.round(size * sizeFactor);
+        int segments = (int) ((capacity + segmentLength - 1) / segmentLength);
+        int segmentCount = segments <= 2 ? 1 : segments - 2;
+
+        OffHeapBitSet fingerprints = new OffHeapBitSet(bitsFor(segmentLength, segmentCount, fingerprintBits), memoryLimiter);
+        try
+        {
+            long seed = populate(keys, size, fingerprintBits, segmentLength, segmentCount, fingerprints);
+            return new XorFilter(fingerprintBits, seed, segmentLength, segmentCount, fingerprints);
+        }
+        catch (Throwable t)
+        {
+            fingerprints.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Sets the fingerprints of a filter with the given layout for the given keys.
+     *
+     * @return the seed of the filter
+     */
+    private static long populate(Memory keys, int size, int fingerprintBits, int segmentLength, int segmentCount, OffHeapBitSet fingerprints)
+    {
+        int arrayLength = (segmentCount + 2) * segmentLength;
+        long segmentCountLength = (long) segmentCount * segmentLength;
+
+        // the hashes sorted by their first slot, then the keys in the order they were peeled
+        long[] reverseOrder = new long[size + 1];
+        byte[] reverseH = new byte[size];
+        // for each slot, the number of keys mapped to it (times four) and the xor of the indexes of their segments
+        byte[] t2count = new byte[arrayLength];
+        // for each slot, the xor of the hashes of the keys mapped to it
+        long[] t2hash = new long[arrayLength];
+        int[] alone = new int[arrayLength];
+        int[] h012 = new int[5];
+
+        int blockBits = 1;
+        while ((1 << blockBits) < segmentCount)
+            blockBits++;
+        int block = 1 << blockBits;
+        int[] startPos = new int[block];
+
+        long rngCounter = 0x726b2b9d438b9d4dL;
+        reverseOrder[size] = 1;
+        for (int attempt = 0; ; attempt++)
+        {
+            if (attempt == MAX_CONSTRUCTION_ATTEMPTS)
+                throw new IllegalStateException("Could not build an xor filter for " + size + " keys in " + attempt + " attempts");
+
+            rngCounter += 0x9E3779B97F4A7C15L;
+            long seed = mix(rngCounter);
+
+            // sort the hashes by block of their first slot, for the locality of the accesses below
+            for (int i = 0; i < block; i++)
+                startPos[i] = (int) (((long) i * size) >>> blockBits);
+            for (int i = 0; i < size; i++)
+            {
+                long hash = mix(keys.getLong(i * 8L) + seed);
+                int segmentIndex = (int) (hash >>> (Long.SIZE - blockBits));
+                while (reverseOrder[startPos[segmentIndex]] != 0)
+                    segmentIndex = (segmentIndex + 1) & (block - 1);
+                reverseOrder[startPos[segmentIndex]] = hash;
+                startPos[segmentIndex]++;
+            }
+
+            boolean error = false;
+            int duplicates = 0;
+            for (int i = 0; i < size; i++)
+            {
+                long hash = reverseOrder[i];
+                int h0 = slot(0, hash, segmentLength, segmentCountLength);
+                int h1 = slot(1, hash, segmentLength, segmentCountLength);
+                int h2 = slot(2, hash, segmentLength, segmentCountLength);
+                t2count[h0] += 4;
+                t2hash[h0] ^= hash;
+                t2count[h1] += 4;
+                t2count[h1] ^= 1;
+                t2hash[h1] ^= hash;
+                t2count[h2] += 4;
+                t2count[h2] ^= 2;
+                t2hash[h2] ^= hash;
+                // a key added twice cancels itself out in its slots
+                if ((t2hash[h0] & t2hash[h1] & t2hash[h2]) == 0
+                    && ((t2hash[h0] == 0 && t2count[h0] == 8) || (t2hash[h1] == 0 && t2count[h1] == 8) || (t2hash[h2] == 0 && t2count[h2] == 8)))
+                {
+                    duplicates++;
+                    t2count[h0] -= 4;
+                    t2hash[h0] ^= hash;
+                    t2count[h1] -= 4;
+                    t2count[h1] ^= 1;
+                    t2hash[h1] ^= hash;
+                    t2count[h2] -= 4;
+                    t2count[h2] ^= 2;
+                    t2hash[h2] ^= hash;
+                }
+                // the count of a slot overflowed
+                error |= (t2count[h0] & 0xFF) < 4 || (t2count[h1] & 0xFF) < 4 || (t2count[h2] & 0xFF) < 4;
+            }
+
+            int stackSize = 0;
+            if (!error)
+            {
+                // peel the keys alone in a slot, until none is left
+                int queueSize = 0;
+                for (int i = 0; i < arrayLength; i++)
+                {
+                    alone[queueSize] = i;
+                    queueSize += ((t2count[i] & 0xFF) >> 2) == 1 ? 1 : 0;
+                }
+                while (queueSize > 0)
+                {
+                    int index = alone[--queueSize];
+                    if (((t2count[index] & 0xFF) >> 2) != 1)
+                        continue;
+
+                    long hash = t2hash[index];
+                    h012[1] = slot(1, hash, segmentLength, segmentCountLength);
+                    h012[2] = slot(2, hash, segmentLength, segmentCountLength);
+                    h012[3] = slot(0, hash, segmentLength, segmentCountLength);
+                    h012[4] = h012[1];
+                    int found = t2count[index] & 3;
+                    reverseH[stackSize] = (byte) found;
+                    reverseOrder[stackSize] = hash;
+                    stackSize++;
+
+                    for (int other = found + 1; other <= found + 2; other++)
+                    {
+                        int otherIndex = h012[other];
+                        alone[queueSize] = otherIndex;
+                        queueSize += ((t2count[otherIndex] & 0xFF) >> 2) == 2 ? 1 : 0;
+                        t2count[otherIndex] -= 4;
+                        t2count[otherIndex] ^= other > 2 ? other - 3 : other;
+                        t2hash[otherIndex] ^= hash;
+                    }
+                }
+            }
+
+            if (!error && stackSize + duplicates == size)
+            {
+                // assign the fingerprints in the reverse order of the peeling, so that each key sets a slot that no
+                // key assigned before it depends on
+                for (int i = stackSize - 1; i >= 0; i--)
+                {
+                    long hash = reverseOrder[i];
+                    int found = reverseH[i];
+                    h012[0] = slot(0, hash, segmentLength, segmentCountLength);
+                    h012[1] = slot(1, hash, segmentLength, segmentCountLength);
+                    h012[2] = slot(2, hash, segmentLength, segmentCountLength);
+                    h012[3] = h012[0];
+                    h012[4] = h012[1];
+                    set(fingerprints, fingerprintBits, h012[found], fingerprint(hash, fingerprintBits)
+                                                                   ^ get(fingerprints, fingerprintBits, h012[found + 1])
+                                                                   ^ get(fingerprints, fingerprintBits, h012[found + 2]));
+                }
+                return seed;
+            }
+
+            Arrays.fill(reverseOrder, 0, size, 0);
+            if (duplicates > 0)
+            {
+                size = sortAndRemoveDuplicates(keys, size);
+                reverseOrder[size] = 1;
+            }
+            Arrays.fill(t2count, (byte) 0);
+            Arrays.fill(t2hash, 0);
+        }
+    }
+
+    private static int sortAndRemoveDuplicates(Memory keys, int size)
+    {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++)
+            sorted[i] = keys.getLong(i * 8L);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                keys.setLong(8L * distinct++, sorted[i]);
+        }
+        return distinct;
+    }
+
+    /**
+     * Records the hashes of the keys of an sstable as they are written, to build its {@link XorFilter} once they are
+     * all known. The hashes are kept off-heap, in 16 bytes per key.
+     * <p>
+     * The number of keys of an sstable is only an estimate, so the builder does not record more than a given number of
+     * keys: past it, the keys are moved to a blocked Bloom filter sized for twice as many keys, which the remaining keys
+     * are added to, and which {@link #build} returns instead of an xor filter.
+     * <p>
+     * Until then, the builder is a filter that finds every key: an sstable opened early, before all its keys are
+     * written, shares {@link FilterFactory#AlwaysPresent} instead of the builder.
+     */
+    public static class Builder implements IFilter
+    {
+        private static final long MAX_INITIAL_KEYS = 1 << 20;
+
+        private final double maxFalsePosProbability;
+        private final long maxKeys;
+        private final MemoryLimiter memoryLimiter;
+        // the two halves of the hashes of the keys: the first ones build the xor filter, and both can be added to
+        // a Bloom filter
+        private Memory keys;
+        private Memory secondHalves;
+        private int size;
+        private IFilter bloomFilter;
+
+        Builder(long expectedKeys, double maxFalsePosProbability, long maxKeys, MemoryLimiter memoryLimiter)
+        {
+            this.maxFalsePosProbability = maxFalsePosProbability;
+            this.maxKeys = Math.min(maxKeys, MAX_KEYS);
+            this.memoryLimiter = memoryLimiter;
+            // the expected number of keys is an estimate, which may be much too high
+            long initialKeys = Math.max(1, Math.min(Math.min(expectedKeys, this.maxKeys), MAX_INITIAL_KEYS));
+            this.keys = Memory.allocate(8L * initialKeys);
+            this.secondHalves = Memory.allocate(8L * initialKeys);
+        }
+
+        public void add(FilterKey key)
+        {
+            if (bloomFilter != null)
+            {
+                bloomFilter.add(key);
+                return;
+            }
+
+            long[] hash = reusableHash.get();
+            key.filterHash(hash);
+            // a key is added again after a writer is reset and truncated; the construction handles other duplicates
+            if (size > 0 && keys.getLong(8L * (size - 1)) == hash[0])
+                return;
+
+            if (size >= maxKeys)
+            {
+                switchToBloomFilter();
+                bloomFilter.add(key);
+                return;
+            }
+
+            if (8L * size == keys.size())
+            {
+                keys = grow(keys);
+                secondHalves = grow(secondHalves);
+            }
+            keys.setLong(8L * size, hash[0]);
+            secondHalves.setLong(8L * size, hash[1]);
+            size++;
+        }
+
+        private static Memory grow(Memory memory)
+        {
+            Memory grown = memory.copy(memory.size() * 2);
+            memory.free();
+            return grown;
+        }
+
+        private void switchToBloomFilter()
+        {
+            logger.debug("Building a blocked Bloom filter instead of an xor filter for more than {} keys", size);
+            bloomFilter = FilterFactory.getFilter(2L * size, maxFalsePosProbability, FilterFactory.Type.BLOCKED, memoryLimiter);
+            for (long i = 0; i < size; i++)
+            {
+                long position = 8L * i;
+                bloomFilter.add(dest -> {
+                    dest[0] = keys.getLong(position);
+                    dest[1] = secondHalves.getLong(position);
+                });
+            }
+            size = 0;
+            freeKeys();
+        }
+
+        public boolean isPresent(FilterKey key)
+        {
+            return true;
+        }
+
+        /**
+         * Builds the filter of the keys added so far, and releases them.
+         *
+         * @return the built filter, a blocked Bloom filter if more keys were added than the builder records, or
+         * {@link FilterFactory#AlwaysPresent} if it cannot be built within the memory limit for filters
+         */
+        IFilter build()
+        {
+            try
+            {
+                if (bloomFilter != null)
+                {
+                    IFilter built = bloomFilter;
+                    bloomFilter = null;
+                    return built;
+                }
+                return construct(keys, size, fingerprintBitsFor(maxFalsePosProbability), memoryLimiter);
+            }
+            catch (MemoryLimiter.ReachedMemoryLimitException | OutOfMemoryError | IllegalStateException | IllegalArgumentException e)
+            {
+                logger.error("Failed to build an xor filter for {} keys: ({}) - " +
+                             "continuing but this will have severe performance implications, consider increasing FP chance or " +
+                             "lowering number of sstables through compaction", size, e.getMessage());
+                return FilterFactory.AlwaysPresent;
+            }
+            finally
+            {
+                close();
+            }
+        }
+
+        public void clear()
+        {
+            size = 0;
+            if (bloomFilter != null)
+                bloomFilter.clear();
+        }
+
+        public long serializedSize()
+        {
+            throw new UnsupportedOperationException("The xor filter must be built before it is serialized");
+        }
+
+        public void close()
+        {
+            freeKeys();
+            if (bloomFilter != null)
+                bloomFilter.close();
+            bloomFilter = null;
+        }
+
+        private void freeKeys()
+        {
+            if (keys != null)
+                keys.free();
+            keys = null;
+            if (secondHalves != null)
+                secondHalves.free();
+            secondHalves = null;
+        }
+
+        public IFilter sharedCopy()
+        {
+            return FilterFactory.AlwaysPresent;
+        }
+
+        public Throwable close(Throwable accumulate)
+        {
+            try
+            {
+                close();
+            }
+            catch (Throwable t)
+            {
+                accumulate = Throwables.merge(accumulate, t);
+            }
+            return accumulate;
+        }
+
+        public void addTo(Ref.IdentityCollection identities)
+        {
+        }
+
+        @Override
+        public long offHeapSize()
+        {
+            return (keys == null ? 0 : keys.size() + secondHalves.size())
+                   + (bloomFilter == null ? 0 : bloomFilter.offHeapSize());
+        }
+    }
+}
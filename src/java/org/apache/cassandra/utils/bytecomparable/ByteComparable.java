@@ -110,6 +110,15 @@ public interface ByteComparable
         return version -> ByteSource.separatorGt(prevMax.asComparableBytes(version), currMin.asComparableBytes(version));
     }
 
+    /**
+     * Returns the concatenation of the two byte comparables. The prefix must be prefix-free for the result to order
+     * the same way as the suffix for a fixed prefix.
+     */
+    static ByteComparable append(ByteComparable prefix, ByteComparable suffix)
+    {
+        return version -> ByteSource.append(prefix.asComparableBytes(version), suffix.asComparableBytes(version));
+    }
+
     static ByteComparable cut(ByteComparable src, int cutoff)
     {
         return version -> ByteSource.cut(src.asComparableBytes(version), cutoff);
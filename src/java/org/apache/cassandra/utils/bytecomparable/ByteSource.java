@@ -218,6 +218,31 @@ public interface ByteSource
         };
     }
 
+    /**
+     * Returns a source that lists the bytes of the given prefix followed by the bytes of the suffix. To preserve the
+     * ordering of the suffixes, the prefix must be prefix-free (e.g. a decorated key in an OSS41 encoding).
+     */
+    public static ByteSource append(ByteSource prefix, ByteSource suffix)
+    {
+        return new ByteSource()
+        {
+            boolean inSuffix = false;
+
+            @Override
+            public int next()
+            {
+                if (!inSuffix)
+                {
+                    int b = prefix.next();
+                    if (b != END_OF_STREAM)
+                        return b;
+                    inSuffix = true;
+                }
+                return suffix.next();
+            }
+        };
+    }
+
     public static ByteSource cut(ByteSource src, int cutoff)
     {
         return new ByteSource()
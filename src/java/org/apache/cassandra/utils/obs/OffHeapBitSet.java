@@ -20,6 +20,7 @@ package org.apache.cassandra.utils.obs;
 import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteOrder;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -36,6 +37,8 @@ import org.apache.cassandra.utils.concurrent.Ref;
  */
 public class OffHeapBitSet implements IBitSet
 {
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder().equals(ByteOrder.BIG_ENDIAN);
+
     /**
      * The maximum memory that can be used by bloom filters, in megabytes, overall.
      * The default is unlimited, a limit should only be set as a last resort measure.
@@ -123,6 +126,31 @@ public class OffHeapBitSet implements IBitSet
         bytes.setByte(i, (byte) (bitmask | bytes.getByte(i)));
     }
 
+    /**
+     * Returns the {@code count} bits starting at {@code index}, at most 57, as the low bits of a long. The bits are
+     * read with a single 8-byte access, so the bitset must extend at least 64 bits past {@code index}.
+     */
+    public long getBits(long index, int count)
+    {
+        long word = bytes.getLong(index >>> 3);
+        if (BIG_ENDIAN)
+            word = Long.reverseBytes(word);
+        return (word >>> (index & 0x7)) & ((1L << count) - 1);
+    }
+
+    /**
+     * Sets the {@code count} bits starting at {@code index} to the low bits of {@code value}, see {@link #getBits}.
+     */
+    public void setBits(long index, int count, long value)
+    {
+        long mask = ((1L << count) - 1) << (index & 0x7);
+        long word = bytes.getLong(index >>> 3);
+        if (BIG_ENDIAN)
+            word = Long.reverseBytes(word);
+        word = (word & ~mask) | ((value << (index & 0x7)) & mask);
+        bytes.setLong(index >>> 3, BIG_ENDIAN ? Long.reverseBytes(word) : word);
+    }
+
     public void set(long offset, byte b)
     {
         bytes.setByte(offset, b);
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.db.CachedHashDecoratedKey;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lookup latency of the filter types, for a read that checks the filters of many sstables, as with
+ * UnifiedCompactionStrategy. The filters are much bigger than the CPU caches, so that lookups are dominated by cache
+ * misses. The keys cache their hash, so that hashing does not hide the difference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 4, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+@State(Scope.Benchmark)
+public class BloomFilterLookupBench
+{
+    private static final int NUM_KEYS = 1 << 16;
+
+    @Param({"CLASSIC", "BLOCKED", "XOR"})
+    private FilterFactory.Type type;
+
+    @Param({"1000000"})
+    private int numElements;
+
+    @Param({"20"})
+    private int numFilters;
+
+    @Param({"0.01"})
+    private double fpChance;
+
+    private IFilter[] filters;
+    private IFilter.FilterKey[] presentKeys;
+    private IFilter.FilterKey[] absentKeys;
+    private int next;
+
+    private static IFilter.FilterKey key(long i)
+    {
+        return new CachedHashDecoratedKey(new Murmur3Partitioner.LongToken(i), ByteBufferUtil.bytes(i));
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        filters = new IFilter[numFilters];
+        for (int f = 0; f < numFilters; f++)
+        {
+            filters[f] = FilterFactory.getFilter(numElements, fpChance, type);
+            for (long i = 0; i < numElements; i++)
+                filters[f].add(key((long) f * numElements + i));
+            filters[f] = FilterFactory.complete(filters[f]);
+        }
+
+        presentKeys = new IFilter.FilterKey[NUM_KEYS];
+        absentKeys = new IFilter.FilterKey[NUM_KEYS];
+        long absentStart = (long) numFilters * numElements;
+        for (int i = 0; i < NUM_KEYS; i++)
+        {
+            // spread over the filters so that each read finds its key in one of them
+            presentKeys[i] = key((long) i * 7919 % absentStart);
+            absentKeys[i] = key(absentStart + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown()
+    {
+        for (IFilter filter : filters)
+            filter.close();
+    }
+
+    private int check(IFilter.FilterKey key)
+    {
+        int present = 0;
+        for (IFilter filter : filters)
+        {
+            if (filter.isPresent(key))
+                present++;
+        }
+        return present;
+    }
+
+    /** A read of a key that is in none of the sstables. */
+    @Benchmark
+    public int absentKeyLookup()
+    {
+        return check(absentKeys[next++ & (NUM_KEYS - 1)]);
+    }
+
+    /** A read of a key that is in one of the sstables. */
+    @Benchmark
+    public int presentKeyLookup()
+    {
+        return check(presentKeys[next++ & (NUM_KEYS - 1)]);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.io.util.File;
+import org.apache.cassandra.io.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_COPY_UNMERGED_PARTITIONS;
+
+/**
+ * Compares cursor compaction with and without copying the partitions that only one source contains
+ * (see {@link org.apache.cassandra.config.CassandraRelevantProperties#COMPACTION_COPY_UNMERGED_PARTITIONS}), for two
+ * sstables sharing the given fraction of their partitions. The sstables are restored before each compaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class CompactionCopyUnmergedBench extends CQLTester
+{
+    private static final int PARTITIONS = 20000;
+
+    @Param({"false", "true"})
+    boolean copyUnmerged;
+
+    @Param({"0.0", "0.5", "1.0"})
+    double overlap;
+
+    @Param({"1", "20"})
+    int rowsPerPartition;
+
+    ColumnFamilyStore cfs;
+    List<File> snapshotFiles;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        COMPACTION_COPY_UNMERGED_PARTITIONS.setBoolean(copyUnmerged);
+        CQLTester.prepareServer();
+        String keyspace = createKeyspace("CREATE KEYSPACE %s with replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 1 } and durable_writes = false");
+        String table = createTable(keyspace, "CREATE TABLE %s ( userid bigint, picid bigint, commentid bigint, PRIMARY KEY(userid, picid)) " +
+                                             "WITH compaction = { 'class' : 'SizeTieredCompactionStrategy' }");
+        String writeStatement = "INSERT INTO " + keyspace + '.' + table + " (userid, picid, commentid) VALUES (?, ?, ?)";
+        Keyspace.system().forEach(k -> k.getColumnFamilyStores().forEach(c -> c.disableAutoCompaction()));
+
+        cfs = Keyspace.open(keyspace).getColumnFamilyStore(table);
+        cfs.disableAutoCompaction();
+
+        // the second sstable starts within the partitions of the first so that they share the given fraction
+        long start = (long) ((1.0 - overlap) * PARTITIONS);
+        for (long offset : new long[]{ 0, start })
+        {
+            System.err.println("Writing " + PARTITIONS + " partitions from " + offset);
+            for (long i = offset; i < offset + PARTITIONS; i++)
+                for (long j = 0; j < rowsPerPartition; j++)
+                    execute(writeStatement, i, j, i);
+            cfs.forceBlockingFlush(ColumnFamilyStore.FlushReason.USER_FORCED);
+        }
+
+        cfs.snapshot("originals");
+        snapshotFiles = cfs.getDirectories().sstableLister(Directories.OnTxnErr.IGNORE).snapshots("originals").listFiles();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown()
+    {
+        CQLTester.cleanup();
+    }
+
+    @TearDown(Level.Invocation)
+    public void resetSnapshot()
+    {
+        cfs.truncateBlocking();
+
+        for (File directory : cfs.getDirectories().getCFDirectories())
+        {
+            for (File f : directory.tryList())
+            {
+                if (!f.isDirectory())
+                    FileUtils.delete(f);
+            }
+        }
+
+        for (File file : snapshotFiles)
+            FileUtils.createHardLink(file, new File(new File(file.toPath().getParent().getParent().getParent()), file.name()));
+
+        cfs.loadNewSSTables();
+    }
+
+    @Benchmark
+    public void compactSSTables()
+    {
+        cfs.forceMajorCompaction();
+    }
+}
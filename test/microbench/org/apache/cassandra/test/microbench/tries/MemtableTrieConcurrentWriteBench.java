@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench.tries;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.cassandra.db.tries.MemtableTrie;
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Multi-threaded writes to a single memtable trie with a skewed key distribution, comparing writers that serialize on
+ * a lock (as TrieMemtable shards did for all writes) with lock-free updates of existing keys, where only the addition
+ * of new keys is done under the lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1,jvmArgsAppend = { "-Xmx4G", "-Xms4G", "-Djmh.executor=CUSTOM", "-Djmh.executor.class=org.apache.cassandra.test.microbench.FastThreadExecutor"})
+@Threads(16)
+@State(Scope.Benchmark)
+public class MemtableTrieConcurrentWriteBench
+{
+    public enum WriteMode
+    {
+        LOCKED,
+        LOCK_FREE
+    }
+
+    @Param({"ON_HEAP", "OFF_HEAP"})
+    BufferType bufferType = BufferType.OFF_HEAP;
+
+    @Param({"LOCKED", "LOCK_FREE"})
+    WriteMode writeMode = WriteMode.LOCK_FREE;
+
+    @Param({"1000000"})
+    int count = 1000000;
+
+    // The number of hot keys, and the ratio of writes that go to them
+    @Param({"16"})
+    int hotKeys = 16;
+
+    @Param({"0", "0.5", "0.9"})
+    double hotWriteRatio = 0.9;
+
+    final static MemtableTrie.UpsertTransformer<Long, Long> resolver = (x, y) -> x == null ? y : x + y;
+
+    MemtableTrie<Long> trie;
+    ByteComparable[] keys;
+    final ReentrantLock writeLock = new ReentrantLock();
+
+    @Setup(Level.Iteration)
+    public void setup() throws Throwable
+    {
+        trie = new MemtableTrie<>(bufferType);
+        Random rand = new Random(1);
+        keys = new ByteComparable[count];
+        for (int i = 0; i < count; ++i)
+            keys[i] = ByteComparable.of(rand.nextLong());
+
+        // Start with the hot keys and half of the rest present, so that writes both update and add keys.
+        for (int i = 0; i < count; i += (i < hotKeys ? 1 : 2))
+            trie.putRecursive(keys[i], 1L, resolver);
+    }
+
+    @Benchmark
+    public void writeSkewed() throws MemtableTrie.SpaceExhaustedException
+    {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        ByteComparable key = rand.nextDouble() < hotWriteRatio
+                             ? keys[rand.nextInt(hotKeys)]
+                             : keys[rand.nextInt(count)];
+
+        switch (writeMode)
+        {
+        case LOCKED:
+            writeLock.lock();
+            try
+            {
+                trie.putSingleton(key, 1L, resolver);
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+            break;
+        case LOCK_FREE:
+            if (tryUpdateExisting(key))
+                return;
+
+            writeLock.lock();
+            try
+            {
+                if (!tryUpdateExisting(key))
+                    trie.putSingleton(key, 1L, resolver);
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+            break;
+        default:
+            throw new AssertionError();
+        }
+    }
+
+    private boolean tryUpdateExisting(ByteComparable key)
+    {
+        int index = trie.getContentIndex(key);
+        if (index < 0)
+            return false;
+
+        while (true)
+        {
+            Long current = trie.getContentAt(index);
+            if (trie.compareAndSetContent(index, current, resolver.apply(current, 1L)))
+                return true;
+        }
+    }
+}
@@ -20,17 +20,31 @@ package org.apache.cassandra.cache;
 
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.AccessIntent;
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.ChunkReader;
+import org.apache.cassandra.io.util.CompressedChunkReader;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.Rebufferer;
 import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.io.util.SequentialWriterOption;
+import org.apache.cassandra.schema.CompressionParams;
+import org.apache.cassandra.utils.memory.BufferPools;
 
 public class ChunkCacheTest
 {
@@ -70,4 +84,150 @@ public class ChunkCacheTest
         Assert.assertEquals(ChunkCache.instance.sizeOfFile(file.path()), 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testInvalidateFileKeepsOtherFiles() throws IOException
+    {
+        File file1 = writeTempFile();
+        File file2 = writeTempFile();
+
+        try (FileHandle.Builder builder1 = new FileHandle.Builder(file1).withChunkCache(ChunkCache.instance);
+             FileHandle h1 = builder1.complete();
+             RandomAccessReader r1 = h1.createReader();
+             FileHandle.Builder builder2 = new FileHandle.Builder(file2).withChunkCache(ChunkCache.instance);
+             FileHandle h2 = builder2.complete();
+             RandomAccessReader r2 = h2.createReader())
+        {
+            r1.reBuffer();
+            r2.reBuffer();
+            Assert.assertEquals(2, ChunkCache.instance.size());
+
+            ChunkCache.instance.invalidateFile(file1.path());
+            Assert.assertEquals(0, ChunkCache.instance.sizeOfFile(file1.path()));
+            Assert.assertEquals(1, ChunkCache.instance.sizeOfFile(file2.path()));
+            Assert.assertEquals(1, ChunkCache.instance.size());
+
+            // a reader of an invalidated file caches and tracks its chunks again
+            r1.seek(0);
+            r1.reBuffer();
+            Assert.assertEquals(1, ChunkCache.instance.sizeOfFile(file1.path()));
+            Assert.assertEquals(2, ChunkCache.instance.size());
+        }
+
+        Assert.assertEquals(0, ChunkCache.instance.size());
+    }
+
+    @Test
+    public void testScanReadersDoNotAdmitChunks() throws IOException
+    {
+        File file = writeTempFile();
+        try (FileHandle.Builder builder = new FileHandle.Builder(file).withChunkCache(ChunkCache.instance);
+             FileHandle h = builder.complete())
+        {
+            try (RandomAccessReader r = h.createReader(null, AccessIntent.COMPACTION))
+            {
+                r.reBuffer();
+                Assert.assertEquals(0, r.readByte());
+            }
+            Assert.assertEquals(0, ChunkCache.instance.sizeOfFile(file.path()));
+
+            try (RandomAccessReader r = h.createReader(null, AccessIntent.SCAN))
+            {
+                r.reBuffer();
+            }
+            Assert.assertEquals(ChunkCache.admitScans ? 1 : 0, ChunkCache.instance.sizeOfFile(file.path()));
+
+            try (RandomAccessReader r = h.createReader())
+            {
+                r.reBuffer();
+            }
+            Assert.assertEquals(1, ChunkCache.instance.sizeOfFile(file.path()));
+
+            // scans use the chunks that are already cached
+            long hits = ChunkCache.instance.metrics.hits();
+            try (RandomAccessReader r = h.createReader(null, AccessIntent.COMPACTION))
+            {
+                r.reBuffer();
+                Assert.assertEquals(0, r.readByte());
+            }
+            Assert.assertEquals(hits + 1, ChunkCache.instance.metrics.hits());
+        }
+
+        Assert.assertEquals(0, ChunkCache.instance.sizeOfFile(file.path()));
+    }
+
+    @Test
+    public void testCompressedTier() throws IOException
+    {
+        int chunkLength = 4096;
+        int chunks = 16;
+        File file = FileUtils.createTempFile("compressed", null);
+        file.deleteOnExit();
+        File metadataFile = new File(file.path() + ".metadata");
+        metadataFile.deleteOnExit();
+        try (CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataFile, null,
+                                                                               SequentialWriterOption.DEFAULT,
+                                                                               CompressionParams.lz4(chunkLength),
+                                                                               new MetadataCollector(new ClusteringComparator(BytesType.instance))))
+        {
+            for (int i = 0; i < chunks * chunkLength; ++i)
+                writer.write(i / 64);
+            writer.finish();
+        }
+
+        // the main tier only has room for a couple of chunks, the compressed tier for all of them
+        ChunkCache cache = new ChunkCache(BufferPools.forChunkCache(), 1 << 20, 0.99);
+        CompressionMetadata metadata = new CompressionMetadata(metadataFile, file.length(), true);
+        ChannelProxy channel = new ChannelProxy(file);
+        try (ChunkReader reader = new CompressedChunkReader.Standard(channel, metadata))
+        {
+            Rebufferer rebufferer = cache.wrap(reader).instantiateRebufferer();
+            for (int round = 0; round < 3; ++round)
+            {
+                for (int chunk = 0; chunk < chunks; ++chunk)
+                {
+                    Rebufferer.BufferHolder holder = rebufferer.rebuffer((long) chunk * chunkLength);
+                    try
+                    {
+                        ByteBuffer buffer = holder.buffer();
+                        Assert.assertEquals((long) chunk * chunkLength, holder.offset());
+                        Assert.assertEquals(chunkLength, buffer.remaining());
+                        for (int i = 0; i < chunkLength; i += 64)
+                            Assert.assertEquals((byte) ((chunk * chunkLength + i) / 64), buffer.get(i));
+                    }
+                    finally
+                    {
+                        holder.release();
+                    }
+                }
+            }
+
+            Assert.assertEquals(chunks, cache.compressedSizeOfFile(file.path()));
+            Assert.assertTrue(cache.sizeOfFile(file.path()) < chunks);
+            // each chunk is read from disk once, and decompressed from the compressed tier afterwards
+            Assert.assertEquals(chunks, cache.compressedMetrics.misses());
+            Assert.assertTrue(cache.compressedMetrics.hits() > 0);
+
+            cache.invalidateFile(file.path());
+            Assert.assertEquals(0, cache.compressedSizeOfFile(file.path()));
+            Assert.assertEquals(0, cache.sizeOfFile(file.path()));
+        }
+        finally
+        {
+            cache.close();
+            channel.close();
+            metadata.close();
+        }
+    }
+
+    private static File writeTempFile() throws IOException
+    {
+        File file = FileUtils.createTempFile("foo", null);
+        file.deleteOnExit();
+        try (SequentialWriter writer = new SequentialWriter(file))
+        {
+            writer.write(new byte[64]);
+            writer.flush();
+        }
+        return file;
+    }
+}
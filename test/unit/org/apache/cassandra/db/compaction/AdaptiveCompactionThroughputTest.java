@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveCompactionThroughputTest extends CQLTester
+{
+    private int throughput;
+
+    @Before
+    public void saveThroughput()
+    {
+        throughput = DatabaseDescriptor.getCompactionThroughputMbPerSec();
+    }
+
+    @After
+    public void restoreThroughput()
+    {
+        DatabaseDescriptor.setCompactionThroughputMbPerSec(throughput);
+        CompactionManager.instance.setRate(throughput);
+    }
+
+    @Test
+    public void testNextThroughput()
+    {
+        AdaptiveCompactionThroughput controller = new AdaptiveCompactionThroughput(10, 8, 256, 4, 2);
+
+        // above the target latency or queue depth, lowered down to the minimum
+        assertEquals(48, controller.nextThroughput(64, 12, 0, false));
+        assertEquals(48, controller.nextThroughput(64, 5, 6, false));
+        assertEquals(8, controller.nextThroughput(9, 12, 0, false));
+        assertEquals(8, controller.nextThroughput(8, 12, 0, false));
+
+        // with headroom, raised up to the maximum
+        assertEquals(80, controller.nextThroughput(64, 5, 1, false));
+        assertEquals(256, controller.nextThroughput(250, 5, 1, false));
+        assertEquals(10, controller.nextThroughput(8, 5, 1, false));
+
+        // close to the target, unchanged
+        assertEquals(64, controller.nextThroughput(64, 9, 1, false));
+
+        // falling behind, raised even when the reads suffer
+        assertEquals(80, controller.nextThroughput(64, 12, 6, true));
+
+        // unthrottled or out of range, brought back within the range first
+        assertEquals(192, controller.nextThroughput(0, 12, 0, false));
+        assertEquals(256, controller.nextThroughput(1024, 9, 0, false));
+        assertEquals(8, controller.nextThroughput(1, 9, 0, false));
+
+        // the queue depth is ignored without a limit
+        controller = new AdaptiveCompactionThroughput(10, 8, 256, 0, 2);
+        assertEquals(80, controller.nextThroughput(64, 5, 100, false));
+    }
+
+    @Test
+    public void testDiskQueueDepth()
+    {
+        Map<String, Long> before = AdaptiveCompactionThroughput.parseDiskStats(Arrays.asList(
+            "   8       0 sda 1000 10 20000 500 2000 30 40000 900 0 1200 1400 0 0 0 0",
+            "   8       1 sda1 900 10 18000 450 1900 30 38000 850 0 1100 1300 0 0 0 0",
+            " 259       0 nvme0n1 50 0 400 5 60 0 480 6 0 10 11",
+            "bogus line"));
+        assertEquals(ImmutableMap.of("sda", 1400L, "sda1", 1300L, "nvme0n1", 11L), before);
+
+        Map<String, Long> after = ImmutableMap.of("sda", 11400L, "sda1", 6300L, "nvme0n1", 30011L, "sdb", 100000L);
+        assertEquals(3.0, AdaptiveCompactionThroughput.queueDepth(before, after, 10000), 0.001);
+        assertEquals(0, AdaptiveCompactionThroughput.queueDepth(before, after, 0), 0);
+    }
+
+    @Test
+    public void testBlockDevices() throws Throwable
+    {
+        // a sysfs layout with a partitioned disk, a device-mapper device on one of its partitions, and a loop device
+        Path sys = Files.createTempDirectory("sys");
+        Path sda = Files.createDirectories(sys.resolve("devices/pci0000:00/block/sda"));
+        Path sda1 = Files.createDirectories(sda.resolve("sda1"));
+        Path sda2 = Files.createDirectories(sda.resolve("sda2"));
+        Files.write(sda1.resolve("partition"), "1".getBytes());
+        Files.write(sda2.resolve("partition"), "2".getBytes());
+        Path dm0 = Files.createDirectories(sys.resolve("devices/virtual/block/dm-0"));
+        Files.createDirectories(dm0.resolve("slaves"));
+        Files.createSymbolicLink(dm0.resolve("slaves/sda2"), sda2);
+        Path loop0 = Files.createDirectories(sys.resolve("devices/virtual/block/loop0"));
+        Path devBlock = Files.createDirectories(sys.resolve("dev/block"));
+        Files.createSymbolicLink(devBlock.resolve("8:0"), sda);
+        Files.createSymbolicLink(devBlock.resolve("8:1"), sda1);
+        Files.createSymbolicLink(devBlock.resolve("8:2"), sda2);
+        Files.createSymbolicLink(devBlock.resolve("253:0"), dm0);
+        Files.createSymbolicLink(devBlock.resolve("7:0"), loop0);
+
+        assertEquals(ImmutableSet.of("sda1", "sda"), AdaptiveCompactionThroughput.blockDevices(devBlock, Arrays.asList("8:1")));
+        assertEquals(ImmutableSet.of("dm-0", "sda2", "sda"), AdaptiveCompactionThroughput.blockDevices(devBlock, Arrays.asList("253:0")));
+        // file systems without a block device
+        assertEquals(ImmutableSet.of(), AdaptiveCompactionThroughput.blockDevices(devBlock, Arrays.asList("0:42")));
+    }
+
+    @Test
+    public void testCompactionBehind() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int PRIMARY KEY, v int) WITH compaction = {'class': 'UnifiedCompactionStrategy', 'scaling_parameters': 'T4'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        AdaptiveCompactionThroughput controller = new AdaptiveCompactionThroughput(10, 8, 256, 0, 2);
+
+        for (int i = 0; i < 9; i++)
+        {
+            execute("INSERT INTO %s (pk, v) VALUES (?, ?)", 0, i);
+            execute("INSERT INTO %s (pk, v) VALUES (?, ?)", 100, i);
+            flush();
+
+            UnifiedCompactionStrategy strategy = (UnifiedCompactionStrategy) cfs.getCompactionStrategyContainer().getStrategies().get(0);
+            strategy.setPendingCompactionAggregates(strategy.getPendingCompactionAggregates(FBUtilities.nowInSeconds()));
+            // the threshold of the level is 4, compaction is behind when more than 8 sstables overlap
+            assertEquals(i >= 8, controller.isCompactionBehind());
+        }
+    }
+
+    @Test
+    public void testAdjust()
+    {
+        // without reads the latency is well below any target
+        AdaptiveCompactionThroughput controller = new AdaptiveCompactionThroughput(1000, 8, 256, 0, 2);
+        DatabaseDescriptor.setCompactionThroughputMbPerSec(64);
+
+        assertEquals(80, controller.adjust());
+        assertEquals(80, DatabaseDescriptor.getCompactionThroughputMbPerSec());
+        assertEquals(80 * 1024.0 * 1024.0, CompactionManager.instance.getRateLimiter().getRate(), 0);
+        assertTrue(controller.adjust() > 80);
+    }
+}
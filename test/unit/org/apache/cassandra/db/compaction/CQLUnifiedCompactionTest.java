@@ -18,9 +18,15 @@ package org.apache.cassandra.db.compaction;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -28,12 +34,20 @@ import org.junit.Test;
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.db.compaction.unified.AdaptiveController;
 import org.apache.cassandra.db.compaction.unified.Controller;
 import org.apache.cassandra.db.compaction.unified.StaticController;
+import org.apache.cassandra.io.compress.LZ4Compressor;
+import org.apache.cassandra.io.compress.ZstdCompressor;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 
+import static org.apache.cassandra.config.CassandraRelevantProperties.CURSORS_ENABLED;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -349,6 +363,166 @@ public class CQLUnifiedCompactionTest extends CQLTester
         assertEquals(numFinalSSTables * numShards, cfs.getLiveSSTables().size());
     }
 
+    @Test
+    public void testLevelCompression() throws Throwable
+    {
+        // W = 2 => T = F = 4, the flushes stay on level 0 and their compaction moves to level 1
+        createTable("create table %s (id int primary key, val blob) with compression = {'class': 'LZ4Compressor'} AND " +
+                    "compaction = {'class':'UnifiedCompactionStrategy', 'adaptive' : 'false', 'scaling_parameters' : '2', " +
+                    "'flush_size_override' : '1MiB', 'base_shard_count': '1', " +
+                    "'level_compression' : '[{\"class\": \"LZ4Compressor\", \"chunk_length_in_kb\": 4}, " +
+                    "{\"class\": \"ZstdCompressor\", \"compression_level\": 5, \"chunk_length_in_kb\": 64}]'}");
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+
+        // use a different random value for each row so that the flushed sstables are close to the flush size
+        int key = 0;
+        Random random = new Random(87652);
+        for (int i = 0; i < 4; i++)
+        {
+            for (int j = 0; j < 1024; j++)
+            {
+                byte[] bytes = new byte[1024];
+                random.nextBytes(bytes);
+                execute("INSERT INTO %s (id, val) VALUES(?,?)", key++, ByteBuffer.wrap(bytes));
+            }
+            flush();
+        }
+
+        assertEquals(4, cfs.getLiveSSTables().size());
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+        {
+            assertTrue(sstable.getCompressionMetadata().compressor() instanceof LZ4Compressor);
+            assertEquals(4096, sstable.getCompressionMetadata().chunkLength());
+        }
+
+        cfs.enableAutoCompaction(true);
+
+        assertEquals(1, cfs.getLiveSSTables().size());
+        SSTableReader compacted = cfs.getLiveSSTables().iterator().next();
+        assertTrue(compacted.getCompressionMetadata().compressor() instanceof ZstdCompressor);
+        assertEquals(5, ((ZstdCompressor) compacted.getCompressionMetadata().compressor()).getCompressionLevel());
+        assertEquals(65536, compacted.getCompressionMetadata().chunkLength());
+        assertEquals(key, getRows(execute("SELECT * FROM %s")).length);
+    }
+
+    @Test
+    public void testParallelizeOutputShards() throws Throwable
+    {
+        testParallelizeOutputShards(true);
+        testParallelizeOutputShards(false);
+    }
+
+    private void testParallelizeOutputShards(boolean cursors) throws Throwable
+    {
+        CURSORS_ENABLED.setBoolean(cursors);
+        try
+        {
+            ColumnFamilyStore parallel = createShardedTable(true);
+            ColumnFamilyStore serial = createShardedTable(false);
+
+            Collection<SSTableReader> parallelOutput = compactAll(parallel, 4);
+            Collection<SSTableReader> serialOutput = compactAll(serial, 0);
+
+            // compacting the shards in parallel writes the same sstables as compacting them one after the other
+            assertEquals(4, parallelOutput.size());
+            assertEquals(serialOutput.size(), parallelOutput.size());
+            List<SSTableReader> parallelSSTables = sortedByFirst(parallel.getLiveSSTables());
+            List<SSTableReader> serialSSTables = sortedByFirst(serial.getLiveSSTables());
+            assertEquals(sortedByFirst(parallelOutput), parallelSSTables);
+            for (int i = 0; i < parallelSSTables.size(); i++)
+            {
+                assertEquals(serialSSTables.get(i).getFirst(), parallelSSTables.get(i).getFirst());
+                assertEquals(serialSSTables.get(i).getLast(), parallelSSTables.get(i).getLast());
+                assertEquals(serialSSTables.get(i).estimatedKeys(), parallelSSTables.get(i).estimatedKeys());
+            }
+            assertArrayEquals(getRows(execute("SELECT * FROM " + KEYSPACE + '.' + serial.getTableName())),
+                              getRows(execute("SELECT * FROM " + KEYSPACE + '.' + parallel.getTableName())));
+        }
+        finally
+        {
+            CURSORS_ENABLED.setBoolean(true);
+        }
+    }
+
+    @Test
+    public void testHelperThreadsReservations()
+    {
+        createTable("create table %s (id int primary key, val blob) with compaction = {'class':'UnifiedCompactionStrategy', 'adaptive' : 'false'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        UnifiedCompactionStrategy strategy = (UnifiedCompactionStrategy) cfs.getCompactionStrategyContainer().getStrategies().get(0);
+        int maxThreads = strategy.getController().maxConcurrentCompactions();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        // the helpers take up the thread budget until they are released
+        int reserved = strategy.reserveHelperThreads(first, maxThreads + 10);
+        assertTrue(reserved >= 1 && reserved <= maxThreads);
+        assertEquals(0, strategy.reserveHelperThreads(second, 1));
+
+        for (int i = 0; i < reserved; i++)
+            strategy.releaseHelperThread(first);
+        assertEquals(reserved, strategy.reserveHelperThreads(second, maxThreads + 10));
+        for (int i = 0; i < reserved; i++)
+            strategy.releaseHelperThread(second);
+    }
+
+    private ColumnFamilyStore createShardedTable(boolean parallelizeOutputShards) throws Throwable
+    {
+        createTable("create table %s (id int, ck int, val blob, primary key (id, ck)) with compaction = " +
+                    "{'class':'UnifiedCompactionStrategy', 'adaptive' : 'false', 'base_shard_count': '4', " +
+                    "'parallelize_output_shards' : '" + parallelizeOutputShards + "'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+
+        // overlapping sstables with overwrites and deletions, written the same way for both tables
+        Random random = new Random(5427);
+        for (int i = 0; i < 4; i++)
+        {
+            for (int j = 0; j < 500; j++)
+            {
+                byte[] bytes = new byte[100];
+                random.nextBytes(bytes);
+                execute("INSERT INTO %s (id, ck, val) VALUES(?, ?, ?)", random.nextInt(1000), random.nextInt(3), ByteBuffer.wrap(bytes));
+            }
+            for (int j = 0; j < 20; j++)
+                execute("DELETE FROM %s WHERE id = ?", random.nextInt(1000));
+            flush();
+        }
+        // flushes are split by shard too
+        assertEquals(4 * 4, cfs.getLiveSSTables().size());
+        return cfs;
+    }
+
+    private Collection<SSTableReader> compactAll(ColumnFamilyStore cfs, int expectedParts)
+    {
+        UnifiedCompactionStrategy strategy = (UnifiedCompactionStrategy) cfs.getCompactionStrategyContainer().getStrategies().get(0);
+        LifecycleTransaction txn = cfs.getTracker().tryModify(cfs.getLiveSSTables(), OperationType.COMPACTION);
+        CompactionTask task = strategy.createCompactionTask(txn, cfs.gcBefore(FBUtilities.nowInSeconds()), Long.MAX_VALUE);
+
+        // the parts are split at the shard boundaries and cover all tokens
+        List<Range<Token>> ranges = task.getParallelRanges(txn.originals());
+        assertEquals(expectedParts, ranges.size());
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            Token start = i == 0 ? cfs.getPartitioner().getMinimumToken() : ranges.get(i - 1).right;
+            assertEquals(start, ranges.get(i).left);
+        }
+        if (!ranges.isEmpty())
+            assertTrue(ranges.get(ranges.size() - 1).right.isMinimum());
+
+        Set<SSTableReader> inputs = ImmutableSet.copyOf(txn.originals());
+        task.execute(CompactionManager.instance.active);
+        return Sets.difference(cfs.getLiveSSTables(), inputs);
+    }
+
+    private static List<SSTableReader> sortedByFirst(Collection<SSTableReader> sstables)
+    {
+        return sstables.stream().sorted(CompactionSSTable.firstKeyComparator).collect(Collectors.toList());
+    }
+
     private int insertAndFlush(int numInserts, int key, ByteBuffer val) throws Throwable
     {
         for (int i = 0; i < numInserts; i++)
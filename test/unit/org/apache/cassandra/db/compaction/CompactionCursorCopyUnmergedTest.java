@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.compaction.writers.SSTableDataSink;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.rows.Unfiltered;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexSSTableReader;
+import org.apache.cassandra.io.sstable.compaction.SSTableCursor;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.COMPACTION_COPY_UNMERGED_PARTITIONS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class CompactionCursorCopyUnmergedTest extends CQLTester
+{
+    @Before
+    public void enableCopy()
+    {
+        COMPACTION_COPY_UNMERGED_PARTITIONS.setBoolean(true);
+    }
+
+    @After
+    public void resetCopy()
+    {
+        COMPACTION_COPY_UNMERGED_PARTITIONS.setBoolean(false);
+    }
+
+    /**
+     * Writes the output of a compaction cursor to an sstable with the given header.
+     */
+    private static class WriterSink implements SSTableDataSink
+    {
+        final SSTableWriter writer;
+        int serializedUnfiltereds;
+
+        WriterSink(SSTableWriter writer)
+        {
+            this.writer = writer;
+        }
+
+        public boolean append(UnfilteredRowIterator partition)
+        {
+            return writer.append(partition) != null;
+        }
+
+        public boolean startPartition(DecoratedKey partitionKey, DeletionTime deletionTime) throws IOException
+        {
+            return writer.startPartition(partitionKey, deletionTime);
+        }
+
+        public void endPartition() throws IOException
+        {
+            writer.endPartition();
+        }
+
+        public void addUnfiltered(Unfiltered unfiltered) throws IOException
+        {
+            writer.addUnfiltered(unfiltered);
+        }
+
+        public boolean canCopySerialized(Version version, SerializationHeader header)
+        {
+            return writer.canCopySerialized(version, header);
+        }
+
+        public void addSerializedUnfiltered(Unfiltered unfiltered, ByteBuffer serialized) throws IOException
+        {
+            ++serializedUnfiltereds;
+            writer.addSerializedUnfiltered(unfiltered, serialized);
+        }
+    }
+
+    private static class Compacted
+    {
+        final SSTableReader sstable;
+        final long copiedUnmergedPartitions;
+        final int serializedUnfiltereds;
+
+        Compacted(SSTableReader sstable, long copiedUnmergedPartitions, int serializedUnfiltereds)
+        {
+            this.sstable = sstable;
+            this.copiedUnmergedPartitions = copiedUnmergedPartitions;
+            this.serializedUnfiltereds = serializedUnfiltereds;
+        }
+    }
+
+    private Compacted compact(Collection<SSTableReader> sstables, SerializationHeader header) throws IOException
+    {
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        LifecycleTransaction txn = LifecycleTransaction.offline(OperationType.WRITE, cfs.metadata);
+        try (CompactionController controller = new CompactionController(cfs, ImmutableSet.copyOf(sstables), CompactionManager.NO_GC);
+             CompactionCursor cursor = new CompactionCursor(OperationType.COMPACTION, sstables, controller, RateLimiter.create(Double.MAX_VALUE), FBUtilities.nowInSeconds(), UUID.randomUUID());
+             SSTableWriter writer = SSTableWriter.create(cfs.newSSTableDescriptor(cfs.getDirectories().getDirectoryForNewSSTables()),
+                                                         100, 0, null, false, header, cfs.indexManager.listIndexGroups(), txn))
+        {
+            WriterSink sink = new WriterSink(writer);
+            while (cursor.copyOne(sink) != SSTableCursor.Type.EXHAUSTED)
+            {}
+            return new Compacted(writer.finish(true), cursor.copiedUnmergedPartitions(), sink.serializedUnfiltereds);
+        }
+    }
+
+    private static byte[] data(SSTableReader sstable) throws IOException
+    {
+        byte[] bytes = new byte[(int) sstable.uncompressedLength()];
+        try (RandomAccessReader reader = sstable.openDataReader())
+        {
+            reader.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    private void createTableWith(String options)
+    {
+        createTable("CREATE TABLE %s (k int, c int, s text static, v text, PRIMARY KEY (k, c)) WITH " + options);
+        disableCompaction();
+    }
+
+    private void writeSSTable(int fromKey, int toKey, boolean expiring) throws Throwable
+    {
+        for (int k = fromKey; k < toKey; k++)
+        {
+            if (k % 3 == 0)
+                execute("INSERT INTO %s (k, s) VALUES (?, ?)", k, "static" + k);
+            for (int c = 0; c < 20; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, "value" + c);
+            if (k % 7 == 0)
+                execute("DELETE FROM %s WHERE k = ? AND c > 1 AND c < 4", k);
+            if (expiring && k % 11 == 0)
+                execute("UPDATE %s USING TTL 10000 SET v = ? WHERE k = ? AND c = ?", "expiring", k, 5);
+        }
+        flush();
+    }
+
+    @Test
+    public void testCopySerialized() throws Throwable
+    {
+        createTableWith("compression = {'enabled': false}");
+        writeSSTable(0, 100, false);
+        SSTableReader sstable = getCurrentColumnFamilyStore().getLiveSSTables().iterator().next();
+        assumeTrue(sstable instanceof TrieIndexSSTableReader);
+
+        Compacted compacted = compact(ImmutableList.of(sstable), sstable.header);
+        try
+        {
+            // with the header of the source, the rows are copied as they are serialized in the source
+            assertEquals(100, compacted.copiedUnmergedPartitions);
+            assertTrue(compacted.serializedUnfiltereds > 0);
+            assertArrayEquals(data(sstable), data(compacted.sstable));
+            assertEquals(sstable.getMinTimestamp(), compacted.sstable.getMinTimestamp());
+            assertEquals(sstable.getMaxTimestamp(), compacted.sstable.getMaxTimestamp());
+            assertEquals(sstable.getMaxTTL(), compacted.sstable.getMaxTTL());
+            assertEquals(sstable.estimatedKeys(), compacted.sstable.estimatedKeys());
+        }
+        finally
+        {
+            compacted.sstable.selfRef().release();
+        }
+    }
+
+    private void assertSameAsMerged(int expectedCopied, boolean expectSerialized) throws Throwable
+    {
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        Collection<SSTableReader> sstables = cfs.getLiveSSTables();
+        SerializationHeader header = SerializationHeader.make(cfs.metadata(), sstables);
+        // if the header reuses the stats of one of the sources, the rows of its partitions are copied serialized
+        assertEquals(expectSerialized, Iterables.any(sstables, sstable -> sstable.header.toComponent().equals(header.toComponent())));
+
+        COMPACTION_COPY_UNMERGED_PARTITIONS.setBoolean(false);
+        Compacted merged = compact(sstables, header);
+        COMPACTION_COPY_UNMERGED_PARTITIONS.setBoolean(true);
+        Compacted copied = compact(sstables, header);
+        try
+        {
+            assertEquals(0, merged.copiedUnmergedPartitions);
+            assertEquals(expectedCopied, copied.copiedUnmergedPartitions);
+            assertEquals(0, merged.serializedUnfiltereds);
+            assertEquals(expectSerialized, copied.serializedUnfiltereds > 0);
+            // copying a partition writes it as merging would
+            assertArrayEquals(data(merged.sstable), data(copied.sstable));
+            assertEquals(merged.sstable.getSSTableMetadata().totalRows, copied.sstable.getSSTableMetadata().totalRows);
+            assertEquals(merged.sstable.getMinTimestamp(), copied.sstable.getMinTimestamp());
+            assertEquals(merged.sstable.getMaxLocalDeletionTime(), copied.sstable.getMaxLocalDeletionTime());
+        }
+        finally
+        {
+            merged.sstable.selfRef().release();
+            copied.sstable.selfRef().release();
+        }
+    }
+
+    @Test
+    public void testCopyUnmergedPartitions() throws Throwable
+    {
+        createTableWith("compression = {'enabled': false}");
+        writeSSTable(0, 60, false);
+        writeSSTable(50, 100, false);
+        execute("DELETE FROM %s WHERE k = 20");
+        execute("DELETE FROM %s WHERE k = 70 AND c = 3");
+        execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", 200, 1, "new");
+        flush();
+        UntypedResultSet before = execute("SELECT * FROM %s");
+
+        // keys 50 to 59, 20 and 70 are in several sstables
+        assertSameAsMerged(100 + 1 - 10 - 2, true);
+
+        compact();
+        assertRowsIgnoringOrder(execute("SELECT * FROM %s"), rows(before));
+    }
+
+    @Test
+    public void testExpiringSources() throws Throwable
+    {
+        createTableWith("compression = {'enabled': false}");
+        writeSSTable(0, 50, true);
+        writeSSTable(50, 100, false);
+        execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?) USING TTL 10000", 200, 1, "new");
+        flush();
+
+        // the first sstable may hold both tombstones and cells that expire during the compaction, the others can not;
+        // the minimum time-to-live of the sources differ, so the header cannot reuse the stats of one of them
+        assertSameAsMerged(51, false);
+    }
+
+    private static Object[][] rows(UntypedResultSet result)
+    {
+        Object[][] rows = new Object[result.size()][];
+        int i = 0;
+        for (UntypedResultSet.Row row : result)
+            rows[i++] = row(row.getInt("k"), row.getInt("c"), row.has("s") ? row.getString("s") : null, row.has("v") ? row.getString("v") : null);
+        return rows;
+    }
+}
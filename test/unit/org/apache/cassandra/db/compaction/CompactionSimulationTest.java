@@ -407,6 +407,8 @@ public class CompactionSimulationTest extends BaseCompactionStrategyTest
                                                          0,
                                                          Reservations.Type.PER_LEVEL,
                                                          overlapInclusionMethod,
+                                                         null,
+                                                         false,
                                                          updateTimeSec,
                                                          minW,
                                                          maxW,
@@ -432,6 +434,8 @@ public class CompactionSimulationTest extends BaseCompactionStrategyTest
                                                        0,
                                                        Reservations.Type.PER_LEVEL,
                                                        overlapInclusionMethod,
+                                                       null,
+                                                       false,
                                                        "ks",
                                                        "tbl");
 
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.index.StubIndex;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.CURSORS_ENABLED;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that compactions of indexed tables keep the indexes in sync, whether they are done with cursors or iterators.
+ */
+@RunWith(Parameterized.class)
+public class CursorCompactionIndexTest extends CQLTester
+{
+    @Parameterized.Parameter
+    public boolean useCursors;
+
+    @Parameterized.Parameters(name = "useCursors={0}")
+    public static Collection<Object[]> parameters()
+    {
+        return Arrays.asList(new Object[]{ true }, new Object[]{ false });
+    }
+
+    @Before
+    public void setCursors()
+    {
+        CURSORS_ENABLED.setBoolean(useCursors);
+    }
+
+    @After
+    public void resetCursors()
+    {
+        CURSORS_ENABLED.setBoolean(true);
+    }
+
+    @Test
+    public void testStaleEntriesRemovedFromIndex() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        String indexName = createIndex(String.format("CREATE CUSTOM INDEX ON %%s(v) USING '%s'", StubIndex.class.getName()));
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        StubIndex index = (StubIndex) cfs.indexManager.getIndexByName(indexName);
+
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 1) USING TIMESTAMP 1");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1) USING TIMESTAMP 1");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 1) USING TIMESTAMP 1");
+        flush();
+        execute("UPDATE %s USING TIMESTAMP 2 SET v = 2 WHERE k = 0 AND c = 0");
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE k = 1");
+        flush();
+        execute("INSERT INTO %s (k, c, v) VALUES (2, 0, 3) USING TIMESTAMP 3");
+        flush();
+
+        index.reset();
+        compact();
+
+        // only the overwritten value is removed, rows deleted with their partition are left to the index to clean up
+        assertEquals(1, index.rowsDeleted.size());
+        Row removed = index.rowsDeleted.get(0);
+        assertEquals(Clustering.make(ByteBufferUtil.bytes(0)), removed.clustering());
+        ColumnMetadata v = cfs.metadata().getColumn(ByteBufferUtil.bytes("v"));
+        Cell<?> cell = removed.getCell(v);
+        assertEquals(1, ByteBufferUtil.toInt(cell.buffer()));
+        assertEquals(1, cell.timestamp());
+        assertEquals(0, index.rowsInserted.size());
+    }
+
+    @Test
+    public void testLegacyIndexAfterCompaction() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        createIndex("CREATE INDEX ON %s(v)");
+        getCurrentColumnFamilyStore().disableAutoCompaction();
+        writeOverwrites();
+
+        compact();
+        assertRows(execute("SELECT k, c FROM %s WHERE v = 1"), row(0, 1));
+        assertRows(execute("SELECT k, c FROM %s WHERE v = 2"), row(0, 0));
+        assertEmpty(execute("SELECT k, c FROM %s WHERE v = 3"));
+    }
+
+    @Test
+    public void testStorageAttachedIndexAfterCompaction() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        createIndex("CREATE CUSTOM INDEX ON %s(v) USING 'StorageAttachedIndex'");
+        getCurrentColumnFamilyStore().disableAutoCompaction();
+        writeOverwrites();
+
+        compact();
+        assertRows(execute("SELECT k, c FROM %s WHERE v = 1"), row(0, 1));
+        assertRows(execute("SELECT k, c FROM %s WHERE v = 2"), row(0, 0));
+        assertEmpty(execute("SELECT k, c FROM %s WHERE v = 3"));
+    }
+
+    private void writeOverwrites() throws Throwable
+    {
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 1) USING TIMESTAMP 1");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1) USING TIMESTAMP 1");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 3) USING TIMESTAMP 1");
+        flush();
+        execute("UPDATE %s USING TIMESTAMP 2 SET v = 2 WHERE k = 0 AND c = 0");
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE k = 1");
+        flush();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.File;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.CURSORS_ENABLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataDirectoryIOBudgetTest extends CQLTester
+{
+    @After
+    public void resetThroughput()
+    {
+        DatabaseDescriptor.setDataDirectoryReadThroughputMbPerSec(0);
+        DatabaseDescriptor.setDataDirectoryWriteThroughputMbPerSec(0);
+        CURSORS_ENABLED.setBoolean(true);
+    }
+
+    @Test
+    public void testForFile() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int PRIMARY KEY, v int)");
+        execute("INSERT INTO %s (pk, v) VALUES (1, 1)");
+        flush();
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        Directories.DataDirectory directory = cfs.getDirectories().getDataDirectoryForFile(sstable.descriptor);
+
+        DataDirectoryIOBudget budget = DataDirectoryIOBudget.forSSTable(sstable);
+        assertSame(DataDirectoryIOBudget.get(directory), budget);
+        assertSame(budget, DataDirectoryIOBudget.forFile(directory.location));
+        assertNull(DataDirectoryIOBudget.forFile(new File("/nonexistent/" + KEYSPACE)));
+    }
+
+    @Test
+    public void testThrottling()
+    {
+        DataDirectoryIOBudget budget = DataDirectoryIOBudget.get(Directories.dataDirectories.iterator().next());
+        long readBytes = budget.metrics.readBytes.getCount();
+        long throttledMicros = budget.metrics.readThrottledMicros.getCount();
+
+        DatabaseDescriptor.setDataDirectoryReadThroughputMbPerSec(1);
+        // the limiter allows a burst of one second's worth of bytes, and grants the first request beyond it immediately
+        // but makes the next one wait for it
+        budget.acquireRead(2 * 1024 * 1024);
+        budget.acquireRead(1);
+
+        assertEquals(readBytes + 2 * 1024 * 1024 + 1, budget.metrics.readBytes.getCount());
+        assertTrue(budget.metrics.readThrottledMicros.getCount() - throttledMicros > 500_000);
+    }
+
+    @Test
+    public void testCompactionChargesItsDirectory() throws Throwable
+    {
+        testCompactionChargesItsDirectory(true);
+        testCompactionChargesItsDirectory(false);
+    }
+
+    private void testCompactionChargesItsDirectory(boolean cursors) throws Throwable
+    {
+        CURSORS_ENABLED.setBoolean(cursors);
+        createTable("CREATE TABLE %s (pk int, ck int, v blob, PRIMARY KEY (pk, ck)) WITH compression = {'enabled': false}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+
+        byte[] value = new byte[1024];
+        for (int i = 0; i < 2; i++)
+        {
+            for (int pk = 0; pk < 1000; pk++)
+            {
+                ThreadLocalRandom.current().nextBytes(value);
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, i, ByteBuffer.wrap(value));
+            }
+            flush();
+        }
+
+        long inputSize = 0;
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+            inputSize += sstable.onDiskLength();
+        DataDirectoryIOBudget budget = DataDirectoryIOBudget.forSSTable(cfs.getLiveSSTables().iterator().next());
+        long readBytes = budget.metrics.readBytes.getCount();
+        long writeBytes = budget.metrics.writeBytes.getCount();
+
+        compact();
+
+        long outputSize = cfs.getLiveSSTables().iterator().next().onDiskLength();
+        long read = budget.metrics.readBytes.getCount() - readBytes;
+        long written = budget.metrics.writeBytes.getCount() - writeBytes;
+        // what is left below the charging granularity of each source or output is not charged (and other operations
+        // may use the same directory)
+        assertTrue(read + " < " + inputSize, read > inputSize - 2 * DataDirectoryIOBudget.ACQUIRE_GRANULARITY);
+        assertTrue(written + " < " + outputSize, written > outputSize - DataDirectoryIOBudget.ACQUIRE_GRANULARITY);
+    }
+}
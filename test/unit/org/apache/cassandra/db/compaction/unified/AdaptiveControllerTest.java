@@ -84,6 +84,8 @@ public class AdaptiveControllerTest extends ControllerTest
                                       Controller.DEFAULT_RESERVED_THREADS,
                                       Controller.DEFAULT_RESERVED_THREADS_TYPE,
                                       Controller.DEFAULT_OVERLAP_INCLUSION_METHOD,
+                                      null,
+                                      Controller.DEFAULT_PARALLELIZE_OUTPUT_SHARDS,
                                       interval,
                                       minW,
                                       maxW,
@@ -27,12 +27,16 @@ import org.junit.Test;
 
 import org.apache.cassandra.db.compaction.UnifiedCompactionStrategy;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.LZ4Compressor;
+import org.apache.cassandra.io.compress.ZstdCompressor;
 import org.apache.cassandra.locator.ReplicationFactor;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.SchemaConstants;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
@@ -98,6 +102,59 @@ public class StaticControllerTest extends ControllerTest
         assertEquals(Ws[Ws.length-1], controller.getScalingParameter(Ws.length));
     }
 
+    @Test
+    public void testLevelCompression()
+    {
+        Map<String, String> options = new HashMap<>();
+        addOptions(false, options);
+        options.put(Controller.LEVEL_COMPRESSION_OPTION, "[{\"class\": \"LZ4Compressor\", \"chunk_length_in_kb\": 4}, {}, " +
+                                                         "{\"class\": \"ZstdCompressor\", \"compression_level\": 7}]");
+        super.testValidateOptions(options, false);
+
+        Controller controller = testFromOptions(false, options);
+        CompressionParams tableParams = CompressionParams.lz4();
+
+        CompressionParams level0 = controller.getCompressionParams(0, tableParams);
+        assertEquals(LZ4Compressor.class, level0.klass());
+        assertEquals(4096, level0.chunkLength());
+        assertNull(controller.getCompressionParams(1, tableParams));
+        for (int i = 2; i < UnifiedCompactionStrategy.MAX_LEVELS; i++)
+        {
+            CompressionParams params = controller.getCompressionParams(i, tableParams);
+            assertEquals(ZstdCompressor.class, params.klass());
+            assertEquals(7, ((ZstdCompressor) params.getSstableCompressor()).getCompressionLevel());
+        }
+
+        // never enables compression on tables that do not compress
+        assertNull(controller.getCompressionParams(0, CompressionParams.noCompression()));
+
+        assertThatThrownBy(() -> Controller.parseLevelCompression("[{\"enabled\": false}]")).isInstanceOf(ConfigurationException.class);
+        assertThatThrownBy(() -> Controller.parseLevelCompression("[\"LZ4Compressor\"]")).isInstanceOf(ConfigurationException.class);
+        assertThatThrownBy(() -> Controller.parseLevelCompression("[]")).isInstanceOf(ConfigurationException.class);
+        assertThatThrownBy(() -> Controller.parseLevelCompression("LZ4Compressor")).isInstanceOf(ConfigurationException.class);
+    }
+
+    @Test
+    public void testLevelOf()
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(Controller.SCALING_PARAMETERS_OPTION, "T4");
+        options.put(Controller.FLUSH_SIZE_OVERRIDE_OPTION, "1MiB");
+        Controller controller = testFromOptions(false, options);
+
+        // level 0 ends at 4 * 1MiB * (1 - 0.9 / 4), each further level is 4 times larger
+        double level0Max = Math.floor(4 * (1 << 20) * (1 - 0.9 / 4));
+        double level1Max = level0Max * 4;
+        assertEquals(0, controller.levelOf(0, 1));
+        assertEquals(0, controller.levelOf(level0Max - 1, 1));
+        assertEquals(1, controller.levelOf(level0Max, 1));
+        assertEquals(1, controller.levelOf(level1Max - 1, 1));
+        assertEquals(2, controller.levelOf(level1Max, 1));
+        // density is measured relative to the covered part of the token space
+        assertEquals(0, controller.levelOf(level0Max, 0.5));
+        assertEquals(UnifiedCompactionStrategy.MAX_LEVELS - 1, controller.levelOf(Double.MAX_VALUE, 1));
+    }
+
     @Test
     public void testValidateOptions()
     {
@@ -179,6 +236,8 @@ public class StaticControllerTest extends ControllerTest
                                                            Controller.DEFAULT_RESERVED_THREADS,
                                                            Controller.DEFAULT_RESERVED_THREADS_TYPE,
                                                            Controller.DEFAULT_OVERLAP_INCLUSION_METHOD,
+                                                           null,
+                                                           Controller.DEFAULT_PARALLELIZE_OUTPUT_SHARDS,
                                                            keyspaceName,
                                                            tableName);
         super.testStartShutdown(controller);
@@ -204,6 +263,8 @@ public class StaticControllerTest extends ControllerTest
                                                            Controller.DEFAULT_RESERVED_THREADS,
                                                            Controller.DEFAULT_RESERVED_THREADS_TYPE,
                                                            Controller.DEFAULT_OVERLAP_INCLUSION_METHOD,
+                                                           null,
+                                                           Controller.DEFAULT_PARALLELIZE_OUTPUT_SHARDS,
                                                            keyspaceName,
                                                            tableName);
         super.testShutdownNotStarted(controller);
@@ -229,6 +290,8 @@ public class StaticControllerTest extends ControllerTest
                                                            Controller.DEFAULT_RESERVED_THREADS,
                                                            Controller.DEFAULT_RESERVED_THREADS_TYPE,
                                                            Controller.DEFAULT_OVERLAP_INCLUSION_METHOD,
+                                                           null,
+                                                           Controller.DEFAULT_PARALLELIZE_OUTPUT_SHARDS,
                                                            keyspaceName,
                                                            tableName);
         super.testStartAlreadyStarted(controller);
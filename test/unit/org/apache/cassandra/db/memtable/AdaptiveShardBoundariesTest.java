@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveShardBoundariesTest extends CQLTester
+{
+    private static final int BASE_SHARD_COUNT = 4;
+
+    private final int shardCount = TrieMemtable.SHARD_COUNT;
+    private final boolean adaptiveShards = TrieMemtable.ADAPTIVE_SHARDS;
+    private final int writeSampling = AdaptiveShardBoundaries.WRITE_SAMPLING;
+
+    @Before
+    public void recordAllWrites()
+    {
+        // the tests of the boundary calculation count on exact write counts
+        AdaptiveShardBoundaries.WRITE_SAMPLING = 1;
+    }
+
+    @After
+    public void restoreShardCount()
+    {
+        TrieMemtable.SHARD_COUNT = shardCount;
+        TrieMemtable.ADAPTIVE_SHARDS = adaptiveShards;
+        AdaptiveShardBoundaries.WRITE_SAMPLING = writeSampling;
+    }
+
+    @Test
+    public void testEvenSplitWithoutHistory()
+    {
+        ShardBoundaries grid = grid(BASE_SHARD_COUNT, 0);
+        AdaptiveShardBoundaries boundaries = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, null, null);
+        assertNotNull(boundaries);
+        assertEquals(BASE_SHARD_COUNT, boundaries.boundaries.shardCount());
+        int cellsPerShard = grid.shardCount() / BASE_SHARD_COUNT;
+        for (int i = 0; i < BASE_SHARD_COUNT - 1; ++i)
+            assertEquals(grid.shardEnd((i + 1) * cellsPerShard - 1), boundaries.boundaries.shardEnd(i));
+    }
+
+    @Test
+    public void testUnusableGrid()
+    {
+        assertNull(AdaptiveShardBoundaries.create(grid(1, 0), 1, null, null));
+        assertNull(AdaptiveShardBoundaries.create(ShardBoundaries.NONE, BASE_SHARD_COUNT, null, null));
+        assertNull(AdaptiveShardBoundaries.create(grid(BASE_SHARD_COUNT, 0), BASE_SHARD_COUNT * 2, null, null));
+    }
+
+    @Test
+    public void testSkewedWrites()
+    {
+        ShardBoundaries grid = grid(BASE_SHARD_COUNT, 0);
+        AdaptiveShardBoundaries first = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, null, null);
+        int cells = grid.shardCount();
+        // a few writes everywhere, and most of the writes to the first 1/16 of the ring
+        for (int cell = 0; cell < cells; ++cell)
+            recordWrites(first, grid, cell, 10);
+        for (int cell = 0; cell < cells / 16; ++cell)
+            recordWrites(first, grid, cell, 1000);
+
+        AdaptiveShardBoundaries next = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, first, new long[BASE_SHARD_COUNT]);
+        assertEquals(BASE_SHARD_COUNT, next.boundaries.shardCount());
+        // the hot range is split among most shards
+        Token hotEnd = grid.shardEnd(cells / 16 - 1);
+        assertTrue(next.boundaries.toString(), next.boundaries.shardEnd(BASE_SHARD_COUNT - 3).compareTo(hotEnd) <= 0);
+        assertEquals(BASE_SHARD_COUNT - 2, next.boundaries.getShardForToken(hotEnd));
+        assertEquals(0, next.writes());
+
+        // without enough writes, the boundaries are passed on
+        recordWrites(next, grid, 0, 10);
+        assertSame(next.boundaries, AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, next, new long[BASE_SHARD_COUNT]).boundaries);
+
+        // on a new grid (e.g. because the ring changed), the split is even again
+        ShardBoundaries newGrid = grid(BASE_SHARD_COUNT, 1);
+        AdaptiveShardBoundaries reset = AdaptiveShardBoundaries.create(newGrid, BASE_SHARD_COUNT, first, new long[BASE_SHARD_COUNT]);
+        assertEquals(AdaptiveShardBoundaries.create(newGrid, BASE_SHARD_COUNT, null, null).boundaries, reset.boundaries);
+    }
+
+    @Test
+    public void testShardCountFollowsContention()
+    {
+        ShardBoundaries grid = grid(BASE_SHARD_COUNT, 0);
+        AdaptiveShardBoundaries boundaries = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, null, null);
+        int maxShardCount = BASE_SHARD_COUNT * AdaptiveShardBoundaries.MAX_SHARD_COUNT_MULTIPLIER;
+        for (int expected = BASE_SHARD_COUNT * 2; expected <= maxShardCount * 2; expected *= 2)
+        {
+            for (int cell = 0; cell < grid.shardCount(); ++cell)
+                recordWrites(boundaries, grid, cell, 100);
+            // one in ten writes contended
+            long[] contention = new long[boundaries.boundaries.shardCount()];
+            for (int shard = 0; shard < contention.length; ++shard)
+                contention[shard] = boundaries.writes() / 10 / contention.length;
+
+            boundaries = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, boundaries, contention);
+            assertEquals(Math.min(expected, maxShardCount), boundaries.boundaries.shardCount());
+        }
+
+        // no contention, the shard count drops back to the configured one
+        for (int expected = maxShardCount / 2; expected >= BASE_SHARD_COUNT / 2; expected /= 2)
+        {
+            for (int cell = 0; cell < grid.shardCount(); ++cell)
+                recordWrites(boundaries, grid, cell, 100);
+            boundaries = AdaptiveShardBoundaries.create(grid, BASE_SHARD_COUNT, boundaries, new long[boundaries.boundaries.shardCount()]);
+            assertEquals(Math.max(expected, BASE_SHARD_COUNT), boundaries.boundaries.shardCount());
+        }
+    }
+
+    @Test
+    public void testMemtableBoundariesFollowWrites() throws Throwable
+    {
+        TrieMemtable.SHARD_COUNT = 2;
+        TrieMemtable.ADAPTIVE_SHARDS = true;
+        AdaptiveShardBoundaries.WRITE_SAMPLING = writeSampling;
+        // the node needs to own a token for its local ranges to be split
+        TokenMetadata tokenMetadata = StorageService.instance.getTokenMetadata();
+        if (tokenMetadata.sortedTokens().isEmpty())
+            tokenMetadata.updateNormalToken(Murmur3Partitioner.instance.getMinimumToken(), FBUtilities.getBroadcastAddressAndPort());
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck)) WITH memtable = {'class' : 'TrieMemtable'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        // the memtable created with the table has no history to adapt to
+        TrieMemtable memtable = (TrieMemtable) cfs.getTracker().getView().getCurrentMemtable();
+        ShardBoundaries even = memtable.shardBoundaries();
+        assertEquals(2, even.shardCount());
+
+        int hotKeys = 4;
+        for (int i = 0; i < 20000; ++i)
+        {
+            PartitionUpdate.SimpleBuilder builder = PartitionUpdate.simpleBuilder(cfs.metadata(), i % 5 == 0 ? i : i % hotKeys);
+            builder.row(i).add("v", i);
+            builder.buildAsMutation().apply();
+        }
+        flush();
+
+        ShardBoundaries adapted = ((TrieMemtable) cfs.getTracker().getView().getCurrentMemtable()).shardBoundaries();
+        assertNotEquals(even, adapted);
+        assertRows(execute("SELECT count(*) FROM %s WHERE pk = ?", 1), row(4000L));
+    }
+
+    private static void recordWrites(AdaptiveShardBoundaries boundaries, ShardBoundaries grid, int cell, int count)
+    {
+        Token token = cell < grid.shardCount() - 1 ? grid.shardEnd(cell) : Murmur3Partitioner.instance.getMaximumToken();
+        for (int i = 0; i < count; ++i)
+            boundaries.recordWrite(token);
+    }
+
+    private static ShardBoundaries grid(int baseShardCount, long offset)
+    {
+        int cells = AdaptiveShardBoundaries.gridSize(baseShardCount);
+        long step = Long.MAX_VALUE / cells * 2;
+        Token[] tokens = new Token[cells - 1];
+        for (int i = 0; i < cells - 1; ++i)
+            tokens[i] = new Murmur3Partitioner.LongToken(Long.MIN_VALUE + (i + 1) * step + offset);
+        return new ShardBoundaries(tokens, 0);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.cassandra.Util;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.partitions.Partition;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.index.transactions.UpdateTransaction;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentMemoryMemtableTest extends CQLTester
+{
+    private static final String PERSISTENT = " WITH memtable = {'class' : 'PersistentMemoryMemtable'}";
+
+    private final int segmentSize = PersistentMemoryMemtable.SEGMENT_SIZE;
+    private final long flushSize = PersistentMemoryMemtable.FLUSH_SIZE;
+
+    @After
+    public void restoreSizes()
+    {
+        PersistentMemoryMemtable.SEGMENT_SIZE = segmentSize;
+        PersistentMemoryMemtable.FLUSH_SIZE = flushSize;
+    }
+
+    @Test
+    public void testDaxDetection()
+    {
+        List<String> mounts = ImmutableList.of("/dev/sda1 / ext4 rw,relatime 0 0",
+                                               "tmpfs /tmp tmpfs rw,nosuid,nodev 0 0",
+                                               "/dev/pmem0 /mnt/pmem xfs rw,relatime,dax=always 0 0",
+                                               "/dev/pmem1 /mnt/pmem\\040old ext4 rw,dax 0 0",
+                                               "/dev/sdb1 /mnt/pmem/disk ext4 rw,relatime 0 0");
+        assertTrue(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/mnt/pmem/memtables"), mounts));
+        assertTrue(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/mnt/pmem old/memtables"), mounts));
+        assertFalse(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/mnt/pmem/disk/memtables"), mounts));
+        assertFalse(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/mnt/pmemory"), mounts));
+        assertFalse(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/tmp/memtables"), mounts));
+        assertFalse(PersistentMemoryMemtable.isOnDaxMount(Paths.get("/var/lib/cassandra"), mounts));
+    }
+
+    @Test
+    public void testSkipCommitLogNeedsPersistentMemory()
+    {
+        Memtable.Factory factory = PersistentMemoryMemtable.factory(new HashMap<>());
+        Assume.assumeFalse(factory.writesAreDurable());
+        assertFalse(factory.writesShouldSkipCommitLog());
+        assertThatThrownBy(() -> PersistentMemoryMemtable.factory(new HashMap<>(ImmutableMap.of("skipCommitLog", "true"))))
+            .isInstanceOf(ConfigurationException.class);
+    }
+
+    @Test
+    public void testReadsAndWrites() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, s int static, v int, PRIMARY KEY (pk, ck))" + PERSISTENT);
+        writeData();
+
+        beforeAndAfterFlush(this::checkData);
+        // the memtable does not flush on request
+        assertTrue(getCurrentColumnFamilyStore().getLiveSSTables().isEmpty());
+    }
+
+    @Test
+    public void testRecovery() throws Throwable
+    {
+        // use small segments to exercise records skipping to the next segment and records spanning segments
+        PersistentMemoryMemtable.SEGMENT_SIZE = 1024;
+        createTable("CREATE TABLE %s (pk int, ck int, s int static, v int, b blob, PRIMARY KEY (pk, ck))" + PERSISTENT);
+        writeData();
+        execute("INSERT INTO %s (pk, ck, b) VALUES (?, ?, ?)", 1, 100, ByteBufferUtil.bytes(new String(new char[5000])));
+        execute("INSERT INTO %s (pk, ck, b) VALUES (?, ?, ?)", 1, 101, ByteBufferUtil.bytes("small"));
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        PersistentMemoryMemtable memtable = (PersistentMemoryMemtable) cfs.getTracker().getView().getCurrentMemtable();
+        memtable.close();
+
+        PersistentMemoryMemtable recovered = recover(cfs);
+        assertEquals(memtable.partitionCount(), recovered.partitionCount());
+        for (int pk = 0; pk < 5; ++pk)
+        {
+            DecoratedKey key = cfs.decorateKey(ByteBufferUtil.bytes(pk));
+            assertEquals(String.valueOf(memtable.getPartition(key)), String.valueOf(recovered.getPartition(key)));
+        }
+
+        // the recovered memtable can take more writes
+        PartitionUpdate update = makeUpdate(cfs, 7, 7, 7);
+        recovered.put(update, UpdateTransaction.NO_OP, null);
+        assertEquals(memtable.partitionCount() + 1, recovered.partitionCount());
+        assertEquals(1, rowCount(recovered.getPartition(update.partitionKey())));
+    }
+
+    @Test
+    public void testRecoveryOfOlderFiles() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))" + PERSISTENT);
+        execute("INSERT INTO %s (pk, ck, v) VALUES (1, 1, 1)");
+        execute("INSERT INTO %s (pk, ck, v) VALUES (2, 2, 2)");
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        ((PersistentMemoryMemtable) cfs.getTracker().getView().getCurrentMemtable()).close();
+
+        // a memtable that was switched out before the restart, followed by a newer one
+        PersistentMemoryMemtable older = recover(cfs);
+        older.put(makeUpdate(cfs, 1, 3, 3), UpdateTransaction.NO_OP, null);
+        older.close();
+        PersistentMemoryMemtable newer = new PersistentMemoryMemtable(cfs.metadata, cfs);
+        newer.put(makeUpdate(cfs, 1, 4, 4), UpdateTransaction.NO_OP, null);
+        newer.put(makeUpdate(cfs, 3, 3, 3), UpdateTransaction.NO_OP, null);
+        newer.close();
+
+        PersistentMemoryMemtable recovered = recover(cfs);
+        assertEquals(3, recovered.partitionCount());
+        assertEquals(3, rowCount(recovered.getPartition(cfs.decorateKey(ByteBufferUtil.bytes(1)))));
+        assertEquals(1, rowCount(recovered.getPartition(cfs.decorateKey(ByteBufferUtil.bytes(2)))));
+        assertEquals(1, rowCount(recovered.getPartition(cfs.decorateKey(ByteBufferUtil.bytes(3)))));
+        assertNull(recovered.getPartition(cfs.decorateKey(ByteBufferUtil.bytes(4))));
+    }
+
+    @Test
+    public void testFlushOnSizeLimit() throws Throwable
+    {
+        PersistentMemoryMemtable.FLUSH_SIZE = 4096;
+        createTable("CREATE TABLE %s (pk int, ck int, s int static, v int, PRIMARY KEY (pk, ck))" + PERSISTENT);
+        writeData();
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        Util.spinAssertEquals(true, () -> !cfs.getLiveSSTables().isEmpty(), 10);
+        checkData();
+    }
+
+    @Test
+    public void testSnapshot() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, s int static, v int, PRIMARY KEY (pk, ck))" + PERSISTENT);
+        writeData();
+
+        // the snapshot must hold the data of the memtable, thus it flushes
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        Set<SSTableReader> snapshotted = cfs.snapshot("pmm");
+        assertFalse(snapshotted.isEmpty());
+        assertTrue(cfs.getTracker().getView().getCurrentMemtable().isClean());
+        checkData();
+    }
+
+    private static PersistentMemoryMemtable recover(ColumnFamilyStore cfs)
+    {
+        // simulate a restart of the process
+        PersistentMemoryMemtable.recoveredTables.remove(cfs.metadata.id);
+        return new PersistentMemoryMemtable(cfs.metadata, cfs);
+    }
+
+    private static int rowCount(Partition partition)
+    {
+        try (UnfilteredRowIterator iterator = partition.unfilteredIterator())
+        {
+            return Iterators.size(iterator);
+        }
+    }
+
+    private static PartitionUpdate makeUpdate(ColumnFamilyStore cfs, int pk, int ck, int v)
+    {
+        PartitionUpdate.SimpleBuilder builder = PartitionUpdate.simpleBuilder(cfs.metadata(), pk);
+        builder.row(ck).add("v", v);
+        return builder.build();
+    }
+
+    private void writeData() throws Throwable
+    {
+        for (int pk = 0; pk < 5; pk++)
+        {
+            execute("INSERT INTO %s (pk, s) VALUES (?, ?)", pk, pk * 100);
+            // more updates than the maximum chain length
+            for (int ck = 0; ck < 20; ck++)
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, ck, pk * 100 + ck);
+        }
+        execute("UPDATE %s SET v = ? WHERE pk = ? AND ck = ?", -1, 1, 5);
+        execute("DELETE FROM %s WHERE pk = ? AND ck = ?", 2, 3);
+        execute("DELETE FROM %s WHERE pk = ? AND ck >= ? AND ck < ?", 2, 10, 15);
+        execute("DELETE FROM %s WHERE pk = ?", 3);
+    }
+
+    private void checkData() throws Throwable
+    {
+        assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck = ?", 1, 5),
+                   row(5, -1));
+        assertRows(execute("SELECT s, v FROM %s WHERE pk = ? AND ck = ?", 4, 3),
+                   row(400, 403));
+        assertRows(execute("SELECT ck FROM %s WHERE pk = ? AND ck >= ? AND ck < ?", 2, 1, 5),
+                   row(1), row(2), row(4));
+        assertRows(execute("SELECT ck FROM %s WHERE pk = ? AND ck > ? ORDER BY ck DESC", 2, 8),
+                   row(19), row(18), row(17), row(16), row(15), row(9));
+        assertEmpty(execute("SELECT * FROM %s WHERE pk = ?", 3));
+        assertRows(execute("SELECT count(*) FROM %s"), row(74L));
+    }
+}
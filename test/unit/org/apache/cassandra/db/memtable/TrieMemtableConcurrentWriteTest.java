@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RangeTombstone;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.index.transactions.UpdateTransaction;
+import org.apache.cassandra.metrics.TrieMemtableMetricsView;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrieMemtableConcurrentWriteTest extends CQLTester
+{
+    private static final int THREADS = 8;
+    private static final int PARTITIONS = 4;
+    private static final int ROWS_PER_THREAD = 500;
+
+    @Test
+    public void testConcurrentWritesToHotPartitions() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck)) WITH memtable = {'class' : 'TrieMemtable'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        // make sure the partitions exist, so that the writers below go through the lock-free path
+        for (int pk = 0; pk < PARTITIONS; pk++)
+            execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, -1, -1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++)
+            {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < ROWS_PER_THREAD; i++)
+                    {
+                        int ck = thread * ROWS_PER_THREAD + i;
+                        PartitionUpdate.SimpleBuilder builder = PartitionUpdate.simpleBuilder(cfs.metadata(), i % PARTITIONS);
+                        builder.row(ck).add("v", ck);
+                        builder.buildAsMutation().apply();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        TrieMemtableMetricsView metrics = TrieMemtableMetricsView.getOrCreate(keyspace(), currentTable());
+        assertTrue(metrics.lockFreePuts.getCount() > 0);
+
+        beforeAndAfterFlush(() -> {
+            for (int pk = 0; pk < PARTITIONS; pk++)
+                assertRows(execute("SELECT count(*) FROM %s WHERE pk = ?", pk), row((long) (THREADS * ROWS_PER_THREAD / PARTITIONS + 1)));
+            assertRows(execute("SELECT v FROM %s WHERE pk = ? AND ck = ?", 1, 1001), row(1001));
+        });
+        assertEquals(1, cfs.getLiveSSTables().size());
+    }
+
+    @Test
+    public void testIndexEventsOfContendedWrites() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck)) WITH memtable = {'class' : 'TrieMemtable'}");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", 0, -1, -1);
+        Memtable memtable = cfs.getTracker().getView().getCurrentMemtable();
+
+        AtomicInteger inserted = new AtomicInteger();
+        AtomicInteger invalid = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++)
+            {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < ROWS_PER_THREAD; i++)
+                    {
+                        int ck = thread * ROWS_PER_THREAD + i;
+                        PartitionUpdate.SimpleBuilder builder = PartitionUpdate.simpleBuilder(cfs.metadata(), 0);
+                        builder.row(ck).add("v", ck);
+                        // every update must be reported once, as the insertion of its single row
+                        CountingUpdateTransaction indexer = new CountingUpdateTransaction();
+                        try (OpOrder.Group opGroup = Keyspace.writeOrder.start())
+                        {
+                            memtable.put(builder.build(), indexer, opGroup);
+                        }
+                        if (indexer.starts != 1 || indexer.commits != 1 || indexer.inserts != 1 || indexer.updates != 0)
+                            invalid.incrementAndGet();
+                        inserted.addAndGet(indexer.inserts);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(0, invalid.get());
+        assertEquals(THREADS * ROWS_PER_THREAD, inserted.get());
+    }
+
+    private static class CountingUpdateTransaction implements UpdateTransaction
+    {
+        int starts, commits, inserts, updates;
+
+        public void start()
+        {
+            ++starts;
+        }
+
+        public void onPartitionDeletion(DeletionTime deletionTime)
+        {
+        }
+
+        public void onRangeTombstone(RangeTombstone rangeTombstone)
+        {
+        }
+
+        public void onInserted(Row row)
+        {
+            ++inserts;
+        }
+
+        public void onUpdated(Row existing, Row updated)
+        {
+            ++updates;
+        }
+
+        public void commit()
+        {
+            ++commits;
+        }
+    }
+}
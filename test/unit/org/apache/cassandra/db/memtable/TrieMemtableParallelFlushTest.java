@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ByteComparableDecoratedKey;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.bytecomparable.ByteSourceInverse;
+
+import static org.apache.cassandra.db.memtable.TrieMemtable.BYTE_COMPARABLE_VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrieMemtableParallelFlushTest extends CQLTester
+{
+    private static final int SHARD_COUNT = 4;
+    private static final int PARTITIONS = 1000;
+
+    private final int shardCount = TrieMemtable.SHARD_COUNT;
+    private final boolean parallelFlush = TrieMemtable.PARALLEL_FLUSH;
+
+    @Before
+    public void setUp()
+    {
+        TrieMemtable.SHARD_COUNT = SHARD_COUNT;
+        TrieMemtable.PARALLEL_FLUSH = true;
+        // the node needs to own a token for its local ranges to be split
+        TokenMetadata tokenMetadata = StorageService.instance.getTokenMetadata();
+        if (tokenMetadata.sortedTokens().isEmpty())
+            tokenMetadata.updateNormalToken(Murmur3Partitioner.instance.getMinimumToken(), FBUtilities.getBroadcastAddressAndPort());
+    }
+
+    @After
+    public void tearDown()
+    {
+        TrieMemtable.SHARD_COUNT = shardCount;
+        TrieMemtable.PARALLEL_FLUSH = parallelFlush;
+    }
+
+    @Test
+    public void testFlushSplitAtShards() throws Throwable
+    {
+        testFlushSplitAtShards("{'class' : 'TrieMemtable'}");
+    }
+
+    @Test
+    public void testFlushSplitAtShardsRowsInTrie() throws Throwable
+    {
+        testFlushSplitAtShards("{'class' : 'TrieMemtable', 'rowsInTrie' : 'true'}");
+    }
+
+    private void testFlushSplitAtShards(String memtableOptions) throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck)) WITH memtable = " + memtableOptions);
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        TrieMemtable memtable = (TrieMemtable) cfs.getTracker().getView().getCurrentMemtable();
+        ShardBoundaries boundaries = memtable.shardBoundaries();
+        assertEquals(SHARD_COUNT, boundaries.shardCount());
+        assertEquals(SHARD_COUNT - 1, memtable.getFlushSplitPoints().size());
+
+        for (int i = 0; i < PARTITIONS; ++i)
+        {
+            execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", i, 0, i);
+            execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", i, 1, i);
+        }
+        flush();
+
+        Set<SSTableReader> sstables = cfs.getLiveSSTables();
+        assertTrue(sstables.toString(), sstables.size() >= SHARD_COUNT);
+        for (SSTableReader sstable : sstables)
+            assertEquals(boundaries.getShardForKey(sstable.first), boundaries.getShardForKey(sstable.last));
+
+        for (int i = 0; i < PARTITIONS; i += 37)
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ?", i), row(0, i), row(1, i));
+        assertRowCount(execute("SELECT * FROM %s"), PARTITIONS * 2);
+    }
+
+    @Test
+    public void testFlushRangesUseShardTries()
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck)) WITH memtable = {'class' : 'TrieMemtable'}");
+        TrieMemtable memtable = (TrieMemtable) getCurrentColumnFamilyStore().getTracker().getView().getCurrentMemtable();
+        List<Token> splitPoints = memtable.getFlushSplitPoints();
+        assertEquals(SHARD_COUNT - 1, splitPoints.size());
+
+        // the ranges of a flush split at the shard boundaries, as in Flushing, are each taken from a single shard trie
+        PartitionPosition from = null;
+        for (int i = 0; i < SHARD_COUNT; ++i)
+        {
+            PartitionPosition to = i < splitPoints.size() ? splitPoints.get(i).maxKeyBound() : null;
+            assertEquals(i, memtable.flushShard(from, to));
+            from = to;
+        }
+
+        // a range over several shards needs the merged trie
+        assertEquals(-1, memtable.flushShard(null, null));
+        assertEquals(-1, memtable.flushShard(splitPoints.get(0).maxKeyBound(), splitPoints.get(2).maxKeyBound()));
+    }
+
+    @Test
+    public void testByteComparableDecoratedKey()
+    {
+        DecoratedKey key = Murmur3Partitioner.instance.decorateKey(ByteBufferUtil.bytes("key"));
+        byte[] encoded = ByteSourceInverse.readBytes(key.asComparableBytes(BYTE_COMPARABLE_VERSION));
+        DecoratedKey decoded = ByteComparableDecoratedKey.fromByteComparable(encoded, BYTE_COMPARABLE_VERSION, Murmur3Partitioner.instance);
+        assertEquals(key, decoded);
+        assertEquals(key.getKey(), decoded.getKey());
+        for (ByteComparable.Version version : ByteComparable.Version.values())
+            assertEquals(0, ByteComparable.compare(key, decoded, version));
+    }
+}
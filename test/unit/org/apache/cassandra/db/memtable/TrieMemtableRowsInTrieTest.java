@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.memtable;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import org.apache.cassandra.Util;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.partitions.BTreePartitionData;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TrieMemtableRowsInTrieTest extends CQLTester
+{
+    private static final String ROWS_IN_TRIE = " WITH memtable = {'class' : 'TrieMemtable', 'rowsInTrie' : 'true'}";
+
+    @Test
+    public void testFactoryOption() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))" + ROWS_IN_TRIE);
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        assertTrue(cfs.getTracker().getView().getCurrentMemtable() instanceof TrieMemtable);
+        assertNotSame(TrieMemtable.FACTORY, cfs.metadata().params.memtable.factory);
+        assertSame(cfs.metadata().params.memtable.factory, TrieMemtable.factory(new HashMap<>(cfs.metadata().params.memtable.options)));
+    }
+
+    @Test
+    public void testRowsAndSlices() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, s int static, v int, PRIMARY KEY (pk, ck))" + ROWS_IN_TRIE);
+
+        for (int pk = 0; pk < 3; pk++)
+        {
+            execute("INSERT INTO %s (pk, s) VALUES (?, ?)", pk, pk * 100);
+            for (int ck = 0; ck < 10; ck++)
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, ck, pk * 10 + ck);
+        }
+        // overwrite some rows
+        execute("UPDATE %s SET v = ? WHERE pk = ? AND ck = ?", -1, 1, 5);
+        execute("UPDATE %s SET v = ? WHERE pk = ? AND ck = ?", -2, 1, 9);
+
+        assertEquals(3, getCurrentColumnFamilyStore().getTracker().getView().getCurrentMemtable().partitionCount());
+
+        beforeAndAfterFlush(() -> {
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck = ?", 1, 5),
+                       row(5, -1));
+            assertRows(execute("SELECT s, v FROM %s WHERE pk = ? AND ck = ?", 2, 3),
+                       row(200, 23));
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck >= ? AND ck < ?", 1, 3, 6),
+                       row(3, 13), row(4, 14), row(5, -1));
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck > ? ORDER BY ck DESC", 1, 6),
+                       row(9, -2), row(8, 18), row(7, 17));
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck IN (?, ?, ?)", 0, 8, 2, 42),
+                       row(2, 2), row(8, 8));
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ? AND ck IN (?, ?) ORDER BY ck DESC", 0, 8, 2),
+                       row(8, 8), row(2, 2));
+            assertRows(execute("SELECT count(*) FROM %s"), row(30L));
+            assertRows(execute("SELECT DISTINCT pk, s FROM %s WHERE pk = ?", 2), row(2, 200));
+            assertRows(execute("SELECT ck, v FROM %s WHERE token(pk) = token(?) LIMIT 2", 0),
+                       row(0, 0), row(1, 1));
+        });
+    }
+
+    @Test
+    public void testDeletions() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))" + ROWS_IN_TRIE);
+
+        for (int pk = 0; pk < 3; pk++)
+            for (int ck = 0; ck < 10; ck++)
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?) USING TIMESTAMP 1", pk, ck, ck);
+
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE pk = ? AND ck = ?", 0, 4);
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE pk = ? AND ck >= ? AND ck < ?", 0, 6, 9);
+        execute("DELETE FROM %s USING TIMESTAMP 2 WHERE pk = ?", 1);
+        // newer than the partition deletion, must survive
+        execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?) USING TIMESTAMP 3", 1, 7, 70);
+        // older than the range deletion, must remain deleted
+        execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?) USING TIMESTAMP 1", 0, 7, 77);
+
+        beforeAndAfterFlush(() -> {
+            assertRows(execute("SELECT ck FROM %s WHERE pk = ?", 0),
+                       row(0), row(1), row(2), row(3), row(5), row(9));
+            assertRows(execute("SELECT ck FROM %s WHERE pk = ? ORDER BY ck DESC", 0),
+                       row(9), row(5), row(3), row(2), row(1), row(0));
+            assertEmpty(execute("SELECT ck FROM %s WHERE pk = ? AND ck = ?", 0, 7));
+            assertRows(execute("SELECT ck, v FROM %s WHERE pk = ?", 1),
+                       row(7, 70));
+            assertRows(execute("SELECT count(*) FROM %s"), row(17L));
+        });
+    }
+
+    @Test
+    public void testNoClustering() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk text PRIMARY KEY, v int)" + ROWS_IN_TRIE);
+
+        for (int i = 0; i < 50; i++)
+            execute("INSERT INTO %s (pk, v) VALUES (?, ?)", "key" + i, i);
+        execute("UPDATE %s SET v = ? WHERE pk = ?", 1000, "key7");
+        execute("DELETE FROM %s WHERE pk = ?", "key8");
+
+        assertEquals(50, getCurrentColumnFamilyStore().getTracker().getView().getCurrentMemtable().partitionCount());
+
+        beforeAndAfterFlush(() -> {
+            assertRows(execute("SELECT v FROM %s WHERE pk = ?", "key7"), row(1000));
+            assertEmpty(execute("SELECT v FROM %s WHERE pk = ?", "key8"));
+            assertRows(execute("SELECT count(*) FROM %s"), row(49L));
+        });
+    }
+
+    @Test
+    public void testRowsStoredSerialized() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck text, v int, l list<int>, m map<text, int>, PRIMARY KEY (pk, ck))" + ROWS_IN_TRIE);
+
+        for (int ck = 0; ck < 20; ck++)
+            execute("INSERT INTO %s (pk, ck, v, l, m) VALUES (?, ?, ?, ?, ?) USING TTL 1000", 0, "ck" + ck, ck, list(ck, ck + 1), map("a", ck));
+        execute("UPDATE %s SET l = l + ?, m[?] = ? WHERE pk = ? AND ck = ?", list(100), "b", 7, 0, "ck3");
+        execute("DELETE v FROM %s WHERE pk = ? AND ck = ?", 0, "ck4");
+
+        TrieMemtable memtable = (TrieMemtable) getCurrentColumnFamilyStore().getTracker().getView().getCurrentMemtable();
+        int rows = 0;
+        for (TrieMemtable.MemtableShard shard : memtable.shards)
+        {
+            for (Object content : shard.data.values())
+            {
+                if (content instanceof BTreePartitionData)
+                    continue;
+                assertTrue(content.getClass().getName(), content instanceof Integer);
+                ++rows;
+            }
+        }
+        assertEquals(20, rows);
+        // the positions of the rows are stored in the trie's nodes, only the partition takes a content slot
+        int contentSlots = 0;
+        for (TrieMemtable.MemtableShard shard : memtable.shards)
+            contentSlots += shard.data.valuesCount();
+        assertEquals(1, contentSlots);
+
+        beforeAndAfterFlush(() -> {
+            assertRows(execute("SELECT v, l, m FROM %s WHERE pk = ? AND ck = ?", 0, "ck3"),
+                       row(3, list(3, 4, 100), map("a", 3, "b", 7)));
+            assertRows(execute("SELECT v, l FROM %s WHERE pk = ? AND ck = ?", 0, "ck4"),
+                       row(null, list(4, 5)));
+            assertTrue(execute("SELECT ttl(v) FROM %s WHERE pk = ? AND ck = ?", 0, "ck5").one().getInt("ttl(v)") > 900);
+            assertRows(execute("SELECT count(*) FROM %s"), row(20L));
+        });
+    }
+
+    @Test
+    public void testRowStoreRejectsUnknownColumns() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))");
+        TableMetadata metadata = currentTableMetadata();
+        execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?) USING TTL 1000", 0, 0, 0);
+        // a memtable may still receive writes with columns added after its creation while the schema change applies;
+        // such rows are kept as objects by the memtable
+        execute("ALTER TABLE %s ADD w text");
+        execute("INSERT INTO %s (pk, ck, v, w) VALUES (?, ?, ?, ?)", 1, 0, 1, "one");
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        Row known = Util.getOnlyRowUnfiltered(Util.cmd(cfs, 0).build());
+        Row unknown = Util.getOnlyRowUnfiltered(Util.cmd(cfs, 1).build());
+
+        MemtableRowStore store = new MemtableRowStore(metadata, BufferType.OFF_HEAP, null);
+        try
+        {
+            assertEquals(-1, store.write(unknown));
+            int position = store.write(known);
+            assertTrue(position >= 0);
+            assertEquals(known, store.read(position, store.readHelper(), BTreeRow.sortedBuilder()));
+            assertEquals(MemtableRowStore.CHUNK_START_SIZE, store.sizeOffHeap());
+        }
+        finally
+        {
+            store.discard();
+        }
+    }
+
+    @Test
+    public void testRowStoreGrowsAndReusesReleasedRows() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))");
+        TableMetadata metadata = currentTableMetadata();
+        execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", 0, 0, 0);
+        Row row = Util.getOnlyRowUnfiltered(Util.cmd(getCurrentColumnFamilyStore(), 0).build());
+
+        OpOrder readOrder = new OpOrder();
+        MemtableRowStore store = new MemtableRowStore(metadata, BufferType.OFF_HEAP, readOrder);
+        try
+        {
+            // enough rows for the store to need several chunks, each twice the size of the previous one
+            int[] positions = new int[50000];
+            for (int i = 0; i < positions.length; ++i)
+            {
+                positions[i] = store.write(row);
+                assertEquals(0, positions[i] % MemtableRowStore.GRANULE);
+            }
+            for (int position : positions)
+                assertEquals(row, store.read(position, store.readHelper(), BTreeRow.sortedBuilder()));
+            long size = store.sizeOffHeap();
+            assertEquals(0, (size / MemtableRowStore.CHUNK_START_SIZE + 1) & (size / MemtableRowStore.CHUNK_START_SIZE));
+
+            // a released row is not reused while the reads that started before the release are in progress
+            OpOrder.Group read = readOrder.start();
+            store.release(positions[0]);
+            store.completeUpdate();
+            int position = store.write(row);
+            assertNotEquals(positions[0], position);
+            read.close();
+            assertEquals(positions[0], store.write(row));
+            assertEquals(size, store.sizeOffHeap());
+        }
+        finally
+        {
+            store.discard();
+        }
+    }
+
+    @Test
+    public void testUpdatesAreAtomicForReaders() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int, ck int, v int, PRIMARY KEY (pk, ck))" + ROWS_IN_TRIE);
+        int rowCount = 20;
+        writeGeneration(0, rowCount);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try
+            {
+                for (int generation = 1; !stop.get(); generation++)
+                    writeGeneration(generation, rowCount);
+            }
+            catch (Throwable t)
+            {
+                error.set(t);
+            }
+        });
+        writer.start();
+        try
+        {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (System.nanoTime() < end && error.get() == null)
+            {
+                // each update deletes the partition and writes all its rows, a reader must see all rows of one of them
+                UntypedResultSet result = execute("SELECT ck, v FROM %s WHERE pk = ?", 0);
+                assertEquals(rowCount, result.size());
+                int generation = result.iterator().next().getInt("v");
+                for (UntypedResultSet.Row row : result)
+                    assertEquals(generation, row.getInt("v"));
+            }
+        }
+        finally
+        {
+            stop.set(true);
+            writer.join();
+        }
+        assertFalse(String.valueOf(error.get()), error.get() != null);
+    }
+
+    private void writeGeneration(int generation, int rowCount) throws Throwable
+    {
+        String table = KEYSPACE + '.' + currentTable();
+        StringBuilder batch = new StringBuilder("BEGIN UNLOGGED BATCH ");
+        batch.append(String.format("DELETE FROM %s USING TIMESTAMP %d WHERE pk = 0; ", table, 2 * generation));
+        for (int ck = 0; ck < rowCount; ck++)
+            batch.append(String.format("INSERT INTO %s (pk, ck, v) VALUES (0, %d, %d) USING TIMESTAMP %d; ", table, ck, generation, 2 * generation + 1));
+        batch.append("APPLY BATCH");
+        executeFormattedQuery(batch.toString());
+    }
+}
@@ -67,6 +67,7 @@ public class UnfilteredRowIteratorsMergeTest
     static final int ITEMS = 300;
 
     boolean reversed;
+    boolean trieMerge;
 
     public UnfilteredRowIteratorsMergeTest()
     {
@@ -108,6 +109,31 @@ public class UnfilteredRowIteratorsMergeTest
         testTombstoneMerge(false, true, true);
     }
 
+    @Test
+    public void testTombstoneMergeTries()
+    {
+        testTombstoneMergeTries(false);
+    }
+
+    @Test
+    public void testTombstoneMergeTriesIterative()
+    {
+        testTombstoneMergeTries(true);
+    }
+
+    private void testTombstoneMergeTries(boolean iterations)
+    {
+        trieMerge = true;
+        try
+        {
+            testTombstoneMerge(false, iterations, false);
+        }
+        finally
+        {
+            trieMerge = false;
+        }
+    }
+
     @Test
     public void testDuplicateRangeCase()
     {
@@ -191,14 +217,14 @@ public class UnfilteredRowIteratorsMergeTest
             UnfilteredRowIterator mi = us.get(0);
             int i;
             for (i = 1; i + 2 <= ITERATORS; i += 2)
-                mi = UnfilteredRowIterators.merge(ImmutableList.of(mi, us.get(i), us.get(i+1)));
+                mi = UnfilteredRowIterators.merge(ImmutableList.of(mi, us.get(i), us.get(i+1)), trieMerge);
             if (i + 1 <= ITERATORS)
-                mi = UnfilteredRowIterators.merge(ImmutableList.of(mi, us.get(i)));
+                mi = UnfilteredRowIterators.merge(ImmutableList.of(mi, us.get(i)), trieMerge);
             return mi;
         }
         else
         {
-            return UnfilteredRowIterators.merge(us);
+            return UnfilteredRowIterators.merge(us, trieMerge);
         }
     }
 
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.streaming;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.Slice;
+import org.apache.cassandra.db.Slices;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.rows.EncodingStats;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.SSTableTxnWriter;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableReadsListener;
+import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexSSTableReader;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.TrackedDataInputPlus;
+import org.apache.cassandra.schema.TableMetadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CassandraStreamReaderTest extends CQLTester
+{
+    private int columnIndexSizeInKB;
+
+    @Before
+    public void setColumnIndexSize()
+    {
+        columnIndexSizeInKB = DatabaseDescriptor.getColumnIndexSizeInKB();
+        // so that the large partitions get a row index
+        DatabaseDescriptor.setColumnIndexSizeInKB(1);
+    }
+
+    @After
+    public void resetColumnIndexSize()
+    {
+        DatabaseDescriptor.setColumnIndexSizeInKB(columnIndexSizeInKB);
+    }
+
+    private SSTableReader createSSTable() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, s text static, v text, PRIMARY KEY (k, c))");
+        disableCompaction();
+        for (int k = 0; k < 100; k++)
+        {
+            if (k % 3 == 0)
+                execute("INSERT INTO %s (k, s) VALUES (?, ?)", k, "static" + k);
+            int rows = k % 10 == 0 ? 500 : 5;
+            for (int c = 0; c < rows; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?) USING TTL 10000", k, c, "value" + c);
+            if (k % 7 == 0)
+                execute("DELETE FROM %s WHERE k = ? AND c > 1 AND c < 4", k);
+        }
+        execute("DELETE FROM %s WHERE k = 50");
+        flush();
+
+        SSTableReader sstable = getCurrentColumnFamilyStore().getLiveSSTables().iterator().next();
+        Assume.assumeTrue(sstable instanceof TrieIndexSSTableReader);
+        return sstable;
+    }
+
+    private static Collection<Range<Token>> ranges(SSTableReader sstable)
+    {
+        List<DecoratedKey> keys = new ArrayList<>();
+        try (ISSTableScanner scanner = sstable.getScanner())
+        {
+            while (scanner.hasNext())
+            {
+                try (UnfilteredRowIterator partition = scanner.next())
+                {
+                    keys.add(partition.partitionKey());
+                }
+            }
+        }
+        return ImmutableList.of(new Range<>(keys.get(10).getToken(), keys.get(40).getToken()),
+                                new Range<>(keys.get(60).getToken(), keys.get(90).getToken()));
+    }
+
+    private static byte[] read(SSTableReader sstable, List<SSTableReader.PartitionPositionBounds> sections) throws IOException
+    {
+        long length = 0;
+        for (SSTableReader.PartitionPositionBounds section : sections)
+            length += section.upperPosition - section.lowerPosition;
+
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        try (RandomAccessReader reader = sstable.openDataReader())
+        {
+            for (SSTableReader.PartitionPositionBounds section : sections)
+            {
+                reader.seek(section.lowerPosition);
+                int sectionLength = (int) (section.upperPosition - section.lowerPosition);
+                reader.readFully(bytes, offset, sectionLength);
+                offset += sectionLength;
+            }
+        }
+        return bytes;
+    }
+
+    private SSTableReader receive(byte[] sent, SSTableReader source, SerializationHeader header) throws IOException
+    {
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        TableMetadata metadata = cfs.metadata();
+        TrackedDataInputPlus in = new TrackedDataInputPlus(new DataInputBuffer(sent));
+        CassandraStreamReader.SerializedStreamDeserializer deserializer =
+            new CassandraStreamReader.SerializedStreamDeserializer(metadata, in, source.descriptor.version, source.header);
+
+        try (SSTableTxnWriter writer = SSTableTxnWriter.create(cfs, cfs.newSSTableDescriptor(cfs.getDirectories().getDirectoryForNewSSTables()),
+                                                               100, 0, null, false, header))
+        {
+            while (in.getBytesRead() < sent.length)
+                writer.append(deserializer.newPartition());
+            return writer.finish(true).iterator().next();
+        }
+    }
+
+    private static void assertSameContent(SSTableReader expected, Collection<Range<Token>> ranges, SSTableReader actual)
+    {
+        int partitions = 0;
+        try (ISSTableScanner expectedScanner = expected.getScanner(ranges);
+             ISSTableScanner actualScanner = actual.getScanner())
+        {
+            while (expectedScanner.hasNext())
+            {
+                assertTrue(actualScanner.hasNext());
+                try (UnfilteredRowIterator expectedPartition = expectedScanner.next();
+                     UnfilteredRowIterator actualPartition = actualScanner.next())
+                {
+                    assertEquals(expectedPartition.partitionKey(), actualPartition.partitionKey());
+                    assertEquals(expectedPartition.partitionLevelDeletion(), actualPartition.partitionLevelDeletion());
+                    assertEquals(expectedPartition.staticRow(), actualPartition.staticRow());
+                    while (expectedPartition.hasNext())
+                    {
+                        assertTrue(actualPartition.hasNext());
+                        assertEquals(expectedPartition.next(), actualPartition.next());
+                    }
+                    assertFalse(actualPartition.hasNext());
+                    ++partitions;
+                }
+            }
+            assertFalse(actualScanner.hasNext());
+        }
+        assertEquals(60, partitions);
+    }
+
+    private static void assertSameSlices(SSTableReader expected, SSTableReader actual)
+    {
+        TableMetadata metadata = expected.metadata();
+        Slices slices = Slices.with(metadata.comparator, Slice.make(metadata.comparator.make(200), metadata.comparator.make(210)));
+        int partitions = 0;
+        try (ISSTableScanner scanner = actual.getScanner())
+        {
+            while (scanner.hasNext())
+            {
+                DecoratedKey key;
+                try (UnfilteredRowIterator partition = scanner.next())
+                {
+                    key = partition.partitionKey();
+                }
+                try (UnfilteredRowIterator expectedPartition = expected.iterator(key, slices, ColumnFilter.all(metadata), false, SSTableReadsListener.NOOP_LISTENER);
+                     UnfilteredRowIterator actualPartition = actual.iterator(key, slices, ColumnFilter.all(metadata), false, SSTableReadsListener.NOOP_LISTENER))
+                {
+                    while (expectedPartition.hasNext())
+                        assertEquals(expectedPartition.next(), actualPartition.next());
+                    assertFalse(actualPartition.hasNext());
+                }
+                ++partitions;
+            }
+        }
+        assertEquals(60, partitions);
+    }
+
+    @Test
+    public void testCopySerializedRows() throws Throwable
+    {
+        SSTableReader sstable = createSSTable();
+        Collection<Range<Token>> ranges = ranges(sstable);
+        List<SSTableReader.PartitionPositionBounds> sections = sstable.getPositionsForRanges(ranges);
+        assertEquals(2, sections.size());
+        byte[] sent = read(sstable, sections);
+
+        SSTableReader received = receive(sent, sstable, sstable.header);
+        try
+        {
+            // the rows are copied, so that the data file holds the same bytes
+            assertArrayEquals(sent, read(received, ImmutableList.of(new SSTableReader.PartitionPositionBounds(0, received.uncompressedLength()))));
+            assertSameContent(sstable, ranges, received);
+            assertSameSlices(sstable, received);
+
+            assertEquals(60, received.estimatedKeys());
+            // the stats are collected from the received rows
+            assertTrue(received.getMinTimestamp() >= sstable.getMinTimestamp());
+            assertTrue(received.getMaxTimestamp() <= sstable.getMaxTimestamp());
+            assertTrue(received.getMinTimestamp() < received.getMaxTimestamp());
+        }
+        finally
+        {
+            received.selfRef().release();
+        }
+    }
+
+    @Test
+    public void testDifferentHeader() throws Throwable
+    {
+        SSTableReader sstable = createSSTable();
+        Collection<Range<Token>> ranges = ranges(sstable);
+        byte[] sent = read(sstable, sstable.getPositionsForRanges(ranges));
+
+        // the encoding of the rows depends on the stats of the header, so the rows must be serialized again
+        SerializationHeader header = new SerializationHeader(true, sstable.metadata(), sstable.header.columns(), EncodingStats.NO_STATS);
+        SSTableReader received = receive(sent, sstable, header);
+        try
+        {
+            byte[] written = read(received, ImmutableList.of(new SSTableReader.PartitionPositionBounds(0, received.uncompressedLength())));
+            assertNotEquals(sent.length, written.length);
+            assertSameContent(sstable, ranges, received);
+            assertSameSlices(sstable, received);
+        }
+        finally
+        {
+            received.selfRef().release();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MemtableTrieInlineContentTest
+{
+    // Integers are stored in the nodes, anything else in the content list
+    private static final MemtableTrie.InlineContent<Object> INTEGERS = new MemtableTrie.InlineContent<Object>()
+    {
+        public int encode(Object content)
+        {
+            return content instanceof Integer ? (Integer) content : -1;
+        }
+
+        public Object decode(int value)
+        {
+            return value;
+        }
+    };
+
+    @Test
+    public void testInlineContent() throws MemtableTrie.SpaceExhaustedException
+    {
+        for (boolean recursive : new boolean[]{ false, true })
+        {
+            MemtableTrie<Object> trie = new MemtableTrie<>(BufferType.OFF_HEAP, new OpOrder(), INTEGERS);
+            Map<String, Object> expected = new TreeMap<>();
+            int count = 100;
+            for (int i = 0; i < count; ++i)
+            {
+                // each key is a prefix of the next one, so that both leaf and prefix nodes hold content
+                put(trie, expected, "k" + i, i, recursive);
+                put(trie, expected, "k" + i + "x", "v" + i, recursive);
+                put(trie, expected, "k" + i + "xy", MemtableTrie.InlineContent.MAX_VALUE, recursive);
+            }
+            assertEquals(count, trie.valuesCount());
+            assertContent(expected, trie);
+
+            // replace inline content with other inline content, with objects, and objects with inline content
+            for (int i = 0; i < count; ++i)
+            {
+                put(trie, expected, "k" + i, i + count, recursive);
+                put(trie, expected, "k" + i + "x", i, recursive);
+                put(trie, expected, "k" + i + "xy", "w" + i, recursive);
+            }
+            assertEquals(count, trie.valuesCount());
+            assertContent(expected, trie);
+
+            for (int i = 0; i < count; ++i)
+                put(trie, expected, "k" + i, "u" + i, recursive);
+            assertEquals(2 * count, trie.valuesCount());
+            assertContent(expected, trie);
+        }
+    }
+
+    @Test
+    public void testInlineContentTakesNoContentSlots() throws MemtableTrie.SpaceExhaustedException
+    {
+        // with off-heap buffers, the on-heap size only grows with the number of content slots
+        MemtableTrie<Object> inline = new MemtableTrie<>(BufferType.OFF_HEAP, new OpOrder(), INTEGERS);
+        MemtableTrie<Object> objects = new MemtableTrie<>(BufferType.OFF_HEAP, new OpOrder());
+        long emptySizeOnHeap = inline.sizeOnHeap();
+        Map<String, Object> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; ++i)
+        {
+            put(inline, expected, "k" + i, i, true);
+            put(objects, expected, "k" + i, i, true);
+        }
+
+        assertEquals(emptySizeOnHeap, inline.sizeOnHeap());
+        assertEquals(0, inline.valuesCount());
+        assertEquals(1000, objects.valuesCount());
+        assertEquals(objects.sizeOffHeap(), inline.sizeOffHeap());
+        assertContent(expected, inline);
+    }
+
+    private static void put(MemtableTrie<Object> trie, Map<String, Object> expected, String key, Object value, boolean recursive)
+    throws MemtableTrie.SpaceExhaustedException
+    {
+        trie.putSingleton(key(key), value, (x, y) -> y, recursive);
+        expected.put(key, value);
+    }
+
+    private static ByteComparable key(String s)
+    {
+        // not terminated, so that keys can be prefixes of others
+        return ByteComparable.fixedLength(ByteBufferUtil.bytes(s));
+    }
+
+    private static void assertContent(Map<String, Object> expected, MemtableTrie<Object> trie)
+    {
+        for (Map.Entry<String, Object> entry : expected.entrySet())
+            assertEquals(entry.getKey(), entry.getValue(), trie.get(key(entry.getKey())));
+        assertNull(trie.get(key("missing")));
+
+        List<Object> values = new ArrayList<>();
+        trie.values().forEach(values::add);
+        assertEquals(new ArrayList<>(expected.values()), values);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemtableTrieReuseTest
+{
+    private static final int PREFIXES = 200;
+    // more than the sparse node capacity, so that every branch is converted to a split node
+    private static final int CHILDREN = 10;
+
+    @Test
+    public void testCellsReusedAfterReads() throws MemtableTrie.SpaceExhaustedException
+    {
+        for (BufferType bufferType : BufferType.values())
+        {
+            MemtableTrie<String> reusing = new MemtableTrie<>(bufferType, new OpOrder());
+            MemtableTrie<String> notReusing = new MemtableTrie<>(bufferType);
+            Map<String, String> expected = new TreeMap<>();
+            for (int round = 0; round < 2; ++round)
+                putBranches(round, expected, reusing, notReusing);
+
+            assertTrue(notReusing.releasedCellCount() > 0);
+            assertTrue(reusing.releasedCellCount() < notReusing.releasedCellCount());
+            assertTrue(reusing.sizeOnHeap() + reusing.sizeOffHeap() < notReusing.sizeOnHeap() + notReusing.sizeOffHeap());
+            assertContent(expected, reusing);
+        }
+    }
+
+    @Test
+    public void testNoReuseWhileReading() throws MemtableTrie.SpaceExhaustedException
+    {
+        OpOrder readOrder = new OpOrder();
+        MemtableTrie<String> reusing = new MemtableTrie<>(BufferType.OFF_HEAP, readOrder);
+        MemtableTrie<String> notReusing = new MemtableTrie<>(BufferType.OFF_HEAP);
+        Map<String, String> expected = new TreeMap<>();
+
+        try (OpOrder.Group read = readOrder.start())
+        {
+            for (int round = 0; round < 2; ++round)
+                putBranches(round, expected, reusing, notReusing);
+
+            // the read may still be looking at any of the released cells
+            assertEquals(notReusing.sizeOffHeap(), reusing.sizeOffHeap());
+            assertEquals(notReusing.releasedCellCount(), reusing.releasedCellCount());
+        }
+
+        putBranches(2, expected, reusing, notReusing);
+        assertTrue(reusing.sizeOffHeap() < notReusing.sizeOffHeap());
+        assertContent(expected, reusing);
+    }
+
+    @Test
+    public void testRemovedContentReused() throws MemtableTrie.SpaceExhaustedException
+    {
+        // with off-heap buffers, the on-heap size only grows with the number of content slots
+        MemtableTrie<String> trie = new MemtableTrie<>(BufferType.OFF_HEAP, new OpOrder());
+        Map<String, String> expected = new TreeMap<>();
+        int count = 1000;
+        for (int i = 0; i < count; ++i)
+        {
+            // each key is a prefix of another, so that removing its content does not remove its node (removing leaf
+            // nodes is not supported)
+            put(trie, expected, "k" + i, "v" + i);
+            put(trie, expected, "k" + i + "x", "v" + i + "x");
+        }
+        long sizeOnHeap = trie.sizeOnHeap();
+
+        for (int i = 0; i < count; ++i)
+        {
+            trie.putSingleton(key("k" + i), "", (x, y) -> null);
+            expected.remove("k" + i);
+        }
+        assertEquals(count, trie.valuesCount());
+        assertContent(expected, trie);
+
+        for (int i = 0; i < count; ++i)
+            put(trie, expected, "k" + i, "w" + i);
+
+        assertEquals(sizeOnHeap, trie.sizeOnHeap());
+        assertEquals(2 * count, trie.valuesCount());
+        assertContent(expected, trie);
+    }
+
+    /**
+     * Puts PREFIXES branches with CHILDREN keys each. The branch nodes start as sparse and are converted to split ones,
+     * releasing the sparse nodes.
+     */
+    private static void putBranches(int round, Map<String, String> expected, MemtableTrie<String>... tries)
+    throws MemtableTrie.SpaceExhaustedException
+    {
+        for (int i = 0; i < PREFIXES; ++i)
+            for (int j = 0; j < CHILDREN; ++j)
+            {
+                String key = String.format("%d:%d-%c", round, i, (char) ('a' + j));
+                for (MemtableTrie<String> trie : tries)
+                    trie.putSingleton(key(key), key, (x, y) -> y);
+                expected.put(key, key);
+            }
+    }
+
+    private static void put(MemtableTrie<String> trie, Map<String, String> expected, String key, String value)
+    throws MemtableTrie.SpaceExhaustedException
+    {
+        trie.putSingleton(key(key), value, (x, y) -> y);
+        expected.put(key, value);
+    }
+
+    private static ByteComparable key(String s)
+    {
+        // not terminated, so that keys can be prefixes of others
+        return ByteComparable.fixedLength(ByteBufferUtil.bytes(s));
+    }
+
+    private static void assertContent(Map<String, String> expected, MemtableTrie<String> trie)
+    {
+        for (Map.Entry<String, String> entry : expected.entrySet())
+            assertEquals(entry.getValue(), trie.get(key(entry.getKey())));
+        assertNull(trie.get(key("missing")));
+
+        int count = 0;
+        for (String value : trie.values())
+        {
+            assertTrue(value, expected.containsValue(value));
+            ++count;
+        }
+        assertEquals(expected.size(), count);
+
+        count = 0;
+        for (String value : trie.valuesUnordered())
+        {
+            assertTrue(value, expected.containsValue(value));
+            ++count;
+        }
+        assertEquals(expected.size(), count);
+    }
+}
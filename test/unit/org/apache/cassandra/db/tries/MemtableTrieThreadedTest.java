@@ -26,6 +26,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -173,4 +174,100 @@ public class MemtableTrieThreadedTest
         if (!errors.isEmpty())
             Assert.fail("Got errors:\n" + errors);
     }
+
+    @Test
+    public void testConcurrentContentUpdates() throws InterruptedException
+    {
+        ByteComparable[] src = generateKeys(rand, COUNT);
+        MemtableTrie<Long> trie = new MemtableTrie<>(BufferType.ON_HEAP);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<Thread>();
+        AtomicBoolean writeCompleted = new AtomicBoolean(false);
+        AtomicInteger writeProgress = new AtomicInteger(0);
+        AtomicLong increments = new AtomicLong(0);
+
+        for (int i = 0; i < READERS; ++i)
+        {
+            threads.add(new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Random r = ThreadLocalRandom.current();
+                        while (!writeCompleted.get())
+                        {
+                            int max = writeProgress.get();
+                            if (max == 0)
+                                continue;
+
+                            // Skew the updates towards a small set of keys to cause contention.
+                            int index = r.nextBoolean() ? r.nextInt(Math.min(max, 16)) : r.nextInt(max);
+                            int contentIndex = trie.getContentIndex(src[index]);
+                            Assert.assertTrue("Failed index " + index + " while progress is at " + max, contentIndex >= 0);
+                            while (true)
+                            {
+                                Long current = trie.getContentAt(contentIndex);
+                                if (trie.compareAndSetContent(contentIndex, current, current + 1))
+                                    break;
+                            }
+                            increments.incrementAndGet();
+                        }
+                    }
+                    catch (Throwable t)
+                    {
+                        t.printStackTrace();
+                        errors.add(t);
+                    }
+                }
+            });
+        }
+
+        threads.add(new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    // The mutator only adds new keys, which is the condition for concurrent content updates to be safe.
+                    for (int i = 0; i < COUNT; i++)
+                    {
+                        if (i % 2 == 0)
+                            trie.apply(Trie.singleton(src[i], 0L), (x, y) -> y);
+                        else
+                            trie.putRecursive(src[i], 0L, (x, y) -> y);
+                        writeProgress.set(i + 1);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    t.printStackTrace();
+                    errors.add(t);
+                }
+                finally
+                {
+                    writeCompleted.set(true);
+                }
+            }
+        });
+
+        for (Thread t : threads)
+            t.start();
+
+        for (Thread t : threads)
+            t.join();
+
+        if (!errors.isEmpty())
+            Assert.fail("Got errors:\n" + errors);
+
+        long sum = 0;
+        int count = 0;
+        for (Long v : trie.values())
+        {
+            sum += v;
+            ++count;
+        }
+        Assert.assertEquals(COUNT, count);
+        Assert.assertEquals(increments.get(), sum);
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+import org.apache.cassandra.utils.bytecomparable.ByteSourceInverse;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopLevelContentTrieTest
+{
+    @Test
+    public void testTopLevelContent() throws MemtableTrie.SpaceExhaustedException
+    {
+        MemtableTrie<String> trie = new MemtableTrie<>(BufferType.ON_HEAP);
+        for (String key : new String[]{ "a", "ab", "abc", "abd", "b", "ba", "c", "cab", "cac", "d" })
+            trie.putRecursive(key(key), key, (x, y) -> y);
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), values(trie.topLevelContent()));
+
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<ByteComparable, String> entry : trie.topLevelContent().entrySet())
+            keys.add(new String(ByteSourceInverse.readBytes(entry.getKey().asComparableBytes(Trie.BYTE_COMPARABLE_VERSION))));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys);
+
+        // nodes without content are descended into
+        MemtableTrie<String> noPrefixes = new MemtableTrie<>(BufferType.ON_HEAP);
+        for (String key : new String[]{ "ab", "abc", "b", "cab", "cabd", "cac" })
+            noPrefixes.putRecursive(key(key), key, (x, y) -> y);
+        assertEquals(Arrays.asList("ab", "b", "cab", "cac"), values(noPrefixes.topLevelContent()));
+        assertEquals(Arrays.asList("cab", "cac"), values(noPrefixes.subtrie(key("c"), true, null, false).topLevelContent()));
+    }
+
+    private static List<String> values(Trie<String> trie)
+    {
+        List<String> values = new ArrayList<>();
+        trie.values().forEach(values::add);
+        return values;
+    }
+
+    private static ByteComparable key(String s)
+    {
+        // not terminated, so that keys can be prefixes of others
+        return ByteComparable.fixedLength(ByteBufferUtil.bytes(s));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.tries;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import com.google.common.collect.Iterators;
+import org.junit.Test;
+
+import org.apache.cassandra.utils.CloseableIterator;
+import org.apache.cassandra.utils.MergeIterator;
+import org.apache.cassandra.utils.Reducer;
+import org.apache.cassandra.utils.bytecomparable.ByteComparable;
+
+import static org.apache.cassandra.db.tries.MemtableTrieTestBase.VERSION;
+import static org.junit.Assert.assertEquals;
+
+public class TrieMergeIteratorTest
+{
+    private static final Comparator<String> BYTE_ORDER = (s1, s2) -> ByteComparable.compare(key(s1), key(s2), VERSION);
+
+    Random rand = new Random(1);
+
+    @Test
+    public void testSortedIteratorTrie()
+    {
+        for (int count : new int[]{ 0, 1, 10, 1000 })
+        {
+            NavigableSet<String> keys = generateKeys(count, 10);
+            assertEquals(new ArrayList<>(keys), valuesOf(new SortedIteratorTrie<>(keys.iterator(), TrieMergeIteratorTest::key)));
+        }
+    }
+
+    @Test
+    public void testSortedIteratorSubtrie()
+    {
+        NavigableSet<String> keys = generateKeys(1000, 10);
+        for (int i = 0; i < 100; ++i)
+        {
+            String left = randomKey(10);
+            String right = randomKey(10);
+            if (BYTE_ORDER.compare(left, right) > 0)
+            {
+                String t = left;
+                left = right;
+                right = t;
+            }
+            Trie<String> trie = new SortedIteratorTrie<>(keys.iterator(), TrieMergeIteratorTest::key);
+            assertEquals(new ArrayList<>(keys.subSet(left, true, right, false)),
+                         valuesOf(trie.subtrie(key(left), true, key(right), false)));
+        }
+    }
+
+    @Test
+    public void testMerge()
+    {
+        for (int sources : new int[]{ 1, 2, 3, 15 })
+        {
+            List<NavigableSet<String>> inputs = new ArrayList<>();
+            for (int i = 0; i < sources; ++i)
+                inputs.add(generateKeys(rand.nextInt(1000), 6));
+
+            List<String> expected = new ArrayList<>();
+            Iterators.addAll(expected, MergeIterator.get(iterators(inputs), BYTE_ORDER, new IndexListingReducer()));
+            List<String> actual = new ArrayList<>();
+            try (CloseableIterator<String> merged = TrieMergeIterator.getCloseable(closeableIterators(inputs),
+                                                                                  TrieMergeIteratorTest::key,
+                                                                                  new IndexListingReducer()))
+            {
+                Iterators.addAll(actual, merged);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static List<String> valuesOf(Trie<String> trie)
+    {
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<ByteComparable, String> entry : trie.entrySet())
+        {
+            assertEquals(0, ByteComparable.compare(key(entry.getValue()), entry.getKey(), VERSION));
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+
+    private NavigableSet<String> generateKeys(int count, int maxLength)
+    {
+        NavigableSet<String> keys = new TreeSet<>(BYTE_ORDER);
+        while (keys.size() < count)
+            keys.add(randomKey(maxLength));
+        return keys;
+    }
+
+    private String randomKey(int maxLength)
+    {
+        // a small alphabet, so that keys share prefixes
+        StringBuilder builder = new StringBuilder();
+        int length = rand.nextInt(maxLength) + 1;
+        for (int i = 0; i < length; ++i)
+            builder.append((char) ('a' + rand.nextInt(4)));
+        return builder.toString();
+    }
+
+    private static ByteComparable key(String s)
+    {
+        // terminated, thus prefix-free
+        return ByteComparable.of(s);
+    }
+
+    private static List<Iterator<String>> iterators(List<NavigableSet<String>> inputs)
+    {
+        List<Iterator<String>> iterators = new ArrayList<>();
+        for (NavigableSet<String> input : inputs)
+            iterators.add(input.iterator());
+        return iterators;
+    }
+
+    private static List<CloseableIterator<String>> closeableIterators(List<NavigableSet<String>> inputs)
+    {
+        List<CloseableIterator<String>> iterators = new ArrayList<>();
+        for (NavigableSet<String> input : inputs)
+        {
+            Iterator<String> iterator = input.iterator();
+            iterators.add(new CloseableIterator<String>()
+            {
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                public String next()
+                {
+                    return iterator.next();
+                }
+
+                public void close()
+                {
+                }
+            });
+        }
+        return iterators;
+    }
+
+    /**
+     * Lists the key with the sorted indexes of the sources it came from.
+     */
+    private static class IndexListingReducer extends Reducer<String, String>
+    {
+        String key;
+        TreeSet<Integer> indexes = new TreeSet<>();
+
+        public void reduce(int idx, String current)
+        {
+            key = current;
+            indexes.add(idx);
+        }
+
+        public String getReduced()
+        {
+            return key + indexes;
+        }
+
+        public void onKeyChange()
+        {
+            indexes.clear();
+        }
+    }
+}
@@ -29,9 +29,11 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class CQLCompressionTest extends CQLTester
@@ -256,6 +258,46 @@ public class CQLCompressionTest extends CQLTester
         });
     }
 
+    @Test
+    public void zstdDictionaryTest() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text) WITH compression = {'class': 'ZstdCompressor', 'chunk_length_in_kb': 4, 'dictionary_size_in_kb': 1};");
+        ColumnFamilyStore store = getCurrentColumnFamilyStore();
+        int rows = 4000;
+        for (int i = 0; i < rows; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, String.format("{\"id\":%d,\"type\":\"event-%d\",\"status\":\"%s\"}", i, i % 10, i % 3 == 0 ? "ok" : "failed"));
+        flush();
+
+        // Flushes use LZ4 and hence have no dictionary, but still have the (empty) component
+        store.getLiveSSTables().forEach(sstable -> {
+            assertTrue(sstable.descriptor.fileFor(Component.COMPRESSION_DICTIONARY).exists());
+            assertFalse(sstable.getCompressionMetadata().compressor() instanceof ZstdDictionaryCompressor);
+        });
+
+        // Should compact to Zstd with a dictionary trained from the first chunks
+        compact();
+
+        Set<SSTableReader> sstables = store.getLiveSSTables();
+        assertEquals(1, sstables.size());
+        SSTableReader sstable = sstables.iterator().next();
+        assertTrue(sstable.getCompressionMetadata().compressor() instanceof ZstdDictionaryCompressor);
+        assertTrue(sstable.descriptor.fileFor(Component.COMPRESSION_DICTIONARY).length() > 0);
+
+        CompressionMetadata reloaded = new CompressionMetadata(sstable.descriptor, sstable.onDiskLength());
+        try
+        {
+            assertTrue(reloaded.compressor() instanceof ZstdDictionaryCompressor);
+        }
+        finally
+        {
+            reloaded.close();
+        }
+
+        assertEquals(rows, execute("SELECT * FROM %s").size());
+        assertRows(execute("SELECT v FROM %s WHERE k = ?", rows - 1),
+                   row(String.format("{\"id\":%d,\"type\":\"event-%d\",\"status\":\"%s\"}", rows - 1, (rows - 1) % 10, (rows - 1) % 3 == 0 ? "ok" : "failed")));
+    }
+
     private ColumnFamilyStore flushTwice() throws Throwable
     {
         ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
@@ -178,6 +178,46 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testAdviseWillNeed() throws IOException
+    {
+        File file = FileUtils.createTempFile("advise_will_need", "1");
+        File metadataFile = new File(file.absolutePath() + ".metadata");
+        int chunkLength = 4096;
+        MetadataCollector sstableMetadataCollector = new MetadataCollector(new ClusteringComparator(BytesType.instance));
+        try
+        {
+            try (SequentialWriter writer = new CompressedSequentialWriter(file, metadataFile, null, SequentialWriterOption.DEFAULT,
+                                                                          CompressionParams.lz4(chunkLength), sstableMetadataCollector))
+            {
+                Random random = new Random(0);
+                for (int i = 0; i < 10 * chunkLength; i++)
+                    writer.write(random.nextInt(16));
+                writer.finish();
+            }
+
+            CompressionMetadata metadata = new CompressionMetadata(metadataFile, file.length(), true);
+            try (FileHandle.Builder builder = new FileHandle.Builder(file).withCompressionMetadata(metadata);
+                 FileHandle fh = builder.complete())
+            {
+                // the advice covers the whole chunks of the range, and their checksums
+                CompressionMetadata.Chunk first = metadata.chunkFor(chunkLength);
+                CompressionMetadata.Chunk last = metadata.chunkFor(3 * chunkLength);
+                assertEquals(last.offset + last.length + 4 - first.offset, fh.adviseWillNeed(chunkLength + 100, 2 * chunkLength));
+
+                // the range is limited to the end of the file
+                CompressionMetadata.Chunk end = metadata.chunkFor(10 * chunkLength - 1);
+                assertEquals(end.length + 4, fh.adviseWillNeed(10 * chunkLength - 1, 100 * chunkLength));
+                assertEquals(0, fh.adviseWillNeed(10 * chunkLength, chunkLength));
+            }
+        }
+        finally
+        {
+            file.tryDelete();
+            metadataFile.tryDelete();
+        }
+    }
+
     private static void testResetAndTruncate(File f, boolean compressed, boolean usemmap, int junkSize, double minCompressRatio) throws IOException
     {
         final String filename = f.absolutePath();
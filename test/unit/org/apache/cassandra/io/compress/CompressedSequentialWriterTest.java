@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Files;
 import org.junit.After;
 import org.junit.Assert;
@@ -113,6 +114,69 @@ public class CompressedSequentialWriterTest extends SequentialWriterTest
         runTests("ZSTD");
     }
 
+    @Test
+    public void testZSTDDictionaryWriter() throws IOException
+    {
+        int chunkLength = 4096;
+        CompressionParams withDictionary = new CompressionParams(ZstdCompressor.class.getName(), chunkLength, Integer.MAX_VALUE,
+                                                                 ImmutableMap.of(ZstdCompressor.DICTIONARY_SIZE_OPTION_NAME, "4"));
+        CompressionParams withoutDictionary = new CompressionParams(ZstdCompressor.class.getName(), chunkLength, Integer.MAX_VALUE,
+                                                                    Collections.emptyMap());
+        assertTrue(withDictionary.trainsDictionary());
+
+        // small repetitive records, enough for the samples (100 times the dictionary size) and as much again
+        StringBuilder records = new StringBuilder();
+        Random r = new Random(42);
+        while (records.length() < 1 << 20)
+            records.append(String.format("{\"id\":%d,\"type\":\"event-%d\",\"user\":\"user-%d\",\"timestamp\":%d,\"status\":\"%s\"}\n",
+                                         r.nextInt(), r.nextInt(10), r.nextInt(1000), r.nextLong(), r.nextBoolean() ? "ok" : "failed"));
+        byte[] data = records.toString().getBytes();
+
+        File plain = FileUtils.createTempFile("zstd_plain", "1");
+        File trained = FileUtils.createTempFile("zstd_dictionary", "1");
+        File dictionary = new File(trained.absolutePath() + ".dictionary");
+        try
+        {
+            long plainLength = writeWithDictionary(plain, null, withoutDictionary, data);
+            long trainedLength = writeWithDictionary(trained, dictionary, withDictionary, data);
+
+            assertTrue(dictionary.length() > 0);
+            assertTrue(String.format("%d >= %d", trainedLength, plainLength), trainedLength < plainLength);
+
+            CompressionMetadata metadata = new CompressionMetadata(new File(trained.absolutePath() + ".metadata"), dictionary, trained.length(), true);
+            assertTrue(metadata.compressor() instanceof ZstdDictionaryCompressor);
+            try (FileHandle.Builder builder = new FileHandle.Builder(trained).withCompressionMetadata(metadata);
+                 FileHandle fh = builder.complete();
+                 RandomAccessReader reader = fh.createReader())
+            {
+                byte[] result = new byte[(int) reader.length()];
+                reader.readFully(result);
+                Assert.assertArrayEquals(data, result);
+            }
+        }
+        finally
+        {
+            for (File file : new File[]{ plain, trained, dictionary })
+            {
+                file.tryDelete();
+                new File(file.absolutePath() + ".metadata").tryDelete();
+            }
+        }
+    }
+
+    private long writeWithDictionary(File f, File dictionary, CompressionParams params, byte[] data) throws IOException
+    {
+        MetadataCollector sstableMetadataCollector = new MetadataCollector(new ClusteringComparator(Collections.singletonList(BytesType.instance)));
+        try (CompressedSequentialWriter writer = new CompressedSequentialWriter(f, new File(f.absolutePath() + ".metadata"),
+                                                                               dictionary, null, SequentialWriterOption.DEFAULT,
+                                                                               params, sstableMetadataCollector))
+        {
+            writer.write(data);
+            writer.finish();
+        }
+        return f.length();
+    }
+
     @Test
     public void testNoopWriter() throws IOException
     {
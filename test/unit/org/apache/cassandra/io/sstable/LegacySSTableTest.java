@@ -58,6 +58,7 @@ import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
 import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexFormat;
+import org.apache.cassandra.io.sstable.metadata.ZoneMapMetadata;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileInputStreamPlus;
 import org.apache.cassandra.io.util.FileOutputStreamPlus;
@@ -66,8 +67,10 @@ import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.streaming.OutgoingStream;
 import org.apache.cassandra.streaming.StreamOperation;
 import org.apache.cassandra.streaming.StreamPlan;
+import org.apache.cassandra.utils.BlockedBloomFilter;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.FilterFactory;
 import org.apache.cassandra.utils.UUIDGen;
 
 import static org.apache.cassandra.service.ActiveRepairService.NO_PENDING_REPAIR;
@@ -92,7 +95,7 @@ public class LegacySSTableTest
      * See {@link #testGenerateSstables()} to generate sstables.
      * Take care on commit as you need to add the sstable files using {@code git add -f}
      */
-    public static final String[] legacyVersions = {"nc", "nb", "na", "me", "md", "mc", "mb", "ma", "aa", "ac", "ad", "ba", "bb", "ca", "cb"};
+    public static final String[] legacyVersions = {"nc", "nb", "na", "me", "md", "mc", "mb", "ma", "aa", "ac", "ad", "ba", "bb", "ca", "cb", "nd", "cc"};
 
     // 1200 chars
     static final String longString = "0123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789" +
@@ -355,6 +358,41 @@ public class LegacySSTableTest
         }
     }
 
+    @Test
+    public void testZoneMapsAndFilterTypes() throws Exception
+    {
+        for (String legacyVersion : legacyVersions)
+        {
+            ColumnFamilyStore simple = Keyspace.open("legacy_tables").getColumnFamilyStore(String.format("legacy_%s_simple", legacyVersion));
+            loadLegacyTable("legacy_%s_simple", legacyVersion);
+            for (SSTableReader sstable : simple.getLiveSSTables())
+            {
+                ZoneMapMetadata zoneMap = sstable.getZoneMap();
+                if (sstable.descriptor.version.hasZoneMaps())
+                {
+                    Assert.assertNotNull("No zone maps in " + sstable, zoneMap);
+                    ZoneMapMetadata.Zone zone = zoneMap.zone(simple.metadata().getColumn(ByteBufferUtil.bytes("val")));
+                    Assert.assertNotNull("No zone for val in " + sstable, zone);
+                    assertEquals(5, zone.valueCount);
+                    assertEquals(0, zone.nullCount);
+                }
+                else
+                {
+                    Assert.assertNull(zoneMap);
+                }
+            }
+
+            ColumnFamilyStore clust = Keyspace.open("legacy_tables").getColumnFamilyStore(String.format("legacy_%s_clust", legacyVersion));
+            loadLegacyTable("legacy_%s_clust", legacyVersion);
+            for (SSTableReader sstable : clust.getLiveSSTables())
+            {
+                assertEquals(sstable.toString(), sstable.descriptor.version.hasFilterTypes(), sstable.getBloomFilter() instanceof BlockedBloomFilter);
+                for (int pk = 0; pk < 5; pk++)
+                    assertTrue(sstable.getBloomFilter().isPresent(sstable.decorateKey(ByteBufferUtil.bytes(Integer.toString(pk)))));
+            }
+        }
+    }
+
     @Test
     public void testPendingAntiCompactionOldSSTables() throws Exception
     {
@@ -545,9 +583,14 @@ public class LegacySSTableTest
 
     private static void createTables(String legacyVersion)
     {
-        QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_simple (pk text PRIMARY KEY, val text)", legacyVersion));
+        // the zone maps and the filter type are only written and read by the versions that have them
+        QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_simple (pk text PRIMARY KEY, val text) " +
+                                                     "WITH extensions = {'%s': '0x%s'}",
+                                                     legacyVersion, ZoneMapMetadata.TABLE_EXTENSIONS_ZONE_MAP_COLUMNS_KEY, ByteBufferUtil.bytesToHex(ByteBufferUtil.bytes("val"))));
         QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_simple_counter (pk text PRIMARY KEY, val counter)", legacyVersion));
-        QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_clust (pk text, ck text, val text, PRIMARY KEY (pk, ck))", legacyVersion));
+        QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_clust (pk text, ck text, val text, PRIMARY KEY (pk, ck)) " +
+                                                     "WITH extensions = {'%s': '0x01'}",
+                                                     legacyVersion, FilterFactory.TABLE_EXTENSIONS_FILTER_TYPE_KEY));
         QueryProcessor.executeInternal(String.format("CREATE TABLE legacy_tables.legacy_%s_clust_counter (pk text, ck text, val counter, PRIMARY KEY (pk, ck))", legacyVersion));
     }
 
@@ -329,7 +329,8 @@ public class SSTableFlushObserverTest
                                            new SerializationHeader(true, metadata, metadata.regularAndStaticColumns(), EncodingStats.NO_STATS),
                                            Collections.singletonList(observer),
                                            transaction,
-                                           Collections.emptySet());
+                                           Collections.emptySet(),
+                                           null);
 
         SSTableReader reader;
         try
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexSSTableReader;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.SCAN_PREFETCH_MAX_CHUNKS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanPrefetchTest extends CQLTester
+{
+    private Config.DiskAccessMode diskAccessMode;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        CQLTester.setUpClass();
+        requireNetwork();
+    }
+
+    @Before
+    public void enablePrefetch()
+    {
+        SCAN_PREFETCH_MAX_CHUNKS.setInt(8);
+        // memory-mapped data files are not prefetched
+        diskAccessMode = DatabaseDescriptor.getDiskAccessMode();
+        DatabaseDescriptor.setDiskAccessMode(Config.DiskAccessMode.standard);
+    }
+
+    @After
+    public void disablePrefetch()
+    {
+        SCAN_PREFETCH_MAX_CHUNKS.setInt(0);
+        DatabaseDescriptor.setDiskAccessMode(diskAccessMode);
+    }
+
+    private void testScans(String compression) throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c)) WITH compression = " + compression);
+        disableCompaction();
+        for (int k = 0; k < 200; k++)
+            for (int c = 0; c < 20; c++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, "value of a row that takes some space " + k + ':' + c);
+        flush();
+
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        Assume.assumeTrue(sstable instanceof TrieIndexSSTableReader);
+
+        int partitions = 0;
+        int rows = 0;
+        try (ISSTableScanner scanner = sstable.getScanner())
+        {
+            while (scanner.hasNext())
+            {
+                try (UnfilteredRowIterator partition = scanner.next())
+                {
+                    ++partitions;
+                    while (partition.hasNext())
+                    {
+                        partition.next();
+                        ++rows;
+                    }
+                }
+            }
+        }
+        assertEquals(200, partitions);
+        assertEquals(4000, rows);
+        assertTrue(cfs.metric.scanPrefetchedBytes.getCount() > 0);
+
+        // range queries, with and without paging
+        assertEquals(4000, execute("SELECT * FROM %s").size());
+        UntypedResultSet result = execute("SELECT k, c, v FROM %s WHERE token(k) > token(10) AND token(k) <= token(150)");
+        for (UntypedResultSet.Row row : result)
+            assertEquals("value of a row that takes some space " + row.getInt("k") + ':' + row.getInt("c"), row.getString("v"));
+        assertEquals(4000, executeNetWithPaging("SELECT * FROM %s", 77).all().size());
+        assertEquals(1, execute("SELECT * FROM %s WHERE c = 5 AND v = 'value of a row that takes some space 3:5' ALLOW FILTERING").size());
+    }
+
+    @Test
+    public void testCompressed() throws Throwable
+    {
+        testScans("{'class': 'LZ4Compressor', 'chunk_length_in_kb': 4}");
+    }
+
+    @Test
+    public void testUncompressed() throws Throwable
+    {
+        testScans("{'enabled': false}");
+    }
+}
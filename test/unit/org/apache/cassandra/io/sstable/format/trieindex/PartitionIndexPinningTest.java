@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trieindex;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.utils.PageAware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionIndexPinningTest extends CQLTester
+{
+    private static final int ROWS = 5000;
+
+    private List<TrieIndexSSTableReader> createSSTables() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        for (int sstable = 0; sstable < 2; sstable++)
+        {
+            for (int i = 0; i < ROWS; i++)
+                execute("INSERT INTO %s (k, v) VALUES (?, ?)", sstable * ROWS + i, i);
+            cfs.forceBlockingFlush(ColumnFamilyStore.FlushReason.UNIT_TESTS);
+        }
+
+        Assume.assumeTrue(cfs.getLiveSSTables().stream().allMatch(s -> s instanceof TrieIndexSSTableReader));
+        return cfs.getLiveSSTables().stream().map(s -> (TrieIndexSSTableReader) s).collect(Collectors.toList());
+    }
+
+    private static long pinnedBytes(List<TrieIndexSSTableReader> sstables)
+    {
+        return sstables.stream().mapToLong(s -> s.partitionIndex.pinnedBytes()).sum();
+    }
+
+    private void checkReads() throws Throwable
+    {
+        for (int i = 0; i < 2 * ROWS; i += 7)
+            assertRows(execute("SELECT v FROM %s WHERE k = ?", i), row(i % ROWS));
+        assertEmpty(execute("SELECT v FROM %s WHERE k = ?", -1));
+    }
+
+    @Test
+    public void testBudget() throws Throwable
+    {
+        List<TrieIndexSSTableReader> sstables = createSSTables();
+
+        assertEquals(0, new PartitionIndexPinning(0, 3).redistribute(sstables));
+        assertEquals(0, pinnedBytes(sstables));
+
+        // room for a single root page
+        assertEquals(PageAware.PAGE_SIZE, new PartitionIndexPinning(PageAware.PAGE_SIZE, 3).redistribute(sstables));
+        assertEquals(1, sstables.stream().filter(s -> s.partitionIndex.pinnedBytes() > 0).count());
+        checkReads();
+
+        long budget = 1 << 20;
+        PartitionIndexPinning pinning = new PartitionIndexPinning(budget, 3);
+        long pinned = pinning.redistribute(sstables);
+        assertTrue(pinned <= budget);
+        assertEquals(pinned, pinnedBytes(sstables));
+        for (TrieIndexSSTableReader sstable : sstables)
+        {
+            // all the levels fit
+            List<long[]> levels = sstable.partitionIndex.topLevelPages(3, Integer.MAX_VALUE);
+            assertEquals(levels.get(levels.size() - 1).length * (long) PageAware.PAGE_SIZE, sstable.partitionIndex.pinnedBytes());
+        }
+        // nothing changes when redistributing again
+        assertEquals(pinned, pinning.redistribute(sstables));
+        checkReads();
+
+        new PartitionIndexPinning(0, 3).redistribute(sstables);
+        assertEquals(0, pinnedBytes(sstables));
+        checkReads();
+    }
+}
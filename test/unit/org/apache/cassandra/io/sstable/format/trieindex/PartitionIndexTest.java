@@ -58,6 +58,7 @@ import org.apache.cassandra.io.tries.Walker;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileHandle;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.PinnedPagesRebufferer;
 import org.apache.cassandra.io.util.Rebufferer;
 import org.apache.cassandra.io.util.SequentialWriter;
 import org.apache.cassandra.io.util.SequentialWriterOption;
@@ -154,6 +155,41 @@ public class PartitionIndexTest
         testGetEq(generateLongKeysIndex(COUNT / 10));
     }
 
+    @Test
+    public void testPinnedPages() throws IOException
+    {
+        Pair<List<DecoratedKey>, PartitionIndex> data = generateRandomIndex(COUNT);
+        PartitionIndex index = data.right;
+        List<long[]> levels = index.topLevelPages(3, Integer.MAX_VALUE);
+        assertEquals(3, levels.size());
+        assertEquals(1, levels.get(0).length);
+        for (int i = 1; i < levels.size(); i++)
+            assertTrue(levels.get(i).length >= levels.get(i - 1).length);
+        assertTrue(index.topLevelPages(3, levels.get(2).length - 1).size() < 3);
+
+        long[] pages = levels.get(2);
+        index.pin(pages);
+        assertEquals((long) pages.length * PageAware.PAGE_SIZE, index.pinnedBytes());
+        try (PartitionIndex copy = index.sharedCopy())
+        {
+            // the copies share the pinned pages
+            assertEquals(index.pinnedBytes(), copy.pinnedBytes());
+            Rebufferer rebufferer = copy.instantiateRebufferer();
+            assertTrue(rebufferer instanceof PinnedPagesRebufferer);
+            rebufferer.closeReader();
+        }
+
+        try (PartitionIndex copy = index.sharedCopy())
+        {
+            testGetEq(Pair.create(data.left, copy));
+            copy.pin(null);
+            assertEquals(0, index.pinnedBytes());
+        }
+
+        index.pin(pages);
+        testGetEq(data);
+    }
+
     void testGetEq(Pair<List<DecoratedKey>, PartitionIndex> data)
     {
         List<DecoratedKey> keys = data.left;
@@ -42,6 +42,7 @@ import org.apache.cassandra.io.sstable.SequenceBasedSSTableId;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexFormat;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
 import org.apache.cassandra.io.util.File;
 import org.apache.cassandra.io.util.FileOutputStreamPlus;
@@ -171,7 +172,7 @@ public class MetadataSerializerTest
     public void testNVersions() throws Throwable
     {
         Assume.assumeTrue(SSTableFormat.Type.current() == SSTableFormat.Type.BIG);
-        testVersions("na", "nb", "nc");
+        testVersions("na", "nb", "nc", "nd");
     }
 
     @Test
@@ -192,7 +193,7 @@ public class MetadataSerializerTest
     public void testCVersions() throws Throwable
     {
         Assume.assumeTrue(SSTableFormat.Type.current() == SSTableFormat.Type.BTI);
-        testVersions("ca", "cb");
+        testVersions("ca", "cb", "cc");
     }
 
     public void testOldReadsNew(String oldV, String newV) throws IOException
@@ -235,4 +236,13 @@ public class MetadataSerializerTest
         Arrays.asList("ma", "mb", "mc", "md", "na").forEach(v -> assertFalse(BigFormat.instance.getVersion(v).hasOriginatingHostId()));
         Arrays.asList("me", "nb").forEach(v -> assertTrue(BigFormat.instance.getVersion(v).hasOriginatingHostId()));
     }
+
+    @Test
+    public void zoneMapsCompatibility()
+    {
+        Arrays.asList("ma", "me", "na", "nb", "nc").forEach(v -> assertFalse(BigFormat.instance.getVersion(v).hasZoneMaps()));
+        Arrays.asList("nd").forEach(v -> assertTrue(BigFormat.instance.getVersion(v).hasZoneMaps()));
+        Arrays.asList("aa", "ba", "ca", "cb").forEach(v -> assertFalse(TrieIndexFormat.instance.getVersion(v).hasZoneMaps()));
+        Arrays.asList("cc").forEach(v -> assertTrue(TrieIndexFormat.instance.getVersion(v).hasZoneMaps()));
+    }
 }
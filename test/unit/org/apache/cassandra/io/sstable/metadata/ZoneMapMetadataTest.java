@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.metadata;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.cql3.Operator;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZoneMapMetadataTest extends CQLTester
+{
+    @BeforeClass
+    public static void setUpClass()
+    {
+        CQLTester.setUpClass();
+        requireNetwork();
+    }
+
+    private static String zoneMapColumns(String columns)
+    {
+        return "0x" + ByteBufferUtil.bytesToHex(ByteBufferUtil.bytes(columns));
+    }
+
+    private SSTableReader flushSSTable()
+    {
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        Set<SSTableReader> before = cfs.getLiveSSTables();
+        cfs.forceBlockingFlush(ColumnFamilyStore.FlushReason.UNIT_TESTS);
+        for (SSTableReader sstable : cfs.getLiveSSTables())
+        {
+            if (!before.contains(sstable))
+                return sstable;
+        }
+        throw new AssertionError("No new sstable");
+    }
+
+    private ColumnMetadata column(String name)
+    {
+        return currentTableMetadata().getColumn(ColumnIdentifier.getInterned(name, false));
+    }
+
+    private RowFilter filter(String column, Operator operator, ByteBuffer value)
+    {
+        RowFilter.Builder builder = RowFilter.builder();
+        builder.add(column(column), operator, value);
+        return builder.build();
+    }
+
+    @Test
+    public void testZonesWritten() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, status text, ts bigint, other int, s int static, m map<int, int>, PRIMARY KEY (k, c)) " +
+                    "WITH extensions = {'ZONE_MAP_COLUMNS': '" + zoneMapColumns("status, ts,missing,k,s,m,ts") + "'}");
+        disableCompaction();
+
+        assertEquals(2, ZoneMapMetadata.columnsFor(currentTableMetadata()).size());
+
+        execute("INSERT INTO %s (k, c, status, ts, s) VALUES (1, 1, 'open', 10, 1)");
+        execute("INSERT INTO %s (k, c, status, ts) VALUES (1, 2, 'closed', 30)");
+        execute("INSERT INTO %s (k, c, ts) VALUES (2, 1, 20)");
+        execute("INSERT INTO %s (k, c, other) VALUES (3, 1, 1)");
+        execute("DELETE status FROM %s WHERE k = 4 AND c = 1");
+        SSTableReader sstable = flushSSTable();
+
+        ZoneMapMetadata zoneMap = sstable.getZoneMap();
+        assertEquals(2, zoneMap.zones.size());
+
+        ZoneMapMetadata.Zone status = zoneMap.zone(column("status"));
+        assertEquals("closed", UTF8Type.instance.compose(status.min));
+        assertEquals("open", UTF8Type.instance.compose(status.max));
+        assertEquals(2, status.valueCount);
+        assertEquals(3, status.nullCount);
+
+        ZoneMapMetadata.Zone ts = zoneMap.zone(column("ts"));
+        assertEquals(10L, (long) LongType.instance.compose(ts.min));
+        assertEquals(30L, (long) LongType.instance.compose(ts.max));
+        assertEquals(3, ts.valueCount);
+        assertEquals(2, ts.nullCount);
+
+        assertNull(zoneMap.zone(column("other")));
+
+        assertTrue(zoneMap.mayMatch(filter("ts", Operator.EQ, ByteBufferUtil.bytes(10L))));
+        assertFalse(zoneMap.mayMatch(filter("ts", Operator.EQ, ByteBufferUtil.bytes(31L))));
+        assertFalse(zoneMap.mayMatch(filter("ts", Operator.LT, ByteBufferUtil.bytes(10L))));
+        assertTrue(zoneMap.mayMatch(filter("ts", Operator.LTE, ByteBufferUtil.bytes(10L))));
+        assertFalse(zoneMap.mayMatch(filter("ts", Operator.GT, ByteBufferUtil.bytes(30L))));
+        assertTrue(zoneMap.mayMatch(filter("ts", Operator.GTE, ByteBufferUtil.bytes(30L))));
+        assertFalse(zoneMap.mayMatch(filter("status", Operator.EQ, ByteBufferUtil.bytes("accepted"))));
+        assertTrue(zoneMap.mayMatch(filter("status", Operator.EQ, ByteBufferUtil.bytes("done"))));
+        assertTrue(zoneMap.mayMatch(filter("other", Operator.EQ, ByteBufferUtil.bytes(5))));
+
+        // the zone maps survive the rewrite of the metadata
+        sstable.descriptor.getMetadataSerializer().mutateLevel(sstable.descriptor, 1);
+        assertEquals(zoneMap, sstable.descriptor.getMetadataSerializer().deserialize(sstable.descriptor, MetadataType.ZONES));
+    }
+
+    @Test
+    public void testNoZones() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        execute("INSERT INTO %s (k, v) VALUES (1, 1)");
+        assertNull(flushSSTable().getZoneMap());
+    }
+
+    @Test
+    public void testTimeSeries() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, ts bigint, v int, PRIMARY KEY (k, c)) " +
+                    "WITH extensions = {'ZONE_MAP_COLUMNS': '" + zoneMapColumns("ts") + "'}");
+        disableCompaction();
+
+        for (int bucket = 0; bucket < 4; bucket++)
+        {
+            for (int i = 0; i < 10; i++)
+                execute("INSERT INTO %s (k, c, ts, v) VALUES (?, ?, ?, ?)", bucket, i, bucket * 100L + i, i);
+            flush();
+        }
+
+        assertRowsIgnoringOrder(execute("SELECT k, c, v FROM %s WHERE ts >= 305 ALLOW FILTERING"),
+                                row(3, 5, 5), row(3, 6, 6), row(3, 7, 7), row(3, 8, 8), row(3, 9, 9));
+        assertRowsIgnoringOrder(execute("SELECT k, c FROM %s WHERE ts = 102 ALLOW FILTERING"),
+                                row(1, 2));
+        assertEmpty(execute("SELECT k, c FROM %s WHERE ts > 1000 ALLOW FILTERING"));
+        assertEquals(40, execute("SELECT * FROM %s WHERE ts >= 0 ALLOW FILTERING").size());
+
+        // with paging
+        assertRowCountNet(executeNetWithPaging("SELECT * FROM %s WHERE ts < 205 AND ts > 95 ALLOW FILTERING", 3), 15);
+    }
+
+    @Test
+    public void testRowsSpanningSSTables() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, status text, v int, PRIMARY KEY (k, c)) " +
+                    "WITH extensions = {'ZONE_MAP_COLUMNS': '" + zoneMapColumns("status") + "'}");
+        disableCompaction();
+
+        execute("INSERT INTO %s (k, c, status, v) VALUES (1, 1, 'open', 1)");
+        execute("INSERT INTO %s (k, c, status, v) VALUES (2, 1, 'open', 1)");
+        execute("INSERT INTO %s (k, c, status, v) VALUES (3, 1, 'open', 1)");
+        execute("INSERT INTO %s (k, c, status, v) VALUES (4, 1, 'open', 1)");
+        flush();
+
+        // the newer sstables do not hold the value 'open', but change the rows that hold it in the older one
+        execute("UPDATE %s SET v = 2 WHERE k = 1 AND c = 1");
+        execute("UPDATE %s SET status = 'closed' WHERE k = 2 AND c = 1");
+        flush();
+        execute("DELETE FROM %s WHERE k = 3 AND c = 1");
+        execute("DELETE FROM %s WHERE k = 4");
+        flush();
+
+        assertRows(execute("SELECT k, c, status, v FROM %s WHERE status = 'open' ALLOW FILTERING"),
+                   row(1, 1, "open", 2));
+        assertRows(execute("SELECT k, c, status, v FROM %s WHERE status = 'closed' ALLOW FILTERING"),
+                   row(2, 1, "closed", 1));
+
+        // and the other way round, with the value in a memtable
+        execute("UPDATE %s SET status = 'done' WHERE k = 1 AND c = 1");
+        assertRows(execute("SELECT k, c, status, v FROM %s WHERE status = 'done' ALLOW FILTERING"),
+                   row(1, 1, "done", 2));
+        assertEmpty(execute("SELECT k, c, status, v FROM %s WHERE status = 'open' ALLOW FILTERING"));
+    }
+}
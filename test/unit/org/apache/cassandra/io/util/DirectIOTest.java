@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.schema.CompressionParams;
+
+import static org.apache.cassandra.config.CassandraRelevantProperties.DIRECT_IO_COMPACTION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DirectIOTest
+{
+    private final Random random = new Random(42);
+    private File file;
+
+    @BeforeClass
+    public static void setupDD()
+    {
+        DatabaseDescriptor.daemonInitialization();
+    }
+
+    @Before
+    public void createFile() throws IOException
+    {
+        file = FileUtils.createTempFile("directio", "test");
+        // skip the tests where the JDK or the file system (e.g. an old tmpfs) does not support O_DIRECT
+        ChannelProxy channel = ChannelProxy.openDirect(file);
+        Assume.assumeNotNull(channel);
+        channel.close();
+    }
+
+    @After
+    public void deleteFile()
+    {
+        file.tryDelete();
+    }
+
+    private FileChannel openDirectWriteChannel() throws IOException
+    {
+        FileChannel channel = DirectIO.reopenForWrite(file, FileChannel.open(file.toPath(), StandardOpenOption.WRITE));
+        assertTrue(channel instanceof DirectIOWriteChannel);
+        return channel;
+    }
+
+    private byte[] randomBytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] fileContents() throws IOException
+    {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Test
+    public void testAppend() throws IOException
+    {
+        byte[] expected = randomBytes(3 * DirectIOWriteChannel.STAGING_BUFFER_SIZE + 12345);
+        try (FileChannel channel = openDirectWriteChannel())
+        {
+            int position = 0;
+            while (position < expected.length)
+            {
+                int length = Math.min(expected.length - position, random.nextInt(100_000));
+                assertEquals(length, channel.write(ByteBuffer.wrap(expected, position, length)));
+                position += length;
+                assertEquals(position, channel.position());
+                assertEquals(position, channel.size());
+            }
+        }
+        assertArrayEquals(expected, fileContents());
+    }
+
+    @Test
+    public void testWritePending() throws IOException
+    {
+        byte[] expected = randomBytes(10_000);
+        try (FileChannel channel = openDirectWriteChannel())
+        {
+            channel.write(ByteBuffer.wrap(expected, 0, 5_000));
+            DirectIO.writePending(channel);
+            // the last block is written padded, and completed by the following writes
+            assertEquals(DirectIO.alignUp(5_000, DirectIO.alignment(file)), file.length());
+            assertArrayEquals(Arrays.copyOf(expected, 5_000), Arrays.copyOf(fileContents(), 5_000));
+
+            channel.write(ByteBuffer.wrap(expected, 5_000, 5_000));
+            channel.force(false);
+            assertArrayEquals(expected, fileContents());
+        }
+        assertArrayEquals(expected, fileContents());
+    }
+
+    @Test
+    public void testOverwriteTruncateAndSkip() throws IOException
+    {
+        byte[] expected = randomBytes(20_000);
+        try (FileChannel channel = openDirectWriteChannel())
+        {
+            channel.write(ByteBuffer.wrap(expected));
+
+            // rewrite a range in the middle of the file, across a block boundary
+            byte[] header = randomBytes(200);
+            System.arraycopy(header, 0, expected, 4000, header.length);
+            channel.position(4000);
+            channel.write(ByteBuffer.wrap(header));
+            assertEquals(4200, channel.position());
+            assertEquals(20_000, channel.size());
+            channel.position(20_000);
+
+            // truncate to the middle of a block and append again
+            channel.truncate(15_000);
+            assertEquals(15_000, channel.position());
+            byte[] tail = randomBytes(3_000);
+            channel.write(ByteBuffer.wrap(tail));
+            System.arraycopy(tail, 0, expected, 15_000, tail.length);
+            expected = Arrays.copyOf(expected, 18_000);
+
+            // skipping leaves a hole of zeros
+            channel.position(25_000);
+            channel.write(ByteBuffer.wrap(tail, 0, 10));
+            expected = Arrays.copyOf(expected, 25_010);
+            System.arraycopy(tail, 0, expected, 25_000, 10);
+        }
+        assertArrayEquals(expected, fileContents());
+    }
+
+    @Test
+    public void testUnalignedReads() throws IOException
+    {
+        byte[] expected = randomBytes(100_000);
+        Files.write(file.toPath(), expected);
+
+        ChannelProxy channel = ChannelProxy.openDirect(file);
+        assertNotNull(channel);
+        try
+        {
+            assertTrue(channel.isDirect());
+            for (int i = 0; i < 1000; i++)
+            {
+                int position = random.nextInt(expected.length);
+                ByteBuffer buffer = ByteBuffer.allocate(random.nextInt(20_000) + 1);
+                int read = channel.read(buffer, position);
+                assertEquals(Math.min(buffer.capacity(), expected.length - position), read);
+                assertArrayEquals(Arrays.copyOfRange(expected, position, position + read), Arrays.copyOf(buffer.array(), read));
+            }
+            assertEquals(-1, channel.read(ByteBuffer.allocate(10), expected.length));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testCompressedFileWithDirectIO() throws IOException
+    {
+        File metadataFile = new File(file.path() + ".metadata");
+        byte[] expected = new byte[300_000];
+        // compressible, but not trivially so
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = (byte) (random.nextInt(16) + i / 1000);
+
+        MetadataCollector collector = new MetadataCollector(new ClusteringComparator(Collections.singletonList(BytesType.instance)));
+        SequentialWriterOption option = SequentialWriterOption.newBuilder().bufferType(BufferType.OFF_HEAP).directIO(true).build();
+        try (CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataFile, null, null, option,
+                                                                               CompressionParams.lz4(4096), collector))
+        {
+            assertTrue(writer.fchannel instanceof DirectIOWriteChannel);
+            writer.write(expected, 0, 100_000);
+            DataPosition mark = writer.mark();
+            writer.write(randomBytes(50_000));
+            writer.resetAndTruncate(mark);
+            writer.write(expected, 100_000, expected.length - 100_000);
+            writer.finish();
+        }
+
+        String previous = System.setProperty(DIRECT_IO_COMPACTION.getKey(), "true");
+        try (FileHandle.Builder builder = new FileHandle.Builder(file).withCompressionMetadata(new CompressionMetadata(metadataFile, file.length(), true));
+             FileHandle fh = builder.complete();
+             RandomAccessReader reader = fh.createReader(null, AccessIntent.COMPACTION))
+        {
+            assertTrue(reader.getChannel().isDirect());
+            byte[] result = new byte[(int) reader.length()];
+            reader.readFully(result);
+            assertArrayEquals(expected, result);
+        }
+        finally
+        {
+            if (previous == null)
+                System.clearProperty(DIRECT_IO_COMPACTION.getKey());
+            else
+                System.setProperty(DIRECT_IO_COMPACTION.getKey(), previous);
+            metadataFile.tryDelete();
+        }
+    }
+}
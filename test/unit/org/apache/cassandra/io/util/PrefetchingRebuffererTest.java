@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrefetchingRebuffererTest
+{
+    private static final int CHUNK_SIZE = DiskOptimizationStrategy.MAX_BUFFER_SIZE;
+    private static final int MAX_DEPTH = 16;
+
+    private File file;
+    private byte[] contents;
+    private ExecutorService background;
+    // when set, the chunks are read on a background thread, slowly
+    private volatile boolean slow;
+
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicInteger waits = new AtomicInteger();
+    private final AtomicInteger closes = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final PrefetchingRebufferer.Listener listener = new PrefetchingRebufferer.Listener()
+    {
+        public void onPrefetch(int length)
+        {
+            prefetched.addAndGet(length);
+        }
+
+        public void onWait()
+        {
+            waits.incrementAndGet();
+        }
+
+        public void onClose(int depth)
+        {
+            closes.incrementAndGet();
+        }
+    };
+
+    @BeforeClass
+    public static void setupDD()
+    {
+        DatabaseDescriptor.daemonInitialization();
+    }
+
+    @Before
+    public void createFile() throws IOException
+    {
+        file = FileUtils.createTempFile("prefetch", "test");
+        contents = new byte[40 * CHUNK_SIZE + 1234];
+        new Random(42).nextBytes(contents);
+        Files.write(file.toPath(), contents);
+        background = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void deleteFile() throws InterruptedException
+    {
+        background.shutdownNow();
+        background.awaitTermination(1, TimeUnit.MINUTES);
+        file.tryDelete();
+    }
+
+    private void execute(Runnable task)
+    {
+        if (!slow)
+        {
+            task.run();
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        background.execute(() -> {
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+            task.run();
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private FileHandle.Builder builder()
+    {
+        return new FileHandle.Builder(file).bufferSize(4096);
+    }
+
+    private PrefetchingRebufferer prefetching(FileHandle fh)
+    {
+        PrefetchingRebufferer rebufferer = fh.instantiatePrefetchingRebufferer(AccessIntent.SCAN, this::execute, MAX_DEPTH, listener);
+        assertNotNull(rebufferer);
+        return rebufferer;
+    }
+
+    private void assertContents(RandomAccessReader reader, int position, int length) throws IOException
+    {
+        byte[] bytes = new byte[length];
+        reader.seek(position);
+        reader.readFully(bytes);
+        byte[] expected = new byte[length];
+        System.arraycopy(contents, position, expected, 0, length);
+        assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    public void testSequentialRead() throws IOException
+    {
+        try (FileHandle.Builder builder = builder();
+             FileHandle fh = builder.complete())
+        {
+            PrefetchingRebufferer rebufferer = prefetching(fh);
+            try (RandomAccessReader reader = rebufferer.createReader())
+            {
+                rebufferer.prefetch(0, contents.length);
+                assertContents(reader, 0, contents.length);
+                assertTrue(reader.isEOF());
+                // the chunks are read as soon as they are issued, so the reader never waits
+                assertEquals(0, waits.get());
+                assertEquals(2, rebufferer.depth());
+            }
+            assertEquals(41L * CHUNK_SIZE, prefetched.get());
+            assertEquals(1, closes.get());
+        }
+    }
+
+    @Test
+    public void testDepthAdapts() throws IOException
+    {
+        try (FileHandle.Builder builder = builder();
+             FileHandle fh = builder.complete())
+        {
+            PrefetchingRebufferer rebufferer = prefetching(fh);
+            try (RandomAccessReader reader = rebufferer.createReader())
+            {
+                slow = true;
+                rebufferer.prefetch(0, contents.length);
+                assertContents(reader, 0, 100);
+                // the reader had to wait for the first chunk
+                assertEquals(1, waits.get());
+                assertEquals(4, rebufferer.depth());
+
+                assertContents(reader, 100, 3 * CHUNK_SIZE);
+                assertTrue(rebufferer.depth() > 4);
+                assertTrue(rebufferer.depth() <= MAX_DEPTH);
+
+                // once the disk keeps up with the reader, fewer chunks are read ahead
+                slow = false;
+                assertContents(reader, 100 + 3 * CHUNK_SIZE, contents.length - 100 - 3 * CHUNK_SIZE);
+                assertEquals(2, rebufferer.depth());
+            }
+        }
+    }
+
+    @Test
+    public void testPartsAndSkips() throws IOException
+    {
+        try (FileHandle.Builder builder = builder();
+             FileHandle fh = builder.complete())
+        {
+            PrefetchingRebufferer rebufferer = prefetching(fh);
+            try (RandomAccessReader reader = rebufferer.createReader())
+            {
+                // before the announced part, read through the wrapped rebufferer
+                assertContents(reader, 10, 1000);
+                assertEquals(0, prefetched.get());
+
+                rebufferer.prefetch(3 * CHUNK_SIZE + 17, 6 * CHUNK_SIZE);
+                assertEquals(2L * CHUNK_SIZE, prefetched.get());
+                assertContents(reader, 3 * CHUNK_SIZE + 17, 2 * CHUNK_SIZE);
+                // does not read ahead past the end of the part
+                assertContents(reader, 5 * CHUNK_SIZE + 17, CHUNK_SIZE);
+                assertEquals(3L * CHUNK_SIZE, prefetched.get());
+
+                // the reader skips within the next part, past the chunks read ahead
+                rebufferer.prefetch(10 * CHUNK_SIZE, 20 * CHUNK_SIZE);
+                assertContents(reader, 15 * CHUNK_SIZE + 5, 2 * CHUNK_SIZE);
+                assertContents(reader, 19 * CHUNK_SIZE, CHUNK_SIZE);
+
+                // the last part extends to the end of the file
+                rebufferer.prefetch(39 * CHUNK_SIZE, Long.MAX_VALUE);
+                assertContents(reader, 39 * CHUNK_SIZE + 1, contents.length - 39 * CHUNK_SIZE - 1);
+                assertTrue(reader.isEOF());
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWithReadsInProgress() throws IOException
+    {
+        try (FileHandle.Builder builder = builder();
+             FileHandle fh = builder.complete())
+        {
+            PrefetchingRebufferer rebufferer = prefetching(fh);
+            slow = true;
+            try (RandomAccessReader reader = rebufferer.createReader())
+            {
+                rebufferer.prefetch(0, contents.length);
+                assertContents(reader, 0, 10);
+                rebufferer.prefetch(20 * CHUNK_SIZE, contents.length);
+            }
+            // the reads of the discarded chunks completed before the reader was closed
+            assertEquals(0, inFlight.get());
+            assertEquals(1, closes.get());
+        }
+    }
+
+    @Test
+    public void testMmapped() throws IOException
+    {
+        try (FileHandle.Builder builder = builder().mmapped(true);
+             FileHandle fh = builder.complete())
+        {
+            // memory-mapped files are not read ahead
+            assertNull(fh.instantiatePrefetchingRebufferer(AccessIntent.SCAN, this::execute, MAX_DEPTH, listener));
+        }
+    }
+}
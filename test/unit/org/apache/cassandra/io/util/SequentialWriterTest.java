@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.io.Files;
 import org.junit.After;
@@ -32,8 +33,10 @@ import org.junit.Test;
 
 import org.junit.Assert;
 
+import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.PageAware;
 import org.apache.cassandra.utils.concurrent.AbstractTransactionalTest;
 
 import static org.apache.commons.io.FileUtils.*;
@@ -192,4 +195,26 @@ public class SequentialWriterTest extends AbstractTransactionalTest
         Assert.assertTrue("temp file should exist", tempFile.exists());
     }
 
+    @Test
+    public void dropCacheBehind() throws IOException
+    {
+        File tempFile = new File(Files.createTempDir().toPath(), "dropbehind.txt");
+        final int writeSize = (1 << 20) + 100;
+        AtomicLong dropped = new AtomicLong();
+        // trickle fsync is not enabled, but dropping from the cache syncs at its interval
+        SequentialWriterOption option = SequentialWriterOption.newBuilder()
+                                                              .bufferSize(8 << 10)
+                                                              .trickleFsyncByteInterval(64 << 10)
+                                                              .build();
+        try (SequentialWriter writer = new SequentialWriter(tempFile, option))
+        {
+            writer.setDropCacheBehind(dropped::addAndGet);
+            writer.write(new byte[writeSize]);
+            // the synced data is dropped while writing, in whole pages
+            Util.spinAssertEquals(true, () -> dropped.get() > 0, 10);
+            writer.finish();
+        }
+        Util.spinAssertEquals((Object) PageAware.pageStart(writeSize), dropped::get, 10);
+        assertEquals(writeSize, tempFile.length());
+    }
 }
@@ -49,7 +49,10 @@ import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.compress.ZstdCompressor;
+import org.apache.cassandra.io.compress.ZstdDictionaryCompressor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.CompressionParams;
 import org.apache.cassandra.schema.KeyspaceParams;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -61,6 +64,7 @@ import static org.apache.cassandra.SchemaLoader.createKeyspace;
 import static org.apache.cassandra.SchemaLoader.standardCFMD;
 import static org.apache.cassandra.db.ColumnFamilyStore.FlushReason.UNIT_TESTS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class StreamingTransferTest
@@ -78,6 +82,7 @@ public class StreamingTransferTest
     public static final String CF_COUNTER = "Counter1";
     public static final String CF_STANDARDINT = "StandardInteger1";
     public static final String CF_INDEX = "Indexed1";
+    public static final String CF_DICTIONARY = "ZstdDictionary1";
     public static final String KEYSPACE_CACHEKEY = "KeyStreamingTransferTestSpace";
     public static final String CF_STANDARD2 = "Standard2";
     public static final String CF_STANDARD3 = "Standard3";
@@ -99,7 +104,10 @@ public class StreamingTransferTest
                                     .addPartitionKeyColumn("key", AsciiType.instance)
                                     .addClusteringColumn("cols", Int32Type.instance)
                                     .addRegularColumn("val", BytesType.instance),
-                       compositeIndexCFMD(KEYSPACE1, CF_INDEX, true));
+                       compositeIndexCFMD(KEYSPACE1, CF_INDEX, true),
+                       standardCFMD(KEYSPACE1, CF_DICTIONARY)
+                       .compression(new CompressionParams(ZstdCompressor.class.getName(), 4096, Integer.MAX_VALUE,
+                                                          Collections.singletonMap(ZstdCompressor.DICTIONARY_SIZE_OPTION_NAME, "1"))));
 
         createKeyspace(KEYSPACE2, KeyspaceParams.simple(1));
 
@@ -377,6 +385,41 @@ public class StreamingTransferTest
         Assert.assertTrue(1 == Int32Type.instance.compose(r.clustering().bufferAt(0)));
     }
 
+    @Test
+    public void testTransferDictionaryCompressedSections() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_DICTIONARY);
+        cfs.disableAutoCompaction();
+
+        int keys = 2000;
+        for (int i = 0; i < keys; i++)
+        {
+            new RowUpdateBuilder(cfs.metadata(), FBUtilities.timestampMicros(), "key" + i)
+                .clustering("col" + i)
+                .add("val", String.format("{\"id\":%d,\"type\":\"event-%d\",\"status\":\"%s\"}", i, i % 10, i % 3 == 0 ? "ok" : "failed"))
+                .build()
+                .apply();
+        }
+        cfs.forceBlockingFlush(UNIT_TESTS);
+        Util.compactAll(cfs, Integer.MAX_VALUE).get();
+        SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+        assertTrue(sstable.getCompressionMetadata().compressor() instanceof ZstdDictionaryCompressor);
+        cfs.clearUnsafe();
+
+        // streaming only part of the sstable sends the sections decompressed, as the receiver has no dictionary
+        IPartitioner p = sstable.getPartitioner();
+        Range<Token> range = new Range<>(p.getToken(ByteBufferUtil.bytes("key1")), p.getToken(ByteBufferUtil.bytes("key2")));
+        transfer(sstable, Collections.singletonList(range));
+
+        int expected = 0;
+        for (int i = 0; i < keys; i++)
+            if (range.contains(p.getToken(ByteBufferUtil.bytes("key" + i))))
+                expected++;
+        assertEquals(1, cfs.getLiveSSTables().size());
+        assertEquals(expected, Util.getAll(Util.cmd(cfs).build()).size());
+    }
+
     @Test
     public void testTransferTableViaRanges() throws Exception
     {
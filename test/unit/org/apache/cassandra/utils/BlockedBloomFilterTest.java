@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.sstable.format.trieindex.TrieIndexFormat;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.schema.TableMetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockedBloomFilterTest
+{
+    private static final int ELEMENTS = 100_000;
+
+    private static IFilter.FilterKey key(long i)
+    {
+        return FilterTestHelper.wrap(ByteBufferUtil.bytes(i));
+    }
+
+    @Test
+    public void testFalsePositiveRate()
+    {
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001 })
+        {
+            try (IFilter filter = FilterFactory.getFilter(ELEMENTS, fpChance, FilterFactory.Type.BLOCKED))
+            {
+                assertTrue(filter instanceof BlockedBloomFilter);
+                for (long i = 0; i < ELEMENTS; i++)
+                    filter.add(key(i));
+
+                for (long i = 0; i < ELEMENTS; i++)
+                    assertTrue(filter.isPresent(key(i)));
+
+                int falsePositives = 0;
+                for (long i = ELEMENTS; i < 11L * ELEMENTS; i++)
+                {
+                    if (filter.isPresent(key(i)))
+                        falsePositives++;
+                }
+                double rate = falsePositives / (10.0 * ELEMENTS);
+                assertTrue(String.format("false positive rate %s for a chance of %s", rate, fpChance), rate < fpChance * 1.2);
+            }
+        }
+    }
+
+    @Test
+    public void testSpec()
+    {
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001, BloomCalculations.minSupportedBloomFilterFpChance() })
+        {
+            BloomCalculations.BloomSpecification spec = BloomCalculations.computeBlockedBloomSpec(BloomCalculations.maxBlockedBucketsPerElement, fpChance);
+            assertTrue(spec.toString(), BloomCalculations.blockedFalsePositiveProbability(spec.bucketsPerElement, spec.K) <= fpChance);
+            assertTrue(spec.toString(), BloomCalculations.blockedFalsePositiveProbability(spec.bucketsPerElement - 1, spec.K) > fpChance);
+
+            // blocks cost a few more bits per key than classic filters
+            BloomCalculations.BloomSpecification classic = BloomCalculations.computeBloomSpec(BloomCalculations.probs.length - 1, fpChance);
+            assertTrue(spec + " vs " + classic, spec.bucketsPerElement >= classic.bucketsPerElement);
+            assertTrue(spec + " vs " + classic, spec.bucketsPerElement <= classic.bucketsPerElement + 5);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        try (IFilter filter = FilterFactory.getFilter(1000, 0.01, FilterFactory.Type.BLOCKED))
+        {
+            for (long i = 0; i < 1000; i++)
+                filter.add(key(i));
+
+            DataOutputBuffer out = new DataOutputBuffer();
+            BloomFilter.serializer.serialize(filter, out);
+            assertEquals(filter.serializedSize(), out.getLength());
+
+            ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            try (IFilter deserialized = BloomFilter.serializer.deserialize(new DataInputStream(in), TrieIndexFormat.instance.getVersion("cc")))
+            {
+                assertTrue(deserialized instanceof BlockedBloomFilter);
+                assertEquals(((BlockedBloomFilter) filter).hashCount, ((BlockedBloomFilter) deserialized).hashCount);
+                BloomFilterTest.compare(((BlockedBloomFilter) filter).bitset, ((BlockedBloomFilter) deserialized).bitset);
+                for (long i = 0; i < 1000; i++)
+                    assertTrue(deserialized.isPresent(key(i)));
+            }
+
+            // versions without filter types cannot hold a blocked filter
+            in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            try (IFilter deserialized = BloomFilter.serializer.deserialize(new DataInputStream(in), TrieIndexFormat.instance.getVersion("cb")))
+            {
+                fail("Expected an IOException but got " + deserialized);
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTypeFromMetadata()
+    {
+        TableMetadata.Builder builder = TableMetadata.builder("ks", "tbl")
+                                                     .partitioner(Murmur3Partitioner.instance)
+                                                     .addPartitionKeyColumn("pk", Int32Type.instance);
+        assertEquals(FilterFactory.Type.CLASSIC, FilterFactory.Type.fromMetadata(builder.build()));
+
+        builder.extensions(ImmutableMap.of(FilterFactory.TABLE_EXTENSIONS_FILTER_TYPE_KEY, ByteBuffer.wrap(new byte[]{ 0x01 })));
+        assertEquals(FilterFactory.Type.BLOCKED, FilterFactory.Type.fromMetadata(builder.build()));
+
+        // only the versions with filter types get the type of the table
+        assertEquals(FilterFactory.Type.BLOCKED, FilterFactory.Type.fromMetadata(builder.build(), BigFormat.instance.getVersion("nd")));
+        assertEquals(FilterFactory.Type.BLOCKED, FilterFactory.Type.fromMetadata(builder.build(), TrieIndexFormat.instance.getVersion("cc")));
+        assertEquals(FilterFactory.Type.CLASSIC, FilterFactory.Type.fromMetadata(builder.build(), BigFormat.instance.getVersion("nc")));
+        assertEquals(FilterFactory.Type.CLASSIC, FilterFactory.Type.fromMetadata(builder.build(), TrieIndexFormat.instance.getVersion("cb")));
+
+        // invalid values fall back to classic filters
+        builder.extensions(ImmutableMap.of(FilterFactory.TABLE_EXTENSIONS_FILTER_TYPE_KEY, ByteBuffer.wrap(new byte[]{ 0x7f })));
+        assertEquals(FilterFactory.Type.CLASSIC, FilterFactory.Type.fromMetadata(builder.build()));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XorFilterTest
+{
+    private static final int ELEMENTS = 100_000;
+
+    private static IFilter.FilterKey key(long i)
+    {
+        return FilterTestHelper.wrap(ByteBufferUtil.bytes(i));
+    }
+
+    private static IFilter build(long elements, double fpChance)
+    {
+        IFilter filter = FilterFactory.getFilter(elements, fpChance, FilterFactory.Type.XOR);
+        for (long i = 0; i < elements; i++)
+            filter.add(key(i));
+        return FilterFactory.complete(filter);
+    }
+
+    @Test
+    public void testFalsePositiveRate()
+    {
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001 })
+        {
+            try (IFilter filter = build(ELEMENTS, fpChance))
+            {
+                assertTrue(filter instanceof XorFilter);
+                for (long i = 0; i < ELEMENTS; i++)
+                    assertTrue(filter.isPresent(key(i)));
+
+                int falsePositives = 0;
+                for (long i = ELEMENTS; i < 11L * ELEMENTS; i++)
+                {
+                    if (filter.isPresent(key(i)))
+                        falsePositives++;
+                }
+                double rate = falsePositives / (10.0 * ELEMENTS);
+                double expected = Math.pow(2, -((XorFilter) filter).fingerprintBits);
+                assertTrue(String.format("false positive rate %s for a chance of %s", rate, fpChance), rate < fpChance);
+                assertTrue(String.format("false positive rate %s for an expected %s", rate, expected), rate < expected * 1.2);
+            }
+        }
+    }
+
+    @Test
+    public void testSize()
+    {
+        // at higher chances, rounding the fingerprints to a whole number of bits costs more than is saved
+        for (double fpChance : new double[]{ 0.01, 0.001, 0.0001 })
+        {
+            try (IFilter xor = build(ELEMENTS, fpChance);
+                 IFilter classic = FilterFactory.getFilter(ELEMENTS, fpChance, FilterFactory.Type.CLASSIC))
+            {
+                assertTrue(xor + " " + xor.offHeapSize() + " vs " + classic.offHeapSize(),
+                           xor.offHeapSize() < classic.offHeapSize() * 0.85);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallSets()
+    {
+        for (int elements : new int[]{ 0, 1, 2, 3, 10, 100, 1000 })
+        {
+            try (IFilter filter = build(elements, 0.01))
+            {
+                assertTrue(filter instanceof XorFilter);
+                for (long i = 0; i < elements; i++)
+                    assertTrue(filter.isPresent(key(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicates()
+    {
+        IFilter builder = FilterFactory.getFilter(ELEMENTS, 0.01, FilterFactory.Type.XOR);
+        for (long i = 0; i < ELEMENTS; i++)
+        {
+            builder.add(key(i));
+            // as after a reset of the writer
+            builder.add(key(i));
+            // and any other duplicates
+            if (i % 100 == 0)
+                builder.add(key(i / 2));
+        }
+        try (IFilter filter = FilterFactory.complete(builder))
+        {
+            assertTrue(filter instanceof XorFilter);
+            for (long i = 0; i < ELEMENTS; i++)
+                assertTrue(filter.isPresent(key(i)));
+        }
+    }
+
+    @Test
+    public void testBuilder()
+    {
+        IFilter builder = FilterFactory.getFilter(1000, 0.01, FilterFactory.Type.XOR);
+        assertTrue(builder instanceof XorFilter.Builder);
+        for (long i = 0; i < 1000; i++)
+            builder.add(key(i));
+
+        // sstables opened before their filter is built find all keys
+        assertSame(FilterFactory.AlwaysPresent, builder.sharedCopy());
+        assertTrue(builder.isPresent(key(-1)));
+
+        try (IFilter filter = FilterFactory.complete(builder))
+        {
+            assertSame(filter, FilterFactory.complete(filter));
+        }
+    }
+
+    @Test
+    public void testBuilderLimit()
+    {
+        // an underestimated number of keys does not make the builder record more than its limit
+        IFilter builder = new XorFilter.Builder(100, 0.01, 1000, BloomFilter.memoryLimiter);
+        for (long i = 0; i < 5000; i++)
+            builder.add(key(i));
+        assertTrue(builder.offHeapSize() < 5000 * 16);
+
+        try (IFilter filter = FilterFactory.complete(builder))
+        {
+            assertTrue(filter instanceof BlockedBloomFilter);
+            for (long i = 0; i < 5000; i++)
+                assertTrue(filter.isPresent(key(i)));
+        }
+    }
+
+    @Test
+    public void testFingerprintBits()
+    {
+        assertEquals(4, XorFilter.fingerprintBitsFor(0.1));
+        assertEquals(7, XorFilter.fingerprintBitsFor(0.01));
+        assertEquals(10, XorFilter.fingerprintBitsFor(0.001));
+        assertEquals(XorFilter.MAX_FINGERPRINT_BITS, XorFilter.fingerprintBitsFor(1e-12));
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        try (IFilter filter = build(1000, 0.001))
+        {
+            DataOutputBuffer out = new DataOutputBuffer();
+            BloomFilter.serializer.serialize(filter, out);
+            assertEquals(filter.serializedSize(), out.getLength());
+
+            ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            try (IFilter deserialized = BloomFilter.serializer.deserialize(new DataInputStream(in), BigFormat.instance.getVersion("nd")))
+            {
+                assertTrue(deserialized instanceof XorFilter);
+                XorFilter expected = (XorFilter) filter;
+                XorFilter actual = (XorFilter) deserialized;
+                assertEquals(expected.fingerprintBits, actual.fingerprintBits);
+                assertEquals(expected.seed, actual.seed);
+                assertEquals(expected.segmentLength, actual.segmentLength);
+                assertEquals(expected.segmentCount, actual.segmentCount);
+                BloomFilterTest.compare(expected.fingerprints, actual.fingerprints);
+                for (long i = 0; i < 1000; i++)
+                    assertTrue(deserialized.isPresent(key(i)));
+            }
+
+            // versions without filter types cannot hold an xor filter
+            in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            try (IFilter deserialized = BloomFilter.serializer.deserialize(new DataInputStream(in), BigFormat.instance.getVersion("nc")))
+            {
+                fail("Expected an IOException but got " + deserialized);
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+        }
+    }
+}